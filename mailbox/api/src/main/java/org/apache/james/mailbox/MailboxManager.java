@@ -19,6 +19,8 @@
 
 package org.apache.james.mailbox;
 
+import java.io.InputStream;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
@@ -28,6 +30,8 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxExistsException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.exception.UnsupportedRightException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxAnnotation;
 import org.apache.james.mailbox.model.MailboxMetaData;
@@ -197,6 +201,26 @@ public interface MailboxManager extends RequestAware, MailboxListenerSupport {
      */
     List<MessageRange> moveMessages(MessageRange set, MailboxPath from, MailboxPath to, MailboxSession session) throws MailboxException;
 
+    /**
+     * Append the same message to several mailboxes, possibly owned by
+     * different users. The message is read and parsed only once, whatever the
+     * count of targets is.
+     * 
+     * A failure to append to one target does not prevent the others from
+     * being processed: it is reported in the matching {@link AppendResult}.
+     * 
+     * @param msgIn
+     *            the message content
+     * @param internalDate
+     *            date the message was received, or null for now
+     * @param targets
+     *            mailboxes to append the message to, not empty
+     * @return one {@link AppendResult} per target, in the order of the targets
+     * @throws MailboxException
+     *             if the message could not be read or parsed
+     */
+    List<AppendResult> appendMessage(InputStream msgIn, Date internalDate, List<AppendTarget> targets) throws MailboxException;
+
     /**
      * Searches for mailboxes matching the given query.
      * 
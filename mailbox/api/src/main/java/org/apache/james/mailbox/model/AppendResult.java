@@ -0,0 +1,84 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.model;
+
+import org.apache.james.mailbox.exception.MailboxException;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Outcome of appending a message to a single {@link AppendTarget}: either the
+ * uid assigned to the message or the {@link MailboxException} which prevented
+ * the append.
+ */
+public class AppendResult {
+
+    public static AppendResult success(AppendTarget target, long uid) {
+        return new AppendResult(target, uid, null);
+    }
+
+    public static AppendResult failure(AppendTarget target, MailboxException cause) {
+        Preconditions.checkNotNull(cause);
+        return new AppendResult(target, -1, cause);
+    }
+
+    private final AppendTarget target;
+    private final long uid;
+    private final MailboxException cause;
+
+    private AppendResult(AppendTarget target, long uid, MailboxException cause) {
+        Preconditions.checkNotNull(target);
+        this.target = target;
+        this.uid = uid;
+        this.cause = cause;
+    }
+
+    public AppendTarget getTarget() {
+        return target;
+    }
+
+    public boolean isSuccess() {
+        return cause == null;
+    }
+
+    /**
+     * Return the uid of the appended message, or -1 if the append failed
+     */
+    public long getUid() {
+        return uid;
+    }
+
+    /**
+     * Return the cause of the failure, or null if the append succeeded
+     */
+    public MailboxException getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("target", target)
+            .add("uid", uid)
+            .add("cause", cause)
+            .toString();
+    }
+}
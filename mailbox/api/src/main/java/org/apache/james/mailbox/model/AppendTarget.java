@@ -0,0 +1,108 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.model;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxSession;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Destination of a message appended to several mailboxes at once. See
+ * {@link org.apache.james.mailbox.MailboxManager#appendMessage(java.io.InputStream, java.util.Date, java.util.List)}
+ */
+public class AppendTarget {
+
+    private static final byte[] NO_HEADERS = new byte[0];
+
+    private final MailboxSession session;
+    private final MailboxPath path;
+    private final boolean recent;
+    private final Flags flags;
+    private final byte[] additionalHeaders;
+
+    /**
+     * @param session
+     *            session used to append to the mailbox, not null
+     * @param path
+     *            mailbox the message is appended to, not null
+     * @param recent
+     *            true if the message should get the \RECENT flag
+     * @param flags
+     *            flags to set on the message, may be null
+     * @param additionalHeaders
+     *            raw header lines (each one terminated by CRLF) which are
+     *            prepended to the message stored for this target only, may be
+     *            null
+     */
+    public AppendTarget(MailboxSession session, MailboxPath path, boolean recent, Flags flags, byte[] additionalHeaders) {
+        Preconditions.checkNotNull(session);
+        Preconditions.checkNotNull(path);
+        this.session = session;
+        this.path = path;
+        this.recent = recent;
+        this.flags = flags;
+        if (additionalHeaders == null) {
+            this.additionalHeaders = NO_HEADERS;
+        } else {
+            this.additionalHeaders = additionalHeaders;
+        }
+    }
+
+    public AppendTarget(MailboxSession session, MailboxPath path, boolean recent, Flags flags) {
+        this(session, path, recent, flags, null);
+    }
+
+    public MailboxSession getSession() {
+        return session;
+    }
+
+    public MailboxPath getPath() {
+        return path;
+    }
+
+    public boolean isRecent() {
+        return recent;
+    }
+
+    /**
+     * Return a copy of the flags to set, or null
+     */
+    public Flags getFlags() {
+        if (flags == null) {
+            return null;
+        }
+        return new Flags(flags);
+    }
+
+    public byte[] getAdditionalHeaders() {
+        return additionalHeaders;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("user", session.getUser().getUserName())
+            .add("path", path)
+            .toString();
+    }
+}
@@ -0,0 +1,36 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by {@link java.io.InputStream}'s which read octets that are already held in memory. Writers can use
+ * the {@link ByteBuffer} to send the remaining octets without copying them into intermediate buffers.
+ */
+public interface ByteBufferBacked {
+
+    /**
+     * Return a read-only {@link ByteBuffer} which holds the octets of the stream that were not read yet. Reading the
+     * {@link ByteBuffer} does not change the position of the stream.
+     * 
+     * @return buffer
+     */
+    ByteBuffer asByteBuffer();
+}
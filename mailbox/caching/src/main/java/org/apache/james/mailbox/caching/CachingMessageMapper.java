@@ -10,6 +10,7 @@ import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 
 /**
@@ -109,6 +110,12 @@ public class CachingMessageMapper implements MessageMapper {
         return underlying.copy(mailbox, original);
     }
 
+    @Override
+    public List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        invalidateMetadata(mailbox);
+        return underlying.copyAll(mailbox, originals);
+    }
+
     @Override
     public long getLastUid(Mailbox mailbox) throws MailboxException {
         return cache.getLastUid(mailbox, underlying);
@@ -119,6 +126,11 @@ public class CachingMessageMapper implements MessageMapper {
         return cache.getHighestModSeq(mailbox, underlying);
     }
 
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException {
+        return underlying.getMailboxCounters(mailbox);
+    }
+
     private void invalidateMetadata(Mailbox mailbox) {
         cache.invalidate(mailbox);
 
@@ -129,4 +141,9 @@ public class CachingMessageMapper implements MessageMapper {
         throw new UnsupportedOperationException("Move is not yet supported");
     }
 
+    @Override
+    public List<MessageMetaData> moveAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        throw new UnsupportedOperationException("Move is not yet supported");
+    }
+
 }
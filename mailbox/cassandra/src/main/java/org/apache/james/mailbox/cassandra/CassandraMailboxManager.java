@@ -28,6 +28,7 @@ import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
 import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.cassandra.mail.CassandraRecentCounterBackfill;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
@@ -44,6 +45,7 @@ import org.apache.james.mailbox.store.search.MessageSearchIndex;
  */
 public class CassandraMailboxManager extends StoreMailboxManager {
     private final MailboxPathLocker locker;
+    private final CassandraMailboxSessionMapperFactory mapperFactory;
 
     @Inject
     public CassandraMailboxManager(CassandraMailboxSessionMapperFactory mapperFactory, Authenticator authenticator, MailboxPathLocker locker, MessageParser messageParser) {
@@ -54,6 +56,13 @@ public class CassandraMailboxManager extends StoreMailboxManager {
             new SimpleGroupMembershipResolver(),
             messageParser);
         this.locker = locker;
+        this.mapperFactory = mapperFactory;
+    }
+
+    @Override
+    public void init() throws MailboxException {
+        super.init();
+        new CassandraRecentCounterBackfill(mapperFactory.getSession()).backfill();
     }
 
     @Override
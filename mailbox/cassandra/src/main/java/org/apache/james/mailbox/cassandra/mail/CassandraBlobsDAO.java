@@ -0,0 +1,172 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.BlobParts;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.github.steveash.guavate.Guavate;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+/**
+ * Stores message contents as content addressed blobs: the id of a blob is the SHA-256 of its content.
+ *
+ * Storing the same content several times thus results in a single blob, which lets several messages
+ * reference the same bytes. Content is split in chunks so that a big message does not end up in a single
+ * oversized cell.
+ */
+public class CassandraBlobsDAO {
+
+    public static final int CHUNK_SIZE = 100 * 1024;
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final int chunkSize;
+
+    public CassandraBlobsDAO(Session session) {
+        this(session, CHUNK_SIZE);
+    }
+
+    public CassandraBlobsDAO(Session session, int chunkSize) {
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size must be strictly positive");
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.chunkSize = chunkSize;
+    }
+
+    public static String computeId(byte[] data) {
+        Preconditions.checkNotNull(data);
+        return Hashing.sha256().hashBytes(data).toString();
+    }
+
+    /**
+     * Stores the given content. The chunks are written before the blob entry so that an existing blob entry
+     * always references complete content.
+     *
+     * @return the id of the stored blob
+     */
+    public CompletableFuture<String> save(byte[] data) {
+        String blobId = computeId(data);
+        int numberOfChunk = numberOfChunk(data);
+        return CompletableFuture.allOf(
+                IntStream.range(0, numberOfChunk)
+                    .mapToObj(chunkNumber -> saveChunk(blobId, chunkNumber, data))
+                    .toArray(CompletableFuture[]::new))
+            .thenCompose(any -> cassandraAsyncExecutor.executeVoid(
+                insertInto(CassandraBlobTable.TABLE_NAME)
+                    .value(CassandraBlobTable.ID, blobId)
+                    .value(CassandraBlobTable.NUMBER_OF_CHUNKS, numberOfChunk)))
+            .thenApply(any -> blobId);
+    }
+
+    /**
+     * Stores the given content only if no blob with the same id exists yet. This trades one small read for the
+     * write of the whole content, which pays off when the content is known to be likely stored already, for
+     * instance when copying a message.
+     *
+     * @return the id of the blob
+     */
+    public CompletableFuture<String> saveIfAbsent(byte[] data) {
+        String blobId = computeId(data);
+        return exists(blobId)
+            .thenCompose(exists -> {
+                if (exists) {
+                    return CompletableFuture.completedFuture(blobId);
+                }
+                return save(data);
+            });
+    }
+
+    public CompletableFuture<Boolean> exists(String blobId) {
+        return cassandraAsyncExecutor.executeSingleRow(
+                select(CassandraBlobTable.NUMBER_OF_CHUNKS)
+                    .from(CassandraBlobTable.TABLE_NAME)
+                    .where(eq(CassandraBlobTable.ID, blobId)))
+            .thenApply(row -> row.isPresent());
+    }
+
+    public CompletableFuture<byte[]> read(String blobId) {
+        CompletableFuture<Integer> numberOfChunk = cassandraAsyncExecutor.executeSingleRow(
+                select(CassandraBlobTable.NUMBER_OF_CHUNKS)
+                    .from(CassandraBlobTable.TABLE_NAME)
+                    .where(eq(CassandraBlobTable.ID, blobId)))
+            .thenApply(row -> row
+                .map(value -> value.getInt(CassandraBlobTable.NUMBER_OF_CHUNKS))
+                .orElseThrow(() -> new IllegalStateException("Could not retrieve blob " + blobId)));
+        CompletableFuture<List<ByteBuffer>> chunks = cassandraAsyncExecutor.execute(
+                select(BlobParts.DATA)
+                    .from(BlobParts.TABLE_NAME)
+                    .where(eq(BlobParts.ID, blobId)))
+            .thenApply(this::chunks);
+        return numberOfChunk.thenCombine(chunks, (expected, parts) -> concat(blobId, expected, parts));
+    }
+
+    private CompletableFuture<Void> saveChunk(String blobId, int chunkNumber, byte[] data) {
+        int offset = chunkNumber * chunkSize;
+        int length = Math.min(chunkSize, data.length - offset);
+        return cassandraAsyncExecutor.executeVoid(
+            insertInto(BlobParts.TABLE_NAME)
+                .value(BlobParts.ID, blobId)
+                .value(BlobParts.CHUNK_NUMBER, chunkNumber)
+                .value(BlobParts.DATA, ByteBuffer.wrap(data, offset, length)));
+    }
+
+    private int numberOfChunk(byte[] data) {
+        return (data.length + chunkSize - 1) / chunkSize;
+    }
+
+    private List<ByteBuffer> chunks(ResultSet resultSet) {
+        return CassandraUtils.convertToStream(resultSet)
+            .map(this::chunk)
+            .collect(Guavate.toImmutableList());
+    }
+
+    private ByteBuffer chunk(Row row) {
+        return row.getBytes(BlobParts.DATA);
+    }
+
+    private byte[] concat(String blobId, int expectedNumberOfChunk, List<ByteBuffer> chunks) {
+        if (chunks.size() != expectedNumberOfChunk) {
+            throw new IllegalStateException("Blob " + blobId + " is incomplete: expecting " + expectedNumberOfChunk + " chunks, got " + chunks.size());
+        }
+        // Messages are handed over as a single array, which is allocated once to its final size
+        byte[] content = new byte[chunks.stream().mapToInt(ByteBuffer::remaining).sum()];
+        int offset = 0;
+        for (ByteBuffer chunk : chunks) {
+            int length = chunk.remaining();
+            chunk.get(content, offset, length);
+            offset += length;
+        }
+        return content;
+    }
+}
@@ -30,12 +30,14 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.ATTACHMENTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_START_OCTET;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADERS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
@@ -56,7 +58,6 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Fla
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -65,13 +66,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.apache.james.backends.cassandra.init.CassandraTypesProvider;
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
 import org.apache.james.backends.cassandra.utils.CassandraConstants;
 import org.apache.james.backends.cassandra.utils.CassandraUtils;
 import org.apache.james.backends.cassandra.utils.FunctionRunnerWithRetry;
@@ -80,9 +85,11 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.mail.utils.MessageDeletedDuringFlagsUpdateException;
 import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Attachments;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Properties;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
@@ -96,12 +103,14 @@ import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Attachment;
 import org.apache.james.mailbox.store.mail.model.AttachmentId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.MessageAttachment;
 import org.apache.james.mailbox.store.mail.model.impl.Cid;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleProperty;
+import org.apache.james.mailbox.store.streaming.ExposedSharedByteArrayInputStream;
 
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
@@ -109,11 +118,14 @@ import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.UDTValue;
 import com.datastax.driver.core.querybuilder.Assignment;
+import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.datastax.driver.core.querybuilder.Select.Where;
 import com.github.fge.lambdas.Throwing;
 import com.github.steveash.guavate.Guavate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
@@ -122,6 +134,8 @@ import com.google.common.primitives.Bytes;
 public class CassandraMessageMapper implements MessageMapper {
 
     private final Session session;
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final CassandraBlobsDAO blobsDAO;
     private final ModSeqProvider modSeqProvider;
     private final MailboxSession mailboxSession;
     private final UidProvider uidProvider;
@@ -131,6 +145,8 @@ public class CassandraMessageMapper implements MessageMapper {
 
     public CassandraMessageMapper(Session session, UidProvider uidProvider, ModSeqProvider modSeqProvider, MailboxSession mailboxSession, int maxRetries, CassandraTypesProvider typesProvider, AttachmentMapper attachmentMapper) {
         this.session = session;
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.blobsDAO = new CassandraBlobsDAO(session);
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.mailboxSession = mailboxSession;
@@ -165,21 +181,56 @@ public class CassandraMessageMapper implements MessageMapper {
         return 0;
     }
 
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException {
+        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
+        // The counters, the last uid and the highest mod-sequence live in distinct tables: they are read concurrently
+        // so that the snapshot costs a single round trip
+        CompletableFuture<Optional<Row>> counters = cassandraAsyncExecutor.executeSingleRow(
+            select(CassandraMailboxCountersTable.COUNT, CassandraMailboxCountersTable.UNSEEN, CassandraMailboxCountersTable.RECENT)
+                .from(CassandraMailboxCountersTable.TABLE_NAME)
+                .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+        CompletableFuture<Optional<Row>> lastUid = cassandraAsyncExecutor.executeSingleRow(
+            select(CassandraMessageUidTable.NEXT_UID)
+                .from(CassandraMessageUidTable.TABLE_NAME)
+                .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())));
+        CompletableFuture<Optional<Row>> highestModSeq = cassandraAsyncExecutor.executeSingleRow(
+            select(CassandraMessageModseqTable.NEXT_MODSEQ)
+                .from(CassandraMessageModseqTable.TABLE_NAME)
+                .where(eq(CassandraMessageModseqTable.MAILBOX_ID, mailboxId.asUuid())));
+        CompletableFuture.allOf(counters, lastUid, highestModSeq).join();
+
+        Optional<Row> countersRow = counters.join();
+        long count = countersRow.map(row -> row.getLong(CassandraMailboxCountersTable.COUNT)).orElse(0L);
+        long unseen = countersRow.map(row -> row.getLong(CassandraMailboxCountersTable.UNSEEN)).orElse(0L);
+        long recent;
+        if (countersRow.isPresent() && countersRow.get().isNull(CassandraMailboxCountersTable.RECENT)) {
+            // Mailbox not backfilled yet by CassandraRecentCounterBackfill
+            recent = findRecentMessageUidsInMailbox(mailbox).size();
+        } else {
+            recent = countersRow.map(row -> row.getLong(CassandraMailboxCountersTable.RECENT)).orElse(0L);
+        }
+        return new MailboxCounters(count, unseen, recent,
+            lastUid.join().map(row -> row.getLong(CassandraMessageUidTable.NEXT_UID)).orElse(0L),
+            highestModSeq.join().map(row -> row.getLong(CassandraMessageModseqTable.NEXT_MODSEQ)).orElse(0L));
+    }
+
     @Override
     public void delete(Mailbox mailbox, MailboxMessage message) {
         deleteUsingMailboxId(((CassandraId) mailbox.getMailboxId()), message);
     }
 
     private void deleteUsingMailboxId(CassandraId mailboxId, MailboxMessage message) {
-        session.execute(
-            QueryBuilder.delete()
-                .from(TABLE_NAME)
-                .where(eq(MAILBOX_ID, mailboxId.asUuid()))
-                .and(eq(IMAP_UID, message.getUid())));
-        decrementCount(mailboxId);
-        if (!message.isSeen()) {
-            decrementUnseen(mailboxId);
-        }
+        cassandraAsyncExecutor.executeVoid(buildDelete(mailboxId, message.getUid()))
+            .thenCompose(any -> updateCounters(mailboxId, -1, message.isSeen() ? 0 : -1, message.isRecent() ? -1 : 0))
+            .join();
+    }
+
+    private Statement buildDelete(CassandraId mailboxId, long uid) {
+        return QueryBuilder.delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, mailboxId.asUuid()))
+            .and(eq(IMAP_UID, uid));
     }
 
     @Override
@@ -228,8 +279,30 @@ public class CassandraMessageMapper implements MessageMapper {
 
     @Override
     public MessageMetaData move(Mailbox destinationMailbox, MailboxMessage original) throws MailboxException {
-        MessageMetaData messageMetaData = copy(destinationMailbox, original);
-        deleteUsingMailboxId((CassandraId) original.getMailboxId(), original);
+        return moveAll(destinationMailbox, ImmutableList.of(original)).get(0);
+    }
+
+    @Override
+    public List<MessageMetaData> moveAll(Mailbox destinationMailbox, List<MailboxMessage> originals) throws MailboxException {
+        // Copying assigns new uids to the originals, so the deletions need to be computed first
+        List<Statement> deletions = originals.stream()
+            .map(original -> buildDelete((CassandraId) original.getMailboxId(), original.getUid()))
+            .collect(Guavate.toImmutableList());
+        // Copying also flags the originals as recent
+        List<Statement> counterUpdates = originals.stream()
+            .collect(Collectors.groupingBy(original -> (CassandraId) original.getMailboxId()))
+            .entrySet().stream()
+            .map(entry -> counterUpdate(entry.getKey(),
+                -entry.getValue().size(),
+                -entry.getValue().stream().filter(original -> !original.isSeen()).count(),
+                -entry.getValue().stream().filter(MailboxMessage::isRecent).count()))
+            .collect(Guavate.toImmutableList());
+
+        List<MessageMetaData> messageMetaData = copyAll(destinationMailbox, originals);
+
+        allOf(deletions.stream().map(cassandraAsyncExecutor::executeVoid))
+            .thenCompose(any -> allOf(counterUpdates.stream().map(cassandraAsyncExecutor::executeVoid)))
+            .join();
         return messageMetaData;
     }
 
@@ -245,27 +318,39 @@ public class CassandraMessageMapper implements MessageMapper {
 
     @Override
     public MessageMetaData add(Mailbox mailbox, MailboxMessage message) throws MailboxException {
+        return addMessage(mailbox, message, blobsDAO::save);
+    }
+
+    private MessageMetaData addMessage(Mailbox mailbox, MailboxMessage message, Function<byte[], CompletableFuture<String>> blobSaver) throws MailboxException {
         message.setUid(uidProvider.nextUid(mailboxSession, mailbox));
         message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-        MessageMetaData messageMetaData = save(mailbox, message);
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        if (!message.isSeen()) {
-            incrementUnseen(mailboxId);
-        }
-        incrementCount(mailboxId);
-        return messageMetaData;
+        // Counters are only updated once the message is stored, so that a failed insert does not get counted
+        saveMessage(mailboxId, message, blobSaver)
+            .thenCompose(any -> updateCounters(mailboxId, 1, message.isSeen() ? 0 : 1, message.isRecent() ? 1 : 0))
+            .join();
+        return new SimpleMessageMetaData(message);
+    }
+
+    private CompletableFuture<Void> saveMessage(CassandraId mailboxId, MailboxMessage message, Function<byte[], CompletableFuture<String>> blobSaver) throws MailboxException {
+        CompletableFuture<String> headerBlobId = blobSaver.apply(toByteArray(message.getHeaderContent()));
+        CompletableFuture<String> bodyBlobId = blobSaver.apply(toByteArray(message.getBodyContent()));
+        return headerBlobId.thenCombine(bodyBlobId, (header, body) -> buildInsert(mailboxId, message, header, body))
+            .thenCompose(cassandraAsyncExecutor::executeVoid);
     }
 
     @Override
     public Iterator<UpdatedFlags> updateFlags(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, MessageRange set) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return CassandraUtils.convertToStream(session.execute(buildQuery(mailboxId, set, FetchType.Metadata)))
-            .map((row) -> updateFlagsOnMessage(mailbox, flagUpdateCalculator, row))
+        // All the messages updated by this call share a single mod-sequence, only allocated if a message matches
+        Supplier<Long> batchModSeq = Suppliers.memoize(() -> nextModSeq(mailbox));
+        List<UpdatedFlags> updatedFlags = CassandraUtils.convertToStream(session.execute(buildQuery(mailboxId, set, FetchType.Metadata)))
+            .map((row) -> updateFlagsOnMessage(mailbox, flagUpdateCalculator, row, batchModSeq))
             .filter(Optional::isPresent)
             .map(Optional::get)
-            .peek((updatedFlags) -> manageUnseenMessageCounts(mailbox, updatedFlags.getOldFlags(), updatedFlags.getNewFlags()))
-            .collect(Collectors.toList()) // This collect is here as we need to consume all the stream before returning result
-            .iterator();
+            .collect(Collectors.toList()); // This collect is here as we need to consume all the stream before returning result
+        manageMessageCounts(mailbox, updatedFlags);
+        return updatedFlags.iterator();
     }
 
     @Override
@@ -275,33 +360,82 @@ public class CassandraMessageMapper implements MessageMapper {
 
     @Override
     public MessageMetaData copy(Mailbox mailbox, MailboxMessage original) throws MailboxException {
-        original.setFlags(new FlagsBuilder().add(original.createFlags()).add(Flag.RECENT).build());
-        return add(mailbox, original);
+        return copyAll(mailbox, ImmutableList.of(original)).get(0);
     }
 
     @Override
-    public long getLastUid(Mailbox mailbox) throws MailboxException {
-        return uidProvider.lastUid(mailboxSession, mailbox);
+    public List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        if (originals.isEmpty()) {
+            return ImmutableList.of();
+        }
+        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        ImmutableList.Builder<CompletableFuture<Void>> writes = ImmutableList.builder();
+        for (MailboxMessage original : originals) {
+            // Looked up before the original gets its new uid
+            CompletableFuture<Optional<Row>> blobIds = retrieveBlobIds((CassandraId) original.getMailboxId(), original.getUid());
+            original.setFlags(new FlagsBuilder().add(original.createFlags()).add(Flag.RECENT).build());
+            original.setUid(uidProvider.nextUid(mailboxSession, mailbox));
+            original.setModSeq(modSeq);
+            writes.add(blobIds.thenCompose(Throwing.function((Optional<Row> row) -> copyMessage(mailboxId, original, row))));
+        }
+        long unseenCount = originals.stream().filter(original -> !original.isSeen()).count();
+        // Copies are always recent
+        allOf(writes.build().stream())
+            .thenCompose(any -> updateCounters(mailboxId, originals.size(), unseenCount, originals.size()))
+            .join();
+        return originals.stream()
+            .map(SimpleMessageMetaData::new)
+            .collect(Guavate.toImmutableList());
     }
 
-    private void decrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.COUNT));
+    private CompletableFuture<Optional<Row>> retrieveBlobIds(CassandraId mailboxId, long uid) {
+        return cassandraAsyncExecutor.executeSingleRow(
+            select(HEADER_BLOB_ID, BODY_BLOB_ID)
+                .from(TABLE_NAME)
+                .where(eq(MAILBOX_ID, mailboxId.asUuid()))
+                .and(eq(IMAP_UID, uid)));
+    }
+
+    /**
+     * The copy references the blobs of the original, so its content is neither read nor stored again. The content
+     * is only saved when the original has no blob ids, as it was expunged meanwhile or stored inline.
+     */
+    private CompletableFuture<Void> copyMessage(CassandraId mailboxId, MailboxMessage original, Optional<Row> blobIds) throws MailboxException {
+        Optional<Row> reusableBlobIds = blobIds.filter(row -> !row.isNull(HEADER_BLOB_ID) && !row.isNull(BODY_BLOB_ID));
+        if (reusableBlobIds.isPresent()) {
+            return cassandraAsyncExecutor.executeVoid(
+                buildInsert(mailboxId, original, reusableBlobIds.get().getString(HEADER_BLOB_ID), reusableBlobIds.get().getString(BODY_BLOB_ID)));
+        }
+        return saveMessage(mailboxId, original, blobsDAO::saveIfAbsent);
     }
 
-    private void incrementCount(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.COUNT));
+    @Override
+    public long getLastUid(Mailbox mailbox) throws MailboxException {
+        return uidProvider.lastUid(mailboxSession, mailbox);
     }
 
-    private void decrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, decr(CassandraMailboxCountersTable.UNSEEN));
+    private CompletableFuture<Void> updateCounters(CassandraId mailboxId, long countDelta, long unseenDelta, long recentDelta) {
+        return cassandraAsyncExecutor.executeVoid(counterUpdate(mailboxId, countDelta, unseenDelta, recentDelta));
     }
 
-    private void incrementUnseen(CassandraId mailboxId) {
-        updateMailbox(mailboxId, incr(CassandraMailboxCountersTable.UNSEEN));
+    /**
+     * All the counters are written, even when unchanged, so that a mailbox having a null recent counter is known
+     * to hold messages stored before that counter was introduced.
+     */
+    private Statement counterUpdate(CassandraId mailboxId, long countDelta, long unseenDelta, long recentDelta) {
+        return update(CassandraMailboxCountersTable.TABLE_NAME)
+            .with(counterDelta(CassandraMailboxCountersTable.COUNT, countDelta))
+            .and(counterDelta(CassandraMailboxCountersTable.UNSEEN, unseenDelta))
+            .and(counterDelta(CassandraMailboxCountersTable.RECENT, recentDelta))
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid()));
     }
 
-    private void updateMailbox(CassandraId mailboxId, Assignment operation) {
-        session.execute(update(CassandraMailboxCountersTable.TABLE_NAME).with(operation).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId.asUuid())));
+    private Assignment counterDelta(String counter, long delta) {
+        if (delta < 0) {
+            return decr(counter, -delta);
+        }
+        return incr(counter, delta);
     }
 
     private MailboxMessage message(Row row, FetchType fetchType) {
@@ -381,43 +515,36 @@ public class CassandraMessageMapper implements MessageMapper {
         return AttachmentId.from(udtValue.getString(Attachments.ID));
     }
 
-    private MessageMetaData save(Mailbox mailbox, MailboxMessage message) throws MailboxException {
-        try {
-            CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-            session.execute(insertInto(TABLE_NAME)
-                .value(MAILBOX_ID, mailboxId.asUuid())
-                .value(IMAP_UID, message.getUid())
-                .value(MOD_SEQ, message.getModSeq())
-                .value(INTERNAL_DATE, message.getInternalDate())
-                .value(BODY_START_OCTET, message.getFullContentOctets() - message.getBodyOctets())
-                .value(FULL_CONTENT_OCTETS, message.getFullContentOctets())
-                .value(BODY_OCTECTS, message.getBodyOctets())
-                .value(ANSWERED, message.isAnswered())
-                .value(DELETED, message.isDeleted())
-                .value(DRAFT, message.isDraft())
-                .value(FLAGGED, message.isFlagged())
-                .value(RECENT, message.isRecent())
-                .value(SEEN, message.isSeen())
-                .value(USER, message.createFlags().contains(Flag.USER))
-                .value(USER_FLAGS, userFlagsSet(message))
-                .value(BODY_CONTENT, toByteBuffer(message.getBodyContent()))
-                .value(HEADER_CONTENT, toByteBuffer(message.getHeaderContent()))
-                .value(PROPERTIES, message.getProperties().stream()
-                    .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
-                        .newValue()
-                        .setString(Properties.NAMESPACE, x.getNamespace())
-                        .setString(Properties.NAME, x.getLocalName())
-                        .setString(Properties.VALUE, x.getValue()))
-                    .collect(Collectors.toList()))
-                .value(TEXTUAL_LINE_COUNT, message.getTextualLineCount())
-                .value(ATTACHMENTS, message.getAttachments().stream()
-                    .map(this::toUDT)
-                    .collect(Collectors.toList())));
-
-            return new SimpleMessageMetaData(message);
-        } catch (IOException e) {
-            throw new MailboxException("Error saving mail", e);
-        }
+    private Insert buildInsert(CassandraId mailboxId, MailboxMessage message, String headerBlobId, String bodyBlobId) {
+        return insertInto(TABLE_NAME)
+            .value(MAILBOX_ID, mailboxId.asUuid())
+            .value(IMAP_UID, message.getUid())
+            .value(MOD_SEQ, message.getModSeq())
+            .value(INTERNAL_DATE, message.getInternalDate())
+            .value(BODY_START_OCTET, message.getFullContentOctets() - message.getBodyOctets())
+            .value(FULL_CONTENT_OCTETS, message.getFullContentOctets())
+            .value(BODY_OCTECTS, message.getBodyOctets())
+            .value(ANSWERED, message.isAnswered())
+            .value(DELETED, message.isDeleted())
+            .value(DRAFT, message.isDraft())
+            .value(FLAGGED, message.isFlagged())
+            .value(RECENT, message.isRecent())
+            .value(SEEN, message.isSeen())
+            .value(USER, message.createFlags().contains(Flag.USER))
+            .value(USER_FLAGS, userFlagsSet(message))
+            .value(BODY_BLOB_ID, bodyBlobId)
+            .value(HEADER_BLOB_ID, headerBlobId)
+            .value(PROPERTIES, message.getProperties().stream()
+                .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
+                    .newValue()
+                    .setString(Properties.NAMESPACE, x.getNamespace())
+                    .setString(Properties.NAME, x.getLocalName())
+                    .setString(Properties.VALUE, x.getValue()))
+                .collect(Collectors.toList()))
+            .value(TEXTUAL_LINE_COUNT, message.getTextualLineCount())
+            .value(ATTACHMENTS, message.getAttachments().stream()
+                .map(this::toUDT)
+                .collect(Collectors.toList()));
     }
 
     private UDTValue toUDT(MessageAttachment messageAttachment) {
@@ -433,44 +560,74 @@ public class CassandraMessageMapper implements MessageMapper {
         return Arrays.stream(message.createFlags().getUserFlags()).collect(Collectors.toSet());
     }
 
-    private void manageUnseenMessageCounts(Mailbox mailbox, Flags oldFlags, Flags newFlags) {
+    private void manageMessageCounts(Mailbox mailbox, List<UpdatedFlags> updatedFlags) {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        if (oldFlags.contains(Flag.SEEN) && !newFlags.contains(Flag.SEEN)) {
-            incrementUnseen(mailboxId);
+        // Unseen counts the messages without the \Seen flag
+        long unseenDelta = -updatedFlags.stream()
+            .mapToLong(flags -> flagDelta(Flag.SEEN, flags.getOldFlags(), flags.getNewFlags()))
+            .sum();
+        long recentDelta = updatedFlags.stream()
+            .mapToLong(flags -> flagDelta(Flag.RECENT, flags.getOldFlags(), flags.getNewFlags()))
+            .sum();
+        if (unseenDelta != 0 || recentDelta != 0) {
+            updateCounters(mailboxId, 0, unseenDelta, recentDelta).join();
+        }
+    }
+
+    private long flagDelta(Flag flag, Flags oldFlags, Flags newFlags) {
+        if (!oldFlags.contains(flag) && newFlags.contains(flag)) {
+            return 1;
         }
-        if (!oldFlags.contains(Flag.SEEN) && newFlags.contains(Flag.SEEN)) {
-            decrementUnseen(mailboxId);
+        if (oldFlags.contains(flag) && !newFlags.contains(flag)) {
+            return -1;
         }
+        return 0;
     }
 
-    private Optional<UpdatedFlags> updateFlagsOnMessage(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, Row row) {
-        return tryMessageFlagsUpdate(flagUpdateCalculator, mailbox, message(row, FetchType.Metadata))
+    private Optional<UpdatedFlags> updateFlagsOnMessage(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, Row row, Supplier<Long> batchModSeq) {
+        return tryMessageFlagsUpdate(flagUpdateCalculator, mailbox, message(row, FetchType.Metadata), batchModSeq)
             .map(Optional::of)
-            .orElse(handleRetries(mailbox, flagUpdateCalculator, row.getLong(IMAP_UID)));
+            .orElse(handleRetries(mailbox, flagUpdateCalculator, row.getLong(IMAP_UID), batchModSeq));
+    }
+
+    private Optional<UpdatedFlags> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, Mailbox mailbox, MailboxMessage message, Supplier<Long> batchModSeq) {
+        long oldModSeq = message.getModSeq();
+        Flags oldFlags = message.createFlags();
+        Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
+        message.setFlags(newFlags);
+        message.setModSeq(nextModSeqAbove(mailbox, oldModSeq, batchModSeq));
+        if (conditionalSave(message, oldModSeq)) {
+            return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The mod-sequence shared by the batch can only be used if it is still higher than the one of the message,
+     * which might have been updated concurrently after the batch mod-sequence was allocated
+     */
+    private long nextModSeqAbove(Mailbox mailbox, long oldModSeq, Supplier<Long> batchModSeq) {
+        long modSeq = batchModSeq.get();
+        if (modSeq > oldModSeq) {
+            return modSeq;
+        }
+        return nextModSeq(mailbox);
     }
 
-    private Optional<UpdatedFlags> tryMessageFlagsUpdate(FlagsUpdateCalculator flagUpdateCalculator, Mailbox mailbox, MailboxMessage message) {
+    private long nextModSeq(Mailbox mailbox) {
         try {
-            long oldModSeq = message.getModSeq();
-            Flags oldFlags = message.createFlags();
-            Flags newFlags = flagUpdateCalculator.buildNewFlags(oldFlags);
-            message.setFlags(newFlags);
-            message.setModSeq(modSeqProvider.nextModSeq(mailboxSession, mailbox));
-            if (conditionalSave(message, oldModSeq)) {
-                return Optional.of(new UpdatedFlags(message.getUid(), message.getModSeq(), oldFlags, newFlags));
-            } else {
-                return Optional.empty();
-            }
+            return modSeqProvider.nextModSeq(mailboxSession, mailbox);
         } catch (MailboxException e) {
             throw Throwables.propagate(e);
         }
     }
 
-    private Optional<UpdatedFlags> handleRetries(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, long uid) {
+    private Optional<UpdatedFlags> handleRetries(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, long uid, Supplier<Long> batchModSeq) {
         try {
             return Optional.of(
                 new FunctionRunnerWithRetry(maxRetries)
-                    .executeAndRetrieveObject(() -> retryMessageFlagsUpdate(mailbox, uid, flagUpdateCalculator)));
+                    .executeAndRetrieveObject(() -> retryMessageFlagsUpdate(mailbox, uid, flagUpdateCalculator, batchModSeq)));
         } catch (MessageDeletedDuringFlagsUpdateException e) {
             mailboxSession.getLog().warn(e.getMessage());
             return Optional.empty();
@@ -479,13 +636,18 @@ public class CassandraMessageMapper implements MessageMapper {
         }
     }
 
-    private Optional<UpdatedFlags> retryMessageFlagsUpdate(Mailbox mailbox, long uid, FlagsUpdateCalculator flagUpdateCalculator) {
+    private Optional<UpdatedFlags> retryMessageFlagsUpdate(Mailbox mailbox, long uid, FlagsUpdateCalculator flagUpdateCalculator, Supplier<Long> batchModSeq) {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         return tryMessageFlagsUpdate(flagUpdateCalculator,
             mailbox,
             message(Optional.ofNullable(session.execute(selectMessage(mailboxId, uid, FetchType.Metadata)).one())
                 .orElseThrow(() -> new MessageDeletedDuringFlagsUpdateException(mailboxId, uid)),
-                FetchType.Metadata));
+                FetchType.Metadata),
+            batchModSeq);
+    }
+
+    private CompletableFuture<Void> allOf(Stream<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
     }
 
     private boolean conditionalSave(MailboxMessage message, long oldModSeq) {
@@ -507,8 +669,12 @@ public class CassandraMessageMapper implements MessageMapper {
         return resultSet.one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED);
     }
 
-    private ByteBuffer toByteBuffer(InputStream stream) throws IOException {
-        return ByteBuffer.wrap(ByteStreams.toByteArray(stream));
+    private byte[] toByteArray(InputStream stream) throws MailboxException {
+        try {
+            return ByteStreams.toByteArray(stream);
+        } catch (IOException e) {
+            throw new MailboxException("Error saving mail", e);
+        }
     }
 
     private Where buildQuery(CassandraId mailboxId, MessageRange set, FetchType fetchType) {
@@ -571,30 +737,39 @@ public class CassandraMessageMapper implements MessageMapper {
     private SharedByteArrayInputStream buildContent(Row row, FetchType fetchType) {
         switch (fetchType) {
             case Full:
-                return new SharedByteArrayInputStream(getFullContent(row));
+                return new ExposedSharedByteArrayInputStream(getFullContent(row));
             case Headers:
-                return new SharedByteArrayInputStream(getFieldContent(HEADER_CONTENT, row));
+                return new ExposedSharedByteArrayInputStream(readContent(HEADER_BLOB_ID, HEADER_CONTENT, row).join());
             case Body:
-                return new SharedByteArrayInputStream(getBodyContent(row));
+                return new ExposedSharedByteArrayInputStream(getBodyContent(row));
             case Metadata:
-                return new SharedByteArrayInputStream(new byte[]{});
+                return new ExposedSharedByteArrayInputStream(new byte[]{});
             default:
                 throw new RuntimeException("Unknown FetchType " + fetchType);
         }
     }
 
     private byte[] getFullContent(Row row) {
-        return Bytes.concat(getFieldContent(HEADER_CONTENT, row), getFieldContent(BODY_CONTENT, row));
+        return readContent(HEADER_BLOB_ID, HEADER_CONTENT, row)
+            .thenCombine(readContent(BODY_BLOB_ID, BODY_CONTENT, row), Bytes::concat)
+            .join();
     }
 
     private byte[] getBodyContent(Row row) {
-        return Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], getFieldContent(BODY_CONTENT, row));
+        return Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], readContent(BODY_BLOB_ID, BODY_CONTENT, row).join());
+    }
+
+    private CompletableFuture<byte[]> readContent(String blobIdField, String legacyContentField, Row row) {
+        if (row.isNull(blobIdField)) {
+            return CompletableFuture.completedFuture(getFieldContent(legacyContentField, row));
+        }
+        return blobsDAO.read(row.getString(blobIdField));
     }
 
     private byte[] getFieldContent(String field, Row row) {
-        byte[] headerContent = new byte[row.getBytes(field).remaining()];
-        row.getBytes(field).get(headerContent);
-        return headerContent;
+        byte[] content = new byte[row.getBytes(field).remaining()];
+        row.getBytes(field).get(content);
+        return content;
     }
 
 }
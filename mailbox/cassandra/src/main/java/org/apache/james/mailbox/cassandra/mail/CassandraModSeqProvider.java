@@ -29,6 +29,7 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTab
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageModseqTable.TABLE_NAME;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
@@ -44,6 +45,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Throwables;
@@ -70,8 +72,9 @@ public class CassandraModSeqProvider implements ModSeqProvider {
     @Override
     public long nextModSeq(MailboxSession mailboxSession, Mailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        if (findHighestModSeq(mailboxSession, mailboxId).isFirst()) {
-            Optional<ModSeq> optional = tryInsertModSeq(mailbox, FIRST_MODSEQ);
+        AtomicReference<ModSeq> expectedModSeq = new AtomicReference<>(findHighestModSeq(mailboxSession, mailboxId));
+        if (expectedModSeq.get().isFirst()) {
+            Optional<ModSeq> optional = tryInsertModSeq(mailboxSession, mailbox, FIRST_MODSEQ, expectedModSeq);
             if (optional.isPresent()) {
                 return optional.get().getValue();
             }
@@ -81,7 +84,7 @@ public class CassandraModSeqProvider implements ModSeqProvider {
             return runner.executeAndRetrieveObject(
                         () -> {
                             try {
-                                return tryUpdateModSeq(mailboxId, findHighestModSeq(mailboxSession, mailboxId))
+                                return tryUpdateModSeq(mailboxSession, mailboxId, expectedModSeq)
                                         .map(ModSeq::getValue);
                             } catch (Exception exception) {
                                 LOG.error("Can not retrieve next ModSeq", exception);
@@ -110,29 +113,41 @@ public class CassandraModSeqProvider implements ModSeqProvider {
         }
     }
 
-    private Optional<ModSeq> tryInsertModSeq(Mailbox mailbox, ModSeq modSeq) {
+    private Optional<ModSeq> tryInsertModSeq(MailboxSession mailboxSession, Mailbox mailbox, ModSeq modSeq, AtomicReference<ModSeq> expectedModSeq) throws MailboxException {
         ModSeq nextModSeq = modSeq.next();
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        return transactionalStatementToOptionalModSeq(nextModSeq,
+        return transactionalStatementToOptionalModSeq(mailboxSession, mailboxId, nextModSeq, expectedModSeq,
                 insertInto(TABLE_NAME)
                     .value(NEXT_MODSEQ, nextModSeq.getValue())
                     .value(MAILBOX_ID, mailboxId.asUuid())
                     .ifNotExists());
     }
     
-    private Optional<ModSeq> tryUpdateModSeq(CassandraId mailboxId, ModSeq modSeq) {
+    private Optional<ModSeq> tryUpdateModSeq(MailboxSession mailboxSession, CassandraId mailboxId, AtomicReference<ModSeq> expectedModSeq) throws MailboxException {
+        ModSeq modSeq = expectedModSeq.get();
         ModSeq nextModSeq = modSeq.next();
-        return transactionalStatementToOptionalModSeq(nextModSeq,
+        return transactionalStatementToOptionalModSeq(mailboxSession, mailboxId, nextModSeq, expectedModSeq,
                 update(TABLE_NAME)
                     .onlyIf(eq(NEXT_MODSEQ, modSeq.getValue()))
                     .with(set(NEXT_MODSEQ, nextModSeq.getValue()))
                     .where(eq(MAILBOX_ID, mailboxId.asUuid())));
     }
 
-    private Optional<ModSeq> transactionalStatementToOptionalModSeq(ModSeq modSeq, BuiltStatement statement) {
-        if(session.execute(statement).one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
+    /**
+     * A lightweight transaction which is not applied returns the current value of the row:
+     * it becomes the next expected value, sparing a read before the retry.
+     */
+    private Optional<ModSeq> transactionalStatementToOptionalModSeq(MailboxSession mailboxSession, CassandraId mailboxId, ModSeq modSeq,
+                                                                    AtomicReference<ModSeq> expectedModSeq, BuiltStatement statement) throws MailboxException {
+        Row row = session.execute(statement).one();
+        if (row.getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
             return Optional.of(modSeq);
         }
+        if (row.getColumnDefinitions().contains(NEXT_MODSEQ) && !row.isNull(NEXT_MODSEQ)) {
+            expectedModSeq.set(new ModSeq(row.getLong(NEXT_MODSEQ)));
+        } else {
+            expectedModSeq.set(findHighestModSeq(mailboxSession, mailboxId));
+        }
         return Optional.empty();
     }
     
@@ -0,0 +1,82 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Session;
+
+/**
+ * Initializes the recent counter of the mailboxes holding messages stored before that counter was introduced.
+ *
+ * Every counter update writes the recent counter, so it is only null for such mailboxes. Their recent messages are
+ * counted once from the flag index, which {@link CassandraMessageMapper} otherwise falls back to on every read.
+ * This is meant to run on startup, before the mailboxes get updated.
+ */
+public class CassandraRecentCounterBackfill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraRecentCounterBackfill.class);
+
+    private final Session session;
+
+    public CassandraRecentCounterBackfill(Session session) {
+        this.session = session;
+    }
+
+    public void backfill() {
+        List<UUID> mailboxIds = CassandraUtils.convertToStream(session.execute(
+                select(CassandraMailboxCountersTable.MAILBOX_ID, CassandraMailboxCountersTable.RECENT)
+                    .from(CassandraMailboxCountersTable.TABLE_NAME)))
+            .filter(row -> row.isNull(CassandraMailboxCountersTable.RECENT))
+            .map(row -> row.getUUID(CassandraMailboxCountersTable.MAILBOX_ID))
+            .collect(Collectors.toList());
+        if (!mailboxIds.isEmpty()) {
+            LOGGER.info("Initializing the recent counter of {} mailboxes", mailboxIds.size());
+            mailboxIds.forEach(this::backfill);
+        }
+    }
+
+    private void backfill(UUID mailboxId) {
+        long recent = session.execute(
+                select(CassandraMessageTable.IMAP_UID)
+                    .from(CassandraMessageTable.TABLE_NAME)
+                    .where(eq(CassandraMessageTable.MAILBOX_ID, mailboxId))
+                    .and(eq(CassandraMessageTable.Flag.RECENT, true)))
+            .all()
+            .size();
+        session.execute(
+            update(CassandraMailboxCountersTable.TABLE_NAME)
+                .with(incr(CassandraMailboxCountersTable.RECENT, recent))
+                .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId)));
+    }
+}
@@ -27,6 +27,7 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable.NEXT_UID;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
@@ -43,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.BuiltStatement;
 import com.google.common.base.Throwables;
@@ -68,8 +70,9 @@ public class CassandraUidProvider implements UidProvider {
     @Override
     public long nextUid(MailboxSession mailboxSession, Mailbox mailbox) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-        if (findHighestUid(mailboxId).isFirst()) {
-            Optional<Uid> optional = tryInsertUid(mailboxId, FIRST_UID);
+        AtomicReference<Uid> expectedUid = new AtomicReference<>(findHighestUid(mailboxId));
+        if (expectedUid.get().isFirst()) {
+            Optional<Uid> optional = tryInsertUid(mailboxId, FIRST_UID, expectedUid);
             if (optional.isPresent()) {
                 return optional.get().getValue();
             }
@@ -79,7 +82,7 @@ public class CassandraUidProvider implements UidProvider {
             return runner.executeAndRetrieveObject(
                 () -> {
                     try {
-                        return tryUpdateUid(mailboxId, findHighestUid(mailboxId))
+                        return tryUpdateUid(mailboxId, expectedUid)
                             .map(Uid::getValue);
                     } catch (Exception exception) {
                         LOG.error("Can not retrieve next Uid", exception);
@@ -108,28 +111,40 @@ public class CassandraUidProvider implements UidProvider {
         }
     }
 
-    private Optional<Uid> tryInsertUid(CassandraId mailboxId, Uid uid) {
+    private Optional<Uid> tryInsertUid(CassandraId mailboxId, Uid uid, AtomicReference<Uid> expectedUid) throws MailboxException {
         Uid nextUid = uid.next();
-        return transactionalStatementToOptionalUid(nextUid,
+        return transactionalStatementToOptionalUid(mailboxId, nextUid, expectedUid,
             insertInto(CassandraMessageUidTable.TABLE_NAME)
                 .value(NEXT_UID, nextUid.getValue())
                 .value(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())
                 .ifNotExists());
     }
 
-    private Optional<Uid> tryUpdateUid(CassandraId mailboxId, Uid uid) {
+    private Optional<Uid> tryUpdateUid(CassandraId mailboxId, AtomicReference<Uid> expectedUid) throws MailboxException {
+        Uid uid = expectedUid.get();
         Uid nextUid = uid.next();
-        return transactionalStatementToOptionalUid(nextUid,
+        return transactionalStatementToOptionalUid(mailboxId, nextUid, expectedUid,
             update(CassandraMessageUidTable.TABLE_NAME)
                 .onlyIf(eq(NEXT_UID, uid.getValue()))
                 .with(set(NEXT_UID, nextUid.getValue()))
                 .where(eq(CassandraMessageUidTable.MAILBOX_ID, mailboxId.asUuid())));
     }
 
-    private Optional<Uid> transactionalStatementToOptionalUid(Uid uid, BuiltStatement statement) {
-        if(session.execute(statement).one().getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
+    /**
+     * When the lightweight transaction is not applied, Cassandra returns the current value
+     * of the row. We keep it as the next expected value so that retries do not need an
+     * additional read.
+     */
+    private Optional<Uid> transactionalStatementToOptionalUid(CassandraId mailboxId, Uid uid, AtomicReference<Uid> expectedUid, BuiltStatement statement) throws MailboxException {
+        Row row = session.execute(statement).one();
+        if (row.getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
             return Optional.of(uid);
         }
+        if (row.getColumnDefinitions().contains(NEXT_UID) && !row.isNull(NEXT_UID)) {
+            expectedUid.set(new Uid(row.getLong(NEXT_UID)));
+        } else {
+            expectedUid.set(findHighestUid(mailboxId));
+        }
         return Optional.empty();
     }
 
@@ -45,7 +45,8 @@ public class CassandraMailboxCounterModule implements CassandraModule {
                     .ifNotExists()
                     .addPartitionKey(CassandraMailboxCountersTable.MAILBOX_ID, timeuuid())
                     .addColumn(CassandraMailboxCountersTable.COUNT, counter())
-                    .addColumn(CassandraMailboxCountersTable.UNSEEN, counter())));
+                    .addColumn(CassandraMailboxCountersTable.UNSEEN, counter())
+                    .addColumn(CassandraMailboxCountersTable.RECENT, counter())));
         index = Collections.emptyList();
         types = Collections.emptyList();
     }
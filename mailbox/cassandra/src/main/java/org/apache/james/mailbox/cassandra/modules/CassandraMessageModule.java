@@ -29,13 +29,14 @@ import static com.datastax.driver.core.DataType.timestamp;
 import static com.datastax.driver.core.DataType.timeuuid;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import org.apache.james.backends.cassandra.components.CassandraIndex;
 import org.apache.james.backends.cassandra.components.CassandraModule;
 import org.apache.james.backends.cassandra.components.CassandraTable;
 import org.apache.james.backends.cassandra.components.CassandraType;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.BlobParts;
 import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
 
 import com.datastax.driver.core.schemabuilder.SchemaBuilder;
@@ -47,7 +48,7 @@ public class CassandraMessageModule implements CassandraModule {
     private final List<CassandraType> types;
 
     public CassandraMessageModule() {
-        tables = Collections.singletonList(
+        tables = Arrays.asList(
             new CassandraTable(CassandraMessageTable.TABLE_NAME,
                 SchemaBuilder.createTable(CassandraMessageTable.TABLE_NAME)
                     .ifNotExists()
@@ -59,6 +60,8 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.TEXTUAL_LINE_COUNT, bigint())
                     .addColumn(CassandraMessageTable.MOD_SEQ, bigint())
                     .addColumn(CassandraMessageTable.FULL_CONTENT_OCTETS, bigint())
+                    .addColumn(CassandraMessageTable.BODY_BLOB_ID, text())
+                    .addColumn(CassandraMessageTable.HEADER_BLOB_ID, text())
                     .addColumn(CassandraMessageTable.BODY_CONTENT, blob())
                     .addColumn(CassandraMessageTable.HEADER_CONTENT, blob())
                     .addColumn(CassandraMessageTable.Flag.ANSWERED, cboolean())
@@ -70,7 +73,18 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.Flag.USER, cboolean())
                     .addColumn(CassandraMessageTable.Flag.USER_FLAGS, set(text()))
                     .addUDTListColumn(CassandraMessageTable.ATTACHMENTS, SchemaBuilder.frozen(CassandraMessageTable.ATTACHMENTS))
-                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))));
+                    .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))),
+            new CassandraTable(CassandraBlobTable.TABLE_NAME,
+                SchemaBuilder.createTable(CassandraBlobTable.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(CassandraBlobTable.ID, text())
+                    .addColumn(CassandraBlobTable.NUMBER_OF_CHUNKS, cint())),
+            new CassandraTable(BlobParts.TABLE_NAME,
+                SchemaBuilder.createTable(BlobParts.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(BlobParts.ID, text())
+                    .addClusteringColumn(BlobParts.CHUNK_NUMBER, cint())
+                    .addColumn(BlobParts.DATA, blob())));
         index = Arrays.asList(
             new CassandraIndex(
                 SchemaBuilder.createIndex(CassandraIndex.INDEX_PREFIX + CassandraMessageTable.Flag.RECENT)
@@ -24,4 +24,5 @@ public interface CassandraMailboxCountersTable {
     String MAILBOX_ID = "mailboxId";
     String COUNT = "count";
     String UNSEEN = "unseen";
+    String RECENT = "recent";
 }
\ No newline at end of file
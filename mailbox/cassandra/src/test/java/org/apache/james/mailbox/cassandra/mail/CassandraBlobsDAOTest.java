@@ -0,0 +1,111 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class CassandraBlobsDAOTest {
+
+    private static final int CHUNK_SIZE = 10;
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraMessageModule());
+
+    private CassandraBlobsDAO testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraBlobsDAO(CASSANDRA.getConf(), CHUNK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void saveShouldReturnTheSha256OfTheContent() throws Exception {
+        byte[] data = "toto".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(testee.save(data).join()).isEqualTo(CassandraBlobsDAO.computeId(data));
+    }
+
+    @Test
+    public void readShouldReturnSavedEmptyContent() throws Exception {
+        String blobId = testee.save(new byte[0]).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void readShouldReturnSavedContent() throws Exception {
+        byte[] data = "toto".getBytes(StandardCharsets.UTF_8);
+        String blobId = testee.save(data).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(data);
+    }
+
+    @Test
+    public void readShouldReturnContentSpanningSeveralChunks() throws Exception {
+        byte[] data = Strings.repeat("0123456789", 5).concat("end").getBytes(StandardCharsets.UTF_8);
+        String blobId = testee.save(data).join();
+
+        assertThat(testee.read(blobId).join()).isEqualTo(data);
+    }
+
+    @Test
+    public void saveShouldReturnTheSameIdForTheSameContent() throws Exception {
+        byte[] data = "toto".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(testee.save(data).join()).isEqualTo(testee.save(data).join());
+    }
+
+    @Test
+    public void existsShouldReturnFalseWhenBlobIsNotStored() throws Exception {
+        assertThat(testee.exists(CassandraBlobsDAO.computeId(new byte[] {1})).join()).isFalse();
+    }
+
+    @Test
+    public void saveIfAbsentShouldStoreContentWhenAbsent() throws Exception {
+        byte[] data = "toto".getBytes(StandardCharsets.UTF_8);
+        String blobId = testee.saveIfAbsent(data).join();
+
+        assertThat(testee.exists(blobId).join()).isTrue();
+        assertThat(testee.read(blobId).join()).isEqualTo(data);
+    }
+
+    @Test
+    public void saveIfAbsentShouldReturnIdOfExistingBlob() throws Exception {
+        byte[] data = "toto".getBytes(StandardCharsets.UTF_8);
+        String blobId = testee.save(data).join();
+
+        assertThat(testee.saveIfAbsent(data).join()).isEqualTo(blobId);
+    }
+}
@@ -0,0 +1,135 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
+import org.apache.james.mailbox.cassandra.table.CassandraMessageTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Row;
+
+public class CassandraRecentCounterBackfillTest {
+
+    private static final CassandraCluster CASSANDRA = CassandraCluster.create(new CassandraModuleComposite(
+        new CassandraMailboxCounterModule(),
+        new CassandraMessageModule()));
+
+    private CassandraRecentCounterBackfill testee;
+
+    @Before
+    public void setUp() throws Exception {
+        CASSANDRA.ensureAllTables();
+        testee = new CassandraRecentCounterBackfill(CASSANDRA.getConf());
+    }
+
+    @After
+    public void tearDown() {
+        CASSANDRA.clearAllTables();
+    }
+
+    @Test
+    public void backfillShouldCountTheRecentMessagesOfMailboxesWithoutRecentCounter() {
+        UUID mailboxId = CassandraId.timeBased().asUuid();
+        incrementCount(mailboxId, 3);
+        insertMessage(mailboxId, 1, true);
+        insertMessage(mailboxId, 2, false);
+        insertMessage(mailboxId, 3, true);
+
+        testee.backfill();
+
+        assertThat(readCounters(mailboxId).getLong(CassandraMailboxCountersTable.RECENT)).isEqualTo(2);
+    }
+
+    @Test
+    public void backfillShouldInitializeTheRecentCounterWhenNoRecentMessages() {
+        UUID mailboxId = CassandraId.timeBased().asUuid();
+        incrementCount(mailboxId, 1);
+        insertMessage(mailboxId, 1, false);
+
+        testee.backfill();
+
+        Row counters = readCounters(mailboxId);
+        assertThat(counters.isNull(CassandraMailboxCountersTable.RECENT)).isFalse();
+        assertThat(counters.getLong(CassandraMailboxCountersTable.RECENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void backfillShouldNotChangeExistingRecentCounters() {
+        UUID mailboxId = CassandraId.timeBased().asUuid();
+        CASSANDRA.getConf().execute(update(CassandraMailboxCountersTable.TABLE_NAME)
+            .with(incr(CassandraMailboxCountersTable.COUNT, 2))
+            .and(incr(CassandraMailboxCountersTable.RECENT, 1))
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId)));
+        insertMessage(mailboxId, 1, true);
+        insertMessage(mailboxId, 2, true);
+
+        testee.backfill();
+
+        assertThat(readCounters(mailboxId).getLong(CassandraMailboxCountersTable.RECENT)).isEqualTo(1);
+    }
+
+    @Test
+    public void backfillShouldBeIdempotent() {
+        UUID mailboxId = CassandraId.timeBased().asUuid();
+        incrementCount(mailboxId, 1);
+        insertMessage(mailboxId, 1, true);
+
+        testee.backfill();
+        testee.backfill();
+
+        assertThat(readCounters(mailboxId).getLong(CassandraMailboxCountersTable.RECENT)).isEqualTo(1);
+    }
+
+    private void incrementCount(UUID mailboxId, long count) {
+        CASSANDRA.getConf().execute(update(CassandraMailboxCountersTable.TABLE_NAME)
+            .with(incr(CassandraMailboxCountersTable.COUNT, count))
+            .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId)));
+    }
+
+    private void insertMessage(UUID mailboxId, long uid, boolean recent) {
+        CASSANDRA.getConf().execute(insertInto(CassandraMessageTable.TABLE_NAME)
+            .value(CassandraMessageTable.MAILBOX_ID, mailboxId)
+            .value(CassandraMessageTable.IMAP_UID, uid)
+            .value(CassandraMessageTable.Flag.RECENT, recent));
+    }
+
+    private Row readCounters(UUID mailboxId) {
+        return CASSANDRA.getConf().execute(select(CassandraMailboxCountersTable.RECENT)
+                .from(CassandraMailboxCountersTable.TABLE_NAME)
+                .where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailboxId)))
+            .one();
+    }
+}
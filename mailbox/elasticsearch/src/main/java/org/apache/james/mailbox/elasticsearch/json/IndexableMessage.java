@@ -33,6 +33,7 @@ import org.apache.james.mailbox.elasticsearch.query.DateResolutionFormater;
 import org.apache.james.mailbox.store.extractor.TextExtractor;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.Property;
+import org.apache.james.mailbox.store.mail.model.StandardNames;
 import org.apache.james.mime4j.MimeException;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -94,7 +95,9 @@ public class IndexableMessage {
         this.isRecent = message.isRecent();
         this.isUnRead = ! message.isSeen();
         this.userFlags = message.createFlags().getUserFlags();
-        this.properties = message.getProperties();
+        this.properties = message.getProperties().stream()
+            .filter(property -> !StandardNames.MIME_DESCRIPTOR_SPACE.equals(property.getNamespace()))
+            .collect(Guavate.toImmutableList());
     }
 
     private static ZonedDateTime getSanitizedInternalDate(MailboxMessage message, ZoneId zoneId) {
@@ -42,6 +42,8 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,7 +90,9 @@ public class ElasticSearchSearcher {
                     .setQuery(queryConverter.from(users, query))
                     .setSize(size),
                 (searchBuilder, sort) -> searchBuilder.addSort(SortConverter.convertSort(sort)),
-                (partialResult1, partialResult2) -> partialResult1);
+                (partialResult1, partialResult2) -> partialResult1)
+            // Messages which are equal according to the requested sorts are ordered by uid
+            .addSort(SortBuilders.fieldSort(JsonMessageConstants.ID).order(SortOrder.ASC));
     }
 
     private Stream<Pair<MailboxId, Long>> transformResponseToUidStream(SearchResponse searchResponse) {
@@ -77,6 +77,7 @@ import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.transaction.NonTransactionalMapper;
 
@@ -361,10 +362,13 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
 
     @Override
     public void delete(Mailbox mailbox, MailboxMessage message) throws MailboxException {
+        delete((HBaseId) mailbox.getMailboxId(), message);
+    }
+
+    private void delete(HBaseId mailboxId, MailboxMessage message) throws MailboxException {
         //TODO: maybe switch to checkAndDelete
         HTable messages = null;
         HTable mailboxes = null;
-        HBaseId mailboxId = (HBaseId) mailbox.getMailboxId();
         try {
             messages = new HTable(conf, MESSAGES_TABLE);
             mailboxes = new HTable(conf, MAILBOXES_TABLE);
@@ -376,7 +380,7 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
             messages.delete(delete);
 
         } catch (IOException ex) {
-            throw new MailboxException("Delete of message " + message + " failed in mailbox " + mailbox, ex);
+            throw new MailboxException("Delete of message " + message + " failed in mailbox " + mailboxId, ex);
         } finally {
 
             if (mailboxes != null) {
@@ -569,14 +573,42 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return save(mailboxId, message);
     }
 
+    /**
+     * Move the message by copying it to the given {@link Mailbox} and then deleting the original
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.MailboxMessage)
+     */
+    @Override
+    public MessageMetaData move(Mailbox mailbox, MailboxMessage original) throws MailboxException {
+        MessageMetaData metaData = copy(mailbox, original);
+        delete((HBaseId) original.getMailboxId(), original);
+        return metaData;
+    }
+
     /*
      * (non-Javadoc)
-     * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.MailboxMessage)
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#copyAll(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
      */
     @Override
-    public MessageMetaData move(Mailbox mailbox, MailboxMessage original) throws MailboxException {
-    	//TODO implement if possible
-    	throw new UnsupportedOperationException();
+    public List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        List<MessageMetaData> copies = new ArrayList<MessageMetaData>(originals.size());
+        for (MailboxMessage original : originals) {
+            copies.add(copy(mailbox, original));
+        }
+        return copies;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#moveAll(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    @Override
+    public List<MessageMetaData> moveAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        List<MessageMetaData> moved = new ArrayList<MessageMetaData>(originals.size());
+        for (MailboxMessage original : originals) {
+            moved.add(move(mailbox, original));
+        }
+        return moved;
     }
 
     /*
@@ -597,6 +629,19 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return modSeqProvider.highestModSeq(mailboxSession, mailbox);
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox)
+     */
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException {
+        return new MailboxCounters(countMessagesInMailbox(mailbox),
+            countUnseenMessagesInMailbox(mailbox),
+            findRecentMessageUidsInMailbox(mailbox).size(),
+            getLastUid(mailbox),
+            getHighestModSeq(mailbox));
+    }
+
     /**
      * Save the {@link MailboxMessage} for the given {@link Mailbox} and return the {@link MessageMetaData}
      *
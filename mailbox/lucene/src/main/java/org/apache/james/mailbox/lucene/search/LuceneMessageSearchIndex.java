@@ -36,7 +36,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.PreDestroy;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 
@@ -91,7 +93,6 @@ import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
@@ -104,6 +105,7 @@ import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
@@ -112,7 +114,6 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
-import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.Version;
 
 import com.google.common.base.Preconditions;
@@ -144,6 +145,17 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
      * Default max query results
      */
     public final static int DEFAULT_MAX_QUERY_RESULTS = 100000;
+
+    /**
+     * Default interval in milliseconds after which the shared searcher is refreshed. 0 means that every search sees
+     * the changes made before it.
+     */
+    public final static long DEFAULT_SEARCHER_REFRESH_INTERVAL = 0;
+
+    /**
+     * Default count of index operations after which the changes get committed. 0 disables batched commits.
+     */
+    public final static int DEFAULT_COMMIT_BATCH_SIZE = 0;
     
     /**
      * {@link Field} which will contain the unique index of the {@link Document}
@@ -340,9 +352,17 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
     
     private final Factory mailboxIdFactory;
     private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final boolean ownsWriter;
+    private final AtomicInteger uncommittedOperations = new AtomicInteger();
+    private volatile long lastSearcherRefresh = 0;
     
     private int maxQueryResults = DEFAULT_MAX_QUERY_RESULTS;
 
+    private long searcherRefreshInterval = DEFAULT_SEARCHER_REFRESH_INTERVAL;
+
+    private int commitBatchSize = DEFAULT_COMMIT_BATCH_SIZE;
+
     private boolean suffixMatch = false;
 
     
@@ -355,13 +375,34 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         super(factory);
         this.mailboxIdFactory = mailboxIdFactory;
         this.writer = new IndexWriter(directory,  createConfig(createAnalyzer(lenient), dropIndexOnStart));
+        this.searcherManager = new SearcherManager(writer, true, null);
+        this.ownsWriter = true;
     }
     
     
-    public LuceneMessageSearchIndex(MessageMapperFactory factory, MailboxId.Factory mailboxIdFactory, IndexWriter writer) {
+    public LuceneMessageSearchIndex(MessageMapperFactory factory, MailboxId.Factory mailboxIdFactory, IndexWriter writer) throws IOException {
         super(factory);
         this.mailboxIdFactory = mailboxIdFactory;
         this.writer = writer;
+        this.searcherManager = new SearcherManager(writer, true, null);
+        this.ownsWriter = false;
+    }
+
+    /**
+     * Release the searchers and, when the {@link IndexWriter} was created by this index, commit and close it, which
+     * also releases the lock on the {@link Directory}. A writer given to the constructor is left open for its owner.
+     * 
+     * @throws IOException
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        try {
+            searcherManager.close();
+        } finally {
+            if (ownsWriter) {
+                writer.close();
+            }
+        }
     }
 
     @Override
@@ -383,6 +424,30 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
     public void setMaxQueryResults(int maxQueryResults) {
         this.maxQueryResults = maxQueryResults;
     }
+
+    /**
+     * Set the interval in milliseconds during which searches reuse the same searcher without looking for index
+     * changes. Reopening is incremental, but a higher value trades freshness of the results for less reopen work
+     * when clients search often. The default is {@link #DEFAULT_SEARCHER_REFRESH_INTERVAL}
+     * 
+     * Flag updates always see the latest changes, whatever this interval is.
+     * 
+     * @param searcherRefreshInterval
+     */
+    public void setSearcherRefreshInterval(long searcherRefreshInterval) {
+        this.searcherRefreshInterval = searcherRefreshInterval;
+    }
+
+    /**
+     * Set the count of index operations after which the pending changes get committed to the {@link Directory}.
+     * Without it changes are only made durable when the {@link IndexWriter} is closed. The default is
+     * {@link #DEFAULT_COMMIT_BATCH_SIZE}
+     * 
+     * @param commitBatchSize
+     */
+    public void setCommitBatchSize(int commitBatchSize) {
+        this.commitBatchSize = commitBatchSize;
+    }
     
     protected IndexWriterConfig createConfig(Analyzer analyzer, boolean dropIndexOnStart) {
         IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_31, analyzer);
@@ -454,7 +519,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         Query inMailboxes = buildQueryFromMailboxes(searchQuery.getInMailboxes());
         
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher(false);
             BooleanQuery query = new BooleanQuery();
             query.add(inMailboxes, BooleanClause.Occur.MUST);
             // Not return flags documents
@@ -476,13 +541,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         } catch (IOException e) {
             throw new MailboxException("Unable to search the mailbox", e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
         return results;
     }
@@ -960,7 +1019,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
 
         try {
             Set<Long> uids = new HashSet<Long>();
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = searcherManager.acquire();
             
             // query for all the documents sorted by uid
             TopDocs docs = searcher.search(query, null, maxQueryResults, new Sort(UID_SORT));
@@ -989,13 +1048,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         } catch (IOException e) {
             throw new MailboxException("Unable to search mailbox " + inMailboxes, e);
         } finally {
-            if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (IOException e) {
-                    // ignore on close
-                }
-            }
+            releaseSearcher(searcher);
         }
     }
     
@@ -1251,6 +1304,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         try {
             writer.addDocument(doc);
             writer.addDocument(flagsDoc);
+            commitIfNeeded();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to add message to index", e);
         } catch (IOException e) {
@@ -1271,7 +1325,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
     private void update(Mailbox mailbox, long uid, Flags f) throws MailboxException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(IndexReader.open(writer, true));
+            searcher = acquireSearcher(true);
             BooleanQuery query = new BooleanQuery();
             query.add(new TermQuery(new Term(MAILBOX_ID_FIELD, mailbox.getMailboxId().serialize())), BooleanClause.Occur.MUST);
             query.add(createQuery(MessageRange.one(uid)), BooleanClause.Occur.MUST);
@@ -1287,18 +1341,14 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
                     indexFlags(doc, f);
 
                     writer.updateDocument(new Term(ID_FIELD, doc.get(ID_FIELD)), doc);
-
+                    commitIfNeeded();
                 }
             }
         } catch (IOException e) {
             throw new MailboxException("Unable to add messages in index", e);
 
         } finally {
-            try {
-                IOUtils.closeWhileHandlingException(searcher);
-            } catch (IOException e) {
-                //can't happen anyway
-            }
+            releaseSearcher(searcher);
         }
         
     }
@@ -1376,6 +1426,7 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         
         try {
             writer.deleteDocuments(query);
+            commitIfNeeded();
         } catch (CorruptIndexException e) {
             throw new MailboxException("Unable to delete message from index", e);
 
@@ -1384,7 +1435,44 @@ public class LuceneMessageSearchIndex extends ListeningMessageSearchIndex {
         }
     }
 
-    
+    /**
+     * Return a searcher from the shared {@link SearcherManager}. The searcher is only reopened when it is older than
+     * the configured refresh interval, or when <code>fresh</code> is true. Reopening is incremental, so unchanged
+     * segments are shared with the previous searcher.
+     * 
+     * The returned searcher must be given back with {@link #releaseSearcher(IndexSearcher)}
+     * 
+     * @param fresh
+     * @return searcher
+     * @throws IOException
+     */
+    private IndexSearcher acquireSearcher(boolean fresh) throws IOException {
+        long now = System.currentTimeMillis();
+        if (fresh || now - lastSearcherRefresh >= searcherRefreshInterval) {
+            // Serialize refreshes so that a concurrent one never makes us skip changes we need to see
+            synchronized (searcherManager) {
+                searcherManager.maybeRefresh();
+                lastSearcherRefresh = now;
+            }
+        }
+        return searcherManager.acquire();
+    }
 
+    private void releaseSearcher(IndexSearcher searcher) {
+        if (searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                // ignore on release
+            }
+        }
+    }
+
+    private void commitIfNeeded() throws IOException {
+        if (commitBatchSize > 0 && uncommittedOperations.incrementAndGet() >= commitBatchSize) {
+            uncommittedOperations.set(0);
+            writer.commit();
+        }
+    }
 
 }
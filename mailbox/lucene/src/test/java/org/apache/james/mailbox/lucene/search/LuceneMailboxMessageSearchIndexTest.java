@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
@@ -43,10 +44,12 @@ import org.apache.james.mailbox.model.SearchQuery.AddressType;
 import org.apache.james.mailbox.model.SearchQuery.DateResolution;
 import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
+import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.MessageBuilder;
 import org.apache.james.mailbox.store.SimpleMailboxMembership;
 import org.apache.james.mailbox.store.TestId;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.RAMDirectory;
 import org.junit.Before;
 import org.junit.Test;
@@ -285,7 +288,81 @@ public class LuceneMailboxMessageSearchIndexTest {
         Iterator<Long> result = index.search(session, mailbox, query);
         assertThat(result).containsExactly(2L, 3L);
     }
+
+    @Test
+    public void searchShouldSeeMessagesAddedAfterAPreviousSearch() throws Exception {
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        assertThat(index.search(session, mailbox, query)).containsExactly(1L, 2L, 3L);
+
+        index.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 4, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+
+        assertThat(index.search(session, mailbox, query)).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    public void searchShouldReuseSearcherWithinRefreshInterval() throws Exception {
+        index.setSearcherRefreshInterval(TimeUnit.HOURS.toMillis(1));
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.all());
+        assertThat(index.search(session, mailbox, query)).containsExactly(1L, 2L, 3L);
+
+        index.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 4, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+
+        assertThat(index.search(session, mailbox, query)).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    public void flagUpdateShouldSeeMessagesAddedWithinRefreshInterval() throws Exception {
+        index.setSearcherRefreshInterval(TimeUnit.HOURS.toMillis(1));
+        SearchQuery query = new SearchQuery();
+        query.andCriteria(SearchQuery.flagIsSet(Flag.SEEN));
+        assertThat(index.search(session, mailbox, query)).isEmpty();
+
+        index.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 4, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+        index.update(null, mailbox, Arrays.asList(new UpdatedFlags(4, 0, new Flags(), new Flags(Flag.SEEN))));
+        index.setSearcherRefreshInterval(0);
+
+        assertThat(index.search(session, mailbox, query)).containsExactly(4L);
+    }
+
+    @Test
+    public void changesShouldBeCommittedOnceCommitBatchSizeIsReached() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        LuceneMessageSearchIndex batchedIndex = new LuceneMessageSearchIndex(null, new TestId.Factory(), directory, true, useLenient());
+        batchedIndex.setCommitBatchSize(2);
+
+        batchedIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 1, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+        batchedIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 2, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+
+        IndexReader reader = IndexReader.open(directory);
+        try {
+            // each message is indexed as a message document and a flags document
+            assertThat(reader.numDocs()).isEqualTo(4);
+        } finally {
+            reader.close();
+        }
+    }
     
+    @Test
+    public void closeShouldCommitChangesAndReleaseTheDirectory() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        LuceneMessageSearchIndex closedIndex = new LuceneMessageSearchIndex(null, new TestId.Factory(), directory, true, useLenient());
+        closedIndex.setCommitBatchSize(10);
+        closedIndex.add(null, mailbox, new SimpleMailboxMembership(mailbox.getMailboxId(), 1, 0, new Date(), 20, new Flags(), "My Body".getBytes(), new HashMap<String, String>()));
+
+        closedIndex.close();
+
+        LuceneMessageSearchIndex reopenedIndex = new LuceneMessageSearchIndex(null, new TestId.Factory(), directory, false, useLenient());
+        try {
+            SearchQuery query = new SearchQuery();
+            query.andCriteria(SearchQuery.all());
+            assertThat(reopenedIndex.search(session, mailbox, query)).containsExactly(1L);
+        } finally {
+            reopenedIndex.close();
+        }
+    }
+
     @Test
     public void bodySearchShouldMatchSeveralEmails() throws Exception {    
         SearchQuery query = new SearchQuery();
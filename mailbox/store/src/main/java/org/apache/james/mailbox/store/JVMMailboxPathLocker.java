@@ -25,6 +25,8 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,32 +35,80 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * {@link MailboxPathLocker} implementation which helps to synchronize the access the
  * same MailboxPath. This is done using one {@link ReentrantReadWriteLock}
  * per {@link MailboxPath} so its only usable in a single JVM.
+ * 
+ * Locks are reference counted: a lock is only kept while a thread holds or waits for it,
+ * so memory usage is bounded by the count of concurrently locked {@link MailboxPath}s
+ * and not by the count of {@link MailboxPath}s ever locked.
  */
 public final class JVMMailboxPathLocker extends AbstractMailboxPathLocker {
 
-    private final ConcurrentHashMap<MailboxPath, ReadWriteLock> paths = new ConcurrentHashMap<MailboxPath, ReadWriteLock>();
+    private final ConcurrentHashMap<MailboxPath, ReferenceCountedLock> paths = new ConcurrentHashMap<MailboxPath, ReferenceCountedLock>();
 
+    private final AtomicLong lockCount = new AtomicLong();
+
+    private final AtomicLong contendedLockCount = new AtomicLong();
 
     @Override
     protected void lock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
-        ReadWriteLock lock = paths.get(path);
-        if (lock == null) {
-            lock = new ReentrantReadWriteLock();
-            ReadWriteLock storedLock = paths.putIfAbsent(path, lock);
-            if (storedLock != null) {
-                lock = storedLock;
-            }
+        Lock lock = getLock(acquire(path), writeLock);
+        lockCount.incrementAndGet();
+        if (!lock.tryLock()) {
+            contendedLockCount.incrementAndGet();
+            lock.lock();
         }
-        getLock(lock, writeLock).lock();
     }
 
 
     @Override
     protected void unlock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
-        ReadWriteLock lock = paths.get(path);
+        ReferenceCountedLock lock = paths.get(path);
 
         if (lock != null) {
             getLock(lock, writeLock).unlock();
+            release(path, lock);
+        }
+    }
+
+    /**
+     * Return the count of {@link MailboxPath}s currently locked or waited for
+     */
+    public int getLockedPathCount() {
+        return paths.size();
+    }
+
+    /**
+     * Return the count of locks taken since this locker was created
+     */
+    public long getLockCount() {
+        return lockCount.get();
+    }
+
+    /**
+     * Return the count of locks which could not be taken immediately because
+     * another thread was holding a conflicting lock
+     */
+    public long getContendedLockCount() {
+        return contendedLockCount.get();
+    }
+
+    private ReferenceCountedLock acquire(MailboxPath path) {
+        while (true) {
+            ReferenceCountedLock lock = paths.get(path);
+            if (lock == null) {
+                ReferenceCountedLock newLock = new ReferenceCountedLock();
+                if (paths.putIfAbsent(path, newLock) == null) {
+                    return newLock;
+                }
+            } else if (lock.retain()) {
+                return lock;
+            }
+            // The lock was released by its last user in the meantime, try again
+        }
+    }
+
+    private void release(MailboxPath path, ReferenceCountedLock lock) {
+        if (lock.release()) {
+            paths.remove(path, lock);
         }
     }
 
@@ -71,4 +121,35 @@ public final class JVMMailboxPathLocker extends AbstractMailboxPathLocker {
         }
         return l;
     }
+
+    /**
+     * {@link ReentrantReadWriteLock} keeping track of the count of its users. Once
+     * this count drops to zero the lock can not be retained anymore and needs to be
+     * replaced.
+     */
+    private static final class ReferenceCountedLock extends ReentrantReadWriteLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if this was the last reference
+         */
+        boolean release() {
+            return references.decrementAndGet() == 0;
+        }
+    }
 }
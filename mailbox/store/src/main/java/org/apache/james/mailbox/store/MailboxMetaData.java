@@ -46,6 +46,17 @@ public class MailboxMetaData implements MessageManager.MetaData {
     private final MailboxACL acl;
 
     public MailboxMetaData(List<Long> recent, Flags premanentFlags, long uidValidity, long nextUid, long highestModSeq, long messageCount, long unseenCount, Long firstUnseen, boolean writeable, boolean modSeqPermanent, MailboxACL acl) {
+        this(recent, recent == null ? 0 : recent.size(), premanentFlags, uidValidity, nextUid, highestModSeq, messageCount, unseenCount, firstUnseen, writeable, modSeqPermanent, acl);
+    }
+
+    /**
+     * Create a {@link MailboxMetaData} which only knows the count of recent messages but not their uids
+     */
+    public MailboxMetaData(long recentCount, Flags premanentFlags, long uidValidity, long nextUid, long highestModSeq, long messageCount, long unseenCount, Long firstUnseen, boolean writeable, boolean modSeqPermanent, MailboxACL acl) {
+        this(null, recentCount, premanentFlags, uidValidity, nextUid, highestModSeq, messageCount, unseenCount, firstUnseen, writeable, modSeqPermanent, acl);
+    }
+
+    private MailboxMetaData(List<Long> recent, long recentCount, Flags premanentFlags, long uidValidity, long nextUid, long highestModSeq, long messageCount, long unseenCount, Long firstUnseen, boolean writeable, boolean modSeqPermanent, MailboxACL acl) {
         super();
         if (recent == null) {
             this.recent = new ArrayList<Long>();
@@ -54,7 +65,7 @@ public class MailboxMetaData implements MessageManager.MetaData {
 
         }
         this.highestModSeq = highestModSeq;
-        recentCount = this.recent.size();
+        this.recentCount = recentCount;
 
         this.premanentFlags = premanentFlags;
         this.uidValidity = uidValidity;
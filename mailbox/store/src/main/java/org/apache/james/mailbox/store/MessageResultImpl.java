@@ -36,6 +36,7 @@ import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.streaming.InputStreamContent;
 import org.apache.james.mailbox.store.streaming.InputStreamContent.Type;
 import org.apache.james.mime4j.MimeException;
@@ -342,7 +343,12 @@ public class MessageResultImpl implements MessageResult {
         if (mimeDescriptor == null) {
             try {
                 if (MimeDescriptorImpl.isComposite(message.getMediaType())) {
-                    mimeDescriptor = MimeDescriptorImpl.build(getFullContent().getInputStream());
+                    // Use the structure computed on append if possible, so the
+                    // content does not need to be read and parsed again
+                    mimeDescriptor = readMimeDescriptorProjection();
+                    if (mimeDescriptor == null) {
+                        mimeDescriptor = MimeDescriptorImpl.build(getFullContent().getInputStream());
+                    }
                 } else {
                     mimeDescriptor = new LazyMimeDescriptor(this, message);
                 }
@@ -355,6 +361,20 @@ public class MessageResultImpl implements MessageResult {
         return mimeDescriptor;
     }
 
+    private MimeDescriptor readMimeDescriptorProjection() {
+        byte[] projection = new PropertyBuilder(message.getProperties()).getMimeDescriptor();
+        if (MimeDescriptorProjection.isSupported(projection)) {
+            try {
+                return MimeDescriptorProjection.decode(projection, this);
+            } catch (IOException e) {
+                // corrupted, fall back to parsing the content
+            } catch (RuntimeException e) {
+                // corrupted in a way the format checks did not catch, fall back to parsing the content
+            }
+        }
+        return null;
+    }
+
     /**
      * @see org.apache.james.mailbox.model.MessageMetaData#getModSeq()
      */
@@ -0,0 +1,401 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.model.MessageResult.Header;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compact binary projection of the {@link MimeDescriptor} tree of a message.
+ * 
+ * It is computed once when a composite message is appended and stored along
+ * the message properties, so BODY and BODYSTRUCTURE can be answered without
+ * reading and parsing the message content again. The headers of the top level
+ * entity are not part of the projection, they are read from the message
+ * headers when needed.
+ * 
+ * The first byte holds the format {@link #VERSION}, the rest is the deflated
+ * tree. Projections written in another version are ignored. Lengths and counts
+ * read back are checked against the inflated data, so a corrupted projection
+ * fails with an {@link IOException} instead of allocating arbitrary arrays.
+ */
+public class MimeDescriptorProjection {
+
+    public static final byte VERSION = 1;
+
+    /** Length prefix of a string */
+    private static final int MIN_STRING_SIZE = 4;
+    /** Octets and lines, 8 strings, 2 maps, a list, the embedded flag and the part count */
+    private static final int MIN_PART_SIZE = 8 + 8 + 8 * MIN_STRING_SIZE + 4 + 4 + 4 + 1 + 4;
+
+    private MimeDescriptorProjection() {
+    }
+
+    /**
+     * Serialize the given descriptor
+     * 
+     * @param descriptor
+     *            descriptor of the whole message
+     * @return projection
+     */
+    public static byte[] encode(MimeDescriptor descriptor) throws IOException, MailboxException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(VERSION);
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        writePart(out, descriptor, true);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return true if the given projection can be read by this version
+     */
+    public static boolean isSupported(byte[] projection) {
+        return projection != null && projection.length > 0 && projection[0] == VERSION;
+    }
+
+    /**
+     * Rebuild the descriptor from the given projection
+     * 
+     * @param projection
+     *            bytes returned by {@link #encode(MimeDescriptor)}
+     * @param result
+     *            the result of the message, used to access its headers
+     * @return descriptor
+     * @throws IOException
+     *             if the projection is not supported or corrupted
+     */
+    public static MimeDescriptor decode(byte[] projection, MessageResult result) throws IOException {
+        if (!isSupported(projection)) {
+            throw new IOException("Unsupported MimeDescriptor projection");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(projection)));
+        MimeDescriptorImpl descriptor = readPart(in, true);
+        if (in.available() > 0) {
+            throw new IOException("Trailing data in MimeDescriptor projection");
+        }
+        return new RootMimeDescriptor(descriptor, result);
+    }
+
+    /**
+     * Inflate the tree up front, so the remaining size is known while reading it
+     */
+    private static byte[] inflate(byte[] projection) throws IOException {
+        InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(projection, 1, projection.length - 1));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(projection.length * 4);
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Check that the given count of elements, each taking at least
+     * <code>minElementSize</code> bytes, fits in what is left of the stream
+     */
+    private static int checkCount(DataInputStream in, int count, int minElementSize) throws IOException {
+        if (count < 0 || (long) count * minElementSize > in.available()) {
+            throw new IOException("Corrupted MimeDescriptor projection: invalid length " + count);
+        }
+        return count;
+    }
+
+    private static void writePart(DataOutputStream out, MimeDescriptor descriptor, boolean root) throws IOException, MailboxException {
+        out.writeLong(descriptor.getBodyOctets());
+        out.writeLong(descriptor.getLines());
+        writeString(out, descriptor.getMimeType());
+        writeString(out, descriptor.getMimeSubType());
+        writeString(out, descriptor.getTransferContentEncoding());
+        writeString(out, descriptor.getContentID());
+        writeString(out, descriptor.getContentDescription());
+        writeString(out, descriptor.getContentLocation());
+        writeString(out, descriptor.getContentMD5());
+        writeString(out, descriptor.getDisposition());
+        writeMap(out, descriptor.contentTypeParameters());
+        writeMap(out, descriptor.getDispositionParams());
+        writeList(out, descriptor.getLanguages());
+
+        if (!root) {
+            List<Header> headers = new ArrayList<Header>();
+            for (Iterator<Header> it = descriptor.headers(); it.hasNext();) {
+                headers.add(it.next());
+            }
+            out.writeInt(headers.size());
+            for (Header header : headers) {
+                writeString(out, header.getName());
+                writeString(out, header.getValue());
+            }
+        }
+
+        MimeDescriptor embeddedMessage = descriptor.embeddedMessage();
+        out.writeBoolean(embeddedMessage != null);
+        if (embeddedMessage != null) {
+            writePart(out, embeddedMessage, false);
+        }
+
+        List<MimeDescriptor> parts = new ArrayList<MimeDescriptor>();
+        for (Iterator<MimeDescriptor> it = descriptor.parts(); it.hasNext();) {
+            parts.add(it.next());
+        }
+        out.writeInt(parts.size());
+        for (MimeDescriptor part : parts) {
+            writePart(out, part, false);
+        }
+    }
+
+    private static MimeDescriptorImpl readPart(DataInputStream in, boolean root) throws IOException {
+        long bodyOctets = in.readLong();
+        long lines = in.readLong();
+        String type = readString(in);
+        String subType = readString(in);
+        String transferEncoding = readString(in);
+        String contentId = readString(in);
+        String contentDescription = readString(in);
+        String location = readString(in);
+        String md5 = readString(in);
+        String disposition = readString(in);
+        Map<String, String> contentTypeParameters = readMap(in, new TreeMap<String, String>());
+        Map<String, String> dispositionParams = readMap(in, new LinkedHashMap<String, String>());
+        List<String> languages = readList(in);
+
+        Collection<MessageResult.Header> headers = new ArrayList<MessageResult.Header>();
+        if (!root) {
+            int headerCount = checkCount(in, in.readInt(), 2 * MIN_STRING_SIZE);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new ResultHeader(readString(in), readString(in)));
+            }
+        }
+
+        MimeDescriptor embeddedMessage = null;
+        if (in.readBoolean()) {
+            embeddedMessage = readPart(in, false);
+        }
+
+        int partCount = checkCount(in, in.readInt(), MIN_PART_SIZE);
+        Collection<MimeDescriptor> parts = new ArrayList<MimeDescriptor>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            parts.add(readPart(in, false));
+        }
+
+        return new MimeDescriptorImpl(bodyOctets, contentDescription, contentId, lines, subType, type, transferEncoding, headers,
+                contentTypeParameters, languages, disposition, dispositionParams, embeddedMessage, parts, location, md5);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[checkCount(in, length, 1)];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in, Map<String, String> map) throws IOException {
+        int size = in.readInt();
+        if (size == -1) {
+            return null;
+        }
+        checkCount(in, size, 2 * MIN_STRING_SIZE);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        if (list == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(list.size());
+            for (String value : list) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == -1) {
+            return null;
+        }
+        List<String> list = new ArrayList<String>(checkCount(in, size, MIN_STRING_SIZE));
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    /**
+     * Top level {@link MimeDescriptor} which reads its headers from the
+     * {@link MessageResult}
+     */
+    private static final class RootMimeDescriptor implements MimeDescriptor {
+
+        private final MimeDescriptor descriptor;
+        private final MessageResult result;
+
+        private RootMimeDescriptor(MimeDescriptor descriptor, MessageResult result) {
+            this.descriptor = descriptor;
+            this.result = result;
+        }
+
+        @Override
+        public Iterator<Header> headers() throws MailboxException {
+            return result.getHeaders().headers();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return result.getHeaders().getInputStream();
+            } catch (MailboxException e) {
+                throw new IOException("Unable to retrieve content", e);
+            }
+        }
+
+        @Override
+        public long size() throws MailboxException {
+            return result.getHeaders().size();
+        }
+
+        @Override
+        public String getMimeType() {
+            return descriptor.getMimeType();
+        }
+
+        @Override
+        public String getMimeSubType() {
+            return descriptor.getMimeSubType();
+        }
+
+        @Override
+        public String getContentID() {
+            return descriptor.getContentID();
+        }
+
+        @Override
+        public String getContentDescription() {
+            return descriptor.getContentDescription();
+        }
+
+        @Override
+        public String getContentLocation() {
+            return descriptor.getContentLocation();
+        }
+
+        @Override
+        public String getContentMD5() {
+            return descriptor.getContentMD5();
+        }
+
+        @Override
+        public String getTransferContentEncoding() {
+            return descriptor.getTransferContentEncoding();
+        }
+
+        @Override
+        public List<String> getLanguages() {
+            return descriptor.getLanguages();
+        }
+
+        @Override
+        public String getDisposition() {
+            return descriptor.getDisposition();
+        }
+
+        @Override
+        public Map<String, String> getDispositionParams() {
+            return descriptor.getDispositionParams();
+        }
+
+        @Override
+        public long getLines() {
+            return descriptor.getLines();
+        }
+
+        @Override
+        public long getBodyOctets() {
+            return descriptor.getBodyOctets();
+        }
+
+        @Override
+        public Iterator<MimeDescriptor> parts() {
+            return descriptor.parts();
+        }
+
+        @Override
+        public MimeDescriptor embeddedMessage() {
+            return descriptor.embeddedMessage();
+        }
+
+        @Override
+        public Map<String, String> contentTypeParameters() {
+            return descriptor.contentTypeParameters();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.MessageAttachment;
+import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
+import org.apache.james.mailbox.store.streaming.CountingInputStream;
+import org.apache.james.mailbox.store.streaming.PrefixedSharedInputStream;
+import org.apache.james.mailbox.store.streaming.SpoolingOutputStream;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
+import org.apache.james.mime4j.message.MaximalBodyDescriptor;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.stream.RecursionMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Message which was read and parsed once and can then be appended to as many
+ * mailboxes as needed.
+ * 
+ * The content is buffered in memory or spooled to a temporary file depending
+ * on its size, so {@link #dispose()} must be called once the message is not
+ * needed anymore.
+ */
+public class ParsedMessage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParsedMessage.class);
+
+    private static final String MULTIPART_MEDIA_TYPE = "multipart";
+
+    /**
+     * Read and parse the given message
+     * 
+     * @param msgIn
+     *            the message content
+     * @param inMemoryAppendThreshold
+     *            messages bigger than this count of bytes are spooled to a
+     *            temporary file
+     * @param messageParser
+     *            parser used to extract the attachments
+     * @return parsedMessage
+     * @throws MailboxException
+     *             if the message could not be read or parsed
+     */
+    public static ParsedMessage parse(InputStream msgIn, int inMemoryAppendThreshold, MessageParser messageParser) throws MailboxException {
+        SpoolingOutputStream out = null;
+        TeeInputStream tmpMsgIn = null;
+        BodyOffsetInputStream bIn = null;
+        InputStream contentIn = null;
+        boolean parsed = false;
+
+        try {
+            // Copy the message while parsing it. Small messages are kept in
+            // memory, bigger ones are spooled once to a temporary file which
+            // we then use as source for the InputStream
+            out = new SpoolingOutputStream(inMemoryAppendThreshold);
+
+            tmpMsgIn = new TeeInputStream(msgIn, out);
+
+            bIn = new BodyOffsetInputStream(tmpMsgIn);
+            // Disable line length... This should be handled by the smtp server
+            // component and not the parser itself
+            // https://issues.apache.org/jira/browse/IMAP-122
+            MimeConfig config = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
+
+            final MimeTokenStream parser = new MimeTokenStream(config, new DefaultBodyDescriptorBuilder());
+
+            parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
+            parser.parse(bIn);
+
+            EntityState next = parser.next();
+            while (next != EntityState.T_BODY && next != EntityState.T_END_OF_STREAM && next != EntityState.T_START_MULTIPART) {
+                next = parser.next();
+            }
+            final MaximalBodyDescriptor descriptor = (MaximalBodyDescriptor) parser.getBodyDescriptor();
+            final PropertyBuilder propertyBuilder = new PropertyBuilder();
+            final String mediaType;
+            final String mediaTypeFromHeader = descriptor.getMediaType();
+            final String subType;
+            if (mediaTypeFromHeader == null) {
+                mediaType = "text";
+                subType = "plain";
+            } else {
+                mediaType = mediaTypeFromHeader;
+                subType = descriptor.getSubType();
+            }
+            propertyBuilder.setMediaType(mediaType);
+            propertyBuilder.setSubType(subType);
+            propertyBuilder.setContentID(descriptor.getContentId());
+            propertyBuilder.setContentDescription(descriptor.getContentDescription());
+            propertyBuilder.setContentLocation(descriptor.getContentLocation());
+            propertyBuilder.setContentMD5(descriptor.getContentMD5Raw());
+            propertyBuilder.setContentTransferEncoding(descriptor.getTransferEncoding());
+            propertyBuilder.setContentLanguage(descriptor.getContentLanguage());
+            propertyBuilder.setContentDispositionType(descriptor.getContentDispositionType());
+            propertyBuilder.setContentDispositionParameters(descriptor.getContentDispositionParameters());
+            propertyBuilder.setContentTypeParameters(descriptor.getContentTypeParameters());
+            // Add missing types
+            final String codeset = descriptor.getCharset();
+            if (codeset == null) {
+                if ("TEXT".equalsIgnoreCase(mediaType)) {
+                    propertyBuilder.setCharset("us-ascii");
+                }
+            } else {
+                propertyBuilder.setCharset(codeset);
+            }
+
+            final String boundary = descriptor.getBoundary();
+            if (boundary != null) {
+                propertyBuilder.setBoundary(boundary);
+            }
+            if ("text".equalsIgnoreCase(mediaType)) {
+                final CountingInputStream bodyStream = new CountingInputStream(parser.getInputStream());
+                bodyStream.readAll();
+                long lines = bodyStream.getLineCount();
+                bodyStream.close();
+                next = parser.next();
+                if (next == EntityState.T_EPILOGUE) {
+                    final CountingInputStream epilogueStream = new CountingInputStream(parser.getInputStream());
+                    epilogueStream.readAll();
+                    lines += epilogueStream.getLineCount();
+                    epilogueStream.close();
+
+                }
+                propertyBuilder.setTextualLineCount(lines);
+            }
+
+            byte[] discard = new byte[4096];
+            while (tmpMsgIn.read(discard) != -1) {
+                // consume the rest of the stream so everything get copied to
+                // the buffer now
+                // via the TeeInputStream
+            }
+            int bodyStartOctet = (int) bIn.getBodyStartOffset();
+            if (bodyStartOctet == -1) {
+                bodyStartOctet = 0;
+            }
+            contentIn = out.getSharedInputStream();
+            final int size = (int) out.getSize();
+
+            final SharedInputStream sharedContent = (SharedInputStream) contentIn;
+            final List<MessageAttachment> attachments = extractAttachments(mediaType, sharedContent, messageParser);
+            if (MimeDescriptorImpl.isComposite(mediaType)) {
+                propertyBuilder.setMimeDescriptor(projectMimeDescriptor(sharedContent));
+            }
+
+            parsed = true;
+            return new ParsedMessage(out, contentIn, size, bodyStartOctet, propertyBuilder, attachments);
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } finally {
+            IOUtils.closeQuietly(bIn);
+            IOUtils.closeQuietly(tmpMsgIn);
+
+            if (!parsed) {
+                // release the buffer and delete the temporary file if one was
+                // created
+                IOUtils.closeQuietly(contentIn);
+                if (out != null) {
+                    out.dispose();
+                }
+            }
+        }
+    }
+
+    private static List<MessageAttachment> extractAttachments(String mediaType, SharedInputStream contentIn, MessageParser messageParser) {
+        // Only multipart messages can carry attachments, so don't parse the
+        // content a second time for anything else
+        if (!MULTIPART_MEDIA_TYPE.equalsIgnoreCase(mediaType)) {
+            return ImmutableList.of();
+        }
+        try {
+            return messageParser.retrieveAttachments(contentIn.newStream(0, -1));
+        } catch (Exception e) {
+            LOG.warn("Error while parsing mail's attachments: " + e.getMessage(), e);
+            return ImmutableList.of();
+        }
+    }
+
+    /**
+     * Describing the structure of composite messages needs a full parse, so
+     * do it once now instead of on every BODYSTRUCTURE fetch
+     */
+    private static byte[] projectMimeDescriptor(SharedInputStream contentIn) {
+        try {
+            return MimeDescriptorProjection.encode(MimeDescriptorImpl.build(contentIn.newStream(0, -1)));
+        } catch (IOException e) {
+            LOG.warn("Unable to compute the MIME structure: " + e.getMessage(), e);
+        } catch (MimeException e) {
+            LOG.warn("Unable to compute the MIME structure: " + e.getMessage(), e);
+        } catch (MailboxException e) {
+            LOG.warn("Unable to compute the MIME structure: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    private final SpoolingOutputStream out;
+    private final InputStream contentIn;
+    private final int size;
+    private final int bodyStartOctet;
+    private final PropertyBuilder propertyBuilder;
+    private final List<MessageAttachment> attachments;
+
+    private ParsedMessage(SpoolingOutputStream out, InputStream contentIn, int size, int bodyStartOctet, PropertyBuilder propertyBuilder, List<MessageAttachment> attachments) {
+        this.out = out;
+        this.contentIn = contentIn;
+        this.size = size;
+        this.bodyStartOctet = bodyStartOctet;
+        this.propertyBuilder = propertyBuilder;
+        this.attachments = attachments;
+    }
+
+    /**
+     * Return the content of the message, with the given header lines
+     * prepended. The additional headers are not copied, nor is the message.
+     * 
+     * @param additionalHeaders
+     *            raw header lines, may be empty
+     * @return content
+     */
+    public SharedInputStream getContent(byte[] additionalHeaders) {
+        if (additionalHeaders.length == 0) {
+            return (SharedInputStream) ((SharedInputStream) contentIn).newStream(0, -1);
+        }
+        return new PrefixedSharedInputStream(additionalHeaders, (SharedInputStream) contentIn);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBodyStartOctet() {
+        return bodyStartOctet;
+    }
+
+    public PropertyBuilder getPropertyBuilder() {
+        return propertyBuilder;
+    }
+
+    public List<MessageAttachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * Release the buffer and delete the temporary file if one was created
+     */
+    public void dispose() {
+        IOUtils.closeQuietly(contentIn);
+        out.dispose();
+    }
+}
@@ -19,11 +19,16 @@
 
 package org.apache.james.mailbox.store;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -45,6 +50,8 @@ import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxExistsException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxAnnotation;
 import org.apache.james.mailbox.model.MailboxConstants;
@@ -117,6 +124,8 @@ public class StoreMailboxManager implements MailboxManager {
 
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
 
+    private int inMemoryAppendThreshold = StoreMessageManager.DEFAULT_IN_MEMORY_APPEND_THRESHOLD;
+
     private final MessageParser messageParser;
 
 
@@ -161,6 +170,10 @@ public class StoreMailboxManager implements MailboxManager {
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    public void setInMemoryAppendThreshold(int inMemoryAppendThreshold) {
+        this.inMemoryAppendThreshold = inMemoryAppendThreshold;
+    }
+
 
     /**
      * Init the {@link MailboxManager}
@@ -396,6 +409,10 @@ public class StoreMailboxManager implements MailboxManager {
     @Override
     public org.apache.james.mailbox.MessageManager getMailbox(MailboxPath mailboxPath, MailboxSession session)
             throws MailboxException {
+        return getStoreMessageManager(mailboxPath, session);
+    }
+
+    private StoreMessageManager getStoreMessageManager(MailboxPath mailboxPath, MailboxSession session) throws MailboxException {
         final MailboxMapper mapper = mailboxSessionMapperFactory.getMailboxMapper(session);
         Mailbox mailboxRow = mapper.findMailboxByPath(mailboxPath);
 
@@ -408,6 +425,7 @@ public class StoreMailboxManager implements MailboxManager {
 
             StoreMessageManager m = createMessageManager(mailboxRow, session);
             m.setFetchBatchSize(fetchBatchSize);
+            m.setInMemoryAppendThreshold(inMemoryAppendThreshold);
             return m;
         }
     }
@@ -555,6 +573,39 @@ public class StoreMailboxManager implements MailboxManager {
         });
     }
 
+    @Override
+    public List<AppendResult> appendMessage(InputStream msgIn, Date internalDate, List<AppendTarget> targets) throws MailboxException {
+        ParsedMessage parsedMessage = ParsedMessage.parse(msgIn, inMemoryAppendThreshold, messageParser);
+        try {
+            if (internalDate == null) {
+                internalDate = new Date();
+            }
+            // Several targets may share the same mailbox, so only look it up once
+            Map<MailboxPath, StoreMessageManager> messageManagers = new HashMap<MailboxPath, StoreMessageManager>();
+            List<AppendResult> results = new ArrayList<AppendResult>(targets.size());
+            for (AppendTarget target : targets) {
+                MailboxSession session = target.getSession();
+                try {
+                    StoreMessageManager messageManager = messageManagers.get(target.getPath());
+                    if (messageManager == null) {
+                        messageManager = getStoreMessageManager(target.getPath(), session);
+                        messageManagers.put(target.getPath(), messageManager);
+                    }
+                    long uid = messageManager.appendMessage(parsedMessage, target.getAdditionalHeaders(), internalDate, session, target.isRecent(), target.getFlags());
+                    results.add(AppendResult.success(target, uid));
+                } catch (MailboxException e) {
+                    session.getLog().info("Unable to append message to " + target.getPath(), e);
+                    results.add(AppendResult.failure(target, e));
+                }
+            }
+            return results;
+        } finally {
+            // release the buffer and delete the temporary file if one was
+            // created
+            parsedMessage.dispose();
+        }
+    }
+
     @Override
     public List<MailboxMetaData> search(MailboxQuery mailboxExpression, MailboxSession session)
             throws MailboxException {
@@ -570,26 +621,50 @@ public class StoreMailboxManager implements MailboxManager {
         final String combinedName = mailboxExpression.getCombinedName()
                 .replace(freeWildcard, SQL_WILDCARD_CHAR)
                 .replace(localWildcard, SQL_WILDCARD_CHAR);
-        final MailboxPath search = new MailboxPath(mailboxExpression.getBase(), combinedName);
-
         final MailboxMapper mapper = mailboxSessionMapperFactory.getMailboxMapper(session);
-        final List<Mailbox> mailboxes = mapper.findMailboxWithPathLike(search);
-        final List<MailboxMetaData> results = new ArrayList<MailboxMetaData>(mailboxes.size());
+        final int firstWildcard = combinedName.indexOf(SQL_WILDCARD_CHAR);
+        final List<Mailbox> mailboxes = new ArrayList<Mailbox>();
+        final Set<String> parents;
+        if (firstWildcard < 0) {
+            // Without wildcard the expression names a single mailbox, which is
+            // looked up directly rather than along with every name it prefixes
+            parents = new HashSet<String>();
+            try {
+                final Mailbox mailbox = mapper.findMailboxByPath(new MailboxPath(mailboxExpression.getBase(), combinedName));
+                mailboxes.add(mailbox);
+                if (mapper.hasChildren(mailbox, session.getPathDelimiter())) {
+                    parents.add(mailbox.getName());
+                }
+            } catch (MailboxNotFoundException e) {
+                return new ArrayList<MailboxMetaData>();
+            }
+        } else {
+            // Every match and every child of a match starts with the literal part
+            // of the expression, so a single lookup is enough to compute both the
+            // matching mailboxes and their children flags
+            final MailboxPath search = new MailboxPath(mailboxExpression.getBase(),
+                combinedName.substring(0, firstWildcard) + SQL_WILDCARD_CHAR);
+            for (Mailbox mailbox : mapper.findMailboxWithPathLike(search)) {
+                if (belongsToNamespaceAndUser(mailboxExpression.getBase(), mailbox)) {
+                    mailboxes.add(mailbox);
+                }
+            }
+            parents = parentNames(mailboxes, session.getPathDelimiter());
+        }
+        final List<MailboxMetaData> results = new ArrayList<MailboxMetaData>();
         for (Mailbox mailbox : mailboxes) {
             final String name = mailbox.getName();
-            if(belongsToNamespaceAndUser(mailboxExpression.getBase(), mailbox)) {
-                if (name.startsWith(baseName)) {
-                    final String match = name.substring(baseLength);
-                    if (mailboxExpression.isExpressionMatch(match)) {
-                        final MailboxMetaData.Children inferiors;
-                        if (mapper.hasChildren(mailbox, session.getPathDelimiter())) {
-                            inferiors = MailboxMetaData.Children.HAS_CHILDREN;
-                        } else {
-                            inferiors = MailboxMetaData.Children.HAS_NO_CHILDREN;
-                        }
-                        MailboxPath mailboxPath = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), name);
-                        results.add(new SimpleMailboxMetaData(mailboxPath, getDelimiter(), inferiors, Selectability.NONE));
+            if (name.startsWith(baseName)) {
+                final String match = name.substring(baseLength);
+                if (mailboxExpression.isExpressionMatch(match)) {
+                    final MailboxMetaData.Children inferiors;
+                    if (parents.contains(name)) {
+                        inferiors = MailboxMetaData.Children.HAS_CHILDREN;
+                    } else {
+                        inferiors = MailboxMetaData.Children.HAS_NO_CHILDREN;
                     }
+                    MailboxPath mailboxPath = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), name);
+                    results.add(new SimpleMailboxMetaData(mailboxPath, getDelimiter(), inferiors, Selectability.NONE));
                 }
             }
         }
@@ -597,6 +672,25 @@ public class StoreMailboxManager implements MailboxManager {
         return results;
     }
 
+    /**
+     * Return the names of the given mailboxes' ancestors, which are the names
+     * having at least one child among the given mailboxes. This mirrors
+     * {@link MailboxMapper#hasChildren(Mailbox, char)} without querying the
+     * mapper once per mailbox.
+     */
+    private Set<String> parentNames(List<Mailbox> mailboxes, char delimiter) {
+        final Set<String> parents = new HashSet<String>();
+        for (Mailbox mailbox : mailboxes) {
+            final String name = mailbox.getName();
+            int index = name.indexOf(delimiter);
+            while (index >= 0) {
+                parents.add(name.substring(0, index));
+                index = name.indexOf(delimiter, index + 1);
+            }
+        }
+        return parents;
+    }
+
     public boolean belongsToNamespaceAndUser(MailboxPath base, Mailbox mailbox) {
         if (mailbox.getUser() == null) {
             return  base.getUser() == null
@@ -19,9 +19,6 @@
 
 package org.apache.james.mailbox.store;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
@@ -34,10 +31,8 @@ import java.util.TreeMap;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.internet.SharedInputStream;
-import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.TeeInputStream;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
@@ -66,6 +61,7 @@ import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Attachment;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.MessageAttachment;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
@@ -73,19 +69,7 @@ import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.quota.QuotaChecker;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
-import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
-import org.apache.james.mailbox.store.streaming.CountingInputStream;
 import org.apache.james.mailbox.store.transaction.Mapper;
-import org.apache.james.mime4j.MimeException;
-import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
-import org.apache.james.mime4j.message.HeaderImpl;
-import org.apache.james.mime4j.message.MaximalBodyDescriptor;
-import org.apache.james.mime4j.stream.EntityState;
-import org.apache.james.mime4j.stream.MimeConfig;
-import org.apache.james.mime4j.stream.MimeTokenStream;
-import org.apache.james.mime4j.stream.RecursionMode;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
 
@@ -118,7 +102,24 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         MINIMAL_PERMANET_FLAGS.add(Flags.Flag.SEEN);
     }
 
-    private static final Logger LOG = LoggerFactory.getLogger(StoreMessageManager.class);
+    /**
+     * Messages smaller than this count of bytes are buffered in memory during
+     * append instead of being spooled to a temporary file
+     */
+    public static final int DEFAULT_IN_MEMORY_APPEND_THRESHOLD = 100 * 1024;
+
+    /**
+     * Count of messages handed at once to the {@link MessageMapper} when copying or moving
+     */
+    private static final int COPY_BATCH_SIZE = 100;
+
+    /**
+     * Count of content bytes after which a copy or move batch is handed to the {@link MessageMapper} even if it
+     * holds less than {@link #COPY_BATCH_SIZE} messages, so that batches of large messages stay small in memory
+     */
+    private static final long COPY_BATCH_MAX_OCTETS = 10 * 1024 * 1024;
+
+    private static final byte[] NO_ADDITIONAL_HEADERS = new byte[0];
 
 
     private final Mailbox mailbox;
@@ -143,6 +144,8 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
 
     private int fetchBatchSize;
 
+    private int inMemoryAppendThreshold = DEFAULT_IN_MEMORY_APPEND_THRESHOLD;
+
     public StoreMessageManager(MailboxSessionMapperFactory mapperFactory, MessageSearchIndex index, MailboxEventDispatcher dispatcher, MailboxPathLocker locker, Mailbox mailbox, MailboxACLResolver aclResolver,
             final GroupMembershipResolver groupMembershipResolver, QuotaManager quotaManager, QuotaRootResolver quotaRootResolver, MessageParser messageParser) throws MailboxException {
         this.mailbox = mailbox;
@@ -161,6 +164,16 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Set the maximal size (in bytes) of messages which are buffered in
+     * memory while appending. Bigger messages are spooled to a temporary file.
+     * 
+     * @param inMemoryAppendThreshold
+     */
+    public void setInMemoryAppendThreshold(int inMemoryAppendThreshold) {
+        this.inMemoryAppendThreshold = inMemoryAppendThreshold;
+    }
+
     /**
      * Return the {@link MailboxPathLocker}
      * 
@@ -263,128 +276,70 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
      */
     public long appendMessage(InputStream msgIn, Date internalDate, final MailboxSession mailboxSession, boolean isRecent, Flags flagsToBeSet) throws MailboxException {
 
-        File file = null;
-        TeeInputStream tmpMsgIn = null;
-        BodyOffsetInputStream bIn = null;
-        FileOutputStream out = null;
-        SharedFileInputStream contentIn = null;
-
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(new StoreMailboxPath(getMailboxEntity()), mailboxSession.getPathDelimiter());
         }
 
+        ParsedMessage parsedMessage = ParsedMessage.parse(msgIn, inMemoryAppendThreshold, messageParser);
         try {
-            // Create a temporary file and copy the message to it. We will work
-            // with the file as
-            // source for the InputStream
-            file = File.createTempFile("imap", ".msg");
-            out = new FileOutputStream(file);
-
-            tmpMsgIn = new TeeInputStream(msgIn, out);
-
-            bIn = new BodyOffsetInputStream(tmpMsgIn);
-            // Disable line length... This should be handled by the smtp server
-            // component and not the parser itself
-            // https://issues.apache.org/jira/browse/IMAP-122
-            MimeConfig config = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
-
-            final MimeTokenStream parser = new MimeTokenStream(config, new DefaultBodyDescriptorBuilder());
-
-            parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
-            parser.parse(bIn);
-            final HeaderImpl header = new HeaderImpl();
-
-            EntityState next = parser.next();
-            while (next != EntityState.T_BODY && next != EntityState.T_END_OF_STREAM && next != EntityState.T_START_MULTIPART) {
-                if (next == EntityState.T_FIELD) {
-                    header.addField(parser.getField());
-                }
-                next = parser.next();
-            }
-            final MaximalBodyDescriptor descriptor = (MaximalBodyDescriptor) parser.getBodyDescriptor();
-            final PropertyBuilder propertyBuilder = new PropertyBuilder();
-            final String mediaType;
-            final String mediaTypeFromHeader = descriptor.getMediaType();
-            final String subType;
-            if (mediaTypeFromHeader == null) {
-                mediaType = "text";
-                subType = "plain";
-            } else {
-                mediaType = mediaTypeFromHeader;
-                subType = descriptor.getSubType();
-            }
-            propertyBuilder.setMediaType(mediaType);
-            propertyBuilder.setSubType(subType);
-            propertyBuilder.setContentID(descriptor.getContentId());
-            propertyBuilder.setContentDescription(descriptor.getContentDescription());
-            propertyBuilder.setContentLocation(descriptor.getContentLocation());
-            propertyBuilder.setContentMD5(descriptor.getContentMD5Raw());
-            propertyBuilder.setContentTransferEncoding(descriptor.getTransferEncoding());
-            propertyBuilder.setContentLanguage(descriptor.getContentLanguage());
-            propertyBuilder.setContentDispositionType(descriptor.getContentDispositionType());
-            propertyBuilder.setContentDispositionParameters(descriptor.getContentDispositionParameters());
-            propertyBuilder.setContentTypeParameters(descriptor.getContentTypeParameters());
-            // Add missing types
-            final String codeset = descriptor.getCharset();
-            if (codeset == null) {
-                if ("TEXT".equalsIgnoreCase(mediaType)) {
-                    propertyBuilder.setCharset("us-ascii");
-                }
-            } else {
-                propertyBuilder.setCharset(codeset);
-            }
+            return appendMessage(parsedMessage, NO_ADDITIONAL_HEADERS, internalDate, mailboxSession, isRecent, flagsToBeSet);
+        } finally {
+            // release the buffer and delete the temporary file if one was
+            // created
+            parsedMessage.dispose();
+        }
+    }
 
-            final String boundary = descriptor.getBoundary();
-            if (boundary != null) {
-                propertyBuilder.setBoundary(boundary);
-            }
-            if ("text".equalsIgnoreCase(mediaType)) {
-                final CountingInputStream bodyStream = new CountingInputStream(parser.getInputStream());
-                bodyStream.readAll();
-                long lines = bodyStream.getLineCount();
-                bodyStream.close();
-                next = parser.next();
-                if (next == EntityState.T_EPILOGUE) {
-                    final CountingInputStream epilogueStream = new CountingInputStream(parser.getInputStream());
-                    epilogueStream.readAll();
-                    lines += epilogueStream.getLineCount();
-                    epilogueStream.close();
+    /**
+     * Append an already parsed message to this mailbox. The given
+     * {@link ParsedMessage} is not disposed, so it can be appended to other
+     * mailboxes afterwards.
+     * 
+     * @param parsedMessage
+     *            the message to append
+     * @param additionalHeaders
+     *            raw header lines prepended to the stored message, may be
+     *            empty
+     * @param internalDate
+     *            date the message was received, or null for now
+     * @param mailboxSession
+     * @param isRecent
+     * @param flagsToBeSet
+     *            flags to set, may be null. They are trimmed to the allowed
+     *            flags in place
+     * @return uid
+     * @throws MailboxException
+     */
+    public long appendMessage(ParsedMessage parsedMessage, byte[] additionalHeaders, Date internalDate, final MailboxSession mailboxSession, boolean isRecent, Flags flagsToBeSet) throws MailboxException {
 
-                }
-                propertyBuilder.setTextualLineCount(lines);
-            }
+        if (!isWriteable(mailboxSession)) {
+            throw new ReadOnlyException(new StoreMailboxPath(getMailboxEntity()), mailboxSession.getPathDelimiter());
+        }
 
-            final Flags flags;
-            if (flagsToBeSet == null) {
-                flags = new Flags();
-            } else {
-                flags = flagsToBeSet;
+        final Flags flags;
+        if (flagsToBeSet == null) {
+            flags = new Flags();
+        } else {
+            flags = flagsToBeSet;
 
-                // Check if we need to trim the flags
-                trimFlags(flags, mailboxSession);
+            // Check if we need to trim the flags
+            trimFlags(flags, mailboxSession);
 
-            }
-            if (isRecent) {
-                flags.add(Flags.Flag.RECENT);
-            }
-            if (internalDate == null) {
-                internalDate = new Date();
-            }
-            byte[] discard = new byte[4096];
-            while (tmpMsgIn.read(discard) != -1) {
-                // consume the rest of the stream so everything get copied to
-                // the file now
-                // via the TeeInputStream
-            }
-            int bodyStartOctet = (int) bIn.getBodyStartOffset();
-            if (bodyStartOctet == -1) {
-                bodyStartOctet = 0;
-            }
-            contentIn = new SharedFileInputStream(file);
-            final int size = (int) file.length();
+        }
+        if (isRecent) {
+            flags.add(Flags.Flag.RECENT);
+        }
+        if (internalDate == null) {
+            internalDate = new Date();
+        }
+
+        final int size = parsedMessage.getSize() + additionalHeaders.length;
+        final int bodyStartOctet = parsedMessage.getBodyStartOctet() + additionalHeaders.length;
+        final SharedInputStream sharedContent = parsedMessage.getContent(additionalHeaders);
 
-            final List<MessageAttachment> attachments = extractAttachments(contentIn);
-            final MailboxMessage message = createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder, attachments);
+        try {
+            final List<MessageAttachment> attachments = parsedMessage.getAttachments();
+            final MailboxMessage message = createMessage(internalDate, size, bodyStartOctet, sharedContent, flags, parsedMessage.getPropertyBuilder(), attachments);
 
             new QuotaChecker(quotaManager, quotaRootResolver, mailbox).tryAddition(1, size);
 
@@ -400,35 +355,8 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
                     return data.getUid();
                 }
             }, true);
-
-        } catch (IOException e) {
-            throw new MailboxException("Unable to parse message", e);
-        } catch (MimeException e) {
-            throw new MailboxException("Unable to parse message", e);
         } finally {
-            IOUtils.closeQuietly(bIn);
-            IOUtils.closeQuietly(tmpMsgIn);
-            IOUtils.closeQuietly(out);
-            IOUtils.closeQuietly(contentIn);
-
-            // delete the temporary file if one was specified
-            if (file != null) {
-                if (!file.delete()) {
-                    // Don't throw an IOException. The message could be appended
-                    // and the temporary file
-                    // will be deleted hopefully some day
-                }
-            }
-        }
-
-    }
-
-    private List<MessageAttachment> extractAttachments(SharedFileInputStream contentIn) {
-        try {
-            return messageParser.retrieveAttachments(contentIn);
-        } catch (Exception e) {
-            LOG.warn("Error while parsing mail's attachments: " + e.getMessage(), e);
-            return ImmutableList.of();
+            IOUtils.closeQuietly((InputStream) sharedContent);
         }
     }
 
@@ -462,6 +390,10 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
      *      org.apache.james.mailbox.MessageManager.MetaData.FetchGroup)
      */
     public MetaData getMetaData(boolean resetRecent, MailboxSession mailboxSession, org.apache.james.mailbox.MessageManager.MetaData.FetchGroup fetchGroup) throws MailboxException {
+        if (!resetRecent && (fetchGroup == MetaData.FetchGroup.NO_UNSEEN || fetchGroup == MetaData.FetchGroup.UNSEEN_COUNT)) {
+            // Only the counts are needed, which the mapper can return all at once
+            return getCountersMetaData(mailboxSession, fetchGroup);
+        }
 
         final List<Long> recent;
         final Flags permanentFlags = getPermanentFlags(mailboxSession);
@@ -508,6 +440,19 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         return new MailboxMetaData(recent, permanentFlags, uidValidity, uidNext, highestModSeq, messageCount, unseenCount, firstUnseen, isWriteable(mailboxSession), isModSeqPermanent(mailboxSession), resolvedAcl);
     }
 
+    private MetaData getCountersMetaData(MailboxSession mailboxSession, MetaData.FetchGroup fetchGroup) throws MailboxException {
+        final MailboxCounters counters = mapperFactory.getMessageMapper(mailboxSession).getMailboxCounters(getMailboxEntity());
+        final long unseenCount;
+        if (fetchGroup == MetaData.FetchGroup.UNSEEN_COUNT) {
+            unseenCount = counters.getUnseenCount();
+        } else {
+            unseenCount = 0;
+        }
+        MailboxACL resolvedAcl = getResolvedMailboxACL(mailboxSession);
+        return new MailboxMetaData(counters.getRecentCount(), getPermanentFlags(mailboxSession), getMailboxEntity().getUidValidity(), counters.getLastUid() + 1, counters.getHighestModSeq(),
+            counters.getMessageCount(), unseenCount, null, isWriteable(mailboxSession), isModSeqPermanent(mailboxSession), resolvedAcl);
+    }
+
     /**
      * Check if the given {@link Flags} contains {@link Flags} which are not
      * included in the returned {@link Flags} of
@@ -730,16 +675,18 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         QuotaChecker quotaChecker = new QuotaChecker(quotaManager, quotaRootResolver, mailbox);
 
         while (originalRows.hasNext()) {
-            final MailboxMessage originalMessage = originalRows.next();
-            quotaChecker.tryAddition(1, originalMessage.getFullContentOctets());
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.copy(getMailboxEntity(), originalMessage);
+            final List<MailboxMessage> originalMessages = nextBatch(originalRows);
+            for (MailboxMessage originalMessage : originalMessages) {
+                quotaChecker.tryAddition(1, originalMessage.getFullContentOctets());
+            }
+            List<MessageMetaData> data = messageMapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+                public List<MessageMetaData> run() throws MailboxException {
+                    return messageMapper.copyAll(getMailboxEntity(), originalMessages);
 
                 }
 
             });
-            copiedRows.add(data);
+            copiedRows.addAll(data);
         }
         return copiedRows.iterator();
     }
@@ -750,19 +697,36 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         final MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
 
         while (originalRows.hasNext()) {
-            final MailboxMessage originalMessage = originalRows.next();
-            originalRowsCopy.add(new SimpleMessageMetaData(originalMessage));
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.move(getMailboxEntity(), originalMessage);
+            final List<MailboxMessage> originalMessages = nextBatch(originalRows);
+            for (MailboxMessage originalMessage : originalMessages) {
+                originalRowsCopy.add(new SimpleMessageMetaData(originalMessage));
+            }
+            List<MessageMetaData> data = messageMapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+                public List<MessageMetaData> run() throws MailboxException {
+                    return messageMapper.moveAll(getMailboxEntity(), originalMessages);
                 }
 
             });
-            movedRows.add(data);
+            movedRows.addAll(data);
         }
         return new MoveResult(movedRows.iterator(), originalRowsCopy.iterator());
 	}
 
+    /**
+     * Take the next messages to copy or move, stopping at {@link #COPY_BATCH_SIZE} messages or once
+     * {@link #COPY_BATCH_MAX_OCTETS} bytes of content are reached. A batch always holds at least one message.
+     */
+    private List<MailboxMessage> nextBatch(Iterator<MailboxMessage> originalRows) {
+        List<MailboxMessage> batch = new ArrayList<MailboxMessage>();
+        long batchOctets = 0;
+        while (originalRows.hasNext() && batch.size() < COPY_BATCH_SIZE && batchOctets < COPY_BATCH_MAX_OCTETS) {
+            MailboxMessage message = originalRows.next();
+            batch.add(message);
+            batchOctets += message.getFullContentOctets();
+        }
+        return batch;
+    }
+
 
     private SortedMap<Long, MessageMetaData> copy(MessageRange set, StoreMessageManager to, MailboxSession session) throws MailboxException {
         Iterator<MailboxMessage> originalRows = retrieveOriginalRows(set, session);
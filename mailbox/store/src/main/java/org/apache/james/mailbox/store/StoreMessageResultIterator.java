@@ -37,6 +37,7 @@ import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 
 public class StoreMessageResultIterator implements MessageResultIterator {
 
@@ -95,10 +96,9 @@ public class StoreMessageResultIterator implements MessageResultIterator {
         }
 
         if ((content & FetchGroup.MIME_DESCRIPTOR) > 0) {
-            // If we need the mimedescriptor we MAY need the full content later
-            // too.
-            // This gives us no other choice then request it
-            full = true;
+            // The structure of composite messages is computed on append and
+            // stored with the properties. The few messages without it are
+            // loaded again with their full content, see #loadMimeContent
             content -= FetchGroup.MIME_DESCRIPTOR;
         }
         if (full || (body && headers)) {
@@ -156,9 +156,10 @@ public class StoreMessageResultIterator implements MessageResultIterator {
           throw new NoSuchElementException();
         }
         
-        final MailboxMessage message = next.next();
+        MailboxMessage message = next.next();
         MessageResult result;
         try {
+            message = loadMimeContent(message);
             result = ResultUtils.loadMessageResult(message, group);
             cursor = result.getUid();
         } catch (MailboxException e) {
@@ -169,6 +170,23 @@ public class StoreMessageResultIterator implements MessageResultIterator {
         return result;
     }
 
+    /**
+     * Load the full content of the message if it is needed to compute its
+     * {@link MimeDescriptor} and it was not fetched yet
+     */
+    private MailboxMessage loadMimeContent(MailboxMessage message) throws MailboxException {
+        if (ftype != FetchType.Full
+                && (group.content() & FetchGroup.MIME_DESCRIPTOR) > 0
+                && MimeDescriptorImpl.isComposite(message.getMediaType())
+                && !MimeDescriptorProjection.isSupported(new PropertyBuilder(message.getProperties()).getMimeDescriptor())) {
+            Iterator<MailboxMessage> reloaded = mapper.findInMailbox(mailbox, MessageRange.one(message.getUid()), FetchType.Full, 1);
+            if (reloaded.hasNext()) {
+                return reloaded.next();
+            }
+        }
+        return message;
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException("Read only");
@@ -19,34 +19,229 @@
 
 package org.apache.james.mailbox.store.event;
 
-import org.apache.james.mailbox.MailboxListener;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PreDestroy;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EventDelivery} delivering events on a pool of threads.
+ *
+ * Each thread is fed by its own bounded queue. Events are assigned to a thread depending on the listener and
+ * the mailbox they relate to, so that a listener receives the events of a given mailbox in the order they were
+ * delivered. When a queue is full, the delivering thread blocks until room is available, which slows down
+ * producers instead of piling events up in memory. Listeners running on one of the threads are not slowed down:
+ * they could wait for their own thread, or for a thread waiting for them. The events they deliver are queued past
+ * the capacity, behind the events already queued, so that the order of the events is kept.
+ *
+ * On {@link #stop()} the queued events are given some time to be processed before the threads are interrupted.
+ */
 public class AsynchronousEventDelivery implements EventDelivery {
 
-    private final ExecutorService threadPoolExecutor;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final long DEFAULT_DRAIN_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsynchronousEventDelivery.class);
+
+    private final ThreadPoolExecutor[] lanes;
+    private final Semaphore[] laneCapacities;
     private final SynchronousEventDelivery synchronousEventDelivery;
+    private final long drainTimeoutInMs;
+    private final AtomicLong deliveredEventCount = new AtomicLong();
+    private final AtomicLong cumulatedLatencyInMs = new AtomicLong();
 
     public AsynchronousEventDelivery(int threadPoolSize) {
-        this.threadPoolExecutor = Executors.newFixedThreadPool(threadPoolSize);
+        this(threadPoolSize, DEFAULT_QUEUE_CAPACITY, DEFAULT_DRAIN_TIMEOUT_IN_MS);
+    }
+
+    public AsynchronousEventDelivery(int threadPoolSize, int queueCapacity, long drainTimeoutInMs) {
+        if (threadPoolSize < 1) {
+            throw new IllegalArgumentException("threadPoolSize should be strictly positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity should be strictly positive");
+        }
+        this.lanes = new ThreadPoolExecutor[threadPoolSize];
+        this.laneCapacities = new Semaphore[threadPoolSize];
+        for (int i = 0; i < threadPoolSize; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LaneThreadFactory(i), new DropOnShutdownPolicy());
+            laneCapacities[i] = new Semaphore(queueCapacity);
+        }
         this.synchronousEventDelivery = new SynchronousEventDelivery();
+        this.drainTimeoutInMs = drainTimeoutInMs;
     }
 
     @Override
     public void deliver(final MailboxListener mailboxListener, final MailboxListener.Event event) {
-        threadPoolExecutor.submit(new Runnable() {
+        final long enqueuedAt = System.currentTimeMillis();
+        int laneIndex = laneIndexOf(mailboxListener, event);
+        Semaphore capacity = null;
+        if (!isLaneThread(Thread.currentThread())) {
+            capacity = laneCapacities[laneIndex];
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting to submit a mailbox event, event dropped");
+                return;
+            }
+        }
+        lanes[laneIndex].execute(new LaneTask(capacity) {
             @Override
-            public void run() {
+            protected void deliver() {
                 synchronousEventDelivery.deliver(mailboxListener, event);
+                cumulatedLatencyInMs.addAndGet(System.currentTimeMillis() - enqueuedAt);
+                deliveredEventCount.incrementAndGet();
             }
         });
     }
 
+    /**
+     * Return the count of events waiting to be delivered
+     */
+    public int getQueuedEventCount() {
+        int count = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            count += lane.getQueue().size();
+        }
+        return count;
+    }
+
+    /**
+     * Return the count of events delivered since this {@link EventDelivery} was created
+     */
+    public long getDeliveredEventCount() {
+        return deliveredEventCount.get();
+    }
+
+    /**
+     * Return the mean time, in milliseconds, spent by delivered events between their submission and the end of
+     * their processing by the listener
+     */
+    public long getMeanDeliveryLatencyInMs() {
+        long count = deliveredEventCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return cumulatedLatencyInMs.get() / count;
+    }
+
     @PreDestroy
     public void stop() {
-        threadPoolExecutor.shutdownNow();
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + drainTimeoutInMs;
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                lane.awaitTermination(remaining, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int droppedEventCount = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            for (Runnable droppedEvent : lane.shutdownNow()) {
+                // Wakes up the threads waiting for room, their events then being rejected
+                ((LaneTask) droppedEvent).release();
+                droppedEventCount++;
+            }
+        }
+        if (droppedEventCount > 0) {
+            LOGGER.warn(droppedEventCount + " mailbox events were not delivered before shutdown");
+        }
+    }
+
+    int laneIndexOf(MailboxListener mailboxListener, MailboxListener.Event event) {
+        MailboxPath path = event.getMailboxPath();
+        int hash = 31 * System.identityHashCode(mailboxListener) + (path == null ? 0 : path.hashCode());
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private boolean isLaneThread(Thread thread) {
+        return thread instanceof LaneThread && ((LaneThread) thread).getOwner() == this;
+    }
+
+    private class LaneThreadFactory implements ThreadFactory {
+
+        private final int laneNumber;
+
+        public LaneThreadFactory(int laneNumber) {
+            this.laneNumber = laneNumber;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new LaneThread(AsynchronousEventDelivery.this, runnable, "mailbox-event-delivery-" + laneNumber);
+        }
+    }
+
+    private static class LaneThread extends Thread {
+
+        private final AsynchronousEventDelivery owner;
+
+        public LaneThread(AsynchronousEventDelivery owner, Runnable runnable, String name) {
+            super(runnable, name);
+            this.owner = owner;
+        }
+
+        public AsynchronousEventDelivery getOwner() {
+            return owner;
+        }
+    }
+
+    /**
+     * Event queued on a lane, giving back the room it took in the lane capacity once processed. Events delivered
+     * from a lane thread take no room.
+     */
+    private abstract static class LaneTask implements Runnable {
+
+        private final Semaphore capacity;
+
+        public LaneTask(Semaphore capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void run() {
+            try {
+                deliver();
+            } finally {
+                release();
+            }
+        }
+
+        protected abstract void deliver();
+
+        public void release() {
+            if (capacity != null) {
+                capacity.release();
+            }
+        }
+    }
+
+    /**
+     * Lane queues are unbounded, the capacity being enforced upon delivery: events are only rejected once the lane
+     * is shut down
+     */
+    private static class DropOnShutdownPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            ((LaneTask) runnable).release();
+            LOGGER.warn("Mailbox event submitted after shutdown was dropped");
+        }
     }
 }
@@ -41,6 +41,10 @@ public class MixedEventDelivery implements EventDelivery {
         }
     }
 
+    public AsynchronousEventDelivery getAsynchronousEventDelivery() {
+        return asynchronousEventDelivery;
+    }
+
     public void stop() {
         asynchronousEventDelivery.stop();
     }
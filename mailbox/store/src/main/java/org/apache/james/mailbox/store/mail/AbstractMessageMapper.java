@@ -31,6 +31,7 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.transaction.TransactionalMapper;
 
@@ -63,6 +64,19 @@ public abstract class AbstractMessageMapper extends TransactionalMapper implemen
     public long getLastUid(Mailbox mailbox) throws MailboxException {
         return uidProvider.lastUid(mailboxSession, mailbox);
     }
+
+    /**
+     * Compute the counters one by one. Implementations which maintain counters should override this.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox)
+     */
+    public MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException {
+        return new MailboxCounters(countMessagesInMailbox(mailbox),
+            countUnseenMessagesInMailbox(mailbox),
+            findRecentMessageUidsInMailbox(mailbox).size(),
+            getLastUid(mailbox),
+            getHighestModSeq(mailbox));
+    }
     
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#updateFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
@@ -131,6 +145,37 @@ public abstract class AbstractMessageMapper extends TransactionalMapper implemen
         return metaData;
     }
 
+    /**
+     * Copy all the messages using a single mod-sequence for the whole batch
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#copyAll(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    public List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        final List<MessageMetaData> copies = new ArrayList<MessageMetaData>(originals.size());
+        if (originals.isEmpty()) {
+            return copies;
+        }
+        long modSeq = -1;
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        for (MailboxMessage original : originals) {
+            copies.add(copy(mailbox, uidProvider.nextUid(mailboxSession, mailbox), modSeq, original));
+        }
+        return copies;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#moveAll(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    public List<MessageMetaData> moveAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+        final List<MessageMetaData> moved = new ArrayList<MessageMetaData>(originals.size());
+        for (MailboxMessage original : originals) {
+            moved.add(move(mailbox, original));
+        }
+        return moved;
+    }
+
    
     
     
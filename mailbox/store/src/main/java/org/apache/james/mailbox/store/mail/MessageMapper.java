@@ -28,6 +28,7 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.Property;
 import org.apache.james.mailbox.store.transaction.Mapper;
@@ -158,6 +159,29 @@ public interface MessageMapper extends Mapper {
      * @throws StorageException
      */
     MessageMetaData move(Mailbox mailbox,MailboxMessage original) throws MailboxException;
+
+    /**
+     * Copy the given {@link MailboxMessage}'s to a new mailbox and return the {@link MessageMetaData} of the copies, in the same order.
+     * Implementations are free to allocate the uids and mod-sequences of the whole batch at once and to write the copies in parallel,
+     * so callers should prefer this over calling {@link #copy(Mailbox, MailboxMessage)} for each message.
+     * 
+     * @param mailbox the Mailbox to copy to
+     * @param originals the originals to copy
+     * @return metaData of the copies
+     * @throws MailboxException
+     */
+    List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException;
+
+    /**
+     * Move the given {@link MailboxMessage}'s to a new mailbox and return the {@link MessageMetaData} of the moved messages, in the same order.
+     * See {@link #copyAll(Mailbox, List)}
+     * 
+     * @param mailbox the Mailbox to move to
+     * @param originals the originals to move
+     * @return metaData of the moved messages
+     * @throws MailboxException
+     */
+    List<MessageMetaData> moveAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException;
     
     
     /**
@@ -178,6 +202,17 @@ public interface MessageMapper extends Mapper {
      * @throws MailboxException
      */
     long getHighestModSeq(Mailbox mailbox) throws MailboxException;
+
+    /**
+     * Return the message, unseen and recent counts together with the last uid and the highest mod-sequence
+     * of the {@link Mailbox}. Implementations should serve it from maintained counters where possible, as it
+     * gets called for every STATUS request.
+     * 
+     * @param mailbox
+     * @return counters
+     * @throws MailboxException
+     */
+    MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException;
     
     /**
      * Specify what data needs to get filled in a {@link MailboxMessage} before returning it
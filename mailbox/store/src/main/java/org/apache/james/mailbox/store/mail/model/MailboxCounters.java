@@ -0,0 +1,93 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail.model;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * Snapshot of the counters of a {@link Mailbox}. It holds everything needed to answer a STATUS request
+ * so a backend can compute all of them at once.
+ */
+public class MailboxCounters {
+
+    private final long messageCount;
+    private final long unseenCount;
+    private final long recentCount;
+    private final long lastUid;
+    private final long highestModSeq;
+
+    public MailboxCounters(long messageCount, long unseenCount, long recentCount, long lastUid, long highestModSeq) {
+        this.messageCount = messageCount;
+        this.unseenCount = unseenCount;
+        this.recentCount = recentCount;
+        this.lastUid = lastUid;
+        this.highestModSeq = highestModSeq;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getUnseenCount() {
+        return unseenCount;
+    }
+
+    public long getRecentCount() {
+        return recentCount;
+    }
+
+    public long getLastUid() {
+        return lastUid;
+    }
+
+    public long getHighestModSeq() {
+        return highestModSeq;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof MailboxCounters) {
+            MailboxCounters other = (MailboxCounters) obj;
+            return messageCount == other.messageCount
+                && unseenCount == other.unseenCount
+                && recentCount == other.recentCount
+                && lastUid == other.lastUid
+                && highestModSeq == other.highestModSeq;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(messageCount, unseenCount, recentCount, lastUid, highestModSeq);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects
+                .toStringHelper(this)
+                .add("messageCount", messageCount)
+                .add("unseenCount", unseenCount)
+                .add("recentCount", recentCount)
+                .add("lastUid", lastUid)
+                .add("highestModSeq", highestModSeq)
+                .toString();
+    }
+}
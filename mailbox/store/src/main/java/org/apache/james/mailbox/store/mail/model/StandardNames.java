@@ -220,4 +220,11 @@ public class StandardNames {
     * @see #NAMESPACE_RFC_2183
     */
    public static final String MIME_CONTENT_DISPOSITION_PARAMETER_SPACE = MIME_CONTENT_DISPOSITION_SPACE + "/params";
+
+   /**
+    * Namespace holding the projection of the MIME structure of composite messages.
+    * As property values are size limited, it is split into chunks named by their
+    * zero padded index.
+    */
+   public static final String MIME_DESCRIPTOR_SPACE = "http://james.apache.org/mailbox/mime-descriptor";
 }
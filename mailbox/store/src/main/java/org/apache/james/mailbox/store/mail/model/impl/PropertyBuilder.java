@@ -36,6 +36,7 @@ import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTE
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTENT_TYPE_PARAMETER_BOUNDARY_NAME;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTENT_TYPE_PARAMETER_CHARSET_NAME;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTENT_TYPE_PARAMETER_SPACE;
+import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_DESCRIPTOR_SPACE;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_MEDIA_TYPE_NAME;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_MIME_TYPE_SPACE;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_SUB_TYPE_NAME;
@@ -49,12 +50,15 @@ import java.util.TreeMap;
 
 import org.apache.james.mailbox.store.mail.model.Property;
 
+import com.google.common.io.BaseEncoding;
+
 /**
  * Builds properties
  */
 public class PropertyBuilder {
     
     private static final int INITIAL_CAPACITY = 32;
+    private static final int MIME_DESCRIPTOR_CHUNK_SIZE = 1000;
 
     private Long textualLineCount;
     private final List<SimpleProperty> properties;
@@ -451,6 +455,46 @@ public class PropertyBuilder {
         setProperty(MIME_CONTENT_LANGUAGE_SPACE, MIME_CONTENT_LANGUAGE_NAME, values);
     }
     
+    /**
+     * Gets the projection of the MIME structure.
+     * 
+     * @return the projection,
+     * or null if this meta data is not present
+     */
+    public byte[] getMimeDescriptor() {
+        SortedMap<String, String> chunks = getProperties(MIME_DESCRIPTOR_SPACE);
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        StringBuilder encoded = new StringBuilder(chunks.size() * MIME_DESCRIPTOR_CHUNK_SIZE);
+        for (String chunk : chunks.values()) {
+            encoded.append(chunk);
+        }
+        try {
+            return BaseEncoding.base64().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the projection of the MIME structure.
+     * 
+     * @param value the projection,
+     * or null to remove
+     */
+    public void setMimeDescriptor(byte[] value) {
+        Map<String, String> chunks = new TreeMap<String, String>();
+        if (value != null) {
+            String encoded = BaseEncoding.base64().encode(value);
+            for (int i = 0; i * MIME_DESCRIPTOR_CHUNK_SIZE < encoded.length(); i++) {
+                int start = i * MIME_DESCRIPTOR_CHUNK_SIZE;
+                chunks.put(String.format("%05d", i), encoded.substring(start, Math.min(encoded.length(), start + MIME_DESCRIPTOR_CHUNK_SIZE)));
+            }
+        }
+        setProperties(MIME_DESCRIPTOR_SPACE, chunks);
+    }
+
     /**
      * Builds a list of properties.
      * @return not null
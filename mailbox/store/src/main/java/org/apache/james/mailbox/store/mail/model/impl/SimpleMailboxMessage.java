@@ -33,6 +33,7 @@ import org.apache.james.mailbox.model.MailboxId;
 import org.apache.james.mailbox.store.mail.model.DelegatingMailboxMessage;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.MessageAttachment;
+import org.apache.james.mailbox.store.streaming.ExposedSharedByteArrayInputStream;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
@@ -53,7 +54,7 @@ public class SimpleMailboxMessage extends DelegatingMailboxMessage {
 
     private static SharedByteArrayInputStream copyFullContent(MailboxMessage original) throws MailboxException {
         try {
-            return new SharedByteArrayInputStream(IOUtils.toByteArray(original.getFullContent()));
+            return new ExposedSharedByteArrayInputStream(IOUtils.toByteArray(original.getFullContent()));
         } catch (IOException e) {
             throw new MailboxException("Unable to parse message", e);
         }
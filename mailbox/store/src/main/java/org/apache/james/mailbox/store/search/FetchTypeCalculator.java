@@ -0,0 +1,113 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.search;
+
+import java.util.List;
+
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+
+/**
+ * Computes the smallest {@link FetchType} allowing to evaluate a {@link SearchQuery} with {@link MessageSearches}.
+ *
+ * Flags, sizes, dates, uids and mod-sequences are part of the message metadata: queries only relying on them can be
+ * answered without loading any message content.
+ */
+public class FetchTypeCalculator {
+
+    public static FetchType forQuery(SearchQuery query) {
+        FetchType criteriaFetchType = forCriteria(query.getCriterias());
+        if (criteriaFetchType == FetchType.Full) {
+            return FetchType.Full;
+        }
+        return max(criteriaFetchType, forSorts(query.getSorts()));
+    }
+
+    private static FetchType forCriteria(List<Criterion> criteria) {
+        FetchType result = FetchType.Metadata;
+        if (criteria == null) {
+            return result;
+        }
+        for (Criterion criterion : criteria) {
+            result = max(result, forCriterion(criterion));
+            if (result == FetchType.Full) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    private static FetchType forCriterion(Criterion criterion) {
+        if (criterion instanceof SearchQuery.ConjunctionCriterion) {
+            return forCriteria(((SearchQuery.ConjunctionCriterion) criterion).getCriteria());
+        }
+        if (criterion instanceof SearchQuery.HeaderCriterion) {
+            return FetchType.Headers;
+        }
+        if (criterion instanceof SearchQuery.InternalDateCriterion
+            || criterion instanceof SearchQuery.SizeCriterion
+            || criterion instanceof SearchQuery.UidCriterion
+            || criterion instanceof SearchQuery.FlagCriterion
+            || criterion instanceof SearchQuery.CustomFlagCriterion
+            || criterion instanceof SearchQuery.ModSeqCriterion
+            || criterion instanceof SearchQuery.AllCriterion) {
+            return FetchType.Metadata;
+        }
+        // Text criteria, and unknown ones, need the whole content
+        return FetchType.Full;
+    }
+
+    private static FetchType forSorts(List<Sort> sorts) {
+        FetchType result = FetchType.Metadata;
+        if (sorts == null) {
+            return result;
+        }
+        for (Sort sort : sorts) {
+            switch (sort.getSortClause()) {
+            case Arrival:
+            case Size:
+            case Uid:
+                break;
+            default:
+                result = FetchType.Headers;
+            }
+        }
+        return result;
+    }
+
+    private static FetchType max(FetchType fetchType1, FetchType fetchType2) {
+        if (fetchType1 == FetchType.Full || fetchType2 == FetchType.Full) {
+            return FetchType.Full;
+        }
+        if (fetchType1 == FetchType.Metadata) {
+            return fetchType2;
+        }
+        if (fetchType2 == FetchType.Metadata) {
+            return fetchType1;
+        }
+        if (fetchType1 == fetchType2) {
+            return fetchType1;
+        }
+        // Headers and Body
+        return FetchType.Full;
+    }
+}
@@ -26,14 +26,13 @@ import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.io.StringReader;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeSet;
 
@@ -106,7 +105,8 @@ public class MessageSearches implements Iterable<Long> {
                 }
             }
         }
-        Set<Long> uids = new HashSet<Long>();
+        // keep the order of the sorted matches
+        List<Long> uids = new ArrayList<Long>(matched.size());
         Iterator<MailboxMessage> matchedIt = matched.iterator();
         while (matchedIt.hasNext()) {
             uids.add(matchedIt.next().getUid());
@@ -125,6 +125,8 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
         MessageMapper mapper = messageMapperFactory.getMessageMapper(session);
 
         final SortedSet<MailboxMessage> hitSet = new TreeSet<MailboxMessage>();
+        // only load the message content when the query needs it
+        final FetchType fetchType = FetchTypeCalculator.forQuery(query);
 
         UidCriterion uidCrit = findConjugatedUidCriterion(query.getCriterias());
         if (uidCrit != null) {
@@ -132,14 +134,14 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
             // only fetching this uid range
             NumericRange[] ranges = uidCrit.getOperator().getRange();
             for (NumericRange r : ranges) {
-                Iterator<MailboxMessage> it = mapper.findInMailbox(mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), FetchType.Metadata, -1);
+                Iterator<MailboxMessage> it = mapper.findInMailbox(mailbox, MessageRange.range(r.getLowValue(), r.getHighValue()), fetchType, -1);
                 while (it.hasNext()) {
                     hitSet.add(it.next());
                 }
             }
         } else {
         	// we have to fetch all messages
-            Iterator<MailboxMessage> messages = mapper.findInMailbox(mailbox, MessageRange.all(), FetchType.Full, -1);
+            Iterator<MailboxMessage> messages = mapper.findInMailbox(mailbox, MessageRange.all(), fetchType, -1);
             while(messages.hasNext()) {
             	MailboxMessage m = messages.next();
             	hitSet.add(m);
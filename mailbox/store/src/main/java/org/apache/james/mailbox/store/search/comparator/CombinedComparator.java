@@ -82,6 +82,7 @@ public class CombinedComparator implements Comparator<MailboxMessage>{
                     break;
                 case SentDate:
                     comparator = SentDateComparator.sentDate(reverse);
+                    break;
                 case DisplayFrom:
                     comparator = HeaderDisplayComparator.from(reverse);
                     break;
@@ -95,6 +96,9 @@ public class CombinedComparator implements Comparator<MailboxMessage>{
                 comps.add(comparator);
             }
         }
+        // Messages which are equal according to the requested sorts are
+        // ordered by uid, as required by RFC5256
+        comps.add(UidComparator.uid(false));
         return new CombinedComparator(comps.toArray(new Comparator[0]));
     }
 
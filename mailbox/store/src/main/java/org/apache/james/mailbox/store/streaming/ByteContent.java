@@ -22,7 +22,6 @@
  */
 package org.apache.james.mailbox.store.streaming;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -48,7 +47,7 @@ public final class ByteContent implements Content {
 
     @Override
     public InputStream getInputStream() throws IOException {
-        return new ByteArrayInputStream(contents);
+        return new ExposedSharedByteArrayInputStream(contents);
     }
 
 
@@ -0,0 +1,62 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.james.mailbox.model.ByteBufferBacked;
+
+/**
+ * {@link SharedByteArrayInputStream} which gives access to the remaining octets as a {@link ByteBuffer}, so they can
+ * be written out without being copied. Sub streams created via {@link #newStream(long, long)} offer the same access.
+ */
+public class ExposedSharedByteArrayInputStream extends SharedByteArrayInputStream implements ByteBufferBacked {
+
+    public ExposedSharedByteArrayInputStream(byte[] buf) {
+        super(buf);
+    }
+
+    public ExposedSharedByteArrayInputStream(byte[] buf, int offset, int length) {
+        super(buf, offset, length);
+    }
+
+    /**
+     * @see javax.mail.util.SharedByteArrayInputStream#newStream(long, long)
+     */
+    @Override
+    public InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start < 0");
+        }
+        if (end == -1) {
+            end = count - this.start;
+        }
+        return new ExposedSharedByteArrayInputStream(buf, this.start + (int) start, (int) (end - start));
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.ByteBufferBacked#asByteBuffer()
+     */
+    public synchronized ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, pos, count - pos).slice().asReadOnlyBuffer();
+    }
+}
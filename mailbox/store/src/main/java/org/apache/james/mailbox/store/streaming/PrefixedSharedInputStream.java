@@ -0,0 +1,135 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * {@link SharedInputStream} which prepends a few bytes to the content of
+ * another {@link SharedInputStream}, without copying it.
+ * 
+ * This is used to add per recipient header lines to a message which is
+ * shared by several recipients.
+ */
+public class PrefixedSharedInputStream extends InputStream implements SharedInputStream {
+
+    private final byte[] prefix;
+    private final SharedInputStream content;
+    private final long start;
+    private final long end;
+    private long position;
+    private InputStream contentIn;
+
+    public PrefixedSharedInputStream(byte[] prefix, SharedInputStream content) {
+        this(prefix, content, 0, -1);
+    }
+
+    private PrefixedSharedInputStream(byte[] prefix, SharedInputStream content, long start, long end) {
+        this.prefix = prefix;
+        this.content = content;
+        this.start = start;
+        this.end = end;
+        this.position = start;
+    }
+
+    @Override
+    public long getPosition() {
+        return position - start;
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start must be positive");
+        }
+        long newEnd;
+        if (end == -1) {
+            newEnd = this.end;
+        } else {
+            newEnd = this.start + end;
+        }
+        return new PrefixedSharedInputStream(prefix, content, this.start + start, newEnd);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (isAtEnd()) {
+            return -1;
+        }
+        if (position < prefix.length) {
+            return prefix[(int) position++] & 0xff;
+        }
+        int b = content().read();
+        if (b != -1) {
+            position++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (isAtEnd()) {
+            return -1;
+        }
+        if (position < prefix.length) {
+            long count = Math.min(len, prefix.length - position);
+            if (end != -1) {
+                count = Math.min(count, end - position);
+            }
+            System.arraycopy(prefix, (int) position, b, off, (int) count);
+            position += count;
+            return (int) count;
+        }
+        int count = content().read(b, off, len);
+        if (count > 0) {
+            position += count;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The shared content belongs to the caller, only close the sub stream
+        if (contentIn != null) {
+            contentIn.close();
+            contentIn = null;
+        }
+    }
+
+    private boolean isAtEnd() {
+        return end != -1 && position >= end;
+    }
+
+    private InputStream content() {
+        if (contentIn == null) {
+            long contentEnd = -1;
+            if (end != -1) {
+                contentEnd = end - prefix.length;
+            }
+            contentIn = content.newStream(position - prefix.length, contentEnd);
+        }
+        return contentIn;
+    }
+}
@@ -0,0 +1,174 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.mail.util.SharedFileInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * {@link OutputStream} which keeps the written bytes in memory until a
+ * threshold is reached. Once the threshold is exceeded the buffered bytes are
+ * spilled to a temporary file and every further write goes directly to that
+ * file.
+ *
+ * The written content can then be read back via {@link #getSharedInputStream()}
+ * without copying the in-memory buffer.
+ *
+ * IMPORTANT: This class is not thread-safe!
+ */
+public class SpoolingOutputStream extends OutputStream {
+
+    private final int threshold;
+    private ExposedByteArrayOutputStream memory;
+    private File file;
+    private OutputStream fileOut;
+    private long size = 0;
+    private boolean closed = false;
+
+    /**
+     * @param threshold
+     *            maximum count of bytes kept in memory. Use 0 to always spool
+     *            to a temporary file
+     */
+    public SpoolingOutputStream(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        this.threshold = threshold;
+        this.memory = new ExposedByteArrayOutputStream(Math.min(threshold, 4096));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        current().write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        current().write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+    }
+
+    /**
+     * Return the count of bytes written so far
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return true if the content was spilled to a temporary file
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * Return an {@link InputStream} which also implements
+     * {@link javax.mail.internet.SharedInputStream} and gives access to the
+     * written content. In memory content is returned as an
+     * {@link ExposedSharedByteArrayInputStream}. This closes the {@link SpoolingOutputStream}.
+     */
+    public InputStream getSharedInputStream() throws IOException {
+        close();
+        if (file == null) {
+            return new ExposedSharedByteArrayInputStream(memory.getBuffer(), 0, memory.size());
+        }
+        return new SharedFileInputStream(file);
+    }
+
+    /**
+     * Release the in memory buffer and delete the temporary file if one was
+     * created. Streams returned by {@link #getSharedInputStream()} must be
+     * closed before.
+     */
+    public void dispose() {
+        IOUtils.closeQuietly(this);
+        memory = null;
+        if (file != null) {
+            if (!file.delete()) {
+                // Don't throw an IOException. The temporary file will be
+                // deleted hopefully some day
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    private OutputStream current() throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed");
+        }
+        if (fileOut != null) {
+            return fileOut;
+        }
+        return memory;
+    }
+
+    private void ensureCapacity(int len) throws IOException {
+        if (file == null && size + len > threshold) {
+            file = File.createTempFile("imap", ".msg");
+            fileOut = new BufferedOutputStream(new FileOutputStream(file));
+            memory.writeTo(fileOut);
+            memory = new ExposedByteArrayOutputStream(0);
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} which gives access to its internal buffer
+     * so the content does not need to be copied when read back
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        public ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        public byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -30,10 +30,15 @@ import java.util.List;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 
+import org.apache.commons.io.IOUtils;
+
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageRange;
@@ -49,6 +54,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 
 public abstract class AbstractMailboxManagerAttachmentTest {
     private static final String USERNAME = "user@domain.tld";
@@ -207,5 +213,49 @@ public abstract class AbstractMailboxManagerAttachmentTest {
         List<MessageAttachment> user2Attachments = user2Messages.next().getAttachments();
         assertThat(attachments.equals(user2Attachments)).isTrue();
     }
-}
 
+    @Test
+    public void appendMessageToSeveralTargetsShouldStoreTheMessageWithAttachmentsForEachTarget() throws Exception {
+        String user2 = "user2@domain.tld";
+        MailboxSession user2MailboxSession = new MockMailboxSession(user2);
+        MessageMapper user2MessageMapper = getMailboxSessionMapperFactory().getMessageMapper(user2MailboxSession);
+        MailboxMapper user2MailboxMapper = getMailboxSessionMapperFactory().getMailboxMapper(user2MailboxSession);
+        MailboxPath user2InboxPath = new MailboxPath(MailboxConstants.USER_NAMESPACE, user2, "INBOX");
+        mailboxManager.createMailbox(user2InboxPath, user2MailboxSession);
+        Mailbox user2Inbox = user2MailboxMapper.findMailboxByPath(user2InboxPath);
+        byte[] deliveredTo = "Delivered-To: user2@domain.tld\r\n".getBytes();
+
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
+        List<AppendResult> results = mailboxManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, ImmutableList.of(
+            new AppendTarget(mailboxSession, inboxPath, true, new Flags(Flags.Flag.RECENT)),
+            new AppendTarget(user2MailboxSession, user2InboxPath, true, new Flags(Flags.Flag.RECENT), deliveredTo)));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(1).isSuccess()).isTrue();
+
+        MailboxMessage message = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Full, 1).next();
+        MailboxMessage user2Message = user2MessageMapper.findInMailbox(user2Inbox, MessageRange.all(), FetchType.Full, 1).next();
+        assertThat(message.getAttachments()).hasSize(1);
+        assertThat(user2Message.getAttachments()).isEqualTo(message.getAttachments());
+        assertThat(user2Message.getFullContentOctets()).isEqualTo(message.getFullContentOctets() + deliveredTo.length);
+        assertThat(user2Message.getBodyOctets()).isEqualTo(message.getBodyOctets());
+        assertThat(IOUtils.toString(user2Message.getFullContent()))
+            .isEqualTo(new String(deliveredTo) + IOUtils.toString(message.getFullContent()));
+    }
+
+    @Test
+    public void appendMessageToSeveralTargetsShouldReportFailingTargetsWithoutAbortingOthers() throws Exception {
+        MailboxPath missingPath = new MailboxPath(MailboxConstants.USER_NAMESPACE, USERNAME, "missing");
+
+        InputStream mailInputStream = new ByteArrayInputStream("Subject: Test\r\n\r\nBody".getBytes());
+        List<AppendResult> results = mailboxManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, ImmutableList.of(
+            new AppendTarget(mailboxSession, missingPath, true, null),
+            new AppendTarget(mailboxSession, inboxPath, true, null)));
+
+        assertThat(results.get(0).isSuccess()).isFalse();
+        assertThat(results.get(0).getCause()).isInstanceOf(MailboxNotFoundException.class);
+        assertThat(results.get(1).isSuccess()).isTrue();
+        assertThat(messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Full, 1).hasNext()).isTrue();
+    }
+}
@@ -0,0 +1,149 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JVMMailboxPathLockerTest {
+
+    private static final MailboxPath PATH = new MailboxPath("#private", "user", "INBOX");
+    private static final MailboxPath OTHER_PATH = new MailboxPath("#private", "user", "Trash");
+
+    private JVMMailboxPathLocker locker;
+
+    @Before
+    public void setUp() {
+        locker = new JVMMailboxPathLocker();
+    }
+
+    @Test
+    public void executeWithLockShouldReturnExecutionResult() throws Exception {
+        assertThat(locker.executeWithLock(null, PATH, constant(42L), true)).isEqualTo(42L);
+    }
+
+    @Test
+    public void executeWithLockShouldNotKeepLocksOnceReleased() throws Exception {
+        locker.executeWithLock(null, PATH, constant(1L), true);
+        locker.executeWithLock(null, OTHER_PATH, constant(1L), false);
+
+        assertThat(locker.getLockedPathCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void executeWithLockShouldKeepLockWhileHeld() throws Exception {
+        locker.executeWithLock(null, PATH, new LockAwareExecution<Integer>() {
+            @Override
+            public Integer execute() throws MailboxException {
+                assertThat(locker.getLockedPathCount()).isEqualTo(1);
+                return 1;
+            }
+        }, true);
+    }
+
+    @Test
+    public void executeWithLockShouldBeReentrant() throws Exception {
+        Long result = locker.executeWithLock(null, PATH, new LockAwareExecution<Long>() {
+            @Override
+            public Long execute() throws MailboxException {
+                return locker.executeWithLock(null, PATH, constant(2L), true);
+            }
+        }, true);
+
+        assertThat(result).isEqualTo(2L);
+        assertThat(locker.getLockedPathCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void lockCountShouldBeIncrementedOnEachLock() throws Exception {
+        locker.executeWithLock(null, PATH, constant(1L), true);
+        locker.executeWithLock(null, PATH, constant(1L), false);
+
+        assertThat(locker.getLockCount()).isEqualTo(2);
+        assertThat(locker.getContendedLockCount()).isEqualTo(0);
+    }
+
+    @Test(timeout = 10000)
+    public void contendedLockCountShouldBeIncrementedWhenWaitingForAWriteLock() throws Exception {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    locker.executeWithLock(null, PATH, new LockAwareExecution<Void>() {
+                        @Override
+                        public Void execute() throws MailboxException {
+                            locked.countDown();
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return null;
+                        }
+                    }, true);
+                } catch (MailboxException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        holder.start();
+        locked.await(10, TimeUnit.SECONDS);
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    locker.executeWithLock(null, PATH, constant(1L), true);
+                } catch (MailboxException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        waiter.start();
+        while (locker.getContendedLockCount() < 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        holder.join();
+        waiter.join();
+
+        assertThat(locker.getContendedLockCount()).isEqualTo(1);
+        assertThat(locker.getLockedPathCount()).isEqualTo(0);
+    }
+
+    private LockAwareExecution<Long> constant(final Long value) {
+        return new LockAwareExecution<Long>() {
+            @Override
+            public Long execute() throws MailboxException {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.james.mailbox.model.Headers;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.Header;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+public class MimeDescriptorProjectionTest {
+
+    private static final String MESSAGE = "From: Samual Smith <samual@example.org>\r\n"
+            + "Subject: Rhubarb\r\n"
+            + "Content-Type: multipart/mixed; boundary=\"outer\"\r\n"
+            + "\r\n"
+            + "--outer\r\n"
+            + "Content-Type: text/plain; charset=UTF-8\r\n"
+            + "Content-Language: en\r\n"
+            + "\r\n"
+            + "Rhubarb!\r\n"
+            + "Rhubarb!\r\n"
+            + "--outer\r\n"
+            + "Content-Type: message/rfc822\r\n"
+            + "Content-Disposition: attachment; filename=custard.eml\r\n"
+            + "\r\n"
+            + "From: John Smith <john@example.org>\r\n"
+            + "Subject: Custard\r\n"
+            + "Content-Type: text/html\r\n"
+            + "\r\n"
+            + "<p>Custard!</p>\r\n"
+            + "--outer--\r\n";
+
+    private MimeDescriptorImpl original;
+
+    @Before
+    public void setUp() throws Exception {
+        original = MimeDescriptorImpl.build(new ByteArrayInputStream(MESSAGE.getBytes()));
+    }
+
+    @Test
+    public void decodeShouldRestoreTheStructure() throws Exception {
+        MimeDescriptor decoded = MimeDescriptorProjection.decode(MimeDescriptorProjection.encode(original), null);
+
+        assertSameStructure(decoded, original);
+    }
+
+    @Test
+    public void decodeShouldRestoreEmbeddedMessageHeaders() throws Exception {
+        MimeDescriptor decoded = MimeDescriptorProjection.decode(MimeDescriptorProjection.encode(original), null);
+
+        MimeDescriptor embedded = ImmutableList.copyOf(decoded.parts()).get(1).embeddedMessage();
+        assertThat(headerNames(embedded.headers())).containsExactly("From", "Subject", "Content-Type");
+        assertThat(embedded.headers().next().getValue()).isEqualTo("John Smith <john@example.org>");
+    }
+
+    @Test
+    public void decodeShouldReadTopLevelHeadersFromTheResult() throws Exception {
+        Header subject = new ResultHeader("Subject", "Rhubarb");
+        Headers headers = mock(Headers.class);
+        when(headers.headers()).thenReturn(Arrays.<Header>asList(subject).iterator());
+        MessageResult result = mock(MessageResult.class);
+        when(result.getHeaders()).thenReturn(headers);
+
+        MimeDescriptor decoded = MimeDescriptorProjection.decode(MimeDescriptorProjection.encode(original), result);
+
+        assertThat(headerNames(decoded.headers())).containsExactly("Subject");
+    }
+
+    @Test
+    public void isSupportedShouldRejectOtherVersions() throws Exception {
+        byte[] projection = MimeDescriptorProjection.encode(original);
+        projection[0] = MimeDescriptorProjection.VERSION + 1;
+
+        assertThat(MimeDescriptorProjection.isSupported(projection)).isFalse();
+        assertThat(MimeDescriptorProjection.isSupported(null)).isFalse();
+    }
+
+    @Test
+    public void projectionShouldSurviveBeingSplitInProperties() throws Exception {
+        byte[] projection = Strings.repeat("0123456789", 500).getBytes();
+        PropertyBuilder builder = new PropertyBuilder();
+        builder.setMimeDescriptor(projection);
+
+        assertThat(new PropertyBuilder(builder.toProperties()).getMimeDescriptor()).isEqualTo(projection);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeShouldRejectNegativeStringLength() throws Exception {
+        MimeDescriptorProjection.decode(projectionWithMimeTypeLength(-5), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeShouldRejectStringLengthLargerThanTheProjection() throws Exception {
+        MimeDescriptorProjection.decode(projectionWithMimeTypeLength(Integer.MAX_VALUE), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeShouldRejectTruncatedProjection() throws Exception {
+        byte[] projection = MimeDescriptorProjection.encode(original);
+
+        MimeDescriptorProjection.decode(Arrays.copyOf(projection, projection.length / 2), null);
+    }
+
+    private byte[] projectionWithMimeTypeLength(int length) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(MimeDescriptorProjection.VERSION);
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        out.writeLong(10);
+        out.writeLong(1);
+        out.writeInt(length);
+        out.write("text".getBytes());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void assertSameStructure(MimeDescriptor actual, MimeDescriptor expected) throws Exception {
+        assertThat(actual.getMimeType()).isEqualTo(expected.getMimeType());
+        assertThat(actual.getMimeSubType()).isEqualTo(expected.getMimeSubType());
+        assertThat(actual.getBodyOctets()).isEqualTo(expected.getBodyOctets());
+        assertThat(actual.getLines()).isEqualTo(expected.getLines());
+        assertThat(actual.getTransferContentEncoding()).isEqualTo(expected.getTransferContentEncoding());
+        assertThat(actual.getDisposition()).isEqualTo(expected.getDisposition());
+        assertThat(actual.getDispositionParams()).isEqualTo(expected.getDispositionParams());
+        assertThat(actual.contentTypeParameters()).isEqualTo(expected.contentTypeParameters());
+        assertThat(actual.getLanguages()).isEqualTo(expected.getLanguages());
+
+        if (expected.embeddedMessage() == null) {
+            assertThat(actual.embeddedMessage()).isNull();
+        } else {
+            assertSameStructure(actual.embeddedMessage(), expected.embeddedMessage());
+        }
+
+        List<MimeDescriptor> actualParts = ImmutableList.copyOf(actual.parts());
+        List<MimeDescriptor> expectedParts = ImmutableList.copyOf(expected.parts());
+        assertThat(actualParts).hasSize(expectedParts.size());
+        for (int i = 0; i < expectedParts.size(); i++) {
+            assertSameStructure(actualParts.get(i), expectedParts.get(i));
+        }
+    }
+
+    private List<String> headerNames(Iterator<Header> headers) throws Exception {
+        ImmutableList.Builder<String> names = ImmutableList.builder();
+        while (headers.hasNext()) {
+            names.add(headers.next().getName());
+        }
+        return names.build();
+    }
+}
@@ -20,23 +20,49 @@
 package org.apache.james.mailbox.store;
 
 import static org.assertj.core.api.Assertions.assertThat;
-
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
 import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.apache.james.mailbox.model.MailboxMetaData;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MailboxQuery;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class StoreMailboxManagerTest {
 
     public static final int UID_VALIDITY = 42;
+    private static final MailboxPath USER_BASE = new MailboxPath("namespace", "user", "");
     private StoreMailboxManager storeMailboxManager;
+    private MailboxMapper mailboxMapper;
+    private MailboxSession session;
 
     @Before
-    public void setUp() {
-        storeMailboxManager = new StoreMailboxManager(null, new MockAuthenticator(), new JVMMailboxPathLocker(), new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver(), new MessageParser());
+    public void setUp() throws Exception {
+        mailboxMapper = mock(MailboxMapper.class);
+        session = mock(MailboxSession.class);
+        when(session.getPathDelimiter()).thenReturn('.');
+        MailboxSessionMapperFactory mailboxSessionMapperFactory = mock(MailboxSessionMapperFactory.class);
+        when(mailboxSessionMapperFactory.getMailboxMapper(session)).thenReturn(mailboxMapper);
+        storeMailboxManager = new StoreMailboxManager(mailboxSessionMapperFactory, new MockAuthenticator(), new JVMMailboxPathLocker(), new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver(), new MessageParser());
     }
 
     @Test
@@ -98,6 +124,114 @@ public class StoreMailboxManagerTest {
             new SimpleMailbox(new MailboxPath("namespace2", null, "name"), UID_VALIDITY))).isFalse();
     }
 
+    @Test
+    public void searchShouldReturnNoChildrenWhenNoHierarchy() throws Exception {
+        givenMailboxes(new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "Sent"), UID_VALIDITY));
+
+        List<MailboxMetaData> results = storeMailboxManager.search(query("*"), session);
+
+        assertThat(inferiors(results)).containsOnly(MailboxMetaData.Children.HAS_NO_CHILDREN);
+    }
+
+    @Test
+    public void searchShouldReturnChildrenForAllAncestors() throws Exception {
+        givenMailboxes(new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX.work"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX.work.todo"), UID_VALIDITY));
+
+        List<MailboxMetaData> results = storeMailboxManager.search(query("*"), session);
+
+        assertThat(inferiors(results)).containsExactly(MailboxMetaData.Children.HAS_CHILDREN,
+            MailboxMetaData.Children.HAS_CHILDREN,
+            MailboxMetaData.Children.HAS_NO_CHILDREN);
+    }
+
+    @Test
+    public void searchShouldReturnChildrenWhenOnlyDescendantsExist() throws Exception {
+        givenMailboxes(new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX.work.todo"), UID_VALIDITY));
+
+        List<MailboxMetaData> results = storeMailboxManager.search(query("*"), session);
+
+        assertThat(inferiors(results)).containsExactly(MailboxMetaData.Children.HAS_CHILDREN,
+            MailboxMetaData.Children.HAS_NO_CHILDREN);
+    }
+
+    @Test
+    public void searchShouldUseTheSessionDelimiter() throws Exception {
+        when(session.getPathDelimiter()).thenReturn('/');
+        givenMailboxes(new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX.work"), UID_VALIDITY),
+            new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX/work.todo"), UID_VALIDITY));
+
+        List<MailboxMetaData> results = storeMailboxManager.search(new MailboxQuery(USER_BASE, "*", '/'), session);
+
+        assertThat(inferiors(results)).containsExactly(MailboxMetaData.Children.HAS_CHILDREN,
+            MailboxMetaData.Children.HAS_NO_CHILDREN,
+            MailboxMetaData.Children.HAS_NO_CHILDREN);
+    }
+
+    @Test
+    public void searchShouldLookUpTheExactNameWhenNoWildcard() throws Exception {
+        Mailbox inbox = new SimpleMailbox(new MailboxPath("namespace", "user", "INBOX"), UID_VALIDITY);
+        when(mailboxMapper.findMailboxByPath(new MailboxPath("namespace", "user", "INBOX"))).thenReturn(inbox);
+        when(mailboxMapper.hasChildren(inbox, '.')).thenReturn(true);
+
+        List<MailboxMetaData> results = storeMailboxManager.search(query("INBOX"), session);
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getPath()).isEqualTo(new MailboxPath("namespace", "user", "INBOX"));
+        assertThat(inferiors(results)).containsOnly(MailboxMetaData.Children.HAS_CHILDREN);
+        verify(mailboxMapper, never()).findMailboxWithPathLike(any(MailboxPath.class));
+    }
+
+    @Test
+    public void searchShouldReturnEmptyWhenTheExactNameDoesNotExist() throws Exception {
+        when(mailboxMapper.findMailboxByPath(any(MailboxPath.class))).thenThrow(new MailboxNotFoundException("INBOX"));
+
+        assertThat(storeMailboxManager.search(query("INBOX"), session)).isEmpty();
+    }
+
+    private MailboxQuery query(String expression) {
+        return new MailboxQuery(USER_BASE, expression, '.');
+    }
+
+    private List<MailboxMetaData.Children> inferiors(List<MailboxMetaData> results) {
+        List<MailboxMetaData.Children> inferiors = new ArrayList<MailboxMetaData.Children>();
+        for (MailboxMetaData result : results) {
+            inferiors.add(result.inferiors());
+        }
+        return inferiors;
+    }
+
+    private void givenMailboxes(final Mailbox... mailboxes) throws Exception {
+        when(mailboxMapper.findMailboxWithPathLike(any(MailboxPath.class))).thenReturn(Arrays.asList(mailboxes));
+        when(mailboxMapper.findMailboxByPath(any(MailboxPath.class))).thenAnswer(new Answer<Mailbox>() {
+            @Override
+            public Mailbox answer(InvocationOnMock invocation) throws Throwable {
+                MailboxPath path = (MailboxPath) invocation.getArguments()[0];
+                for (Mailbox mailbox : mailboxes) {
+                    if (new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName()).equals(path)) {
+                        return mailbox;
+                    }
+                }
+                throw new MailboxNotFoundException(path);
+            }
+        });
+        when(mailboxMapper.hasChildren(any(Mailbox.class), eq('.'))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                Mailbox parent = (Mailbox) invocation.getArguments()[0];
+                for (Mailbox mailbox : mailboxes) {
+                    if (mailbox.getName().startsWith(parent.getName() + '.')) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
 
 }
 
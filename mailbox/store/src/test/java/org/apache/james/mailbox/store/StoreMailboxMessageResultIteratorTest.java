@@ -40,6 +40,7 @@ import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
@@ -164,11 +165,26 @@ public class StoreMailboxMessageResultIteratorTest {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public MailboxCounters getMailboxCounters(Mailbox mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public MessageMetaData move(Mailbox mailbox, MailboxMessage original) throws MailboxException {
             throw new UnsupportedOperationException();
 
         }
+
+        @Override
+        public List<MessageMetaData> copyAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageMetaData> moveAll(Mailbox mailbox, List<MailboxMessage> originals) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
     }
 
     @Test
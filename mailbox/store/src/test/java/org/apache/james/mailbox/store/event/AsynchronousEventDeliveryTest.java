@@ -19,15 +19,21 @@
 
 package org.apache.james.mailbox.store.event;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -74,4 +80,150 @@ public class AsynchronousEventDeliveryTest {
         verify(mailboxListener, timeout(ONE_MINUTE).times(operationCount)).event(event);
     }
 
+    @Test
+    public void deliverShouldKeepOrderOfEventsForAListenerAndAMailbox() throws Exception {
+        MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+        RecordingListener listener = new RecordingListener();
+        int operationCount = 100;
+        for (int i = 0; i < operationCount; i++) {
+            asynchronousEventDelivery.deliver(listener, new NumberedEvent(path, i));
+        }
+        asynchronousEventDelivery.stop();
+
+        assertThat(listener.numbers).hasSize(operationCount).isSorted();
+    }
+
+    @Test
+    public void stopShouldDeliverQueuedEvents() throws Exception {
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), null) {};
+        int operationCount = 10;
+        for (int i = 0; i < operationCount; i++) {
+            asynchronousEventDelivery.deliver(mailboxListener, event);
+        }
+        asynchronousEventDelivery.stop();
+
+        verify(mailboxListener, times(operationCount)).event(event);
+        assertThat(asynchronousEventDelivery.getQueuedEventCount()).isEqualTo(0);
+        assertThat(asynchronousEventDelivery.getDeliveredEventCount()).isEqualTo(operationCount);
+    }
+
+    @Test
+    public void deliverShouldWorkWhenTheQueueIsFull() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(1, 1, ONE_MINUTE);
+        MailboxListener.Event event = new MailboxListener.Event(new MockMailboxSession("test"), null) {};
+        int operationCount = 10;
+        for (int i = 0; i < operationCount; i++) {
+            asynchronousEventDelivery.deliver(mailboxListener, event);
+        }
+        verify(mailboxListener, timeout(ONE_MINUTE).times(operationCount)).event(event);
+    }
+
+    @Test
+    public void deliverFromAListenerShouldNotBlockWhenItsQueueIsFull() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(1, 1, ONE_MINUTE);
+        final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+        final int redeliveredCount = 10;
+        final CountDownLatch received = new CountDownLatch(redeliveredCount + 1);
+        MailboxListener redeliveringListener = new RecordingListener() {
+            @Override
+            public void event(Event event) {
+                if (((NumberedEvent) event).number == 0) {
+                    for (int i = 1; i <= redeliveredCount; i++) {
+                        asynchronousEventDelivery.deliver(this, new NumberedEvent(path, i));
+                    }
+                }
+                received.countDown();
+            }
+        };
+
+        asynchronousEventDelivery.deliver(redeliveringListener, new NumberedEvent(path, 0));
+
+        assertThat(received.await(1, TimeUnit.MINUTES)).isTrue();
+    }
+
+    @Test
+    public void deliverFromAListenerShouldKeepOrderOfEventsWhenAnotherQueueIsFull() throws Exception {
+        asynchronousEventDelivery.stop();
+        asynchronousEventDelivery = new AsynchronousEventDelivery(2, 1, ONE_MINUTE);
+        final MailboxPath recordedPath = new MailboxPath("#private", "user", "INBOX");
+        final CountDownLatch releaseRecorder = new CountDownLatch(1);
+        final RecordingListener recorder = new RecordingListener() {
+            @Override
+            public void event(Event event) {
+                super.event(event);
+                if (((NumberedEvent) event).number == 0) {
+                    awaitUninterruptibly(releaseRecorder);
+                }
+            }
+        };
+        final CountDownLatch emitted = new CountDownLatch(1);
+        MailboxListener emitter = new RecordingListener() {
+            @Override
+            public void event(Event event) {
+                for (int i = 2; i <= 5; i++) {
+                    asynchronousEventDelivery.deliver(recorder, new NumberedEvent(recordedPath, i));
+                }
+                emitted.countDown();
+            }
+        };
+        NumberedEvent trigger = eventOnAnotherLane(emitter, asynchronousEventDelivery.laneIndexOf(recorder, new NumberedEvent(recordedPath, 0)));
+
+        asynchronousEventDelivery.deliver(recorder, new NumberedEvent(recordedPath, 0));
+        asynchronousEventDelivery.deliver(recorder, new NumberedEvent(recordedPath, 1));
+        asynchronousEventDelivery.deliver(emitter, trigger);
+
+        assertThat(emitted.await(1, TimeUnit.MINUTES)).isTrue();
+        releaseRecorder.countDown();
+        asynchronousEventDelivery.stop();
+        assertThat(recorder.numbers).containsExactly(0, 1, 2, 3, 4, 5);
+    }
+
+    private NumberedEvent eventOnAnotherLane(MailboxListener listener, int laneIndex) {
+        for (int i = 0; ; i++) {
+            NumberedEvent event = new NumberedEvent(new MailboxPath("#private", "user", "mailbox" + i), 0);
+            if (asynchronousEventDelivery.laneIndexOf(listener, event) != laneIndex) {
+                return event;
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class NumberedEvent extends MailboxListener.Event {
+        private final int number;
+
+        public NumberedEvent(MailboxPath path, int number) {
+            super(new MockMailboxSession("test"), path);
+            this.number = number;
+        }
+    }
+
+    private static class RecordingListener implements MailboxListener {
+        private final List<Integer> numbers = new CopyOnWriteArrayList<Integer>();
+
+        @Override
+        public ListenerType getType() {
+            return ListenerType.ONCE;
+        }
+
+        @Override
+        public ExecutionMode getExecutionMode() {
+            return ExecutionMode.ASYNCHRONOUS;
+        }
+
+        @Override
+        public void event(Event event) {
+            numbers.add(((NumberedEvent) event).number);
+        }
+    }
+
 }
@@ -372,6 +372,53 @@ public class MessageMapperTest<T extends MapperProvider> {
         assertThat(messageMapper.findRecentMessageUidsInMailbox(benwaInboxMailbox)).containsOnly(message2.getUid(), message4.getUid());
     }
 
+    @ContractTest
+    public void getMailboxCountersShouldReturnEmptyCountersWhenNoMessages() throws MailboxException {
+        MailboxCounters counters = messageMapper.getMailboxCounters(benwaInboxMailbox);
+        assertThat(counters.getMessageCount()).isEqualTo(0);
+        assertThat(counters.getUnseenCount()).isEqualTo(0);
+        assertThat(counters.getRecentCount()).isEqualTo(0);
+    }
+
+    @ContractTest
+    public void getMailboxCountersShouldReturnAllCountersOfTheMailbox() throws MailboxException {
+        saveMessages();
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REPLACE), MessageRange.one(message2.getUid()));
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.SEEN), FlagsUpdateMode.REPLACE), MessageRange.one(message4.getUid()));
+        messageMapper.updateFlags(benwaWorkMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REPLACE), MessageRange.one(message6.getUid()));
+
+        MailboxCounters counters = messageMapper.getMailboxCounters(benwaInboxMailbox);
+        assertThat(counters.getMessageCount()).isEqualTo(5);
+        assertThat(counters.getUnseenCount()).isEqualTo(4);
+        assertThat(counters.getRecentCount()).isEqualTo(1);
+        assertThat(counters.getLastUid()).isEqualTo(messageMapper.getLastUid(benwaInboxMailbox));
+        assertThat(counters.getHighestModSeq()).isEqualTo(messageMapper.getHighestModSeq(benwaInboxMailbox));
+    }
+
+    @ContractTest
+    public void getMailboxCountersShouldNotCountMessagesNoLongerRecent() throws MailboxException {
+        saveMessages();
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REPLACE), MessageRange.one(message2.getUid()));
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REPLACE), MessageRange.one(message3.getUid()));
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REMOVE), MessageRange.one(message2.getUid()));
+
+        assertThat(messageMapper.getMailboxCounters(benwaInboxMailbox).getRecentCount()).isEqualTo(1);
+    }
+
+    @ContractTest
+    public void getMailboxCountersShouldNotCountExpungedRecentMessages() throws MailboxException {
+        saveMessages();
+        Flags recentAndDeleted = new FlagsBuilder().add(Flags.Flag.RECENT, Flags.Flag.DELETED).build();
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(recentAndDeleted, FlagsUpdateMode.REPLACE), MessageRange.one(message2.getUid()));
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flags.Flag.RECENT), FlagsUpdateMode.REPLACE), MessageRange.one(message3.getUid()));
+
+        messageMapper.expungeMarkedForDeletionInMailbox(benwaInboxMailbox, MessageRange.all());
+
+        MailboxCounters counters = messageMapper.getMailboxCounters(benwaInboxMailbox);
+        assertThat(counters.getMessageCount()).isEqualTo(4);
+        assertThat(counters.getRecentCount()).isEqualTo(1);
+    }
+
     @ContractTest
     public void findFirstUnseenMessageUidShouldReturnNullWhenNoUnseenMessagesCanBeFound() throws MailboxException {
         assertThat(messageMapper.findFirstUnseenMessageUid(benwaInboxMailbox)).isNull();
@@ -527,6 +574,40 @@ public class MessageMapperTest<T extends MapperProvider> {
         assertThat(messageMapper.getHighestModSeq(benwaInboxMailbox)).isGreaterThan(modSeq);
     }
 
+    @ContractTest
+    public void copyAllShouldAssignIncreasingUidsInOrder() throws MailboxException, IOException {
+        saveMessages();
+        long uid = messageMapper.getLastUid(benwaInboxMailbox);
+        List<MessageMetaData> copies = messageMapper.copyAll(benwaInboxMailbox, ImmutableList.<MailboxMessage>of(
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message5),
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message6)));
+        assertThat(copies).hasSize(2);
+        assertThat(copies.get(0).getUid()).isGreaterThan(uid);
+        assertThat(copies.get(1).getUid()).isGreaterThan(copies.get(0).getUid());
+        assertThat(messageMapper.getLastUid(benwaInboxMailbox)).isEqualTo(copies.get(1).getUid());
+    }
+
+    @ContractTest
+    public void copyAllShouldIncrementMessageCountAndUnSeenMessageCount() throws MailboxException, IOException {
+        saveMessages();
+        messageMapper.copyAll(benwaInboxMailbox, ImmutableList.<MailboxMessage>of(
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message5),
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message6)));
+        assertThat(messageMapper.countMessagesInMailbox(benwaInboxMailbox)).isEqualTo(7);
+        assertThat(messageMapper.countUnseenMessagesInMailbox(benwaInboxMailbox)).isEqualTo(7);
+    }
+
+    @ContractTest
+    public void copyAllShouldIncrementModSeq() throws MailboxException, IOException {
+        saveMessages();
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        List<MessageMetaData> copies = messageMapper.copyAll(benwaInboxMailbox, ImmutableList.<MailboxMessage>of(
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message5),
+            SimpleMailboxMessage.copy(benwaInboxMailbox.getMailboxId(), message6)));
+        assertThat(copies.get(0).getModSeq()).isGreaterThan(modSeq);
+        assertThat(copies.get(1).getModSeq()).isGreaterThan(modSeq);
+    }
+
     @ContractTest
     public void copyShouldCreateAMessageInDestination() throws MailboxException, IOException {
         saveMessages();
@@ -22,6 +22,7 @@ package org.apache.james.mailbox.store.mail.model;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.Date;
+import java.util.List;
 
 import javax.mail.Flags;
 import javax.mail.util.SharedByteArrayInputStream;
@@ -43,6 +44,8 @@ import org.xenei.junit.contract.Contract;
 import org.xenei.junit.contract.ContractTest;
 import org.xenei.junit.contract.IProducer;
 
+import com.google.common.collect.ImmutableList;
+
 @Contract(MapperProvider.class)
 public class MessageMoveTest<T extends MapperProvider> {
 
@@ -138,6 +141,22 @@ public class MessageMoveTest<T extends MapperProvider> {
         assertThat(messageMapper.countUnseenMessagesInMailbox(benwaWorkMailbox)).isEqualTo(0);
     }
 
+    @ContractTest
+    public void movingSeveralMessagesShouldUpdateCountsOfBothMailboxes() throws Exception {
+        SimpleMailboxMessage message2 = createMessage(benwaInboxMailbox, "Subject: Test2 \n\nBody2\n.\n", BODY_START, new PropertyBuilder());
+        message2.setFlags(new Flags(Flags.Flag.SEEN));
+        messageMapper.add(benwaInboxMailbox, message1);
+        messageMapper.add(benwaInboxMailbox, message2);
+
+        List<MessageMetaData> moved = messageMapper.moveAll(benwaWorkMailbox, ImmutableList.<MailboxMessage>of(message1, message2));
+
+        assertThat(moved).hasSize(2);
+        assertThat(messageMapper.countMessagesInMailbox(benwaInboxMailbox)).isEqualTo(0);
+        assertThat(messageMapper.countMessagesInMailbox(benwaWorkMailbox)).isEqualTo(2);
+        assertThat(messageMapper.countUnseenMessagesInMailbox(benwaInboxMailbox)).isEqualTo(0);
+        assertThat(messageMapper.countUnseenMessagesInMailbox(benwaWorkMailbox)).isEqualTo(1);
+    }
+
     private SimpleMailbox createMailbox(MailboxPath mailboxPath) {
         SimpleMailbox mailbox = new SimpleMailbox(mailboxPath, UID_VALIDITY);
         MailboxId id = mapperProvider.generateId();
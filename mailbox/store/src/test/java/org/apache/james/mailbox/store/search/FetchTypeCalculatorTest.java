@@ -0,0 +1,93 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.DateResolution;
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FetchTypeCalculatorTest {
+
+    private SearchQuery query;
+
+    @Before
+    public void setUp() {
+        query = new SearchQuery();
+    }
+
+    @Test
+    public void forQueryShouldReturnMetadataWhenNoCriteria() {
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Metadata);
+    }
+
+    @Test
+    public void forQueryShouldReturnMetadataForMetadataCriteria() {
+        query.andCriteria(SearchQuery.flagIsUnSet(Flag.SEEN));
+        query.andCriteria(SearchQuery.sizeGreaterThan(100));
+        query.andCriteria(SearchQuery.internalDateBefore(new Date(), DateResolution.Day));
+        query.andCriteria(SearchQuery.modSeqGreaterThan(2));
+        query.andCriteria(SearchQuery.flagIsSet("custom"));
+
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Metadata);
+    }
+
+    @Test
+    public void forQueryShouldReturnHeadersForHeaderCriteria() {
+        query.andCriteria(SearchQuery.or(
+            SearchQuery.flagIsSet(Flag.SEEN),
+            SearchQuery.headerContains("Subject", "james")));
+
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Headers);
+    }
+
+    @Test
+    public void forQueryShouldReturnFullForTextCriteria() {
+        query.andCriteria(SearchQuery.headerContains("Subject", "james"));
+        query.andCriteria(SearchQuery.not(SearchQuery.bodyContains("james")));
+
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Full);
+    }
+
+    @Test
+    public void forQueryShouldReturnHeadersWhenSortingOnHeaders() {
+        query.andCriteria(SearchQuery.all());
+        query.setSorts(Arrays.asList(new Sort(SortClause.Size), new Sort(SortClause.BaseSubject)));
+
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Headers);
+    }
+
+    @Test
+    public void forQueryShouldReturnMetadataWhenSortingOnMetadata() {
+        query.setSorts(Arrays.asList(new Sort(SortClause.Arrival, true), new Sort(SortClause.Uid)));
+
+        assertThat(FetchTypeCalculator.forQuery(query)).isEqualTo(FetchType.Metadata);
+    }
+}
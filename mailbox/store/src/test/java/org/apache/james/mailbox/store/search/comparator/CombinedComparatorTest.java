@@ -0,0 +1,64 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.search.comparator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Comparator;
+
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class CombinedComparatorTest {
+
+    private static MailboxMessage message(long uid, long size) {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.getUid()).thenReturn(uid);
+        when(message.getFullContentOctets()).thenReturn(size);
+        return message;
+    }
+
+    @Test
+    public void compareShouldUseTheGivenSort() {
+        Comparator<MailboxMessage> comparator = CombinedComparator.create(ImmutableList.of(new Sort(SortClause.Size)));
+
+        assertThat(comparator.compare(message(1, 200), message(2, 100))).isPositive();
+    }
+
+    @Test
+    public void compareShouldOrderByUidWhenSortsAreEqual() {
+        Comparator<MailboxMessage> comparator = CombinedComparator.create(ImmutableList.of(new Sort(SortClause.Size)));
+
+        assertThat(comparator.compare(message(1, 100), message(2, 100))).isNegative();
+        assertThat(comparator.compare(message(2, 100), message(1, 100))).isPositive();
+    }
+
+    @Test
+    public void compareShouldOrderByUidWhenReverseSortsAreEqual() {
+        Comparator<MailboxMessage> comparator = CombinedComparator.create(ImmutableList.of(new Sort(SortClause.Size, true)));
+
+        assertThat(comparator.compare(message(1, 100), message(2, 100))).isNegative();
+    }
+}
@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ExposedSharedByteArrayInputStreamTest {
+
+    private static final byte[] CONTENT = "Subject: test\r\n\r\nbody".getBytes();
+
+    @Test
+    public void asByteBufferShouldExposeRemainingContent() throws IOException {
+        ExposedSharedByteArrayInputStream in = new ExposedSharedByteArrayInputStream(CONTENT);
+        in.skip(9);
+
+        ByteBuffer buffer = in.asByteBuffer();
+
+        assertThat(buffer.isReadOnly()).isTrue();
+        assertThat(toString(buffer)).isEqualTo("test\r\n\r\nbody");
+        assertThat(in.read()).isEqualTo('t');
+    }
+
+    @Test
+    public void newStreamShouldExposeItsOwnRange() throws IOException {
+        ExposedSharedByteArrayInputStream in = new ExposedSharedByteArrayInputStream(CONTENT);
+
+        InputStream body = in.newStream(17, -1);
+
+        assertThat(body).isInstanceOf(ExposedSharedByteArrayInputStream.class);
+        assertThat(toString(((ExposedSharedByteArrayInputStream) body).asByteBuffer())).isEqualTo("body");
+        assertThat(IOUtils.toString(body)).isEqualTo("body");
+    }
+
+    @Test
+    public void newStreamShouldBeRelativeToTheParentStream() throws IOException {
+        ExposedSharedByteArrayInputStream in = new ExposedSharedByteArrayInputStream(CONTENT, 9, CONTENT.length - 9);
+
+        InputStream sub = in.newStream(0, 4);
+
+        assertThat(toString(((ExposedSharedByteArrayInputStream) sub).asByteBuffer())).isEqualTo("test");
+    }
+
+    private String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes);
+    }
+}
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefixedSharedInputStreamTest {
+
+    private static final byte[] PREFIX = "Delivered-To: a@b\r\n".getBytes();
+    private static final byte[] CONTENT = "Subject: test\r\n\r\nbody".getBytes();
+
+    private PrefixedSharedInputStream testee;
+
+    @Before
+    public void setUp() {
+        testee = new PrefixedSharedInputStream(PREFIX, new SharedByteArrayInputStream(CONTENT));
+    }
+
+    @Test
+    public void readShouldReturnThePrefixFollowedByTheContent() throws IOException {
+        assertThat(IOUtils.toString(testee)).isEqualTo("Delivered-To: a@b\r\nSubject: test\r\n\r\nbody");
+    }
+
+    @Test
+    public void newStreamShouldAllowToReadTheContentOnly() throws IOException {
+        assertThat(IOUtils.toString(testee.newStream(PREFIX.length, -1))).isEqualTo("Subject: test\r\n\r\nbody");
+    }
+
+    @Test
+    public void newStreamShouldAllowToReadARangeOverlappingPrefixAndContent() throws IOException {
+        assertThat(IOUtils.toString(testee.newStream(14, 26))).isEqualTo("a@b\r\nSubject");
+    }
+
+    @Test
+    public void newStreamShouldBeRelativeToTheStartOfTheStream() throws IOException {
+        PrefixedSharedInputStream subStream = (PrefixedSharedInputStream) testee.newStream(PREFIX.length, -1);
+
+        assertThat(IOUtils.toString(subStream.newStream(CONTENT.length - 4, -1))).isEqualTo("body");
+    }
+
+    @Test
+    public void getPositionShouldCountBytesRead() throws IOException {
+        for (int i = 0; i < PREFIX.length + 2; i++) {
+            testee.read();
+        }
+
+        assertThat(testee.getPosition()).isEqualTo(PREFIX.length + 2);
+    }
+
+    @Test
+    public void readShouldNotCloseTheSharedContent() throws IOException {
+        SharedByteArrayInputStream content = new SharedByteArrayInputStream(CONTENT);
+        PrefixedSharedInputStream stream = new PrefixedSharedInputStream(PREFIX, content);
+        IOUtils.toString(stream);
+        stream.close();
+
+        assertThat(IOUtils.toString(content)).isEqualTo("Subject: test\r\n\r\nbody");
+    }
+}
@@ -0,0 +1,91 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SpoolingOutputStreamTest {
+
+    private static final byte[] CONTENT = "Subject: test\r\n\r\nbody".getBytes();
+
+    @Test
+    public void contentBelowThresholdShouldStayInMemory() throws IOException {
+        SpoolingOutputStream out = new SpoolingOutputStream(1024);
+        out.write(CONTENT);
+
+        InputStream in = out.getSharedInputStream();
+        try {
+            assertThat(out.isInMemory()).isTrue();
+            assertThat(out.getSize()).isEqualTo(CONTENT.length);
+            assertThat(IOUtils.toByteArray(in)).isEqualTo(CONTENT);
+        } finally {
+            in.close();
+            out.dispose();
+        }
+    }
+
+    @Test
+    public void contentAboveThresholdShouldBeSpooledToFile() throws IOException {
+        SpoolingOutputStream out = new SpoolingOutputStream(8);
+        out.write(CONTENT, 0, 4);
+        out.write(CONTENT, 4, CONTENT.length - 4);
+
+        InputStream in = out.getSharedInputStream();
+        try {
+            assertThat(out.isInMemory()).isFalse();
+            assertThat(out.getSize()).isEqualTo(CONTENT.length);
+            assertThat(IOUtils.toByteArray(in)).isEqualTo(CONTENT);
+        } finally {
+            in.close();
+            out.dispose();
+        }
+    }
+
+    @Test
+    public void sharedInputStreamShouldAllowToReadSubStreams() throws IOException {
+        SpoolingOutputStream out = new SpoolingOutputStream(1024);
+        out.write(CONTENT);
+
+        InputStream in = out.getSharedInputStream();
+        try {
+            InputStream body = ((SharedInputStream) in).newStream(17, -1);
+            assertThat(IOUtils.toString(body)).isEqualTo("body");
+        } finally {
+            in.close();
+            out.dispose();
+        }
+    }
+
+    @Test
+    public void zeroThresholdShouldAlwaysSpool() throws IOException {
+        SpoolingOutputStream out = new SpoolingOutputStream(0);
+        out.write('a');
+
+        assertThat(out.isInMemory()).isFalse();
+        out.dispose();
+    }
+}
@@ -119,6 +119,11 @@ public class AuthenticatedState extends BaseAuthenticatedState {
     public void testSelectAppendUS() throws Exception {
         scriptTest("SelectAppend", Locale.US);
     }
+
+    @Test
+    public void testSortUS() throws Exception {
+        scriptTest("Sort", Locale.US);
+    }
     
     @Test
     public void testStringArgsUS() throws Exception {
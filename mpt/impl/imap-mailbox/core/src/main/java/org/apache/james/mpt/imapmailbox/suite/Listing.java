@@ -46,6 +46,11 @@ public class Listing extends BaseAuthenticatedState {
         scriptTest("ListPercentWildcard", Locale.US);
     }
 
+    @Test
+    public void testListStatusUS() throws Exception {
+        scriptTest("ListStatus", Locale.US);
+    }
+
     @Test
     public void testListPlusKOREA() throws Exception {
         scriptTest("ListPlus", Locale.KOREA);
@@ -108,6 +108,14 @@ public interface ImapConstants {
     String SUPPORTS_QUOTA = "QUOTA";
 
     String SUPPORTS_ANNOTATION = "ANNOTATION";
+
+    String SUPPORTS_LIST_STATUS = "LIST-STATUS";
+
+    String SUPPORTS_SORT = "SORT";
+
+    String SUPPORTS_SORT_DISPLAY = "SORT=DISPLAY";
+
+    String SUPPORTS_ESORT = "ESORT";
     
     String INBOX_NAME = "INBOX";
 
@@ -179,6 +187,8 @@ public interface ImapConstants {
 
     String SEARCH_COMMAND_NAME = "SEARCH";
 
+    String SORT_COMMAND_NAME = "SORT";
+
     String RENAME_COMMAND_NAME = "RENAME";
 
     String NOOP_COMMAND_NAME = "NOOP";
@@ -247,6 +257,8 @@ public interface ImapConstants {
 
     String SEARCH_RESPONSE_NAME = "SEARCH";
 
+    String SORT_RESPONSE_NAME = "SORT";
+
     String ACL_RESPONSE_NAME = "ACL";
 
     String QUOTA_RESPONSE_NAME = "QUOTA";
@@ -21,6 +21,8 @@ package org.apache.james.imap.decode.parser;
 import org.apache.james.imap.api.ImapCommand;
 import org.apache.james.imap.api.ImapConstants;
 import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.StatusDataItems;
 import org.apache.james.imap.api.process.ImapSession;
 import org.apache.james.imap.decode.ImapRequestLineReader;
 import org.apache.james.imap.decode.ImapRequestLineReader.ATOM_CHARValidator;
@@ -32,6 +34,10 @@ import org.apache.james.protocols.imap.DecodingException;
  */
 public class ListCommandParser extends AbstractUidCommandParser {
 
+    private static final String RETURN = "RETURN";
+    private static final String RETURN_STATUS = "STATUS";
+    private static final String RETURN_CHILDREN = "CHILDREN";
+
     public ListCommandParser() {
         super(ImapCommand.authenticatedStateCommand(ImapConstants.LIST_COMMAND_NAME));
     }
@@ -77,10 +83,64 @@ public class ListCommandParser extends AbstractUidCommandParser {
     protected ImapMessage decode(ImapCommand command, ImapRequestLineReader request, String tag, boolean useUids, ImapSession session) throws DecodingException {
         String referenceName = request.mailbox();
         String mailboxPattern = listMailbox(request);
+        if (ImapConstants.LIST_COMMAND_NAME.equals(command.getName())) {
+            StatusDataItems statusDataItems = returnOptions(request);
+            request.eol();
+            return new ListRequest(command, referenceName, mailboxPattern, statusDataItems, tag);
+        }
         request.eol();
         return createMessage(command, referenceName, mailboxPattern, tag);
     }
 
+    /**
+     * Reads the optional return options of the LIST command. Only the STATUS
+     * option of LIST-STATUS (RFC 5819) is supported. CHILDREN is accepted as
+     * well as the children information is always returned.
+     * 
+     * @return the requested status data items or null if none were requested
+     */
+    private StatusDataItems returnOptions(ImapRequestLineReader request) throws DecodingException {
+        char next = request.nextChar();
+        while (next == ' ') {
+            request.consume();
+            next = request.nextChar();
+        }
+        if (next == '\r' || next == '\n') {
+            return null;
+        }
+        String keyword = optionName(request);
+        if (!RETURN.equalsIgnoreCase(keyword)) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown argument: '" + keyword + "'");
+        }
+        request.nextWordChar();
+        request.consumeChar('(');
+
+        StatusDataItems statusDataItems = null;
+        next = request.nextWordChar();
+        while (next != ')') {
+            String option = optionName(request);
+            if (RETURN_STATUS.equalsIgnoreCase(option)) {
+                statusDataItems = StatusCommandParser.statusDataItems(request);
+            } else if (!RETURN_CHILDREN.equalsIgnoreCase(option)) {
+                throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown return option: '" + option + "'");
+            }
+            next = request.nextWordChar();
+        }
+        request.consumeChar(')');
+        return statusDataItems;
+    }
+
+    private String optionName(ImapRequestLineReader request) throws DecodingException {
+        StringBuilder option = new StringBuilder();
+        char next = request.nextChar();
+        while (Character.isLetter(next)) {
+            option.append(next);
+            request.consume();
+            next = request.nextChar();
+        }
+        return option.toString();
+    }
+
     protected ImapMessage createMessage(ImapCommand command, String referenceName, String mailboxPattern, String tag) {
         return new ListRequest(command, referenceName, mailboxPattern, tag);
     }
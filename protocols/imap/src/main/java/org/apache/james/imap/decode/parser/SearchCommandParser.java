@@ -50,7 +50,11 @@ import org.apache.james.protocols.imap.DecodingException;
 public class SearchCommandParser extends AbstractUidCommandParser {
 
     public SearchCommandParser() {
-        super(ImapCommand.selectedStateCommand(ImapConstants.SEARCH_COMMAND_NAME));
+        this(ImapCommand.selectedStateCommand(ImapConstants.SEARCH_COMMAND_NAME));
+    }
+
+    protected SearchCommandParser(ImapCommand command) {
+        super(command);
     }
 
     /**
@@ -904,7 +908,25 @@ public class SearchCommandParser extends AbstractUidCommandParser {
         return result;
     }
 
-    private ImapMessage unsupportedCharset(String tag, ImapCommand command) {
+    /**
+     * Parses the search keys of the request, the charset being already read.
+     * This is the <code>search-criteria</code> of RFC5256, where the charset
+     * is mandatory and applies to all the keys.
+     */
+    protected SearchKey decode(ImapSession session, ImapRequestLineReader request, Charset charset) throws DecodingException, IllegalCharsetNameException, UnsupportedCharsetException {
+        final List<SearchKey> keys = new ArrayList<SearchKey>();
+        do {
+            request.nextWordChar();
+            keys.add(searchKey(session, request, charset, false));
+        } while (request.nextChar() == ' ');
+        request.eol();
+        if (keys.size() == 1) {
+            return keys.get(0);
+        }
+        return SearchKey.buildAnd(keys);
+    }
+
+    protected ImapMessage unsupportedCharset(String tag, ImapCommand command) {
         final StatusResponseFactory factory = getStatusResponseFactory();
         final ResponseCode badCharset = StatusResponse.ResponseCode.badCharset(CharsetUtil.getAvailableCharsetNames());
         return factory.taggedNo(tag, command, HumanReadableText.BAD_CHARSET, badCharset);
@@ -913,7 +935,7 @@ public class SearchCommandParser extends AbstractUidCommandParser {
     /**
      * Parse the {@link SearchResultOption}'s which are used for ESEARCH
      */
-    private List<SearchResultOption> parseOptions(ImapRequestLineReader reader) throws DecodingException {
+    protected List<SearchResultOption> parseOptions(ImapRequestLineReader reader) throws DecodingException {
         List<SearchResultOption> options = new ArrayList<SearchResultOption>();
         reader.consumeChar('(');
         reader.nextWordChar();
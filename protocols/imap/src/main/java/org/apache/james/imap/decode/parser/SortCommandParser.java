@@ -0,0 +1,145 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.decode.parser;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.message.request.SearchOperation;
+import org.apache.james.imap.api.message.request.SearchResultOption;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.protocols.imap.DecodingException;
+
+/**
+ * Parse <code>SORT</code> commands as defined in RFC5256, with the
+ * <code>DISPLAYFROM</code> and <code>DISPLAYTO</code> sort keys of RFC5957
+ * and the ESORT return options of RFC5267.
+ */
+public class SortCommandParser extends SearchCommandParser {
+
+    private static final String RETURN = "RETURN";
+    private static final String REVERSE = "REVERSE";
+
+    public SortCommandParser() {
+        super(ImapCommand.selectedStateCommand(ImapConstants.SORT_COMMAND_NAME));
+    }
+
+    /**
+     * @see
+     * org.apache.james.imap.decode.parser.AbstractUidCommandParser#decode(org.apache.james.imap.api.ImapCommand,
+     * org.apache.james.imap.decode.ImapRequestLineReader, java.lang.String,
+     * boolean, org.apache.james.imap.api.process.ImapSession)
+     */
+    protected ImapMessage decode(ImapCommand command, ImapRequestLineReader request, String tag, boolean useUids, ImapSession session) throws DecodingException {
+        try {
+            List<SearchResultOption> options = new ArrayList<SearchResultOption>();
+            if (request.nextWordChar() != '(') {
+                returnOptions(request, options);
+            }
+            final List<SearchQuery.Sort> sorts = sortCriteria(request);
+            final Charset charset = Charset.forName(request.astring());
+            final SearchKey key = decode(session, request, charset);
+            return new SortRequest(command, sorts, new SearchOperation(key, options), useUids, tag);
+        } catch (IllegalCharsetNameException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        } catch (UnsupportedCharsetException e) {
+            session.getLog().debug("Unable to decode request", e);
+            return unsupportedCharset(tag, command);
+        }
+    }
+
+    /**
+     * Parse the ESORT return options. See RFC5267 3.2
+     */
+    private void returnOptions(ImapRequestLineReader request, List<SearchResultOption> options) throws DecodingException {
+        final String keyword = request.atom();
+        if (!RETURN.equalsIgnoreCase(keyword)) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown argument: '" + keyword + "'");
+        }
+        request.nextWordChar();
+        options.addAll(parseOptions(request));
+        if (options.contains(SearchResultOption.SAVE)) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "SAVE is not supported by SORT");
+        }
+    }
+
+    private List<SearchQuery.Sort> sortCriteria(ImapRequestLineReader request) throws DecodingException {
+        final List<SearchQuery.Sort> sorts = new ArrayList<SearchQuery.Sort>();
+        boolean reverse = false;
+
+        request.nextWordChar();
+        request.consumeChar('(');
+        char next = request.nextWordChar();
+        while (next != ')') {
+            final String key = request.atom();
+            if (REVERSE.equalsIgnoreCase(key)) {
+                if (reverse) {
+                    throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "REVERSE must be followed by a sort key");
+                }
+                reverse = true;
+            } else {
+                sorts.add(new SearchQuery.Sort(sortClause(key), reverse));
+                reverse = false;
+            }
+            next = request.nextWordChar();
+        }
+        request.consumeChar(')');
+
+        if (reverse || sorts.isEmpty()) {
+            throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Missing sort key");
+        }
+        return sorts;
+    }
+
+    private SortClause sortClause(String key) throws DecodingException {
+        if ("ARRIVAL".equalsIgnoreCase(key)) {
+            return SortClause.Arrival;
+        } else if ("CC".equalsIgnoreCase(key)) {
+            return SortClause.MailboxCc;
+        } else if ("DATE".equalsIgnoreCase(key)) {
+            return SortClause.SentDate;
+        } else if ("FROM".equalsIgnoreCase(key)) {
+            return SortClause.MailboxFrom;
+        } else if ("SIZE".equalsIgnoreCase(key)) {
+            return SortClause.Size;
+        } else if ("SUBJECT".equalsIgnoreCase(key)) {
+            return SortClause.BaseSubject;
+        } else if ("TO".equalsIgnoreCase(key)) {
+            return SortClause.MailboxTo;
+        } else if ("DISPLAYFROM".equalsIgnoreCase(key)) {
+            return SortClause.DisplayFrom;
+        } else if ("DISPLAYTO".equalsIgnoreCase(key)) {
+            return SortClause.DisplayTo;
+        }
+        throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unknown sort key: '" + key + "'");
+    }
+}
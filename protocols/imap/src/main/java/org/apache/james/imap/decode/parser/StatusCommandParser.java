@@ -25,7 +25,6 @@ import org.apache.james.imap.api.display.HumanReadableText;
 import org.apache.james.imap.api.message.StatusDataItems;
 import org.apache.james.imap.api.process.ImapSession;
 import org.apache.james.imap.decode.ImapRequestLineReader;
-import org.apache.james.imap.decode.ImapRequestLineReader.CharacterValidator;
 import org.apache.james.imap.decode.base.AbstractImapCommandParser;
 import org.apache.james.imap.message.request.StatusRequest;
 import org.apache.james.protocols.imap.DecodingException;
@@ -38,27 +37,37 @@ public class StatusCommandParser extends AbstractImapCommandParser {
         super(ImapCommand.authenticatedStateCommand(ImapConstants.STATUS_COMMAND_NAME));
     }
 
-    StatusDataItems statusDataItems(ImapRequestLineReader request) throws DecodingException {
+    /**
+     * Reads a parenthesized list of status data items. The closing paren is consumed
+     * so the list may be nested in another one, like the LIST-STATUS return option.
+     */
+    static StatusDataItems statusDataItems(ImapRequestLineReader request) throws DecodingException {
         StatusDataItems items = new StatusDataItems();
 
         request.nextWordChar();
         request.consumeChar('(');
-        CharacterValidator validator = new ImapRequestLineReader.NoopCharValidator();
-        String nextWord = request.consumeWord(validator);
-
-        while (!nextWord.endsWith(")")) {
-            addItem(nextWord, items);
-            nextWord = request.consumeWord(validator);
-        }
-        // Got the closing ")", may be attached to a word.
-        if (nextWord.length() > 1) {
-            addItem(nextWord.substring(0, nextWord.length() - 1), items);
+        char next = request.nextWordChar();
+        while (next != ')') {
+            addItem(statusItem(request), items);
+            next = request.nextWordChar();
         }
+        request.consumeChar(')');
 
         return items;
     }
 
-    private void addItem(String nextWord, StatusDataItems items) throws DecodingException {
+    private static String statusItem(ImapRequestLineReader request) throws DecodingException {
+        StringBuilder item = new StringBuilder();
+        char next = request.nextChar();
+        while (next != ' ' && next != ')' && next != '\r' && next != '\n') {
+            item.append(next);
+            request.consume();
+            next = request.nextChar();
+        }
+        return item.toString();
+    }
+
+    private static void addItem(String nextWord, StatusDataItems items) throws DecodingException {
         // All the matching must be done in a case-insensitive fashion.
         // See rfc3501 9. Formal Syntax and IMAP-282
         if (nextWord.equalsIgnoreCase(ImapConstants.STATUS_MESSAGES)) {
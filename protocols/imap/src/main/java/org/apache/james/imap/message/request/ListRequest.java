@@ -19,16 +19,24 @@
 package org.apache.james.imap.message.request;
 
 import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.message.StatusDataItems;
 
 public class ListRequest extends AbstractImapRequest {
     private final String baseReferenceName;
 
     private final String mailboxPattern;
 
+    private final StatusDataItems statusDataItems;
+
     public ListRequest(ImapCommand command, String referenceName, String mailboxPattern, String tag) {
+        this(command, referenceName, mailboxPattern, null, tag);
+    }
+
+    public ListRequest(ImapCommand command, String referenceName, String mailboxPattern, StatusDataItems statusDataItems, String tag) {
         super(tag, command);
         this.baseReferenceName = referenceName;
         this.mailboxPattern = mailboxPattern;
+        this.statusDataItems = statusDataItems;
     }
 
     public final String getBaseReferenceName() {
@@ -38,4 +46,12 @@ public class ListRequest extends AbstractImapRequest {
     public final String getMailboxPattern() {
         return mailboxPattern;
     }
+
+    /**
+     * Return the status data items requested with the STATUS return option of LIST-STATUS
+     * (RFC 5819), or null if no status was requested
+     */
+    public final StatusDataItems getStatusDataItems() {
+        return statusDataItems;
+    }
 }
@@ -0,0 +1,57 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.message.request;
+
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.message.request.SearchOperation;
+import org.apache.james.mailbox.model.SearchQuery;
+
+/**
+ * <code>SORT</code> request as defined in RFC5256. The {@link SearchOperation}
+ * carries the search criteria and the ESORT return options of RFC5267.
+ */
+public class SortRequest extends AbstractImapRequest {
+
+    private final List<SearchQuery.Sort> sorts;
+
+    private final SearchOperation operation;
+
+    private final boolean useUids;
+
+    public SortRequest(ImapCommand command, List<SearchQuery.Sort> sorts, SearchOperation operation, boolean useUids, String tag) {
+        super(tag, command);
+        this.sorts = sorts;
+        this.operation = operation;
+        this.useUids = useUids;
+    }
+
+    public final List<SearchQuery.Sort> getSorts() {
+        return sorts;
+    }
+
+    public final SearchOperation getSearchOperation() {
+        return operation;
+    }
+
+    public final boolean isUseUids() {
+        return useUids;
+    }
+}
@@ -0,0 +1,87 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.message.response;
+
+import java.util.Arrays;
+
+import org.apache.james.imap.api.message.response.ImapResponseMessage;
+
+/**
+ * A <code>SORT</code> response as defined in RFC5256.
+ */
+public class SortResponse implements ImapResponseMessage {
+    private final long ids[];
+    private final Long highestModSeq;
+
+    /**
+     * Constructs a <code>SORT</code> response.
+     * 
+     * @param ids ids in the requested sort order, not null
+     * @param highestModSeq
+     */
+    public SortResponse(long[] ids, Long highestModSeq) {
+        this.ids = ids;
+        this.highestModSeq = highestModSeq;
+    }
+
+    /**
+     * Gets the ids returned by this sort, in the requested order.
+     * 
+     * @return the ids, not null
+     */
+    public final long[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Return the highest mod-sequence of the sorted messages. This is only set if the
+     * search criteria included the MODSEQ parameter
+     *
+     * @return highestMod
+     */
+    public final Long getHighestModSeq() {
+        return highestModSeq;
+    }
+
+    @Override
+    public int hashCode() {
+        return ids.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        final SortResponse other = (SortResponse) obj;
+        if (!Arrays.equals(ids, other.ids))
+            return false;
+        if (highestModSeq == null ? other.highestModSeq != null : !highestModSeq.equals(other.highestModSeq))
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SortResponse ( ids = " + Arrays.toString(ids) + " )";
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.james.imap.api.ImapConstants;
 import org.apache.james.imap.api.ImapSessionUtils;
 import org.apache.james.imap.api.display.HumanReadableText;
 import org.apache.james.imap.api.message.IdRange;
+import org.apache.james.imap.api.message.StatusDataItems;
 import org.apache.james.imap.api.message.request.ImapRequest;
 import org.apache.james.imap.api.message.response.ImapResponseMessage;
 import org.apache.james.imap.api.message.response.StatusResponse;
@@ -43,6 +44,7 @@ import org.apache.james.imap.message.response.ExistsResponse;
 import org.apache.james.imap.message.response.ExpungeResponse;
 import org.apache.james.imap.message.response.FetchResponse;
 import org.apache.james.imap.message.response.FlagsResponse;
+import org.apache.james.imap.message.response.MailboxStatusResponse;
 import org.apache.james.imap.message.response.RecentResponse;
 import org.apache.james.imap.message.response.VanishedResponse;
 import org.apache.james.imap.processor.base.AbstractChainedProcessor;
@@ -287,6 +289,35 @@ abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends Ab
         }
     }
     
+    /**
+     * Compute the requested {@link StatusDataItems} of the given mailbox. All of them are
+     * retrieved with a single {@link MetaData} lookup. Requesting HIGHESTMODSEQ enables CONDSTORE.
+     */
+    protected MailboxStatusResponse mailboxStatus(ImapSession session, Responder responder, MailboxPath mailboxPath, String mailboxName, StatusDataItems statusDataItems) throws MailboxException {
+        final MailboxSession mailboxSession = ImapSessionUtils.getMailboxSession(session);
+        final MessageManager mailbox = getMailboxManager().getMailbox(mailboxPath, mailboxSession);
+        final FetchGroup fetchGroup;
+        if (statusDataItems.isUnseen()) {
+            fetchGroup = FetchGroup.UNSEEN_COUNT;
+        } else {
+            fetchGroup = FetchGroup.NO_UNSEEN;
+        }
+        final MetaData metaData = mailbox.getMetaData(false, mailboxSession, fetchGroup);
+
+        final Long messages = statusDataItems.isMessages() ? Long.valueOf(metaData.getMessageCount()) : null;
+        final Long recent = statusDataItems.isRecent() ? Long.valueOf(metaData.countRecent()) : null;
+        final Long uidNext = statusDataItems.isUidNext() ? Long.valueOf(metaData.getUidNext()) : null;
+        final Long uidValidity = statusDataItems.isUidValidity() ? Long.valueOf(metaData.getUidValidity()) : null;
+        final Long unseen = statusDataItems.isUnseen() ? Long.valueOf(metaData.getUnseenCount()) : null;
+        final Long highestModSeq = statusDataItems.isHighestModSeq() ? Long.valueOf(metaData.getHighestModSeq()) : null;
+
+        // Enable CONDSTORE as this is a CONDSTORE enabling command
+        if (highestModSeq != null) {
+            condstoreEnablingCommand(session, responder, metaData, false);
+        }
+        return new MailboxStatusResponse(messages, recent, uidNext, highestModSeq, uidValidity, unseen, mailboxName);
+    }
+
     private MessageManager getMailbox(ImapSession session, SelectedMailbox selected) throws MailboxException {
         final MailboxManager mailboxManager = getMailboxManager();
         return mailboxManager.getMailbox(selected.getPath(), ImapSessionUtils.getMailboxSession(session));
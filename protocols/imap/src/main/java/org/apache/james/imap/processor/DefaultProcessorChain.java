@@ -91,11 +91,15 @@ public class DefaultProcessorChain {
         final SearchProcessor searchProcessor = new SearchProcessor(listProcessor, mailboxManager, statusResponseFactory);
         // WITHIN extension
         capabilityProcessor.addProcessor(searchProcessor);
+        final SortProcessor sortProcessor = new SortProcessor(searchProcessor, mailboxManager, statusResponseFactory);
+        // SORT, SORT=DISPLAY and ESORT extensions
+        capabilityProcessor.addProcessor(sortProcessor);
 
-        final SelectProcessor selectProcessor = new SelectProcessor(searchProcessor, mailboxManager, statusResponseFactory);
+        final SelectProcessor selectProcessor = new SelectProcessor(sortProcessor, mailboxManager, statusResponseFactory);
         final NamespaceProcessor namespaceProcessor = new NamespaceProcessor(selectProcessor, mailboxManager, statusResponseFactory);
 
         capabilityProcessor.addProcessor(xlistProcessor);
+        capabilityProcessor.addProcessor(listProcessor);
 
         final ImapProcessor fetchProcessor = new FetchProcessor(namespaceProcessor, mailboxManager, statusResponseFactory);
         final StartTLSProcessor startTLSProcessor = new StartTLSProcessor(fetchProcessor, statusResponseFactory);
@@ -20,13 +20,16 @@
 package org.apache.james.imap.processor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
 import org.apache.james.imap.api.ImapMessage;
 import org.apache.james.imap.api.ImapSessionUtils;
 import org.apache.james.imap.api.display.CharsetUtil;
 import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.StatusDataItems;
 import org.apache.james.imap.api.message.response.ImapResponseMessage;
 import org.apache.james.imap.api.message.response.StatusResponseFactory;
 import org.apache.james.imap.api.process.ImapProcessor;
@@ -41,10 +44,13 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxMetaData;
 import org.apache.james.mailbox.model.MailboxMetaData.Children;
+import org.apache.james.mailbox.model.MailboxMetaData.Selectability;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MailboxQuery;
 
-public class ListProcessor extends AbstractMailboxProcessor<ListRequest> {
+public class ListProcessor extends AbstractMailboxProcessor<ListRequest> implements CapabilityImplementingProcessor {
+
+    private final static List<String> CAPS = Collections.unmodifiableList(Collections.singletonList(ImapConstants.SUPPORTS_LIST_STATUS));
 
     public ListProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory factory) {
         super(ListRequest.class, next, mailboxManager, factory);
@@ -61,7 +67,15 @@ public class ListProcessor extends AbstractMailboxProcessor<ListRequest> {
     protected void doProcess(ListRequest request, ImapSession session, String tag, ImapCommand command, Responder responder) {
         final String baseReferenceName = request.getBaseReferenceName();
         final String mailboxPatternString = request.getMailboxPattern();
-        doProcess(baseReferenceName, mailboxPatternString, session, tag, command, responder, null);
+        doProcess(baseReferenceName, mailboxPatternString, session, tag, command, responder, null, request.getStatusDataItems());
+    }
+
+    /**
+     * @see org.apache.james.imap.processor.CapabilityImplementingProcessor
+     * #getImplementedCapabilities(org.apache.james.imap.api.process.ImapSession)
+     */
+    public List<String> getImplementedCapabilities(ImapSession session) {
+        return CAPS;
     }
 
     protected ImapResponseMessage createResponse(boolean noInferior, boolean noSelect, boolean marked, boolean unmarked, boolean hasChildren, boolean hasNoChildren, String mailboxName, char delimiter, MailboxType type) {
@@ -88,6 +102,15 @@ public class ListProcessor extends AbstractMailboxProcessor<ListRequest> {
      * @param responder
      */
     protected final void doProcess(String referenceName, String mailboxName, ImapSession session, String tag, ImapCommand command, Responder responder, MailboxTyper mailboxTyper) {
+        doProcess(referenceName, mailboxName, session, tag, command, responder, mailboxTyper, null);
+    }
+
+    /**
+     * Same as {@link #doProcess(String, String, ImapSession, String, ImapCommand, Responder, MailboxTyper)}
+     * but also returns a STATUS response for every selectable mailbox when status data items were requested.
+     * See RFC 5819 LIST-STATUS
+     */
+    protected final void doProcess(String referenceName, String mailboxName, ImapSession session, String tag, ImapCommand command, Responder responder, MailboxTyper mailboxTyper, StatusDataItems statusDataItems) {
         try {
             // Should the namespace section be returned or not?
             final boolean isRelative;
@@ -177,6 +200,9 @@ public class ListProcessor extends AbstractMailboxProcessor<ListRequest> {
 
             for (MailboxMetaData metaData : results) {
                 processResult(responder, isRelative, metaData, getMailboxType(session, mailboxTyper, metaData.getPath()));
+                if (statusDataItems != null && metaData.getSelectability() != Selectability.NOSELECT) {
+                    processStatus(session, responder, isRelative, metaData, statusDataItems);
+                }
             }
 
             okComplete(command, tag, responder);
@@ -215,6 +241,19 @@ public class ListProcessor extends AbstractMailboxProcessor<ListRequest> {
         responder.respond(createResponse(noInferior, noSelect, marked, unmarked, hasChildren, hasNoChildren, mailboxName, delimiter, mailboxType));
     }
 
+    private void processStatus(ImapSession session, Responder responder, boolean relative, MailboxMetaData listResult, StatusDataItems statusDataItems) {
+        final String mailboxName = mailboxName(relative, listResult.getPath(), listResult.getHierarchyDelimiter());
+        try {
+            // The LIST response encodes the name, so do the same for the STATUS one
+            responder.respond(mailboxStatus(session, responder, listResult.getPath(), CharsetUtil.encodeModifiedUTF7(mailboxName), statusDataItems));
+        } catch (MailboxException e) {
+            // Just omit the STATUS response of this mailbox. See RFC 5819 section 2
+            if (session.getLog().isInfoEnabled()) {
+                session.getLog().info("Status failed for mailbox " + listResult.getPath(), e);
+            }
+        }
+    }
+
     /**
      * retrieve mailboxType for specified mailboxPath using provided
      * MailboxTyper
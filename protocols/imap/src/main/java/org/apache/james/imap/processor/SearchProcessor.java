@@ -236,7 +236,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
      * @return highestModSeq
      * @throws MailboxException
      */
-    private Long findHighestModSeq(MailboxSession session, MessageManager mailbox, List<MessageRange> ranges, long currentHighest) throws MailboxException {
+    static Long findHighestModSeq(MailboxSession session, MessageManager mailbox, List<MessageRange> ranges, long currentHighest) throws MailboxException {
         Long highestModSeq = null;
         
         // Reverse loop over the ranges as its more likely that we find a match at the end
@@ -258,7 +258,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
     }
 
 
-    private SearchQuery toQuery(SearchKey key, ImapSession session) throws MessageRangeException {
+    static SearchQuery toQuery(SearchKey key, ImapSession session) throws MessageRangeException {
         final SearchQuery result = new SearchQuery();
         final SelectedMailbox selected = session.getSelected();
         if (selected != null) {
@@ -269,7 +269,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return result;
     }
 
-    private SearchQuery.Criterion toCriterion(SearchKey key, ImapSession session) throws MessageRangeException {
+    private static SearchQuery.Criterion toCriterion(SearchKey key, ImapSession session) throws MessageRangeException {
         final int type = key.getType();
         final DayMonthYear date = key.getDate();
         switch (type) {
@@ -372,7 +372,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
             return SearchQuery.all();
         }
     }
-    private Date createWithinDate(SearchKey key) {
+    private static Date createWithinDate(SearchKey key) {
         long seconds = key.getSeconds();
         long res = System.currentTimeMillis() - seconds * 1000;
         return new Date(res);
@@ -389,7 +389,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
      * @return crit
      * @throws MessageRangeException
      */
-    private Criterion sequence(IdRange[] sequenceNumbers, ImapSession session, boolean msn) throws MessageRangeException {
+    private static Criterion sequence(IdRange[] sequenceNumbers, ImapSession session, boolean msn) throws MessageRangeException {
         final List<SearchQuery.NumericRange> ranges = new ArrayList<SearchQuery.NumericRange>();
         final SelectedMailbox selected = session.getSelected();
         boolean useUids = !msn;
@@ -456,7 +456,7 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return SearchQuery.uid(ranges.toArray(new SearchQuery.NumericRange[0]));
     }
 
-    private Criterion or(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion or(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final SearchKey keyOne = keys.get(0);
         final SearchKey keyTwo = keys.get(1);
         final Criterion criterionOne = toCriterion(keyOne, session);
@@ -464,13 +464,13 @@ public class SearchProcessor extends AbstractMailboxProcessor<SearchRequest> imp
         return SearchQuery.or(criterionOne, criterionTwo);
     }
 
-    private Criterion not(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion not(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final SearchKey key = keys.get(0);
         final Criterion criterion = toCriterion(key, session);
         return SearchQuery.not(criterion);
     }
 
-    private Criterion and(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
+    private static Criterion and(List<SearchKey> keys, ImapSession session) throws MessageRangeException {
         final int size = keys.size();
         final List<Criterion> criteria = new ArrayList<Criterion>(size);
         for (SearchKey key : keys) {
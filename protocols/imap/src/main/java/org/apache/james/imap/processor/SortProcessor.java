@@ -0,0 +1,175 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.ImapSessionUtils;
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.api.message.IdRange;
+import org.apache.james.imap.api.message.request.SearchOperation;
+import org.apache.james.imap.api.message.request.SearchResultOption;
+import org.apache.james.imap.api.message.response.ImapResponseMessage;
+import org.apache.james.imap.api.message.response.StatusResponseFactory;
+import org.apache.james.imap.api.process.ImapProcessor;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.imap.message.response.ESearchResponse;
+import org.apache.james.imap.message.response.SortResponse;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.MessageManager.MetaData;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.exception.MessageRangeException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.SearchQuery;
+
+/**
+ * Processes <code>SORT</code> requests as defined in RFC5256 and RFC5267. The
+ * sorting is done by the {@link MessageManager#search(SearchQuery, MailboxSession)},
+ * thus by the configured search index.
+ */
+public class SortProcessor extends AbstractMailboxProcessor<SortRequest> implements CapabilityImplementingProcessor {
+
+    private final static List<String> CAPS = Collections.unmodifiableList(Arrays.asList(ImapConstants.SUPPORTS_SORT, ImapConstants.SUPPORTS_SORT_DISPLAY, ImapConstants.SUPPORTS_ESORT));
+
+    public SortProcessor(ImapProcessor next, MailboxManager mailboxManager, StatusResponseFactory factory) {
+        super(SortRequest.class, next, mailboxManager, factory);
+    }
+
+    /**
+     * @see
+     * org.apache.james.imap.processor.AbstractMailboxProcessor
+     * #doProcess(org.apache.james.imap.api.message.request.ImapRequest,
+     * org.apache.james.imap.api.process.ImapSession, java.lang.String,
+     * org.apache.james.imap.api.ImapCommand,
+     * org.apache.james.imap.api.process.ImapProcessor.Responder)
+     */
+    protected void doProcess(SortRequest request, ImapSession session, String tag, ImapCommand command, Responder responder) {
+        final SearchOperation operation = request.getSearchOperation();
+        final boolean useUids = request.isUseUids();
+        final List<SearchResultOption> resultOptions = operation.getResultOptions();
+
+        try {
+            final MessageManager mailbox = getSelectedMailbox(session);
+
+            final SearchQuery query = SearchProcessor.toQuery(operation.getSearchKey(), session);
+            query.setSorts(request.getSorts());
+            final MailboxSession msession = ImapSessionUtils.getMailboxSession(session);
+            final Iterator<Long> it = mailbox.search(query, msession);
+
+            // the order of the search results is the requested sort order
+            final List<Long> results = new ArrayList<Long>();
+            final List<Long> uids = new ArrayList<Long>();
+            while (it.hasNext()) {
+                final long uid = it.next();
+                final long number;
+                if (useUids) {
+                    number = uid;
+                } else {
+                    number = session.getSelected().msn(uid);
+                }
+                if (number != SelectedMailbox.NO_SUCH_MESSAGE) {
+                    results.add(number);
+                }
+                uids.add(uid);
+            }
+
+            // See RFC4551 3.5. MODSEQ Sort Criterion
+            final Long highestModSeq;
+            if (session.getAttribute(SearchProcessor.SEARCH_MODSEQ) != null) {
+                MetaData metaData = mailbox.getMetaData(false, msession, MessageManager.MetaData.FetchGroup.NO_COUNT);
+                highestModSeq = SearchProcessor.findHighestModSeq(msession, mailbox, MessageRange.toRanges(uids), metaData.getHighestModSeq());
+
+                // Enable CONDSTORE as this is a CONDSTORE enabling command
+                condstoreEnablingCommand(session, responder, metaData, true);
+            } else {
+                highestModSeq = null;
+            }
+
+            final ImapResponseMessage response;
+            if (resultOptions.isEmpty()) {
+                response = new SortResponse(toArray(results), highestModSeq);
+            } else {
+                response = esortResponse(results, highestModSeq, tag, useUids, resultOptions);
+            }
+            responder.respond(response);
+
+            boolean omitExpunged = (!useUids);
+            unsolicitedResponses(session, responder, omitExpunged, useUids);
+            okComplete(command, tag, responder);
+        } catch (MessageRangeException e) {
+            if (session.getLog().isDebugEnabled()) {
+                session.getLog().debug("Sort failed in mailbox " + session.getSelected().getPath() + " because of an invalid sequence-set ", e);
+            }
+            taggedBad(command, tag, responder, HumanReadableText.INVALID_MESSAGESET);
+        } catch (MailboxException e) {
+            if (session.getLog().isInfoEnabled()) {
+                session.getLog().info("Sort failed in mailbox " + session.getSelected().getPath(), e);
+            }
+            no(command, tag, responder, HumanReadableText.SORT_FAILED);
+        } finally {
+            session.setAttribute(SearchProcessor.SEARCH_MODSEQ, null);
+        }
+    }
+
+    /**
+     * Build the ESORT response. MIN and MAX are the first and the last
+     * messages in the sort order, and ALL lists the messages in that order.
+     * 
+     * See RFC5267 3.2. ESORT Extension
+     */
+    private ESearchResponse esortResponse(List<Long> results, Long highestModSeq, String tag, boolean useUids, List<SearchResultOption> resultOptions) {
+        long min = -1;
+        long max = -1;
+        if (!results.isEmpty()) {
+            min = results.get(0);
+            max = results.get(results.size() - 1);
+        }
+        IdRange[] all = new IdRange[results.size()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = new IdRange(results.get(i));
+        }
+        return new ESearchResponse(min, max, results.size(), all, highestModSeq, tag, useUids, resultOptions);
+    }
+
+    private long[] toArray(List<Long> results) {
+        long[] ids = new long[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i);
+        }
+        return ids;
+    }
+
+    /**
+     * @see org.apache.james.imap.processor.CapabilityImplementingProcessor
+     * #getImplementedCapabilities(org.apache.james.imap.api.process.ImapSession)
+     */
+    public List<String> getImplementedCapabilities(ImapSession session) {
+        return CAPS;
+    }
+}
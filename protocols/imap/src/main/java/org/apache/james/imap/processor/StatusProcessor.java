@@ -20,7 +20,6 @@
 package org.apache.james.imap.processor;
 
 import org.apache.james.imap.api.ImapCommand;
-import org.apache.james.imap.api.ImapSessionUtils;
 import org.apache.james.imap.api.display.HumanReadableText;
 import org.apache.james.imap.api.message.StatusDataItems;
 import org.apache.james.imap.api.message.response.StatusResponseFactory;
@@ -29,8 +28,6 @@ import org.apache.james.imap.api.process.ImapSession;
 import org.apache.james.imap.message.request.StatusRequest;
 import org.apache.james.imap.message.response.MailboxStatusResponse;
 import org.apache.james.mailbox.MailboxManager;
-import org.apache.james.mailbox.MailboxSession;
-import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.slf4j.Logger;
@@ -53,35 +50,13 @@ public class StatusProcessor extends AbstractMailboxProcessor<StatusRequest> {
         final MailboxPath mailboxPath = buildFullPath(session, request.getMailboxName());
         final StatusDataItems statusDataItems = request.getStatusDataItems();
         final Logger logger = session.getLog();
-        final MailboxSession mailboxSession = ImapSessionUtils.getMailboxSession(session);
 
         try {
             if (logger != null && logger.isDebugEnabled()) {
                 logger.debug("Status called on mailbox named " + mailboxPath);
             }
 
-            final MailboxManager mailboxManager = getMailboxManager();
-            final MessageManager mailbox = mailboxManager.getMailbox(mailboxPath, ImapSessionUtils.getMailboxSession(session));
-            final MessageManager.MetaData.FetchGroup fetchGroup;
-            if (statusDataItems.isUnseen()) {
-                fetchGroup = MessageManager.MetaData.FetchGroup.UNSEEN_COUNT;
-            } else {
-                fetchGroup = MessageManager.MetaData.FetchGroup.NO_UNSEEN;
-            }
-            final MessageManager.MetaData metaData = mailbox.getMetaData(false, mailboxSession, fetchGroup);
-
-            final Long messages = messages(statusDataItems, metaData);
-            final Long recent = recent(statusDataItems, metaData);
-            final Long uidNext = uidNext(statusDataItems, metaData);
-            final Long uidValidity = uidValidity(statusDataItems, metaData);
-            final Long unseen = unseen(statusDataItems, metaData);
-            final Long highestModSeq = highestModSeq(statusDataItems, metaData);
-            
-            // Enable CONDSTORE as this is a CONDSTORE enabling command
-            if (highestModSeq != null) {
-                condstoreEnablingCommand(session, responder, metaData, false); 
-            }
-            final MailboxStatusResponse response = new MailboxStatusResponse(messages, recent, uidNext, highestModSeq, uidValidity, unseen, request.getMailboxName());
+            final MailboxStatusResponse response = mailboxStatus(session, responder, mailboxPath, request.getMailboxName(), statusDataItems);
             responder.respond(response);
             unsolicitedResponses(session, responder, false);
             okComplete(command, tag, responder);
@@ -93,66 +68,4 @@ public class StatusProcessor extends AbstractMailboxProcessor<StatusRequest> {
             no(command, tag, responder, HumanReadableText.SEARCH_FAILED);
         }
     }
-
-    private Long unseen(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long unseen;
-        if (statusDataItems.isUnseen()) {
-            unseen = metaData.getUnseenCount();
-        } else {
-            unseen = null;
-        }
-        return unseen;
-    }
-
-    private Long uidValidity(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long uidValidity;
-        if (statusDataItems.isUidValidity()) {
-            uidValidity = metaData.getUidValidity();
-        } else {
-            uidValidity = null;
-        }
-        return uidValidity;
-    }
-
-
-    private Long highestModSeq(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long highestModSeq;
-        if (statusDataItems.isHighestModSeq()) {
-            highestModSeq = metaData.getHighestModSeq();
-        } else {
-            highestModSeq = null;
-        }
-        return highestModSeq;
-    }
-
-    
-    private Long uidNext(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long uidNext;
-        if (statusDataItems.isUidNext()) {
-            uidNext = metaData.getUidNext();
-        } else {
-            uidNext = null;
-        }
-        return uidNext;
-    }
-
-    private Long recent(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long recent;
-        if (statusDataItems.isRecent()) {
-            recent = metaData.countRecent();
-        } else {
-            recent = null;
-        }
-        return recent;
-    }
-
-    private Long messages(StatusDataItems statusDataItems, MessageManager.MetaData metaData) throws MailboxException {
-        final Long messages;
-        if (statusDataItems.isMessages()) {
-            messages = metaData.getMessageCount();
-        } else {
-            messages = null;
-        }
-        return messages;
-    }
 }
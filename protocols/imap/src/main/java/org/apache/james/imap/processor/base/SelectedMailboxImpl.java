@@ -25,8 +25,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import javax.mail.Flags;
@@ -83,13 +81,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
     private boolean applicableFlagsChanged;
     
-    private final SortedMap<Integer, Long> msnToUid =new TreeMap<Integer, Long>();
-
-    private final SortedMap<Long, Integer> uidToMsn = new TreeMap<Long, Integer>();
-
-    private long highestUid = 0;
-
-    private int highestMsn = 0;
+    private final UidMsnConverter uidMsnConverter = new UidMsnConverter();
     
     public SelectedMailboxImpl(MailboxManager mailboxManager, ImapSession session, MailboxPath path) throws MailboxException {
         this.session = session;
@@ -122,7 +114,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
             while(messages.hasNext()) {
                 MessageResult mr = messages.next();
                 applicableFlags.add(mr.getFlags());
-                add(mr.getUid());
+                uidMsnConverter.addUid(mr.getUid());
             }
             
           
@@ -132,49 +124,6 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
        
     }
 
-    private void add(int msn, long uid) {
-        if (uid > highestUid) {
-            highestUid = uid;
-        }
-        msnToUid.put(msn, uid);
-        uidToMsn.put(uid, msn);
-    }
-
-    /**
-     * Expunge the message with the given uid
-     * 
-     * @param uid
-     */
-    private void expunge(long uid) {
-        final int msn = msn(uid);
-        remove(msn, uid);
-        final List<Integer> renumberMsns = new ArrayList<Integer>(msnToUid.tailMap(msn + 1).keySet());
-        for (Integer msnInteger : renumberMsns) {
-            int aMsn = msnInteger.intValue();
-            long aUid = uid(aMsn);
-            remove(aMsn, aUid);
-            add(aMsn - 1, aUid);
-        }
-        highestMsn--;
-    }
-
-    private void remove(int msn, long uid) {
-        uidToMsn.remove(uid);
-        msnToUid.remove(msn);
-    }
-
-    /**
-     * Add the give uid
-     * 
-     * @param uid
-     */
-    private void add(long uid) {
-        if (!uidToMsn.containsKey(uid)) {
-            highestMsn++;
-            add(highestMsn, uid);
-        }
-    }
-
     /**
      * @see org.apache.james.mailbox.MailboxListener#event(org.apache.james.mailbox.MailboxListener.Event)
      */
@@ -184,22 +133,14 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
      * @see SelectedMailbox#getFirstUid()
      */
     public synchronized long getFirstUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.firstKey();
-        }
+        return uidMsnConverter.getFirstUid();
     }
 
     /**
      * @see SelectedMailbox#getLastUid()
      */
     public synchronized long getLastUid() {
-        if (uidToMsn.isEmpty()) {
-            return -1;
-        } else {
-            return uidToMsn.lastKey();
-        }
+        return uidMsnConverter.getLastUid();
     }
 
 
@@ -215,8 +156,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
             }
         }
         
-        uidToMsn.clear();
-        msnToUid.clear();
+        uidMsnConverter.clear();
         flagUpdateUids.clear();
 
         expungedUids.clear();
@@ -319,7 +259,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
     
     public synchronized  int remove(Long uid) {
         final int result = msn(uid);
-        expunge(uid);
+        uidMsnConverter.remove(uid);
         return result;
     }
 
@@ -453,7 +393,7 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
                     sizeChanged = true;
                     final List<Long> uids = ((Added) event).getUids();
                     for (Long uid : uids) {
-                        add(uid);
+                        uidMsnConverter.addUid(uid);
                     }
                 } else if (messageEvent instanceof FlagsUpdated) {
                     FlagsUpdated updated = (FlagsUpdated) messageEvent;
@@ -525,30 +465,17 @@ public class SelectedMailboxImpl implements SelectedMailbox, MailboxListener{
 
     
     public synchronized int msn(long uid) {
-        Integer msn = uidToMsn.get(uid);
-        if (msn != null) {
-            return msn.intValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+        return uidMsnConverter.getMsn(uid);
     }
 
     
     public synchronized long uid(int msn) {
-        if (msn == -1) {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
-        Long uid = msnToUid.get(msn);
-        if (uid != null) {
-            return uid.longValue();
-        } else {
-            return SelectedMailbox.NO_SUCH_MESSAGE;
-        }
+        return uidMsnConverter.getUid(msn);
     }
 
     
     public synchronized long existsCount() {
-        return uidToMsn.size();
+        return uidMsnConverter.getNumMessage();
     }
     
 
@@ -0,0 +1,140 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.processor.base;
+
+import java.util.Arrays;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+
+/**
+ * Keeps track of the uids of a selected mailbox in a sorted primitive array, so the message sequence number of a uid
+ * is its position in the array. This avoids holding two boxed maps with an entry per message, and expunging a
+ * message does not need to renumber the following message sequence numbers one by one.
+ * 
+ * IMPORTANT: This class is not thread-safe!
+ */
+public class UidMsnConverter {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] uids = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Add the given uid. Uids are expected to be mostly added in ascending order, which only appends to the array.
+     * 
+     * @param uid
+     */
+    public void addUid(long uid) {
+        if (size == 0 || uid > uids[size - 1]) {
+            ensureCapacity(size + 1);
+            uids[size++] = uid;
+            return;
+        }
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position >= 0) {
+            return;
+        }
+        int insertionPoint = -(position + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(uids, insertionPoint, uids, insertionPoint + 1, size - insertionPoint);
+        uids[insertionPoint] = uid;
+        size++;
+    }
+
+    /**
+     * Remove the given uid. The message sequence numbers of the following uids are decremented.
+     * 
+     * @param uid
+     */
+    public void remove(long uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position < 0) {
+            return;
+        }
+        System.arraycopy(uids, position + 1, uids, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * Return the message sequence number of the given uid or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     * 
+     * @param uid
+     * @return msn
+     */
+    public int getMsn(long uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid);
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return position + 1;
+    }
+
+    /**
+     * Return the uid of the given message sequence number or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     * 
+     * @param msn
+     * @return uid
+     */
+    public long getUid(int msn) {
+        if (msn < 1 || msn > size) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return uids[msn - 1];
+    }
+
+    /**
+     * Return the lowest uid or -1 if there is none
+     */
+    public long getFirstUid() {
+        if (size == 0) {
+            return -1;
+        }
+        return uids[0];
+    }
+
+    /**
+     * Return the highest uid or -1 if there is none
+     */
+    public long getLastUid() {
+        if (size == 0) {
+            return -1;
+        }
+        return uids[size - 1];
+    }
+
+    public int getNumMessage() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        uids = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > uids.length) {
+            uids = Arrays.copyOf(uids, Math.max(capacity, uids.length + (uids.length >> 1)));
+        }
+    }
+}
@@ -22,8 +22,10 @@ package org.apache.james.imap.processor.fetch;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.james.imap.message.response.FetchResponse.BodyElement;
+import org.apache.james.mailbox.model.ByteBufferBacked;
 
 /**
  * Wraps full content to implement a partial fetch.
@@ -74,7 +76,61 @@ final class PartialFetchBodyElement implements BodyElement {
      * @see org.apache.james.imap.message.response.Literal#getInputStream()
      */
     public InputStream getInputStream() throws IOException {
-        return new LimitingInputStream(delegate.getInputStream(), firstOctet, size());
+        InputStream in = delegate.getInputStream();
+        if (in instanceof ByteBufferBacked) {
+            // No need to skip octets, just slice the in memory content
+            return new ByteBufferInputStream(slice(((ByteBufferBacked) in).asByteBuffer(), size()));
+        }
+        return new LimitingInputStream(in, firstOctet, size());
+    }
+
+    private ByteBuffer slice(ByteBuffer buffer, long size) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(slice.position() + (int) Math.min(firstOctet, slice.remaining()));
+        slice.limit(slice.position() + (int) size);
+        return slice.slice();
+    }
+
+    /**
+     * {@link InputStream} which reads from a {@link ByteBuffer} and still exposes the remaining octets as a
+     * {@link ByteBuffer}, so the partial content can be written without being copied
+     */
+    private static final class ByteBufferInputStream extends InputStream implements ByteBufferBacked {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        public int read(byte b[], int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int readLimit = Math.min(len, buffer.remaining());
+            buffer.get(b, off, readLimit);
+            return readLimit;
+        }
+
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+
+        /**
+         * @see org.apache.james.mailbox.model.ByteBufferBacked#asByteBuffer()
+         */
+        public ByteBuffer asByteBuffer() {
+            return buffer.slice().asReadOnlyBuffer();
+        }
     }
 
     private final class LimitingInputStream extends FilterInputStream {
@@ -0,0 +1,77 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.decode.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.message.StatusDataItems;
+import org.apache.james.imap.decode.ImapRequestStreamLineReader;
+import org.apache.james.imap.message.request.ListRequest;
+import org.apache.james.protocols.imap.DecodingException;
+import org.junit.Test;
+
+public class ListCommandParserTest {
+
+    private static final ImapCommand LIST = ImapCommand.authenticatedStateCommand(ImapConstants.LIST_COMMAND_NAME);
+
+    private ListRequest decode(String commandString) throws DecodingException {
+        ImapRequestStreamLineReader lineReader = new ImapRequestStreamLineReader(new ByteArrayInputStream(commandString.getBytes()), null);
+        return (ListRequest) new ListCommandParser().decode(LIST, lineReader, "A001", null);
+    }
+
+    @Test
+    public void listWithoutReturnOptionsShouldNotRequestStatus() throws DecodingException {
+        ListRequest request = decode("\"\" \"*\"\r\n");
+
+        assertThat(request.getMailboxPattern()).isEqualTo("*");
+        assertThat(request.getStatusDataItems()).isNull();
+    }
+
+    @Test
+    public void listWithStatusReturnOptionShouldParseStatusDataItems() throws DecodingException {
+        ListRequest request = decode("\"\" % RETURN (STATUS (MESSAGES UNSEEN))\r\n");
+
+        StatusDataItems statusDataItems = request.getStatusDataItems();
+        assertThat(request.getMailboxPattern()).isEqualTo("%");
+        assertThat(statusDataItems.isMessages()).isTrue();
+        assertThat(statusDataItems.isUnseen()).isTrue();
+        assertThat(statusDataItems.isRecent()).isFalse();
+    }
+
+    @Test
+    public void listShouldAcceptChildrenReturnOption() throws DecodingException {
+        ListRequest request = decode("\"\" % return (children status (uidnext))\r\n");
+
+        assertThat(request.getStatusDataItems().isUidNext()).isTrue();
+    }
+
+    @Test
+    public void listWithEmptyReturnOptionsShouldNotRequestStatus() throws DecodingException {
+        assertThat(decode("\"\" % RETURN ()\r\n").getStatusDataItems()).isNull();
+    }
+
+    @Test(expected = DecodingException.class)
+    public void listShouldRejectUnknownReturnOption() throws DecodingException {
+        decode("\"\" % RETURN (SPECIAL-USE)\r\n");
+    }
+}
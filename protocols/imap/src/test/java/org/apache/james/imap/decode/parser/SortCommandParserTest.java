@@ -0,0 +1,109 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.decode.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapConstants;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.api.message.request.SearchResultOption;
+import org.apache.james.imap.decode.ImapRequestStreamLineReader;
+import org.apache.james.imap.message.request.SortRequest;
+import org.apache.james.mailbox.model.SearchQuery.Sort;
+import org.apache.james.mailbox.model.SearchQuery.Sort.SortClause;
+import org.apache.james.protocols.imap.DecodingException;
+import org.junit.Test;
+
+public class SortCommandParserTest {
+
+    private static final ImapCommand SORT = ImapCommand.selectedStateCommand(ImapConstants.SORT_COMMAND_NAME);
+
+    private SortRequest decode(String commandString, boolean useUids) throws DecodingException {
+        ImapRequestStreamLineReader lineReader = new ImapRequestStreamLineReader(new ByteArrayInputStream(commandString.getBytes()), null);
+        return (SortRequest) new SortCommandParser().decode(SORT, lineReader, "A001", useUids, null);
+    }
+
+    @Test
+    public void decodeShouldParseSortCriteria() throws DecodingException {
+        SortRequest request = decode("(REVERSE DATE subject) UTF-8 ALL\r\n", false);
+
+        List<Sort> sorts = request.getSorts();
+        assertThat(sorts).hasSize(2);
+        assertThat(sorts.get(0).getSortClause()).isEqualTo(SortClause.SentDate);
+        assertThat(sorts.get(0).isReverse()).isTrue();
+        assertThat(sorts.get(1).getSortClause()).isEqualTo(SortClause.BaseSubject);
+        assertThat(sorts.get(1).isReverse()).isFalse();
+        assertThat(request.getSearchOperation().getSearchKey()).isEqualTo(SearchKey.buildAll());
+        assertThat(request.getSearchOperation().getResultOptions()).isEmpty();
+        assertThat(request.isUseUids()).isFalse();
+    }
+
+    @Test
+    public void decodeShouldParseDisplaySortKeys() throws DecodingException {
+        SortRequest request = decode("(DISPLAYFROM DISPLAYTO) US-ASCII ALL\r\n", true);
+
+        List<Sort> sorts = request.getSorts();
+        assertThat(sorts).hasSize(2);
+        assertThat(sorts.get(0).getSortClause()).isEqualTo(SortClause.DisplayFrom);
+        assertThat(sorts.get(1).getSortClause()).isEqualTo(SortClause.DisplayTo);
+        assertThat(request.isUseUids()).isTrue();
+    }
+
+    @Test
+    public void decodeShouldParseSeveralSearchKeys() throws DecodingException {
+        SortRequest request = decode("(ARRIVAL) UTF-8 SEEN FLAGGED\r\n", false);
+
+        assertThat(request.getSearchOperation().getSearchKey())
+            .isEqualTo(SearchKey.buildAnd(Arrays.asList(SearchKey.buildSeen(), SearchKey.buildFlagged())));
+    }
+
+    @Test
+    public void decodeShouldParseEsortReturnOptions() throws DecodingException {
+        SortRequest request = decode("RETURN (MIN COUNT) (SIZE) UTF-8 ALL\r\n", false);
+
+        assertThat(request.getSorts()).hasSize(1);
+        assertThat(request.getSorts().get(0).getSortClause()).isEqualTo(SortClause.Size);
+        assertThat(request.getSearchOperation().getResultOptions()).containsExactly(SearchResultOption.MIN, SearchResultOption.COUNT);
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldRejectUnknownSortKey() throws DecodingException {
+        decode("(UNKNOWN) UTF-8 ALL\r\n", false);
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldRejectEmptySortCriteria() throws DecodingException {
+        decode("() UTF-8 ALL\r\n", false);
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldRejectReverseWithoutSortKey() throws DecodingException {
+        decode("(SIZE REVERSE) UTF-8 ALL\r\n", false);
+    }
+
+    @Test(expected = DecodingException.class)
+    public void decodeShouldRejectMissingSearchCriteria() throws DecodingException {
+        decode("(SIZE) UTF-8\r\n", false);
+    }
+}
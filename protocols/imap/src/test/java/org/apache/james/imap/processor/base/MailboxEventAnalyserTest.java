@@ -49,6 +49,8 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.Content;
 import org.apache.james.mailbox.model.Headers;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLCommand;
@@ -356,6 +358,10 @@ public class MailboxEventAnalyserTest {
 
         }
 
+        public List<AppendResult> appendMessage(InputStream msgIn, Date internalDate, List<AppendTarget> targets) throws MailboxException {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
         public boolean hasRight(MailboxPath mailboxPath, MailboxACLRight mailboxACLRight, MailboxSession mailboxSession) throws MailboxException {
             throw new NotImplementedException("Not implemented");
         }
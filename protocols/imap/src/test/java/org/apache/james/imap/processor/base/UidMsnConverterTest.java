@@ -0,0 +1,111 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imap.processor.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UidMsnConverterTest {
+
+    private UidMsnConverter testee;
+
+    @Before
+    public void setUp() {
+        testee = new UidMsnConverter();
+    }
+
+    @Test
+    public void getUidShouldReturnNoSuchMessageWhenEmpty() {
+        assertThat(testee.getUid(1)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void getMsnShouldReturnNoSuchMessageForUnknownUid() {
+        testee.addUid(42L);
+
+        assertThat(testee.getMsn(43L)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void uidsShouldBeNumberedInAscendingOrder() {
+        testee.addUid(10L);
+        testee.addUid(20L);
+        testee.addUid(30L);
+
+        assertThat(testee.getMsn(10L)).isEqualTo(1);
+        assertThat(testee.getMsn(30L)).isEqualTo(3);
+        assertThat(testee.getUid(2)).isEqualTo(20L);
+        assertThat(testee.getNumMessage()).isEqualTo(3);
+    }
+
+    @Test
+    public void addUidShouldKeepUidsSortedWhenAddedOutOfOrder() {
+        testee.addUid(30L);
+        testee.addUid(10L);
+        testee.addUid(20L);
+
+        assertThat(testee.getUid(1)).isEqualTo(10L);
+        assertThat(testee.getUid(2)).isEqualTo(20L);
+        assertThat(testee.getUid(3)).isEqualTo(30L);
+    }
+
+    @Test
+    public void addUidShouldIgnoreKnownUids() {
+        testee.addUid(10L);
+        testee.addUid(20L);
+        testee.addUid(10L);
+
+        assertThat(testee.getNumMessage()).isEqualTo(2);
+    }
+
+    @Test
+    public void removeShouldRenumberFollowingMessages() {
+        testee.addUid(10L);
+        testee.addUid(20L);
+        testee.addUid(30L);
+
+        testee.remove(20L);
+
+        assertThat(testee.getMsn(30L)).isEqualTo(2);
+        assertThat(testee.getUid(2)).isEqualTo(30L);
+        assertThat(testee.getUid(3)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.getMsn(20L)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void firstAndLastUidShouldBeMinusOneWhenEmpty() {
+        assertThat(testee.getFirstUid()).isEqualTo(-1);
+        assertThat(testee.getLastUid()).isEqualTo(-1);
+    }
+
+    @Test
+    public void addUidShouldGrowBeyondInitialCapacity() {
+        for (long uid = 1; uid <= 1000; uid++) {
+            testee.addUid(uid);
+        }
+
+        assertThat(testee.getNumMessage()).isEqualTo(1000);
+        assertThat(testee.getFirstUid()).isEqualTo(1L);
+        assertThat(testee.getLastUid()).isEqualTo(1000L);
+        assertThat(testee.getMsn(500L)).isEqualTo(500);
+    }
+}
@@ -21,8 +21,13 @@ package org.apache.james.imap.processor.fetch;
 
 import static org.junit.Assert.*;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import org.apache.james.imap.message.response.FetchResponse.BodyElement;
 import org.apache.james.imap.processor.fetch.PartialFetchBodyElement;
+import org.apache.james.mailbox.model.ByteBufferBacked;
+import org.apache.james.mailbox.store.streaming.ExposedSharedByteArrayInputStream;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.integration.junit4.JMock;
@@ -125,4 +130,23 @@ public class PartialFetchBodyElementTest {
         assertEquals("Content size is less than start. Size should be zero.",
                 NUMBER_OF_OCTETS, element.size());
     }
+
+    @Test
+    public void testInputStreamShouldBeSlicedWhenContentIsInMemory() throws Exception {
+        final byte[] content = "0123456789".getBytes("US-ASCII");
+        PartialFetchBodyElement element = new PartialFetchBodyElement(
+                mockBodyElement, 2, 5);
+        mockery.checking(new Expectations() {{
+            allowing(mockBodyElement).size();will(returnValue(new Long(content.length)));
+            oneOf(mockBodyElement).getInputStream();will(returnValue(new ExposedSharedByteArrayInputStream(content)));
+        }});
+        InputStream in = element.getInputStream();
+        assertTrue(in instanceof ByteBufferBacked);
+        ByteBuffer buffer = ((ByteBufferBacked) in).asByteBuffer();
+        assertEquals(5, buffer.remaining());
+        byte[] read = new byte[10];
+        assertEquals(5, in.read(read));
+        assertEquals("23456", new String(read, 0, 5, "US-ASCII"));
+        assertEquals(-1, in.read());
+    }
 }
@@ -0,0 +1,286 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.apache.james.protocols.netty.AbstractChannelPipelineFactory;
+import org.apache.james.protocols.netty.HandlerConstants;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.SocketChannelConfig;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+
+/**
+ * Asynchronous SMTP client which delivers one message per connection.
+ *
+ * Many deliveries can be in flight at the same time while only using the
+ * configured count of IO threads. The client supports the
+ * <code>PIPELINING</code>, <code>SIZE</code>, <code>8BITMIME</code> and
+ * <code>STARTTLS</code> extensions, SMTP over SSL and <code>AUTH PLAIN</code>.
+ * The message content is streamed from the {@link SMTPMessageContent} once the
+ * server is ready to receive it.
+ */
+public class SMTPClient {
+
+    public static final int DEFAULT_IO_WORKER_COUNT = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final String heloName;
+
+    private volatile int ioWorker = DEFAULT_IO_WORKER_COUNT;
+    private volatile int connectTimeout = 60000;
+    private volatile long timeout = 180000;
+    private volatile boolean startTLS = false;
+    private volatile boolean sslEnable = false;
+    private volatile boolean sendPartial = false;
+    private volatile String username;
+    private volatile String password;
+    private volatile InetAddress localAddress;
+    private volatile SSLContext sslContext;
+
+    private volatile boolean started;
+    private ClientSocketChannelFactory channelFactory;
+    private HashedWheelTimer timer;
+    private final ChannelGroup channels = new DefaultChannelGroup();
+
+    /**
+     * @param heloName
+     *            the name sent with the EHLO / HELO command
+     */
+    public SMTPClient(String heloName) {
+        this.heloName = heloName;
+    }
+
+    /**
+     * Set the IO-worker thread count to use. Default is nCores * 2
+     */
+    public void setIoWorkerCount(int ioWorker) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.ioWorker = ioWorker;
+    }
+
+    /**
+     * Set the connect timeout in milliseconds. Default is 60000
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds after which a connection without any read
+     * or write activity is closed. Default is 180000
+     */
+    public void setTimeout(long timeout) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Use STARTTLS if the server supports it. Default is false
+     */
+    public void setStartTLS(boolean startTLS) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.startTLS = startTLS;
+    }
+
+    /**
+     * Connect using SMTP over SSL. Default is false
+     */
+    public void setSSLEnable(boolean sslEnable) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.sslEnable = sslEnable;
+    }
+
+    /**
+     * Set the {@link SSLContext} used for SMTP over SSL and STARTTLS. Default
+     * is {@link SSLContext#getDefault()}
+     */
+    public void setSSLContext(SSLContext sslContext) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Send the message to the accepted recipients even if some others got
+     * rejected. Default is false, which means no message is sent as soon as
+     * one recipient is rejected
+     */
+    public void setSendPartial(boolean sendPartial) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.sendPartial = sendPartial;
+    }
+
+    /**
+     * Authenticate with <code>AUTH PLAIN</code> using the given credentials
+     * before sending any mail
+     */
+    public void setAuthentication(String username, String password) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Bind the outgoing connections to the given local address
+     */
+    public void setLocalAddress(InetAddress localAddress) {
+        if (started) throw new IllegalStateException("Can only be set when the client is not running");
+        this.localAddress = localAddress;
+    }
+
+    public synchronized void start() throws Exception {
+        if (started) throw new IllegalStateException("Client running already");
+        if (sslContext == null && (sslEnable || startTLS)) {
+            sslContext = SSLContext.getDefault();
+        }
+        channelFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool(), ioWorker);
+        timer = new HashedWheelTimer();
+        started = true;
+    }
+
+    public synchronized void stop() {
+        if (!started) return;
+        started = false;
+        channels.close().awaitUninterruptibly();
+        channelFactory.releaseExternalResources();
+        timer.stop();
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Deliver a message to the given server. This method returns immediately,
+     * the {@link SMTPDeliveryListener} gets notified once the delivery
+     * completed.
+     *
+     * @param server
+     *            address of the server to connect to
+     * @param serverName
+     *            name of the server, used for TLS
+     * @param sender
+     *            the envelope sender, an empty string for the null sender
+     * @param recipients
+     *            the envelope recipients
+     * @param content
+     *            the message to send
+     * @param listener
+     *            notified with the outcome of the delivery
+     */
+    public void deliver(final InetSocketAddress server, String serverName, String sender, List<String> recipients, SMTPMessageContent content, SMTPDeliveryListener listener) {
+        if (!started) throw new IllegalStateException("Client is not running");
+        if (recipients.isEmpty()) throw new IllegalArgumentException("At least one recipient is needed");
+
+        final SMTPClientHandler handler = new SMTPClientHandler(this, server, serverName, sender, new ArrayList<String>(recipients), content, listener);
+
+        ChannelPipeline pipeline = Channels.pipeline();
+        if (sslEnable) {
+            pipeline.addLast(HandlerConstants.SSL_HANDLER, new SslHandler(createSSLEngine(server, serverName)));
+        }
+        pipeline.addLast(HandlerConstants.FRAMER, new DelimiterBasedFrameDecoder(AbstractChannelPipelineFactory.MAX_LINE_LENGTH, Delimiters.lineDelimiter()));
+        pipeline.addLast(HandlerConstants.CHUNK_HANDLER, new ChunkedWriteHandler());
+        pipeline.addLast(HandlerConstants.TIMEOUT_HANDLER, new IdleStateHandler(timer, 0, 0, timeout, TimeUnit.MILLISECONDS));
+        pipeline.addLast(HandlerConstants.CORE_HANDLER, handler);
+
+        Channel channel = channelFactory.newChannel(pipeline);
+        channels.add(channel);
+        SocketChannelConfig config = (SocketChannelConfig) channel.getConfig();
+        config.setConnectTimeoutMillis(connectTimeout);
+        config.setTcpNoDelay(true);
+
+        if (localAddress != null) {
+            // Only connect once the channel is bound, as Netty does not queue the connect behind the bind
+            channel.bind(new InetSocketAddress(localAddress, 0)).addListener(new ChannelFutureListener() {
+
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (future.isSuccess()) {
+                        connect(future.getChannel(), server, handler);
+                    } else {
+                        handler.connectFailed(future.getChannel(), future.getCause());
+                    }
+                }
+            });
+        } else {
+            connect(channel, server, handler);
+        }
+    }
+
+    private void connect(Channel channel, InetSocketAddress server, final SMTPClientHandler handler) {
+        channel.connect(server).addListener(new ChannelFutureListener() {
+
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    handler.connectFailed(future.getChannel(), future.getCause());
+                }
+            }
+        });
+    }
+
+    String getHeloName() {
+        return heloName;
+    }
+
+    boolean isStartTLS() {
+        return startTLS;
+    }
+
+    boolean isSSLEnable() {
+        return sslEnable;
+    }
+
+    boolean isSendPartial() {
+        return sendPartial;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    String getPassword() {
+        return password;
+    }
+
+    SSLEngine createSSLEngine(InetSocketAddress server, String serverName) {
+        SSLEngine engine = sslContext.createSSLEngine(serverName, server.getPort());
+        engine.setUseClientMode(true);
+        return engine;
+    }
+}
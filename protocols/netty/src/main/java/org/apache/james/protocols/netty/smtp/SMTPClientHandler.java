@@ -0,0 +1,444 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.james.protocols.netty.HandlerConstants;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.base64.Base64;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.stream.ChunkedStream;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelUpstreamHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.util.CharsetUtil;
+
+/**
+ * Drives the SMTP dialog of one delivery done by the {@link SMTPClient}. It
+ * is not shareable between connections.
+ */
+class SMTPClientHandler extends IdleStateAwareChannelUpstreamHandler {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private enum State {
+        GREETING, EHLO, HELO, STARTTLS, AUTH, MAIL, RCPT, DATA, CONTENT, QUIT
+    }
+
+    private final SMTPClient client;
+    private final InetSocketAddress server;
+    private final String serverName;
+    private final String sender;
+    private final List<String> recipients;
+    private final SMTPMessageContent content;
+    private final SMTPDeliveryListener listener;
+
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private final List<String> accepted = new ArrayList<String>();
+    private final List<String> temporaryFailed = new ArrayList<String>();
+    private final List<String> permanentFailed = new ArrayList<String>();
+
+    private State state = State.GREETING;
+    private List<String> replyLines = new ArrayList<String>();
+    private final Set<String> extensions = new HashSet<String>();
+    private final Set<String> authMechanisms = new HashSet<String>();
+    private long maxSize = 0;
+    private boolean tls;
+    private boolean transactionStarted = false;
+    private SMTPReply mailFailure;
+    private int rcptIndex = 0;
+
+    public SMTPClientHandler(SMTPClient client, InetSocketAddress server, String serverName, String sender, List<String> recipients,
+            SMTPMessageContent content, SMTPDeliveryListener listener) {
+        this.client = client;
+        this.server = server;
+        this.serverName = serverName;
+        this.sender = sender;
+        this.recipients = recipients;
+        this.content = content;
+        this.listener = listener;
+        this.tls = client.isSSLEnable();
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        String line = ((ChannelBuffer) e.getMessage()).toString(CharsetUtil.US_ASCII);
+        if (!isReplyLine(line)) {
+            fail(ctx.getChannel(), new IOException("Invalid reply from " + serverName + ": " + line));
+            return;
+        }
+        replyLines.add(line.length() > 4 ? line.substring(4) : "");
+        if (line.length() > 3 && line.charAt(3) == '-') {
+            // More lines will follow
+            return;
+        }
+        SMTPReply reply = new SMTPReply(Integer.parseInt(line.substring(0, 3)), replyLines);
+        replyLines = new ArrayList<String>();
+        onReply(ctx.getChannel(), reply);
+    }
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        if (client.isSSLEnable()) {
+            // SMTP over SSL: the server only sends its greeting once the
+            // handshake is done, and the SslHandler does not start it on
+            // its own in client mode
+            final Channel channel = ctx.getChannel();
+            SslHandler sslHandler = (SslHandler) ctx.getPipeline().get(HandlerConstants.SSL_HANDLER);
+            sslHandler.handshake().addListener(new ChannelFutureListener() {
+
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        fail(channel, future.getCause());
+                    }
+                }
+            });
+        }
+        super.channelConnected(ctx, e);
+    }
+
+    @Override
+    public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
+        fail(ctx.getChannel(), new SocketTimeoutException("Timeout while talking to " + serverName));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+        fail(ctx.getChannel(), e.getCause());
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        complete(failure(null, new IOException("Connection closed by " + serverName)));
+        super.channelClosed(ctx, e);
+    }
+
+    void connectFailed(Channel channel, Throwable cause) {
+        fail(channel, cause);
+    }
+
+    private void onReply(Channel channel, SMTPReply reply) {
+        switch (state) {
+        case GREETING:
+            if (reply.isPositive()) {
+                sendHello(channel);
+            } else {
+                failHandshake(channel, reply);
+            }
+            break;
+        case EHLO:
+            if (reply.isPositive()) {
+                parseExtensions(reply);
+                afterHello(channel);
+            } else if (reply.isPermanentFailure()) {
+                // Server does not know about ESMTP
+                state = State.HELO;
+                write(channel, "HELO " + client.getHeloName());
+            } else {
+                failHandshake(channel, reply);
+            }
+            break;
+        case HELO:
+            if (reply.isPositive()) {
+                afterHello(channel);
+            } else {
+                failHandshake(channel, reply);
+            }
+            break;
+        case STARTTLS:
+            if (reply.getCode() == 220) {
+                startTLS(channel);
+            } else {
+                // STARTTLS is used opportunistically, go on in plain text
+                afterTLS(channel);
+            }
+            break;
+        case AUTH:
+            if (reply.getCode() == 235) {
+                startTransaction(channel);
+            } else {
+                failHandshake(channel, reply);
+            }
+            break;
+        case MAIL:
+            if (!reply.isPositive()) {
+                mailFailure = reply;
+            }
+            if (mailFailure != null && !isPipelining()) {
+                complete(transactionFailure(mailFailure));
+                quit(channel);
+            } else {
+                state = State.RCPT;
+                if (!isPipelining()) {
+                    write(channel, "RCPT TO:<" + recipients.get(rcptIndex) + ">");
+                }
+            }
+            break;
+        case RCPT:
+            if (mailFailure == null) {
+                String recipient = recipients.get(rcptIndex);
+                if (reply.isPositive()) {
+                    accepted.add(recipient);
+                } else if (reply.isTemporaryFailure()) {
+                    temporaryFailed.add(recipient);
+                } else {
+                    permanentFailed.add(recipient);
+                }
+            }
+            rcptIndex++;
+            if (rcptIndex < recipients.size()) {
+                if (!isPipelining()) {
+                    write(channel, "RCPT TO:<" + recipients.get(rcptIndex) + ">");
+                }
+            } else {
+                state = State.DATA;
+                if (!isPipelining()) {
+                    if (canSendData()) {
+                        write(channel, "DATA");
+                    } else {
+                        complete(transactionFailure(mailFailure));
+                        quit(channel);
+                    }
+                }
+            }
+            break;
+        case DATA:
+            if (reply.getCode() == 354) {
+                if (canSendData()) {
+                    state = State.CONTENT;
+                    sendContent(channel);
+                } else {
+                    // The pipelined DATA command was accepted even if the
+                    // transaction must not go through. Dropping the
+                    // connection is the only way to abort it now.
+                    complete(transactionFailure(mailFailure));
+                    channel.close();
+                }
+            } else {
+                if (canSendData()) {
+                    complete(transactionFailure(reply));
+                } else {
+                    complete(transactionFailure(mailFailure));
+                }
+                quit(channel);
+            }
+            break;
+        case CONTENT:
+            if (reply.isPositive()) {
+                complete(new SMTPDeliveryResult(true, true, reply, null, accepted, temporaryFailed, permanentFailed));
+            } else {
+                complete(transactionFailure(reply));
+            }
+            quit(channel);
+            break;
+        case QUIT:
+            channel.close();
+            break;
+        }
+    }
+
+    private void sendHello(Channel channel) {
+        state = State.EHLO;
+        extensions.clear();
+        authMechanisms.clear();
+        maxSize = 0;
+        write(channel, "EHLO " + client.getHeloName());
+    }
+
+    private void afterHello(Channel channel) {
+        if (client.isStartTLS() && !tls && extensions.contains("STARTTLS")) {
+            state = State.STARTTLS;
+            write(channel, "STARTTLS");
+        } else {
+            afterTLS(channel);
+        }
+    }
+
+    private void afterTLS(Channel channel) {
+        String username = client.getUsername();
+        if (username == null) {
+            startTransaction(channel);
+        } else if (!authMechanisms.contains("PLAIN")) {
+            failHandshake(channel, new SMTPReply(504, "AUTH PLAIN is not supported by " + serverName));
+        } else {
+            state = State.AUTH;
+            ChannelBuffer credentials = ChannelBuffers.copiedBuffer("\0" + username + "\0" + client.getPassword(), CharsetUtil.UTF_8);
+            write(channel, "AUTH PLAIN " + Base64.encode(credentials, false).toString(CharsetUtil.US_ASCII));
+        }
+    }
+
+    private void startTLS(final Channel channel) {
+        SslHandler sslHandler = new SslHandler(client.createSSLEngine(server, serverName));
+        channel.getPipeline().addFirst(HandlerConstants.SSL_HANDLER, sslHandler);
+        sslHandler.handshake().addListener(new ChannelFutureListener() {
+
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    tls = true;
+                    // Extensions need to be discovered again, see RFC 3207
+                    sendHello(channel);
+                } else {
+                    fail(channel, future.getCause());
+                }
+            }
+        });
+    }
+
+    private void startTransaction(Channel channel) {
+        transactionStarted = true;
+        long size = content.getSize();
+        if (maxSize > 0 && size > maxSize) {
+            complete(transactionFailure(new SMTPReply(552, "Message size exceeds fixed maximum message size of " + maxSize + " bytes")));
+            quit(channel);
+            return;
+        }
+
+        StringBuilder command = new StringBuilder("MAIL FROM:<").append(sender).append('>');
+        if (extensions.contains("SIZE") && size >= 0) {
+            command.append(" SIZE=").append(size);
+        }
+        if (extensions.contains("8BITMIME")) {
+            command.append(" BODY=8BITMIME");
+        }
+
+        state = State.MAIL;
+        if (isPipelining()) {
+            // Send the whole envelope at once, see RFC 2920
+            command.append("\r\n");
+            for (String recipient : recipients) {
+                command.append("RCPT TO:<").append(recipient).append(">\r\n");
+            }
+            command.append("DATA");
+        }
+        write(channel, command.toString());
+    }
+
+    private void sendContent(final Channel channel) {
+        InputStream in;
+        try {
+            in = content.getInputStream(extensions.contains("8BITMIME"));
+        } catch (IOException e) {
+            fail(channel, e);
+            return;
+        }
+        channel.write(new ChunkedStream(new SMTPDataInputStream(in), CHUNK_SIZE)).addListener(new ChannelFutureListener() {
+
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    fail(channel, future.getCause());
+                }
+            }
+        });
+    }
+
+    private void quit(Channel channel) {
+        state = State.QUIT;
+        // The outcome is known already, so failures from now on don't matter
+        write(channel, "QUIT").addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private void failHandshake(Channel channel, SMTPReply reply) {
+        complete(new SMTPDeliveryResult(false, false, reply, null, accepted, temporaryFailed, permanentFailed));
+        quit(channel);
+    }
+
+    private void fail(Channel channel, Throwable cause) {
+        complete(failure(null, cause));
+        channel.close();
+    }
+
+    private SMTPDeliveryResult transactionFailure(SMTPReply reply) {
+        return new SMTPDeliveryResult(false, true, reply, null, accepted, temporaryFailed, permanentFailed);
+    }
+
+    private SMTPDeliveryResult failure(SMTPReply reply, Throwable cause) {
+        return new SMTPDeliveryResult(false, transactionStarted, reply, cause, accepted, temporaryFailed, permanentFailed);
+    }
+
+    private void complete(SMTPDeliveryResult result) {
+        if (completed.compareAndSet(false, true)) {
+            listener.onComplete(result);
+        }
+    }
+
+    private boolean canSendData() {
+        if (mailFailure != null || accepted.isEmpty()) {
+            return false;
+        }
+        return client.isSendPartial() || (temporaryFailed.isEmpty() && permanentFailed.isEmpty());
+    }
+
+    private boolean isPipelining() {
+        return extensions.contains("PIPELINING");
+    }
+
+    private void parseExtensions(SMTPReply reply) {
+        List<String> lines = reply.getLines();
+        // The first line holds the server name
+        for (int i = 1; i < lines.size(); i++) {
+            String[] parts = lines.get(i).trim().split("\\s+");
+            String keyword = parts[0].toUpperCase(Locale.US);
+            extensions.add(keyword);
+            if (keyword.equals("SIZE") && parts.length > 1) {
+                try {
+                    maxSize = Long.parseLong(parts[1]);
+                } catch (NumberFormatException e) {
+                    // Ignore the announced limit
+                }
+            } else if (keyword.equals("AUTH")) {
+                for (int j = 1; j < parts.length; j++) {
+                    authMechanisms.add(parts[j].toUpperCase(Locale.US));
+                }
+            }
+        }
+    }
+
+    private boolean isReplyLine(String line) {
+        if (line.length() < 3 || (line.length() > 3 && line.charAt(3) != ' ' && line.charAt(3) != '-')) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            if (!Character.isDigit(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ChannelFuture write(Channel channel, String command) {
+        return channel.write(ChannelBuffers.copiedBuffer(command + "\r\n", CharsetUtil.US_ASCII));
+    }
+}
@@ -0,0 +1,134 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} which turns the raw content of a message into what is
+ * sent after the <code>DATA</code> command: bare CR and LF are turned into
+ * CRLF, lines starting with a dot get an extra dot and the content is
+ * terminated by <code>CRLF.CRLF</code>
+ */
+public class SMTPDataInputStream extends InputStream {
+
+    private static final int NONE = -2;
+    private static final byte[] TERMINATOR = { '.', '\r', '\n' };
+    private static final byte[] CRLF_TERMINATOR = { '\r', '\n', '.', '\r', '\n' };
+
+    private final InputStream in;
+    private int previous = '\r';
+    private int last = '\n';
+    // byte to return by the next read, because one input byte became two
+    private int pending = NONE;
+    // byte read ahead to check for a CRLF sequence
+    private int lookahead = NONE;
+    private byte[] trailer;
+    private int trailerPos = 0;
+
+    public SMTPDataInputStream(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pending != NONE) {
+            int c = pending;
+            pending = NONE;
+            return track(c);
+        }
+        if (trailer != null) {
+            if (trailerPos < trailer.length) {
+                return trailer[trailerPos++];
+            }
+            return -1;
+        }
+        int c = next();
+        if (c == -1) {
+            if (previous == '\r' && last == '\n') {
+                trailer = TERMINATOR;
+            } else {
+                trailer = CRLF_TERMINATOR;
+            }
+            return read();
+        }
+        if (c == '\r') {
+            int n = next();
+            if (n != '\n') {
+                // bare CR
+                lookahead = n;
+            }
+            pending = '\n';
+            return track('\r');
+        }
+        if (c == '\n') {
+            // bare LF, as a CRLF sequence was consumed above
+            pending = '\n';
+            return track('\r');
+        }
+        if (c == '.' && previous == '\r' && last == '\n') {
+            // Stuff an extra dot, the original one is returned by the next
+            // read
+            pending = '.';
+            return track('.');
+        }
+        return track(c);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            b[off + count++] = (byte) c;
+        }
+        if (count == 0) {
+            return -1;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int next() throws IOException {
+        if (lookahead != NONE) {
+            int c = lookahead;
+            lookahead = NONE;
+            return c;
+        }
+        return in.read();
+    }
+
+    private int track(int c) {
+        previous = last;
+        last = c;
+        return c;
+    }
+}
@@ -0,0 +1,32 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+/**
+ * Get notified once a delivery started with
+ * {@link SMTPClient#deliver(java.net.InetSocketAddress, String, String, java.util.List, SMTPMessageContent, SMTPDeliveryListener)}
+ * completed.
+ *
+ * The callback is executed by an IO thread of the {@link SMTPClient}, so
+ * implementations should not block.
+ */
+public interface SMTPDeliveryListener {
+
+    void onComplete(SMTPDeliveryResult result);
+}
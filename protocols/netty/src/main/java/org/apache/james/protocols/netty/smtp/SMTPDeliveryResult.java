@@ -0,0 +1,103 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a delivery attempt done by the {@link SMTPClient}
+ */
+public class SMTPDeliveryResult {
+
+    private final boolean delivered;
+    private final boolean transactionStarted;
+    private final SMTPReply reply;
+    private final Throwable cause;
+    private final List<String> acceptedRecipients;
+    private final List<String> temporaryFailedRecipients;
+    private final List<String> permanentFailedRecipients;
+
+    public SMTPDeliveryResult(boolean delivered, boolean transactionStarted, SMTPReply reply, Throwable cause, List<String> acceptedRecipients,
+            List<String> temporaryFailedRecipients, List<String> permanentFailedRecipients) {
+        this.delivered = delivered;
+        this.transactionStarted = transactionStarted;
+        this.reply = reply;
+        this.cause = cause;
+        this.acceptedRecipients = Collections.unmodifiableList(acceptedRecipients);
+        this.temporaryFailedRecipients = Collections.unmodifiableList(temporaryFailedRecipients);
+        this.permanentFailedRecipients = Collections.unmodifiableList(permanentFailedRecipients);
+    }
+
+    /**
+     * Return true if the server accepted the message for at least the
+     * recipients returned by {@link #getAcceptedRecipients()}
+     */
+    public boolean isDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Return true if the attempt failed before the mail transaction was
+     * started (connection, greeting, EHLO, STARTTLS or AUTH) or because of an
+     * I/O error. Such failures are specific to the server and another server
+     * for the same destination may succeed.
+     */
+    public boolean isConnectionFailure() {
+        return !delivered && (!transactionStarted || cause != null);
+    }
+
+    /**
+     * Return the reply which terminated the attempt. This is the final reply
+     * to the message content on success, and <code>null</code> if the
+     * attempt failed because of an I/O error or because of the replies to
+     * the <code>RCPT</code> commands
+     */
+    public SMTPReply getReply() {
+        return reply;
+    }
+
+    /**
+     * Return the I/O error which terminated the attempt, if any
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Return the recipients accepted by the server
+     */
+    public List<String> getAcceptedRecipients() {
+        return acceptedRecipients;
+    }
+
+    /**
+     * Return the recipients rejected with a 4xx reply
+     */
+    public List<String> getTemporaryFailedRecipients() {
+        return temporaryFailedRecipients;
+    }
+
+    /**
+     * Return the recipients rejected with a 5xx reply
+     */
+    public List<String> getPermanentFailedRecipients() {
+        return permanentFailedRecipients;
+    }
+}
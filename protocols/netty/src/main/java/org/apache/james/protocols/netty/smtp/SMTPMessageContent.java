@@ -0,0 +1,47 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content of a message to deliver with the {@link SMTPClient}. The
+ * content is only opened once the server accepted the <code>DATA</code>
+ * command and is then streamed to the server chunk by chunk.
+ */
+public interface SMTPMessageContent {
+
+    /**
+     * Return the size of the message in bytes, or -1 if unknown. It is
+     * announced via the <code>SIZE</code> extension when the server supports
+     * it.
+     */
+    long getSize();
+
+    /**
+     * Open the raw RFC 822 content of the message. Line endings are turned
+     * into CRLF and dot-stuffing is done by the client.
+     *
+     * @param eightBitMime
+     *            true if the server announced the <code>8BITMIME</code>
+     *            extension. If false the returned content must be 7bit
+     */
+    InputStream getInputStream(boolean eightBitMime) throws IOException;
+}
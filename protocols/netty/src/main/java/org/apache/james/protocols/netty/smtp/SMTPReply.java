@@ -0,0 +1,86 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reply received from a SMTP server. Multi-line replies are folded into one
+ * {@link SMTPReply}
+ */
+public class SMTPReply {
+
+    private final int code;
+    private final List<String> lines;
+
+    public SMTPReply(int code, List<String> lines) {
+        this.code = code;
+        this.lines = Collections.unmodifiableList(new ArrayList<String>(lines));
+    }
+
+    public SMTPReply(int code, String line) {
+        this(code, Collections.singletonList(line));
+    }
+
+    /**
+     * Return the three digits reply code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Return the text of each reply line, without the reply code
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * Return true for 2xx replies
+     */
+    public boolean isPositive() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Return true for 4xx replies
+     */
+    public boolean isTemporaryFailure() {
+        return code >= 400 && code < 500;
+    }
+
+    /**
+     * Return true for 5xx replies
+     */
+    public boolean isPermanentFailure() {
+        return code >= 500 && code < 600;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(code);
+        for (String line : lines) {
+            sb.append(' ').append(line);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,274 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Minimal SMTP server which answers with configurable reply codes and records
+ * the commands and messages it received. Message contents are recorded as
+ * sent on the wire, so still dot-stuffed.
+ */
+public class FakeSMTPServer {
+
+    private final SSLContext sslContext;
+    private final boolean smtps;
+    private final List<String> extensions = new CopyOnWriteArrayList<String>();
+    private final Map<String, Integer> rcptReplies = new ConcurrentHashMap<String, Integer>();
+    private final List<String> commands = new CopyOnWriteArrayList<String>();
+    private final List<String> messages = new CopyOnWriteArrayList<String>();
+    private volatile boolean ehloSupported = true;
+    private volatile int greetingReply = 220;
+    private volatile int mailReply = 250;
+    private volatile int messageReply = 250;
+    private volatile boolean tlsUsed = false;
+    private ServerSocket serverSocket;
+
+    public FakeSMTPServer() {
+        this(null, false);
+    }
+
+    /**
+     * @param sslContext
+     *            used for STARTTLS and SMTP over SSL
+     * @param smtps
+     *            true to only accept SMTP over SSL
+     */
+    public FakeSMTPServer(SSLContext sslContext, boolean smtps) {
+        this.sslContext = sslContext;
+        this.smtps = smtps;
+    }
+
+    public void start() throws IOException {
+        if (smtps) {
+            serverSocket = sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        } else {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        }
+        Thread acceptor = new Thread(new Runnable() {
+
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        new Thread(new Runnable() {
+
+                            public void run() {
+                                try {
+                                    handle(socket);
+                                } catch (IOException e) {
+                                    // The client went away
+                                } finally {
+                                    try {
+                                        socket.close();
+                                    } catch (IOException e) {
+                                        // ignore on close
+                                    }
+                                }
+                            }
+                        }, "Fake SMTP session").start();
+                    } catch (IOException e) {
+                        // Stopped
+                    }
+                }
+            }
+        }, "Fake SMTP acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    /**
+     * Announce the given extension, like <code>PIPELINING</code> or
+     * <code>SIZE 1000</code>, in the EHLO reply
+     */
+    public void addExtension(String extension) {
+        extensions.add(extension);
+    }
+
+    /**
+     * Reject EHLO, so clients have to fall back to HELO
+     */
+    public void setEhloSupported(boolean ehloSupported) {
+        this.ehloSupported = ehloSupported;
+    }
+
+    public void setGreetingReply(int greetingReply) {
+        this.greetingReply = greetingReply;
+    }
+
+    public void setMailReply(int mailReply) {
+        this.mailReply = mailReply;
+    }
+
+    /**
+     * Reply with the given code to the <code>RCPT</code> command for the given
+     * recipient. Other recipients are accepted
+     */
+    public void setRcptReply(String recipient, int rcptReply) {
+        rcptReplies.put(recipient, rcptReply);
+    }
+
+    /**
+     * Reply with the given code once the message content was received
+     */
+    public void setMessageReply(int messageReply) {
+        this.messageReply = messageReply;
+    }
+
+    public List<String> getCommands() {
+        return new ArrayList<String>(commands);
+    }
+
+    public List<String> getMessages() {
+        return new ArrayList<String>(messages);
+    }
+
+    /**
+     * Return true if a client upgraded its connection with STARTTLS
+     */
+    public boolean isTlsUsed() {
+        return tlsUsed;
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        reply(out, greetingReply + " fake ESMTP");
+        int acceptedRecipients = 0;
+        String line;
+        while ((line = readLine(in)) != null) {
+            commands.add(line);
+            String command = line.toUpperCase(Locale.US);
+            if (greetingReply != 220 && !command.startsWith("QUIT")) {
+                reply(out, "503 Bad sequence of commands");
+            } else if (command.startsWith("EHLO")) {
+                if (ehloSupported) {
+                    List<String> lines = new ArrayList<String>();
+                    lines.add("fake");
+                    lines.addAll(extensions);
+                    StringBuilder ehloReply = new StringBuilder();
+                    for (int i = 0; i < lines.size(); i++) {
+                        if (i > 0) {
+                            ehloReply.append("\r\n");
+                        }
+                        ehloReply.append(i == lines.size() - 1 ? "250 " : "250-").append(lines.get(i));
+                    }
+                    reply(out, ehloReply.toString());
+                } else {
+                    reply(out, "502 Command not implemented");
+                }
+            } else if (command.startsWith("HELO")) {
+                reply(out, "250 fake");
+            } else if (command.startsWith("STARTTLS")) {
+                reply(out, "220 Ready to start TLS");
+                SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+                sslSocket.setUseClientMode(false);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+                in = socket.getInputStream();
+                out = socket.getOutputStream();
+                tlsUsed = true;
+            } else if (command.startsWith("MAIL FROM:")) {
+                acceptedRecipients = 0;
+                reply(out, mailReply + " MAIL");
+            } else if (command.startsWith("RCPT TO:")) {
+                String recipient = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+                int code = rcptReplies.containsKey(recipient) ? rcptReplies.get(recipient) : 250;
+                if (code < 300 && mailReply < 300) {
+                    acceptedRecipients++;
+                }
+                reply(out, code + " RCPT " + recipient);
+            } else if (command.equals("DATA")) {
+                if (mailReply >= 300 || acceptedRecipients == 0) {
+                    reply(out, "554 No valid recipients");
+                } else {
+                    reply(out, "354 Start mail input");
+                    messages.add(readMessage(in));
+                    reply(out, messageReply + " Message");
+                }
+            } else if (command.equals("RSET")) {
+                acceptedRecipients = 0;
+                reply(out, "250 Reset");
+            } else if (command.equals("QUIT")) {
+                reply(out, "221 Bye");
+                return;
+            } else {
+                reply(out, "500 Unknown command");
+            }
+        }
+    }
+
+    private String readMessage(InputStream in) throws IOException {
+        StringBuilder message = new StringBuilder();
+        String line;
+        while ((line = readLine(in)) != null && !line.equals(".")) {
+            message.append(line).append("\r\n");
+        }
+        return message.toString();
+    }
+
+    /**
+     * Read a CRLF terminated line. Bare CR or LF are kept in the line
+     */
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int previous = -1;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (previous == '\r' && c == '\n') {
+                byte[] bytes = line.toByteArray();
+                return new String(bytes, 0, bytes.length - 1, "ISO-8859-1");
+            }
+            line.write(c);
+            previous = c;
+        }
+        return null;
+    }
+
+    private void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes("US-ASCII"));
+        out.flush();
+    }
+}
@@ -0,0 +1,343 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.protocols.api.utils.BogusSslContextFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SMTPClientTest {
+
+    private static final String SENDER = "sender@james.org";
+    private static final String RCPT1 = "rcpt1@example.org";
+    private static final String RCPT2 = "rcpt2@example.org";
+    private static final String RCPT3 = "rcpt3@example.org";
+    private static final String CONTENT = "Subject: test\r\n\r\nHello\r\n";
+
+    private FakeSMTPServer server;
+    private SMTPClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSMTPServer(BogusSslContextFactory.getServerContext(), false);
+        client = new SMTPClient("james.org");
+        client.setTimeout(10000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        server.stop();
+    }
+
+    private SMTPDeliveryResult deliver(String content, String... recipients) throws Exception {
+        if (!client.isStarted()) {
+            client.start();
+        }
+        return deliver(server.getAddress(), content, recipients);
+    }
+
+    private SMTPDeliveryResult deliver(InetSocketAddress address, String content, String... recipients) throws Exception {
+        RecordingListener listener = new RecordingListener();
+        client.deliver(address, "localhost", SENDER, Arrays.asList(recipients), new StringContent(content), listener);
+        return listener.await();
+    }
+
+    @Test
+    public void deliverShouldSendEnvelopeAndContent() throws Exception {
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1, RCPT2);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Arrays.asList(RCPT1, RCPT2), result.getAcceptedRecipients());
+        assertEquals(250, result.getReply().getCode());
+        assertEquals(Arrays.asList("EHLO james.org", "MAIL FROM:<" + SENDER + ">", "RCPT TO:<" + RCPT1 + ">", "RCPT TO:<" + RCPT2 + ">", "DATA"),
+                server.getCommands().subList(0, 5));
+        assertEquals(Collections.singletonList(CONTENT), server.getMessages());
+    }
+
+    @Test
+    public void deliverShouldPipelineTheEnvelopeWhenSupported() throws Exception {
+        server.addExtension("PIPELINING");
+        server.addExtension("SIZE 1000");
+        server.addExtension("8BITMIME");
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1, RCPT2);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Arrays.asList(RCPT1, RCPT2), result.getAcceptedRecipients());
+        assertEquals(Arrays.asList("EHLO james.org", "MAIL FROM:<" + SENDER + "> SIZE=" + CONTENT.length() + " BODY=8BITMIME", "RCPT TO:<" + RCPT1 + ">",
+                "RCPT TO:<" + RCPT2 + ">", "DATA"), server.getCommands().subList(0, 5));
+        assertEquals(Collections.singletonList(CONTENT), server.getMessages());
+    }
+
+    @Test
+    public void deliverShouldFallBackToHeloWhenEhloIsNotSupported() throws Exception {
+        server.setEhloSupported(false);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Arrays.asList("EHLO james.org", "HELO james.org"), server.getCommands().subList(0, 2));
+    }
+
+    @Test
+    public void deliverShouldNotSendMessagesExceedingTheAnnouncedSize() throws Exception {
+        server.addExtension("SIZE 10");
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertFalse(result.isConnectionFailure());
+        assertEquals(552, result.getReply().getCode());
+        assertTrue(server.getMessages().isEmpty());
+    }
+
+    @Test
+    public void partialRecipientRejectionsShouldAbortTheTransactionByDefault() throws Exception {
+        server.setRcptReply(RCPT2, 550);
+        server.setRcptReply(RCPT3, 450);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1, RCPT2, RCPT3);
+
+        assertFalse(result.isDelivered());
+        assertFalse(result.isConnectionFailure());
+        assertNull(result.getReply());
+        assertEquals(Collections.singletonList(RCPT1), result.getAcceptedRecipients());
+        assertEquals(Collections.singletonList(RCPT2), result.getPermanentFailedRecipients());
+        assertEquals(Collections.singletonList(RCPT3), result.getTemporaryFailedRecipients());
+        assertTrue(server.getMessages().isEmpty());
+    }
+
+    @Test
+    public void partialRecipientRejectionsShouldBeReportedWhenSendingPartially() throws Exception {
+        client.setSendPartial(true);
+        server.setRcptReply(RCPT2, 550);
+        server.setRcptReply(RCPT3, 450);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1, RCPT2, RCPT3);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Collections.singletonList(RCPT1), result.getAcceptedRecipients());
+        assertEquals(Collections.singletonList(RCPT2), result.getPermanentFailedRecipients());
+        assertEquals(Collections.singletonList(RCPT3), result.getTemporaryFailedRecipients());
+        assertEquals(Collections.singletonList(CONTENT), server.getMessages());
+    }
+
+    @Test
+    public void partialRecipientRejectionsShouldBeReportedWhenPipelining() throws Exception {
+        client.setSendPartial(true);
+        server.addExtension("PIPELINING");
+        server.setRcptReply(RCPT2, 550);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1, RCPT2);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Collections.singletonList(RCPT1), result.getAcceptedRecipients());
+        assertEquals(Collections.singletonList(RCPT2), result.getPermanentFailedRecipients());
+    }
+
+    @Test
+    public void allRecipientsRejectedShouldNotSendTheMessage() throws Exception {
+        client.setSendPartial(true);
+        server.setRcptReply(RCPT1, 550);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertEquals(Collections.singletonList(RCPT1), result.getPermanentFailedRecipients());
+        assertTrue(server.getMessages().isEmpty());
+    }
+
+    @Test
+    public void contentShouldBeDotStuffedAndNormalized() throws Exception {
+        server.start();
+
+        SMTPDeliveryResult result = deliver("Subject: dots\n\n.\n..two\r.end", RCPT1);
+
+        assertTrue(result.isDelivered());
+        assertEquals(Collections.singletonList("Subject: dots\r\n\r\n..\r\n...two\r\n..end\r\n"), server.getMessages());
+    }
+
+    @Test
+    public void startTLSShouldBeUsedWhenAnnounced() throws Exception {
+        client.setStartTLS(true);
+        client.setSSLContext(BogusSslContextFactory.getClientContext());
+        server.addExtension("STARTTLS");
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertTrue(result.isDelivered());
+        assertTrue(server.isTlsUsed());
+        // Extensions are discovered again after STARTTLS
+        assertEquals(Arrays.asList("EHLO james.org", "STARTTLS", "EHLO james.org", "MAIL FROM:<" + SENDER + ">"), server.getCommands().subList(0, 4));
+        assertEquals(Collections.singletonList(CONTENT), server.getMessages());
+    }
+
+    @Test
+    public void startTLSShouldNotBeUsedWhenNotAnnounced() throws Exception {
+        client.setStartTLS(true);
+        client.setSSLContext(BogusSslContextFactory.getClientContext());
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertTrue(result.isDelivered());
+        assertFalse(server.isTlsUsed());
+    }
+
+    @Test
+    public void deliverShouldWorkOverSSL() throws Exception {
+        FakeSMTPServer smtpsServer = new FakeSMTPServer(BogusSslContextFactory.getServerContext(), true);
+        smtpsServer.start();
+        try {
+            client.setSSLEnable(true);
+            client.setSSLContext(BogusSslContextFactory.getClientContext());
+            client.start();
+
+            SMTPDeliveryResult result = deliver(smtpsServer.getAddress(), CONTENT, RCPT1);
+
+            assertTrue(result.isDelivered());
+            assertEquals(Collections.singletonList(CONTENT), smtpsServer.getMessages());
+        } finally {
+            smtpsServer.stop();
+        }
+    }
+
+    @Test
+    public void rejectedGreetingShouldBeAConnectionFailure() throws Exception {
+        server.setGreetingReply(421);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertTrue(result.isConnectionFailure());
+        assertEquals(421, result.getReply().getCode());
+    }
+
+    @Test
+    public void refusedConnectionShouldBeAConnectionFailure() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        InetSocketAddress unused = new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        socket.close();
+        client.start();
+
+        SMTPDeliveryResult result = deliver(unused, CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertTrue(result.isConnectionFailure());
+        assertNotNull(result.getCause());
+    }
+
+    @Test
+    public void temporaryMailFailureShouldBeReportedAsTemporary() throws Exception {
+        server.setMailReply(451);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertFalse(result.isConnectionFailure());
+        assertTrue(result.getReply().isTemporaryFailure());
+    }
+
+    @Test
+    public void permanentMailFailureShouldBeReportedAsPermanent() throws Exception {
+        server.setMailReply(553);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertFalse(result.isConnectionFailure());
+        assertTrue(result.getReply().isPermanentFailure());
+    }
+
+    @Test
+    public void rejectedContentShouldBeReportedWithTheFinalReply() throws Exception {
+        server.setMessageReply(554);
+        server.start();
+
+        SMTPDeliveryResult result = deliver(CONTENT, RCPT1);
+
+        assertFalse(result.isDelivered());
+        assertFalse(result.isConnectionFailure());
+        assertEquals(554, result.getReply().getCode());
+        assertEquals(Collections.singletonList(CONTENT), server.getMessages());
+    }
+
+    private static final class StringContent implements SMTPMessageContent {
+        private final byte[] content;
+
+        private StringContent(String content) {
+            this.content = content.getBytes();
+        }
+
+        public long getSize() {
+            return content.length;
+        }
+
+        public InputStream getInputStream(boolean eightBitMime) throws IOException {
+            return new ByteArrayInputStream(content);
+        }
+    }
+
+    private static final class RecordingListener implements SMTPDeliveryListener {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile SMTPDeliveryResult result;
+
+        public void onComplete(SMTPDeliveryResult result) {
+            this.result = result;
+            latch.countDown();
+        }
+
+        public SMTPDeliveryResult await() throws InterruptedException {
+            assertTrue("The delivery did not complete", latch.await(20, TimeUnit.SECONDS));
+            return result;
+        }
+    }
+}
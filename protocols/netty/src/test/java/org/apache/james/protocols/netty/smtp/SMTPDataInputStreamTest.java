@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.netty.smtp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class SMTPDataInputStreamTest {
+
+    private String read(String content) throws IOException {
+        InputStream in = new SMTPDataInputStream(new ByteArrayInputStream(content.getBytes("US-ASCII")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("US-ASCII");
+    }
+
+    @Test
+    public void contentEndingWithCRLFShouldOnlyGetTheDotLine() throws IOException {
+        assertEquals("Subject: test\r\n\r\nbody\r\n.\r\n", read("Subject: test\r\n\r\nbody\r\n"));
+    }
+
+    @Test
+    public void contentWithoutFinalCRLFShouldBeTerminatedByCRLFDotCRLF() throws IOException {
+        assertEquals("Subject: test\r\n\r\nbody\r\n.\r\n", read("Subject: test\r\n\r\nbody"));
+    }
+
+    @Test
+    public void emptyContentShouldOnlyBeTheDotLine() throws IOException {
+        assertEquals(".\r\n", read(""));
+    }
+
+    @Test
+    public void linesStartingWithADotShouldBeStuffed() throws IOException {
+        assertEquals("..\r\n...dots\r\na.b\r\n..\r\n.\r\n", read(".\r\n..dots\r\na.b\r\n."));
+    }
+
+    @Test
+    public void bareLFShouldBeTurnedIntoCRLF() throws IOException {
+        assertEquals("a\r\nb\r\n\r\nc\r\n.\r\n", read("a\nb\n\nc\n"));
+    }
+
+    @Test
+    public void bareCRShouldBeTurnedIntoCRLF() throws IOException {
+        assertEquals("a\r\nb\r\n\r\nc\r\n.\r\n", read("a\rb\r\rc\r"));
+    }
+
+    @Test
+    public void dotAfterBareLineEndingShouldBeStuffed() throws IOException {
+        assertEquals("a\r\n..b\r\n..c\r\n.\r\n", read("a\n.b\r.c"));
+    }
+
+    @Test
+    public void CRLFShouldBeKeptAsIs() throws IOException {
+        assertEquals("a\r\n\r\nb\r\n.\r\n", read("a\r\n\r\nb"));
+    }
+}
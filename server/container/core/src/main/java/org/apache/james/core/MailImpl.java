@@ -38,11 +38,14 @@ import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -70,6 +73,13 @@ public class MailImpl implements Disposable, Mail {
      * be deserializable (so your mail doesn't get lost)
      */
     public static final long serialVersionUID = -4289663364703986260L;
+    /**
+     * Types of attribute values which are shared rather than copied when the
+     * mail is duplicated
+     */
+    private static final Set<Class<?>> IMMUTABLE_ATTRIBUTE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class));
     /**
      * The error message, if any, associated with this mail.
      */
@@ -163,12 +173,17 @@ public class MailImpl implements Disposable, Mail {
         setLastUpdated(mail.getLastUpdated());
         try {
             if (mail instanceof MailImpl) {
-                setAttributesRaw((HashMap<String, Object>) cloneSerializableObject(((MailImpl) mail).getAttributesRaw()));
+                setAttributesRaw(copyAttributes(((MailImpl) mail).getAttributesRaw()));
             } else {
                 HashMap<String, Object> attribs = new HashMap<String, Object>();
                 for (Iterator<String> i = mail.getAttributeNames(); i.hasNext(); ) {
                     String hashKey = i.next();
-                    attribs.put(hashKey, cloneSerializableObject(mail.getAttribute(hashKey)));
+                    Serializable value = mail.getAttribute(hashKey);
+                    if (isImmutable(value)) {
+                        attribs.put(hashKey, value);
+                    } else {
+                        attribs.put(hashKey, cloneSerializableObject(value));
+                    }
                 }
                 setAttributesRaw(attribs);
             }
@@ -603,6 +618,45 @@ public class MailImpl implements Disposable, Mail {
         return !attributes.isEmpty();
     }
 
+    /**
+     * Copy the given attributes. Values of well known immutable types are
+     * shared with the original mail, as most attributes are. Only the other
+     * values are deep copied, all at once so that references between them are
+     * kept.
+     *
+     * @param attributes attributes to copy
+     * @return the copy
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Object> copyAttributes(Map<String, Object> attributes) throws IOException, ClassNotFoundException {
+        HashMap<String, Object> copy = new HashMap<String, Object>(attributes.size() * 4 / 3 + 1);
+        HashMap<String, Object> mutableValues = null;
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            if (isImmutable(entry.getValue())) {
+                copy.put(entry.getKey(), entry.getValue());
+            } else {
+                if (mutableValues == null) {
+                    mutableValues = new HashMap<String, Object>();
+                }
+                mutableValues.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (mutableValues != null) {
+            copy.putAll((HashMap<String, Object>) cloneSerializableObject(mutableValues));
+        }
+        return copy;
+    }
+
+    /**
+     * Return true if the given attribute value can't be modified, so it does
+     * not need to be copied when duplicating a mail
+     */
+    private static boolean isImmutable(Object value) {
+        return value == null || IMMUTABLE_ATTRIBUTE_TYPES.contains(value.getClass());
+    }
+
     /**
      * This methods provide cloning for serializable objects. Mail Attributes
      * are Serializable but not Clonable so we need a deep copy
@@ -38,6 +38,7 @@ import javax.mail.internet.MimeMessage;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.james.lifecycle.api.Disposable;
 import org.apache.james.lifecycle.api.LifecycleUtil;
 
@@ -82,6 +83,12 @@ public class MimeMessageWrapper extends MimeMessage implements Disposable {
 
     private long initialHeaderSize;
 
+    /**
+     * Offset of the body in the source, or -1 until the headers were read from
+     * the source
+     */
+    private long bodyStartOffset = -1;
+
     private MimeMessageWrapper(Session session) {
         super(session);
         this.headers = null;
@@ -301,21 +308,18 @@ public class MimeMessageWrapper extends MimeMessage implements Disposable {
             // First handle the headers
             InputStream in = source.getInputStream();
             try {
-                InternetHeaders myHeaders;
-                MailHeaders parsedHeaders = new MailHeaders(in);
+                // Unmodified headers are the ones of the source, so they
+                // are only parsed once
+                skipHeaders(in);
 
-                // check if we should use the parsed headers or not
-                if (!isHeaderModified()) {
-                    myHeaders = parsedHeaders;
-                } else {
+                if (isHeaderModified()) {
                     // The headers was modified so we need to call saveChanges() just to be sure
                     // See JAMES-1320
                     if (!saved)
                         saveChanges();
-                    myHeaders = headers;
                 }
                 @SuppressWarnings("unchecked")
-                Enumeration<String> filteredHeaders = myHeaders.getNonMatchingHeaderLines(ignoreList);
+                Enumeration<String> filteredHeaders = headers.getNonMatchingHeaderLines(ignoreList);
                 IOUtils.copy(new InternetHeadersInputStream(filteredHeaders), headerOs);
                 IOUtils.copy(in, bodyOs);
             } finally {
@@ -610,20 +614,48 @@ public class MimeMessageWrapper extends MimeMessage implements Disposable {
          */
 
         // Keep this: skip the headers from the stream
-        // we could put that code in the else and simple write an "header"
-        // skipping
-        // reader for the others.
-        MailHeaders newHeaders = new MailHeaders(is);
-
         if (headers != null) {
+            try {
+                skipHeaders(is);
+            } catch (IOException e) {
+                throw new MessagingException("Unable to skip headers: " + e.getMessage(), e);
+            }
             return headers;
         } else {
+            MailHeaders newHeaders = readHeaders(is);
             initialHeaderSize = newHeaders.getSize();
 
             return newHeaders;
         }
     }
 
+    /**
+     * Parse the headers from the given stream, recording where the body
+     * starts
+     */
+    private MailHeaders readHeaders(InputStream in) throws MessagingException {
+        CountingInputStream countingIn = new CountingInputStream(in);
+        MailHeaders newHeaders = new MailHeaders(countingIn);
+        bodyStartOffset = countingIn.getByteCount();
+        return newHeaders;
+    }
+
+    /**
+     * Position the given source stream at the start of the body. The headers
+     * are parsed only once, afterwards they are just skipped over.
+     */
+    private synchronized void skipHeaders(InputStream in) throws IOException, MessagingException {
+        if (bodyStartOffset != -1) {
+            IOUtils.skipFully(in, bodyStartOffset);
+        } else {
+            MailHeaders parsedHeaders = readHeaders(in);
+            if (headers == null) {
+                headers = parsedHeaders;
+                initialHeaderSize = parsedHeaders.getSize();
+            }
+        }
+    }
+
     /**
      * @see javax.mail.internet.MimeMessage#getContentStream()
      */
@@ -645,7 +677,7 @@ public class MimeMessageWrapper extends MimeMessage implements Disposable {
             try {
                 is = source.getInputStream();
                 // skip the headers.
-                new MailHeaders(is);
+                skipHeaders(is);
                 return is;
             } catch (IOException e) {
                 throw new MessagingException("Unable to read the stream: " + e.getMessage(), e);
@@ -684,7 +716,7 @@ public class MimeMessageWrapper extends MimeMessage implements Disposable {
                     
                     // skip over headers from original stream we want to use the
                     // in memory ones
-                    new MailHeaders(in);
+                    skipHeaders(in);
 
                     // now construct the new stream using the in memory headers
                     // and the body from the original source
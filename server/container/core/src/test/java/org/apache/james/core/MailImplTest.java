@@ -102,4 +102,29 @@ public class MailImplTest extends MailTestAllImplementations {
         helperTestInitialState(duplicate);
         helperTestMessageSize(duplicate, 0);
     }
+
+    @Test
+    public void testDuplicateSharesImmutableAttributes() throws MessagingException {
+        String value = new String("value");
+        MailImpl mail = new MailImpl();
+        mail.setAttribute("string", value);
+
+        MailImpl duplicate = (MailImpl) mail.duplicate();
+        assertSame("immutable attribute shared", value, duplicate.getAttribute("string"));
+    }
+
+    @Test
+    public void testDuplicateCopiesMutableAttributes() throws MessagingException {
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("a");
+        MailImpl mail = new MailImpl();
+        mail.setAttribute("list", list);
+        mail.setAttribute("sameList", list);
+
+        MailImpl duplicate = (MailImpl) mail.duplicate();
+        list.add("b");
+
+        assertEquals("mutable attribute copied", 1, ((ArrayList<?>) duplicate.getAttribute("list")).size());
+        assertSame("references between attributes kept", duplicate.getAttribute("list"), duplicate.getAttribute("sameList"));
+    }
 }
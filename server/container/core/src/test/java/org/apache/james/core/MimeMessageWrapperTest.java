@@ -36,6 +36,7 @@ import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 import javax.mail.util.SharedByteArrayInputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.lifecycle.api.LifecycleUtil;
 import org.apache.mailet.base.RFC2822Headers;
 import org.junit.After;
@@ -137,6 +138,30 @@ public class MimeMessageWrapperTest extends MimeMessageFromStreamTest {
         }
     }
 
+    @Test
+    public void headersParsedWhileWritingShouldBeReused() throws MessagingException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mw.writeTo(out);
+        mw.setHeadersLoadable(false);
+
+        assertEquals("foo", mw.getSubject());
+        assertFalse(mw.messageParsed());
+    }
+
+    @Test
+    public void rawInputStreamShouldSkipAlreadyParsedHeaders() throws MessagingException, IOException {
+        assertEquals("foo", mw.getSubject());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mw.writeTo(out);
+        ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+        IOUtils.copy(mw.getRawInputStream(), rawOut);
+
+        assertEquals(content + sep + body, out.toString());
+        assertEquals(body, rawOut.toString());
+        assertFalse(mw.messageParsed());
+    }
+
     /**
      * See JAMES-474 MimeMessageWrapper(MimeMessage) should clone the original
      * message.
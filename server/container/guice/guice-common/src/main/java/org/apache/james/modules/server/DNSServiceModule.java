@@ -20,6 +20,7 @@ package org.apache.james.modules.server;
 
 import java.util.List;
 
+import org.apache.james.dnsservice.api.AsyncDNSService;
 import org.apache.james.dnsservice.api.DNSService;
 import org.apache.james.dnsservice.dnsjava.DNSJavaService;
 import org.apache.james.lifecycle.api.Configurable;
@@ -44,6 +45,7 @@ public class DNSServiceModule extends AbstractModule {
     protected void configure() {
         bind(DNSJavaService.class).in(Scopes.SINGLETON);
         bind(DNSService.class).to(DNSJavaService.class);
+        bind(AsyncDNSService.class).to(DNSJavaService.class);
         Multibinder.newSetBinder(binder(), ConfigurationPerformer.class).addBinding().to(DNSServiceConfigurationPerformer.class);
     }
 
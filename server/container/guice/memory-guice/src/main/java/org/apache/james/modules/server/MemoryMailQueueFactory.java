@@ -19,26 +19,51 @@
 
 package org.apache.james.modules.server;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
 
 import org.apache.james.core.MailImpl;
+import org.apache.james.core.MimeMessageCopyOnWriteProxy;
+import org.apache.james.core.MimeMessageSource;
+import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueueFactory;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 
 public class MemoryMailQueueFactory implements MailQueueFactory {
 
+    public static final long DEFAULT_RETRY_DELAY = 5000;
+
     private final ConcurrentHashMap<String, MailQueue> mailQueues;
     private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
+    private long retryDelay = DEFAULT_RETRY_DELAY;
 
     @Inject
     public MemoryMailQueueFactory(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
@@ -46,6 +71,18 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
         this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
     }
 
+    /**
+     * Set the delay in milliseconds after which a mail which failed to be processed is handed out again. Only
+     * queues created afterwards are affected.
+     * <p/>
+     * The default is {@link #DEFAULT_RETRY_DELAY}
+     *
+     * @param retryDelay
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
     @Override
     public MailQueue getQueue(String name) {
         return Optional.ofNullable(mailQueues.get(name))
@@ -53,43 +90,279 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
     }
 
     private MailQueue tryInsertNewMailQueue(String name) {
-        MailQueue newMailQueue = new MemoryMailQueue(name, mailQueueItemDecoratorFactory);
+        MailQueue newMailQueue = new MemoryMailQueue(name, mailQueueItemDecoratorFactory, retryDelay);
         return Optional.ofNullable(mailQueues.putIfAbsent(name, newMailQueue))
             .orElse(newMailQueue);
     }
 
-    public static class MemoryMailQueue implements MailQueue {
+    /**
+     * Ready mails are kept in one FIFO bucket per {@link MailPrioritySupport} priority, delayed mails are ordered by
+     * their next delivery date until they are due. The message content is stored in a direct {@link ByteBuffer}, and
+     * each dequeue gets its own copy of the mail, so a mail given back with <code>done(false)</code> is delivered
+     * again unchanged once the retry delay has elapsed.
+     */
+    public static class MemoryMailQueue implements ManageableMailQueue {
+
+        private static final int PRIORITY_LEVELS = MailPrioritySupport.HIGH_PRIORITY + 1;
+        private static final int HEADERS_SIZE_HINT = 4096;
 
-        private final LinkedBlockingDeque<MemoryMailQueueItem> mailItems;
+        private final ReentrantLock lock;
+        private final Condition available;
+        private final List<Deque<QueuedMail>> readyMails;
+        private final PriorityQueue<QueuedMail> delayedMails;
         private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
         private final String name;
+        private final long retryDelay;
+        private long sequence;
 
-        public MemoryMailQueue(String name,MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
-            this.mailItems = new LinkedBlockingDeque<>();
+        public MemoryMailQueue(String name, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
+            this(name, mailQueueItemDecoratorFactory, DEFAULT_RETRY_DELAY);
+        }
+
+        public MemoryMailQueue(String name, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, long retryDelay) {
+            this.lock = new ReentrantLock();
+            this.available = lock.newCondition();
+            this.readyMails = IntStream.range(0, PRIORITY_LEVELS)
+                .mapToObj(priority -> new ArrayDeque<QueuedMail>())
+                .collect(Collectors.toList());
+            this.delayedMails = new PriorityQueue<>(Comparator.comparingLong(QueuedMail::getNextDelivery)
+                .thenComparingLong(QueuedMail::getSequence));
             this.name = name;
             this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
+            this.retryDelay = retryDelay;
         }
 
         @Override
         public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
-            enQueue(mail);
+            long nextDelivery = 0;
+            if (delay > 0) {
+                nextDelivery = System.currentTimeMillis() + unit.toMillis(delay);
+            }
+            QueuedMail queuedMail;
+            try {
+                queuedMail = new QueuedMail(copyEnvelope(mail), toDirectBuffer(mail.getMessage()), priority(mail), nextDelivery);
+            } catch (MessagingException | IOException e) {
+                throw new MailQueueException("Error while copying mail " + mail.getName(), e);
+            }
+
+            lock.lock();
+            try {
+                queuedMail.sequence = sequence++;
+                if (nextDelivery > System.currentTimeMillis()) {
+                    delayedMails.add(queuedMail);
+                } else {
+                    readyMails.get(queuedMail.priority).addLast(queuedMail);
+                }
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
         }
 
         @Override
         public void enQueue(Mail mail) throws MailQueueException {
+            enQueue(mail, NO_DELAY, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public MailQueueItem deQueue() throws MailQueueException, InterruptedException {
+            QueuedMail queuedMail = take();
             try {
-                mailItems.addFirst(new MemoryMailQueueItem(new MailImpl(mail)));
+                return mailQueueItemDecoratorFactory.decorate(new MemoryMailQueueItem(createMail(queuedMail), queuedMail, this));
             } catch (MessagingException e) {
-                throw new MailQueueException("Error while copying mail " + mail.getName(), e);
+                requeue(queuedMail);
+                throw new MailQueueException("Unable to dequeue mail " + queuedMail.envelope.getName(), e);
+            }
+        }
+
+        private QueuedMail take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    while (!delayedMails.isEmpty() && delayedMails.peek().nextDelivery <= now) {
+                        QueuedMail due = delayedMails.poll();
+                        readyMails.get(due.priority).addLast(due);
+                    }
+                    for (int priority = PRIORITY_LEVELS - 1; priority >= 0; priority--) {
+                        QueuedMail queuedMail = readyMails.get(priority).pollFirst();
+                        if (queuedMail != null) {
+                            return queuedMail;
+                        }
+                    }
+                    if (delayedMails.isEmpty()) {
+                        available.await();
+                    } else {
+                        available.await(delayedMails.peek().nextDelivery - now, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void requeue(QueuedMail queuedMail) {
+            lock.lock();
+            try {
+                // the mail is out of delayedMails while being processed, so its ordering key can be changed here
+                queuedMail.nextDelivery = System.currentTimeMillis() + retryDelay;
+                delayedMails.add(queuedMail);
+                available.signalAll();
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
-        public MailQueueItem deQueue() throws MailQueueException, InterruptedException {
-            while (true) {
-                MemoryMailQueueItem item = mailItems.take();
-                return mailQueueItemDecoratorFactory.decorate(item);
+        public long getSize() throws MailQueueException {
+            lock.lock();
+            try {
+                return allQueuedMails().count();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long flush() throws MailQueueException {
+            lock.lock();
+            try {
+                long count = delayedMails.size();
+                delayedMails.stream()
+                    .sorted(delayedMails.comparator())
+                    .forEach(queuedMail -> readyMails.get(queuedMail.priority).addLast(queuedMail));
+                delayedMails.clear();
+                available.signalAll();
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long clear() throws MailQueueException {
+            return removeIf(queuedMail -> true);
+        }
+
+        @Override
+        public long remove(Type type, String value) throws MailQueueException {
+            switch (type) {
+                case Name:
+                    return removeIf(queuedMail -> value.equals(queuedMail.envelope.getName()));
+                case Sender:
+                    return removeIf(queuedMail -> queuedMail.envelope.getSender() != null
+                        && value.equals(queuedMail.envelope.getSender().toString()));
+                case Recipient:
+                    return removeIf(queuedMail -> queuedMail.envelope.getRecipients() != null
+                        && queuedMail.envelope.getRecipients().stream()
+                            .anyMatch(recipient -> value.equals(recipient.toString())));
+                default:
+                    throw new MailQueueException("Not supported yet");
+            }
+        }
+
+        private long removeIf(Predicate<QueuedMail> predicate) {
+            lock.lock();
+            try {
+                long sizeBefore = allQueuedMails().count();
+                readyMails.forEach(bucket -> bucket.removeIf(predicate));
+                delayedMails.removeIf(predicate);
+                return sizeBefore - allQueuedMails().count();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public MailQueueIterator browse() throws MailQueueException {
+            List<QueuedMail> snapshot;
+            lock.lock();
+            try {
+                snapshot = allQueuedMails().collect(Collectors.toList());
+            } finally {
+                lock.unlock();
+            }
+            Iterator<QueuedMail> queuedMails = snapshot.iterator();
+            return new MailQueueIterator() {
+
+                @Override
+                public boolean hasNext() {
+                    return queuedMails.hasNext();
+                }
+
+                @Override
+                public MailQueueItemView next() {
+                    QueuedMail queuedMail = queuedMails.next();
+                    Mail mail;
+                    try {
+                        mail = createMail(queuedMail);
+                    } catch (MessagingException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    return new MailQueueItemView() {
+                        @Override
+                        public Mail getMail() {
+                            return mail;
+                        }
+
+                        @Override
+                        public long getNextDelivery() {
+                            return queuedMail.nextDelivery;
+                        }
+                    };
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        // guarded by lock
+        private Stream<QueuedMail> allQueuedMails() {
+            return Stream.concat(
+                readyMails.stream().flatMap(Deque::stream),
+                delayedMails.stream());
+        }
+
+        private static int priority(Mail mail) {
+            Serializable priority = mail.getAttribute(MailPrioritySupport.MAIL_PRIORITY);
+            if (priority instanceof Integer) {
+                return Math.max(MailPrioritySupport.LOW_PRIORITY, Math.min(MailPrioritySupport.HIGH_PRIORITY, (Integer) priority));
+            }
+            return MailPrioritySupport.NORMAL_PRIORITY;
+        }
+
+        private static MailImpl copyEnvelope(Mail mail) {
+            MailImpl copy = new MailImpl(mail.getName(), mail.getSender(), mail.getRecipients());
+            copy.setState(mail.getState());
+            copy.setErrorMessage(mail.getErrorMessage());
+            copy.setRemoteHost(mail.getRemoteHost());
+            copy.setRemoteAddr(mail.getRemoteAddr());
+            copy.setLastUpdated(mail.getLastUpdated());
+            Iterator<String> attributeNames = mail.getAttributeNames();
+            while (attributeNames.hasNext()) {
+                String attributeName = attributeNames.next();
+                copy.setAttribute(attributeName, mail.getAttribute(attributeName));
+            }
+            return copy;
+        }
+
+        private static ByteBuffer toDirectBuffer(MimeMessage message) throws IOException, MessagingException {
+            if (message == null) {
+                return null;
             }
+            DirectBufferOutputStream out = new DirectBufferOutputStream(message.getSize() + HEADERS_SIZE_HINT);
+            message.writeTo(out);
+            return out.toBuffer();
+        }
+
+        private static Mail createMail(QueuedMail queuedMail) throws MessagingException {
+            MailImpl mail = copyEnvelope(queuedMail.envelope);
+            if (queuedMail.content != null) {
+                mail.setMessage(new MimeMessageCopyOnWriteProxy(new ByteBufferMimeMessageSource(mail.getName(), queuedMail.content.duplicate())));
+            }
+            return mail;
         }
 
         @Override
@@ -112,9 +385,13 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
     public static class MemoryMailQueueItem implements MailQueue.MailQueueItem {
 
         private final Mail mail;
+        private final QueuedMail queuedMail;
+        private final MemoryMailQueue queue;
 
-        public MemoryMailQueueItem(Mail mail) {
+        private MemoryMailQueueItem(Mail mail, QueuedMail queuedMail, MemoryMailQueue queue) {
             this.mail = mail;
+            this.queuedMail = queuedMail;
+            this.queue = queue;
         }
 
         @Override
@@ -124,7 +401,130 @@ public class MemoryMailQueueFactory implements MailQueueFactory {
 
         @Override
         public void done(boolean success) throws MailQueue.MailQueueException {
+            if (!success) {
+                queue.requeue(queuedMail);
+            }
+        }
+    }
+
+    private static class QueuedMail {
+        private final MailImpl envelope;
+        private final ByteBuffer content;
+        private final int priority;
+        private long nextDelivery;
+        private long sequence;
+
+        private QueuedMail(MailImpl envelope, ByteBuffer content, int priority, long nextDelivery) {
+            this.envelope = envelope;
+            this.content = content;
+            this.priority = priority;
+            this.nextDelivery = nextDelivery;
+        }
+
+        private long getNextDelivery() {
+            return nextDelivery;
+        }
+
+        private long getSequence() {
+            return sequence;
+        }
+    }
+
+    private static class ByteBufferMimeMessageSource extends MimeMessageSource {
+        private final String sourceId;
+        private final ByteBuffer content;
+
+        private ByteBufferMimeMessageSource(String sourceId, ByteBuffer content) {
+            this.sourceId = sourceId;
+            this.content = content;
+        }
+
+        @Override
+        public String getSourceId() {
+            return sourceId;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ByteBufferInputStream(content.duplicate());
+        }
+
+        @Override
+        public long getMessageSize() throws IOException {
+            return content.remaining();
+        }
+    }
+
+    /**
+     * Writes straight into a direct {@link ByteBuffer}, doubling it when the initial size guess is too small, so the
+     * content is not first buffered on the heap.
+     */
+    private static class DirectBufferOutputStream extends OutputStream {
+        private ByteBuffer buffer;
+
+        private DirectBufferOutputStream(int initialCapacity) {
+            this.buffer = ByteBuffer.allocateDirect(Math.max(initialCapacity, 1));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureRemaining(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureRemaining(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() < length) {
+                int needed = buffer.position() + length;
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(needed, buffer.capacity() * 2));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        private ByteBuffer toBuffer() {
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
 
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
         }
     }
 }
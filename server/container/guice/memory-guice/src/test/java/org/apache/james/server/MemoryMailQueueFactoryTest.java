@@ -22,6 +22,7 @@ package org.apache.james.server;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -29,11 +30,17 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
 import org.apache.james.modules.server.MemoryMailQueueFactory;
+import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
 import org.apache.mailet.base.test.FakeMail;
 import org.junit.After;
 import org.junit.Before;
@@ -103,8 +110,8 @@ public class MemoryMailQueueFactoryTest {
         mail2.setName(NAME_2);
         memoryMailQueueFactory.getQueue(KEY).enQueue(mail1);
         memoryMailQueueFactory.getQueue(KEY).enQueue(mail2);
-        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail().getName()).startsWith(NAME_2);
         assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail().getName()).startsWith(NAME_1);
+        assertThat(memoryMailQueueFactory.getQueue(KEY).deQueue().getMail().getName()).startsWith(NAME_2);
     }
 
     @Test(timeout = 20000)
@@ -125,4 +132,120 @@ public class MemoryMailQueueFactoryTest {
         latch.countDown();
         assertThat(tryDequeue.get().getMail().getName()).startsWith(NAME_1);
     }
+
+    @Test(timeout = 20000)
+    public void deQueueShouldWaitForTheDelayOfAMail() throws Exception {
+        MailQueue queue = new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY).getQueue(KEY);
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        mail1.setName(NAME_1);
+        mail2.setName(NAME_2);
+        queue.enQueue(mail1, 500, TimeUnit.MILLISECONDS);
+        queue.enQueue(mail2);
+
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(NAME_2);
+        Future<MailQueueItem> tryDequeue = executorService.submit(queue::deQueue);
+        assertThatThrownBy(() -> tryDequeue.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(tryDequeue.get().getMail().getName()).isEqualTo(NAME_1);
+    }
+
+    @Test
+    public void deQueueShouldReturnMailsWithHigherPriorityFirst() throws Exception {
+        MailQueue queue = new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY).getQueue(KEY);
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        mail1.setName(NAME_1);
+        mail2.setName(NAME_2);
+        mail2.setAttribute(MailPrioritySupport.MAIL_PRIORITY, MailPrioritySupport.HIGH_PRIORITY);
+        queue.enQueue(mail1);
+        queue.enQueue(mail2);
+
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(NAME_2);
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(NAME_1);
+    }
+
+    @Test
+    public void doneWithFailureShouldEnqueueTheMailAgain() throws Exception {
+        MemoryMailQueueFactory factory = new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY);
+        factory.setRetryDelay(0);
+        MailQueue queue = factory.getQueue(KEY);
+        Mail mail = new FakeMail();
+        mail.setName(NAME_1);
+        queue.enQueue(mail);
+
+        MailQueueItem item = queue.deQueue();
+        item.getMail().setState(Mail.ERROR);
+        item.done(false);
+
+        Mail dequeuedMail = queue.deQueue().getMail();
+        assertThat(dequeuedMail.getName()).isEqualTo(NAME_1);
+        assertThat(dequeuedMail.getState()).isNull();
+    }
+
+    @Test(timeout = 20000)
+    public void doneWithFailureShouldDelayTheNextDelivery() throws Exception {
+        MemoryMailQueueFactory factory = new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY);
+        factory.setRetryDelay(500);
+        MailQueue queue = factory.getQueue(KEY);
+        Mail mail = new FakeMail();
+        mail.setName(NAME_1);
+        queue.enQueue(mail);
+
+        queue.deQueue().done(false);
+
+        Future<MailQueueItem> tryDequeue = executorService.submit(queue::deQueue);
+        assertThatThrownBy(() -> tryDequeue.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(tryDequeue.get().getMail().getName()).isEqualTo(NAME_1);
+    }
+
+    @Test
+    public void deQueueShouldKeepStateErrorMessageAndContent() throws Exception {
+        MailQueue queue = new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY).getQueue(KEY);
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setSubject("subject");
+        message.setText("content");
+        message.saveChanges();
+        Mail mail = new FakeMail(message);
+        mail.setName(NAME_1);
+        mail.setState(Mail.ERROR);
+        mail.setErrorMessage("3");
+        queue.enQueue(mail);
+
+        Mail dequeuedMail = queue.deQueue().getMail();
+        assertThat(dequeuedMail.getState()).isEqualTo(Mail.ERROR);
+        assertThat(dequeuedMail.getErrorMessage()).isEqualTo("3");
+        assertThat(dequeuedMail.getMessage().getSubject()).isEqualTo("subject");
+        assertThat(dequeuedMail.getMessage().getContent()).isEqualTo("content");
+    }
+
+    @Test
+    public void flushShouldMakeDelayedMailsAvailable() throws Exception {
+        ManageableMailQueue queue = (ManageableMailQueue) new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY).getQueue(KEY);
+        Mail mail = new FakeMail();
+        mail.setName(NAME_1);
+        queue.enQueue(mail, 1, TimeUnit.HOURS);
+
+        assertThat(queue.getSize()).isEqualTo(1);
+        assertThat(queue.flush()).isEqualTo(1);
+        assertThat(queue.deQueue().getMail().getName()).isEqualTo(NAME_1);
+        assertThat(queue.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void removeShouldRemoveMatchingMails() throws Exception {
+        ManageableMailQueue queue = (ManageableMailQueue) new MemoryMailQueueFactory(MailQueueItemDecoratorFactory.RAW_FACTORY).getQueue(KEY);
+        Mail mail1 = new FakeMail();
+        Mail mail2 = new FakeMail();
+        mail1.setName(NAME_1);
+        mail2.setName(NAME_2);
+        mail2.setSender(new MailAddress("sender@domain.tld"));
+        queue.enQueue(mail1);
+        queue.enQueue(mail2, 1, TimeUnit.HOURS);
+
+        assertThat(queue.remove(ManageableMailQueue.Type.Sender, "sender@domain.tld")).isEqualTo(1);
+        assertThat(queue.getSize()).isEqualTo(1);
+        assertThat(queue.browse().next().getMail().getName()).isEqualTo(NAME_1);
+        assertThat(queue.remove(ManageableMailQueue.Type.Name, NAME_1)).isEqualTo(1);
+        assertThat(queue.getSize()).isEqualTo(0);
+    }
 }
@@ -36,6 +36,9 @@ import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxMetaData;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MailboxQuery;
+import org.apache.james.mailbox.store.event.AsynchronousEventDelivery;
+import org.apache.james.mailbox.store.event.EventDelivery;
+import org.apache.james.mailbox.store.event.MixedEventDelivery;
 import org.slf4j.Logger;
 
 /**
@@ -43,7 +46,10 @@ import org.slf4j.Logger;
  */
 public class MailboxManagerManagement extends StandardMBean implements MailboxManagerManagementMBean, LogEnabled {
 
+    private static final long NOT_AVAILABLE = -1;
+
     private MailboxManager mailboxManager;
+    private AsynchronousEventDelivery asynchronousEventDelivery;
     private Logger log;
 
     @Inject
@@ -51,6 +57,16 @@ public class MailboxManagerManagement extends StandardMBean implements MailboxMa
         this.mailboxManager = mailboxManager;
     }
 
+    public void setEventDelivery(EventDelivery eventDelivery) {
+        if (eventDelivery instanceof AsynchronousEventDelivery) {
+            this.asynchronousEventDelivery = (AsynchronousEventDelivery) eventDelivery;
+        } else if (eventDelivery instanceof MixedEventDelivery) {
+            this.asynchronousEventDelivery = ((MixedEventDelivery) eventDelivery).getAsynchronousEventDelivery();
+        } else {
+            this.asynchronousEventDelivery = null;
+        }
+    }
+
     public MailboxManagerManagement() throws NotCompliantMBeanException {
         super(MailboxManagerManagementMBean.class);
     }
@@ -142,6 +158,30 @@ public class MailboxManagerManagement extends StandardMBean implements MailboxMa
         }
     }
 
+    @Override
+    public long getQueuedEventCount() {
+        if (asynchronousEventDelivery == null) {
+            return NOT_AVAILABLE;
+        }
+        return asynchronousEventDelivery.getQueuedEventCount();
+    }
+
+    @Override
+    public long getDeliveredEventCount() {
+        if (asynchronousEventDelivery == null) {
+            return NOT_AVAILABLE;
+        }
+        return asynchronousEventDelivery.getDeliveredEventCount();
+    }
+
+    @Override
+    public long getMeanEventDeliveryLatencyInMs() {
+        if (asynchronousEventDelivery == null) {
+            return NOT_AVAILABLE;
+        }
+        return asynchronousEventDelivery.getMeanDeliveryLatencyInMs();
+    }
+
     private void closeSession(MailboxSession session) {
         if (session != null) {
             mailboxManager.endProcessingRequest(session);
@@ -58,4 +58,26 @@ public interface MailboxManagerManagementMBean {
      * @param name Name of the mailbox to delete
      */
     void deleteMailbox(String namespace, String user, String name);
+
+    /**
+     * Return the count of mailbox events waiting to be delivered to asynchronous listeners
+     *
+     * @return queued event count, or -1 if events are delivered synchronously
+     */
+    long getQueuedEventCount();
+
+    /**
+     * Return the count of mailbox events delivered to asynchronous listeners
+     *
+     * @return delivered event count, or -1 if events are delivered synchronously
+     */
+    long getDeliveredEventCount();
+
+    /**
+     * Return the mean time spent by a mailbox event between its delivery and its processing
+     * by an asynchronous listener
+     *
+     * @return mean latency in milliseconds, or -1 if events are delivered synchronously
+     */
+    long getMeanEventDeliveryLatencyInMs();
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.dnsservice.api;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.concurrent.Future;
+
+/**
+ * {@link DNSService} which is also able to resolve without blocking the
+ * caller. The returned {@link Future} fails with an
+ * {@link java.util.concurrent.ExecutionException} wrapping the exception the
+ * matching synchronous method would have thrown.
+ */
+public interface AsyncDNSService extends DNSService {
+
+    /**
+     * Asynchronous version of {@link #findMXRecords(String)}
+     * 
+     * @param hostname
+     *            domain name to look up
+     * @return future of the unmodifiable list of handling servers
+     */
+    Future<Collection<String>> findMXRecordsAsync(String hostname);
+
+    /**
+     * Asynchronous version of {@link #findTXTRecords(String)}
+     * 
+     * @param hostname
+     *            The hostname to check
+     * @return future of the TXT record values
+     */
+    Future<Collection<String>> findTXTRecordsAsync(String hostname);
+
+    /**
+     * Asynchronous version of {@link #getAllByName(String)}
+     * 
+     * @return future of the resolved addresses
+     */
+    Future<InetAddress[]> getAllByNameAsync(String host);
+
+    /**
+     * Asynchronous version of {@link #getHostName(InetAddress)}
+     * 
+     * @return future of the resolved hostname
+     */
+    Future<String> getHostNameAsync(InetAddress addr);
+
+}
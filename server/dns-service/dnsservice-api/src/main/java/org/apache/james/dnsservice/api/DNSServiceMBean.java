@@ -49,4 +49,40 @@ public interface DNSServiceMBean {
      * Clear the cache of the service
      */
     void clearCache();
+
+    /**
+     * Return the count of lookups answered without querying the DNS servers
+     * 
+     * @return cacheHitCount
+     */
+    long getCacheHitCount();
+
+    /**
+     * Return the count of lookups which needed to query the DNS servers
+     * 
+     * @return cacheMissCount
+     */
+    long getCacheMissCount();
+
+    /**
+     * Return the count of lookups which waited for an identical lookup
+     * already in progress instead of issuing their own query
+     * 
+     * @return coalescedLookupCount
+     */
+    long getCoalescedLookupCount();
+
+    /**
+     * Return the count of expired answers served while being refreshed
+     * 
+     * @return staleAnswerCount
+     */
+    long getStaleAnswerCount();
+
+    /**
+     * Return the average time in milliseconds spent in a lookup
+     * 
+     * @return averageLookupTime
+     */
+    double getAverageLookupTime();
 }
@@ -20,7 +20,7 @@ package org.apache.james.dnsservice.dnsjava;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.james.dnsservice.api.DNSService;
+import org.apache.james.dnsservice.api.AsyncDNSService;
 import org.apache.james.dnsservice.api.DNSServiceMBean;
 import org.apache.james.dnsservice.api.TemporaryResolutionException;
 import org.apache.james.lifecycle.api.Configurable;
@@ -39,11 +39,16 @@ import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
 import org.xbill.DNS.ResolverConfig;
 import org.xbill.DNS.ReverseMap;
+import org.xbill.DNS.SetResponse;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -51,12 +56,26 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides DNS client functionality to services running inside James
  */
-public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled, Configurable {
+public class DNSJavaService implements AsyncDNSService, DNSServiceMBean, LogEnabled, Configurable {
 
     /**
      * A resolver instance used to retrieve DNS records. This is a reference to
@@ -101,6 +120,54 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
      */
     private boolean setAsDNSJavaDefault;
 
+    /**
+     * Maximum time in seconds a negative answer is cached. -1 keeps the DNSJava
+     * default
+     */
+    private int negativeCacheTTL = -1;
+
+    /**
+     * Time in seconds a temporary resolution failure is remembered. 0 disables
+     * the caching of failures
+     */
+    private int servfailCacheTTL = 0;
+
+    /**
+     * Time in seconds an expired answer may still be served while it gets
+     * refreshed. 0 disables the serving of stale answers
+     */
+    private int staleAnswerTTL = 0;
+
+    /**
+     * Number of threads used for asynchronous lookups
+     */
+    private int resolverThreads = 10;
+
+    private ExecutorService executor;
+
+    /**
+     * Lookups currently in progress. Identical lookups wait for these instead
+     * of querying the DNS servers again
+     */
+    private final ConcurrentMap<String, FutureTask<Record[]>> inFlightLookups = new ConcurrentHashMap<String, FutureTask<Record[]>>();
+
+    /**
+     * Expiry date of the cached temporary failures
+     */
+    private Map<String, Long> failedLookups;
+
+    /**
+     * Last successful answers, kept to be served once expired
+     */
+    private Map<String, CachedAnswer> cachedAnswers;
+
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong cacheMissCount = new AtomicLong();
+    private final AtomicLong coalescedLookupCount = new AtomicLong();
+    private final AtomicLong staleAnswerCount = new AtomicLong();
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong lookupTime = new AtomicLong();
+
     private String localHostName;
 
     private String localCanonicalHostName;
@@ -169,6 +236,13 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         dnsCredibility = authoritative ? Credibility.AUTH_ANSWER : Credibility.NONAUTH_ANSWER;
 
         maxCacheSize = configuration.getInt("maxcachesize", maxCacheSize);
+        negativeCacheTTL = configuration.getInt("negativecachettl", negativeCacheTTL);
+        servfailCacheTTL = configuration.getInt("servfailcachettl", servfailCacheTTL);
+        staleAnswerTTL = configuration.getInt("staleanswerttl", staleAnswerTTL);
+        resolverThreads = configuration.getInt("resolverthreads", resolverThreads);
+        if (resolverThreads < 1) {
+            throw new ConfigurationException("resolverthreads must be at least 1");
+        }
     }
 
     @PostConstruct
@@ -202,6 +276,13 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
 
         cache = new Cache(DClass.IN);
         cache.setMaxEntries(maxCacheSize);
+        if (negativeCacheTTL >= 0) {
+            cache.setMaxNCache(negativeCacheTTL);
+        }
+        failedLookups = Collections.synchronizedMap(new BoundedMap<String, Long>(maxCacheSize));
+        cachedAnswers = Collections.synchronizedMap(new BoundedMap<String, CachedAnswer>(maxCacheSize));
+
+        executor = Executors.newFixedThreadPool(resolverThreads, new ThreadFactoryBuilder().setNameFormat("dns-resolver-%d").setDaemon(true).build());
 
         if (setAsDNSJavaDefault) {
             Lookup.setDefaultResolver(resolver);
@@ -222,6 +303,13 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         logger.debug("DNSService ...init end");
     }
 
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Return the list of DNS servers in use by this service
      *
@@ -340,6 +428,144 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
      * @param typeDesc the description of the record type, for debugging purpose
      */
     protected Record[] lookup(String namestr, int type, String typeDesc) throws TemporaryResolutionException {
+        long start = System.nanoTime();
+        try {
+            return cachedLookup(namestr, type, typeDesc);
+        } finally {
+            lookupCount.incrementAndGet();
+            lookupTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Serve the lookup from the cached failures and stale answers if possible,
+     * otherwise join or start the lookup against the DNS servers
+     */
+    private Record[] cachedLookup(String namestr, int type, String typeDesc) throws TemporaryResolutionException {
+        String key = type + ":" + namestr.toLowerCase(Locale.US);
+        long now = System.currentTimeMillis();
+
+        if (servfailCacheTTL > 0) {
+            Long failedUntil = failedLookups.get(key);
+            if (failedUntil != null) {
+                if (failedUntil > now) {
+                    cacheHitCount.incrementAndGet();
+                    throw new TemporaryResolutionException("DNSService is temporary not reachable");
+                }
+                failedLookups.remove(key);
+            }
+        }
+
+        if (staleAnswerTTL > 0) {
+            CachedAnswer answer = cachedAnswers.get(key);
+            if (answer != null && answer.expires <= now) {
+                if (answer.staleUntil > now) {
+                    cacheHitCount.incrementAndGet();
+                    staleAnswerCount.incrementAndGet();
+                    refresh(answer, key, namestr, type, typeDesc);
+                    return answer.records;
+                }
+                cachedAnswers.remove(key);
+            }
+        }
+
+        return coalescedLookup(key, namestr, type, typeDesc);
+    }
+
+    /**
+     * Refresh an expired answer in the background. Only one refresh per answer
+     * runs at a time
+     */
+    private void refresh(final CachedAnswer answer, final String key, final String namestr, final int type, final String typeDesc) {
+        if (answer.refreshing.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        coalescedLookup(key, namestr, type, typeDesc);
+                    } catch (TemporaryResolutionException e) {
+                        logger.debug("Unable to refresh " + typeDesc + " record for " + namestr, e);
+                    } finally {
+                        answer.refreshing.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Run the lookup, or wait for the result of an identical lookup which is
+     * already in progress
+     */
+    private Record[] coalescedLookup(final String key, final String namestr, final int type, final String typeDesc) throws TemporaryResolutionException {
+        FutureTask<Record[]> task = new FutureTask<Record[]>(new Callable<Record[]>() {
+            @Override
+            public Record[] call() throws TemporaryResolutionException {
+                return resolve(key, namestr, type, typeDesc);
+            }
+        });
+        FutureTask<Record[]> inFlight = inFlightLookups.putIfAbsent(key, task);
+        if (inFlight != null) {
+            coalescedLookupCount.incrementAndGet();
+            cacheHitCount.incrementAndGet();
+            return awaitLookup(inFlight);
+        }
+        try {
+            task.run();
+        } finally {
+            inFlightLookups.remove(key, task);
+        }
+        return awaitLookup(task);
+    }
+
+    private Record[] awaitLookup(Future<Record[]> lookup) throws TemporaryResolutionException {
+        try {
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemporaryResolutionException("Interrupted while waiting for the DNS lookup");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), TemporaryResolutionException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Record[] resolve(String key, String namestr, int type, String typeDesc) throws TemporaryResolutionException {
+        boolean cached = isCached(namestr, type);
+        if (cached) {
+            cacheHitCount.incrementAndGet();
+        } else {
+            cacheMissCount.incrementAndGet();
+        }
+        try {
+            Record[] records = rawLookup(namestr, type, typeDesc);
+            // Only answers coming from the DNS servers carry their full TTL
+            if (staleAnswerTTL > 0 && !cached && records != null && records.length > 0) {
+                cachedAnswers.put(key, new CachedAnswer(records, staleAnswerTTL));
+            }
+            return records;
+        } catch (TemporaryResolutionException e) {
+            if (servfailCacheTTL > 0) {
+                failedLookups.put(key, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(servfailCacheTTL));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Return true if the DNSJava cache holds an answer for the given absolute
+     * name
+     */
+    private boolean isCached(String namestr, int type) {
+        try {
+            SetResponse response = cache.lookupRecords(Name.fromString(namestr, Name.root), type, dnsCredibility);
+            return response != null && (response.isSuccessful() || response.isNXDOMAIN() || response.isNXRRSET());
+        } catch (TextParseException e) {
+            return false;
+        }
+    }
+
+    private Record[] rawLookup(String namestr, int type, String typeDesc) throws TemporaryResolutionException {
         // Name name = null;
         try {
             // name = Name.fromString(namestr, Name.root);
@@ -380,6 +606,46 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         }
     }
 
+    /**
+     * Successful answer kept to be served once expired
+     */
+    private static final class CachedAnswer {
+        private final Record[] records;
+        private final long expires;
+        private final long staleUntil;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedAnswer(Record[] records, int staleAnswerTTL) {
+            long ttl = Long.MAX_VALUE;
+            for (Record record : records) {
+                ttl = Math.min(ttl, record.getTTL());
+            }
+            this.records = records;
+            this.expires = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+            this.staleUntil = expires + TimeUnit.SECONDS.toMillis(staleAnswerTTL);
+        }
+    }
+
+    /**
+     * {@link LinkedHashMap} evicting its least recently used entries once the
+     * given size is exceeded
+     */
+    private static final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private BoundedMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
     /*
      * RFC 2821 section 5 requires that we sort the MX records by their
      * preference. Reminder for maintainers: the return value on a Comparator
@@ -518,6 +784,77 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
     @Override
     public void clearCache() {
         cache.clearCache();
+        failedLookups.clear();
+        cachedAnswers.clear();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    @Override
+    public long getCoalescedLookupCount() {
+        return coalescedLookupCount.get();
+    }
+
+    @Override
+    public long getStaleAnswerCount() {
+        return staleAnswerCount.get();
+    }
+
+    @Override
+    public double getAverageLookupTime() {
+        long count = lookupCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) TimeUnit.NANOSECONDS.toMicros(lookupTime.get()) / count / 1000;
+    }
+
+    @Override
+    public Future<Collection<String>> findMXRecordsAsync(final String hostname) {
+        return executor.submit(new Callable<Collection<String>>() {
+            @Override
+            public Collection<String> call() throws TemporaryResolutionException {
+                return findMXRecords(hostname);
+            }
+        });
+    }
+
+    @Override
+    public Future<Collection<String>> findTXTRecordsAsync(final String hostname) {
+        return executor.submit(new Callable<Collection<String>>() {
+            @Override
+            public Collection<String> call() {
+                return findTXTRecords(hostname);
+            }
+        });
+    }
+
+    @Override
+    public Future<InetAddress[]> getAllByNameAsync(final String host) {
+        return executor.submit(new Callable<InetAddress[]>() {
+            @Override
+            public InetAddress[] call() throws UnknownHostException {
+                return getAllByName(host);
+            }
+        });
+    }
+
+    @Override
+    public Future<String> getHostNameAsync(final InetAddress addr) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return getHostName(addr);
+            }
+        });
     }
 
 }
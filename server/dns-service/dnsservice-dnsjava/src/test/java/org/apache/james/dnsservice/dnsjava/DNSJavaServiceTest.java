@@ -20,6 +20,7 @@ package org.apache.james.dnsservice.dnsjava;
 
 import com.google.common.io.Resources;
 import org.apache.commons.configuration.DefaultConfigurationBuilder;
+import org.apache.james.dnsservice.api.TemporaryResolutionException;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -29,12 +30,18 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import org.slf4j.LoggerFactory;
 import org.xbill.DNS.Cache;
 import org.xbill.DNS.DClass;
 import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.Resolver;
 import org.xbill.DNS.Zone;
@@ -207,6 +214,53 @@ public class DNSJavaServiceTest {
         assertEquals(1, records.size());
         assertTrue(records.contains("mx1.one-mx.bar."));
     }
+    @Test
+    public void testFindMXRecordsAsync() throws Exception {
+        doAnswer(new ZoneCacheLookupRecordsAnswer(loadZone("one-mx.bar.")))
+                .when(mockedCache).lookupRecords(any(Name.class), anyInt(), anyInt());
+        dnsServer.setCache(mockedCache);
+
+        Collection<String> records = dnsServer.findMXRecordsAsync("one-mx.bar.").get();
+        assertEquals(1, records.size());
+        assertTrue(records.contains("mx1.one-mx.bar."));
+    }
+
+    @Test
+    public void testTemporaryFailureIsCached() throws Exception {
+        TestableDNSServer server = new TestableDNSServer();
+        DefaultConfigurationBuilder db = new DefaultConfigurationBuilder();
+        db.load(new ByteArrayInputStream(("<dnsserver>" +
+                "<autodiscover>false</autodiscover>" +
+                "<servfailcachettl>60</servfailcachettl>" +
+                "</dnsserver>").getBytes()));
+        server.setLog(LoggerFactory.getLogger(DNSJavaServiceTest.class));
+        server.configure(db);
+        server.init();
+
+        Resolver failingResolver = mock(Resolver.class);
+        when(failingResolver.send(any(Message.class))).thenThrow(new IOException("DNS server down"));
+        server.setResolver(failingResolver);
+        server.setCache(new Cache());
+
+        try {
+            server.findMXRecords("unreachable.bar.");
+            fail("Lookup should fail temporarily");
+        } catch (TemporaryResolutionException e) {
+        }
+        verify(failingResolver, atLeastOnce()).send(any(Message.class));
+        long misses = server.getCacheMissCount();
+
+        reset(failingResolver);
+        try {
+            server.findMXRecords("unreachable.bar.");
+            fail("Cached failure should be reported");
+        } catch (TemporaryResolutionException e) {
+        }
+        verify(failingResolver, never()).send(any(Message.class));
+        assertEquals(misses, server.getCacheMissCount());
+        server.destroy();
+    }
+
     /*
      * public void testCNAMEasMXrecords() throws Exception { // Zone z =
      * loadZone("brandilyncollins.com."); dnsServer.setResolver(null);
@@ -36,4 +36,13 @@ public interface MailSpoolerMBean {
      */
     int getCurrentSpoolCount();
 
+    /**
+     * Return the number of mails which may be processed concurrently at the
+     * moment. This is lower than the thread count when the spooler backs off
+     * because of slow or failing processing.
+     * 
+     * @return concurrency limit
+     */
+    int getConcurrencyLimit();
+
 }
@@ -52,4 +52,12 @@ public interface MatcherManagementMBean extends MailProcessorManagementMBean {
      */
     long getNotMatchedCount();
 
+    /**
+     * Return the count of how many times the Matcher matched only some of the
+     * recipients, so that a copy of the mail had to be created
+     * 
+     * @return split
+     */
+    long getSplitCount();
+
 }
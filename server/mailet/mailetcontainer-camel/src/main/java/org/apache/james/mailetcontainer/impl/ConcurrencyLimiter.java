@@ -0,0 +1,156 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailetcontainer.impl;
+
+/**
+ * Limits the number of mails processed concurrently by the
+ * {@link JamesMailSpooler}. A permit needs to be acquired before a mail is
+ * dequeued, so mails are only pulled from the queue when they can be
+ * processed.
+ * <p/>
+ * If adaptive the limit follows an additive increase / multiplicative
+ * decrease scheme: it shrinks when processing fails or when the recent
+ * processing latency gets much higher than the long term latency, and slowly
+ * grows back while the current limit is fully used and processing is healthy.
+ * Otherwise the limit is constant.
+ */
+public class ConcurrencyLimiter {
+
+    private final static double SHORT_TERM_SMOOTHING = 0.2;
+    private final static double LONG_TERM_SMOOTHING = 0.01;
+    private final static double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean adaptive;
+    private final double latencyTolerance;
+
+    // all guarded by this
+    private double limit;
+    private int inFlight = 0;
+    private double shortTermLatency = -1;
+    private double longTermLatency = -1;
+    private int samplesSinceBackoff;
+
+    /**
+     * Create a {@link ConcurrencyLimiter} with a constant limit
+     */
+    public ConcurrencyLimiter(int limit) {
+        this(limit, limit, false, 0);
+    }
+
+    /**
+     * Create a {@link ConcurrencyLimiter} starting with <code>maxLimit</code>
+     * 
+     * @param minLimit
+     *            the limit never gets lower than this
+     * @param maxLimit
+     *            the limit never gets higher than this
+     * @param adaptive
+     *            adapt the limit to the observed latency and errors
+     * @param latencyTolerance
+     *            back off when the recent latency is higher than the long
+     *            term latency multiplied with this factor
+     */
+    public ConcurrencyLimiter(int minLimit, int maxLimit, boolean adaptive, double latencyTolerance) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.adaptive = adaptive;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = maxLimit;
+        this.samplesSinceBackoff = maxLimit;
+    }
+
+    /**
+     * Wait until less mails than the current limit are processed and take a
+     * permit
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Give back a permit without any processing result, for example because
+     * the dequeue failed
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Give back a permit and record the outcome of the processing
+     * 
+     * @param latencyNanos
+     *            time spent to process the mail
+     * @param success
+     *            <code>false</code> if processing the mail failed
+     */
+    public synchronized void release(long latencyNanos, boolean success) {
+        if (adaptive) {
+            adapt(latencyNanos, success);
+        }
+        release();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void adapt(long latencyNanos, boolean success) {
+        samplesSinceBackoff++;
+        if (!success) {
+            backoff();
+            return;
+        }
+        if (longTermLatency < 0) {
+            shortTermLatency = latencyNanos;
+            longTermLatency = latencyNanos;
+        } else {
+            shortTermLatency += SHORT_TERM_SMOOTHING * (latencyNanos - shortTermLatency);
+            longTermLatency += LONG_TERM_SMOOTHING * (latencyNanos - longTermLatency);
+        }
+
+        if (shortTermLatency > latencyTolerance * longTermLatency) {
+            backoff();
+        } else if (inFlight >= getLimit()) {
+            // only grow if the current limit is really used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private void backoff() {
+        // back off at most once per round of processed mails, so the
+        // in flight mails which were started before can complete
+        if (samplesSinceBackoff >= getLimit()) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            samplesSinceBackoff = 0;
+        }
+    }
+}
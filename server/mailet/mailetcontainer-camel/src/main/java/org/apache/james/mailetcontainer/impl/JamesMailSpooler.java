@@ -87,6 +87,21 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
 
     private int numDequeueThreads;
 
+    /**
+     * Adapt the count of concurrently processed mails to the processing
+     * latency and errors
+     */
+    private boolean adaptiveConcurrency;
+
+    private int minThreads;
+
+    private double latencyTolerance;
+
+    /**
+     * Bounds the count of dequeued but not yet processed mails. Created by {@link #init()}, read by JMX
+     */
+    private volatile ConcurrencyLimiter limiter;
+
     @Inject
     public void setMailQueueFactory(MailQueueFactory queueFactory) {
         this.queueFactory = queueFactory;
@@ -104,6 +119,13 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         numDequeueThreads = config.getInt("dequeueThreads", 2);
 
         numThreads = config.getInt("threads", 100);
+
+        adaptiveConcurrency = config.getBoolean("adaptiveConcurrency", false);
+        minThreads = config.getInt("minThreads", Math.max(1, numThreads / 10));
+        latencyTolerance = config.getDouble("latencyTolerance", 2.0);
+        if (minThreads < 1 || minThreads > numThreads) {
+            throw new ConfigurationException("minThreads must be between 1 and threads");
+        }
     }
 
     /**
@@ -120,6 +142,12 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
             logger.info(infoBuffer);
         }
 
+        if (adaptiveConcurrency) {
+            limiter = new ConcurrencyLimiter(minThreads, numThreads, true, latencyTolerance);
+        } else {
+            limiter = new ConcurrencyLimiter(numThreads);
+        }
+
         active.set(true);
         workerService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "spooler", numThreads);
         dequeueService = JMXEnabledThreadPoolExecutor.newFixedThreadPool("org.apache.james:type=component,component=mailetcontainer,name=mailspooler,sub-type=threadpool", "dequeuer", numDequeueThreads);
@@ -145,12 +173,21 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
         while (active.get()) {
 
             final MailQueueItem queueItem;
+            try {
+                // Only dequeue a mail once a worker is free to process it
+                limiter.acquire();
+            } catch (InterruptedException interrupted) {
+                //MailSpooler is stopping
+                continue;
+            }
             try {
                 queueItem = queue.deQueue();
                 workerService.execute(new Runnable() {
 
                     @Override
                     public void run() {
+                        long start = System.nanoTime();
+                        boolean success = false;
                         try {
                             numActive.incrementAndGet();
 
@@ -166,6 +203,7 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
                             try {
                                 mailProcessor.service(mail);
                                 queueItem.done(true);
+                                success = true;
                             } catch (Exception e) {
                                 if (active.get() && logger.isErrorEnabled()) {
                                     logger.error("Exception processing mail while spooling " + e.getMessage(), e);
@@ -184,17 +222,23 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
                         } finally {
                             processingActive.decrementAndGet();
                             numActive.decrementAndGet();
+                            limiter.release(System.nanoTime() - start, success);
                         }
 
                     }
                 });
             } catch (MailQueueException e1) {
+                limiter.release();
                 if (active.get() && logger.isErrorEnabled()) {
                     logger.error("Exception dequeue mail", e1);
 
                 }
             } catch (InterruptedException interrupted) {
+                limiter.release();
                 //MailSpooler is stopping
+            } catch (RuntimeException e) {
+                limiter.release();
+                throw e;
             }
         }
         logger.info("Stop {} : {}", getClass().getName(), Thread.currentThread().getName());
@@ -243,4 +287,14 @@ public class JamesMailSpooler implements Runnable, Disposable, Configurable, Log
     public int getCurrentSpoolCount() {
         return processingActive.get();
     }
+
+    @Override
+    public int getConcurrencyLimit() {
+        ConcurrencyLimiter currentLimiter = limiter;
+        if (currentLimiter == null) {
+            // not started yet, the limiter starts at the thread count
+            return numThreads;
+        }
+        return currentLimiter.getLimit();
+    }
 }
@@ -86,10 +86,12 @@ public class JMXStateMailetProcessorListener implements MailetProcessorListener,
 
         if (mgmt != null) {
             boolean matched = false;
+            boolean split = false;
             if (matches != null) {
                 matched = !matches.isEmpty();
+                split = matched && matches.size() < rcpts.size();
             }
-            mgmt.update(processTime, e == null, matched);
+            mgmt.update(processTime, e == null, matched, split);
         }
     }
 
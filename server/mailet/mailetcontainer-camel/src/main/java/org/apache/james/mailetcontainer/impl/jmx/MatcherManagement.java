@@ -34,6 +34,7 @@ public final class MatcherManagement extends StandardMBean implements MatcherMan
     private final AtomicLong slowestProcessing = new AtomicLong(-1);
     private final AtomicLong matchedCount = new AtomicLong(0);
     private final AtomicLong notMatchedCount = new AtomicLong(0);
+    private final AtomicLong splitCount = new AtomicLong(0);
     private final AtomicLong lastProcessing = new AtomicLong(-1);
 
     public MatcherManagement(MatcherConfig matcherConfig) throws NotCompliantMBeanException {
@@ -42,7 +43,7 @@ public final class MatcherManagement extends StandardMBean implements MatcherMan
 
     }
 
-    public void update(long processTime, boolean success, boolean matched) {
+    public void update(long processTime, boolean success, boolean matched, boolean split) {
         long fastest = fastestProcessing.get();
 
         if (fastest > processTime || fastest == -1) {
@@ -62,6 +63,9 @@ public final class MatcherManagement extends StandardMBean implements MatcherMan
         } else {
             notMatchedCount.incrementAndGet();
         }
+        if (split) {
+            splitCount.incrementAndGet();
+        }
 
         lastProcessing.set(processTime);
 
@@ -137,6 +141,13 @@ public final class MatcherManagement extends StandardMBean implements MatcherMan
         return notMatchedCount.get();
     }
 
+    /**
+     * @see org.apache.james.mailetcontainer.api.jmx.MatcherManagementMBean#getSplitCount()
+     */
+    public long getSplitCount() {
+        return splitCount.get();
+    }
+
     /**
      * @see org.apache.james.mailetcontainer.api.jmx.MailProcessorManagementMBean#getLastProcessing()
      */
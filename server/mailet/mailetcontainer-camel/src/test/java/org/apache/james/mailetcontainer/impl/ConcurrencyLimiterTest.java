@@ -0,0 +1,118 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailetcontainer.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void acquireShouldBlockWhenLimitIsReached() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        limiter.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // test will fail
+                }
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void constantLimitShouldIgnoreErrors() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void adaptiveLimitShouldBackOffOnErrors() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, true, 2.0);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void adaptiveLimitShouldBackOffWhenLatencyIncreases() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, true, 2.0);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, true);
+        }
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY * 10, true);
+        }
+        assertTrue(limiter.getLimit() < 10);
+    }
+
+    @Test
+    public void adaptiveLimitShouldGrowBackWhenFullyUsed() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 4, true, 2.0);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            int limit = limiter.getLimit();
+            for (int j = 0; j < limit; j++) {
+                limiter.acquire();
+            }
+            for (int j = 0; j < limit; j++) {
+                limiter.release(LATENCY, true);
+            }
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorShouldRejectMinLimitHigherThanMaxLimit() {
+        new ConcurrencyLimiter(5, 4, true, 2.0);
+    }
+}
@@ -20,11 +20,14 @@
 package org.apache.james.transport.mailets;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -33,11 +36,16 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -47,6 +55,7 @@ import javax.mail.Address;
 import javax.mail.MessagingException;
 import javax.mail.SendFailedException;
 import javax.mail.Session;
+import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
@@ -54,12 +63,17 @@ import javax.mail.internet.MimePart;
 import javax.mail.internet.ParseException;
 
 import com.sun.mail.smtp.SMTPTransport;
+import org.apache.james.core.MimeMessageInputStream;
 import org.apache.james.dnsservice.api.DNSService;
 import org.apache.james.dnsservice.api.TemporaryResolutionException;
 import org.apache.james.dnsservice.library.MXHostAddressIterator;
 import org.apache.james.domainlist.api.DomainList;
 import org.apache.james.domainlist.api.DomainListException;
 import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.protocols.netty.smtp.SMTPClient;
+import org.apache.james.protocols.netty.smtp.SMTPDeliveryListener;
+import org.apache.james.protocols.netty.smtp.SMTPDeliveryResult;
+import org.apache.james.protocols.netty.smtp.SMTPMessageContent;
 import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueue.MailQueueException;
@@ -141,6 +155,21 @@ import org.apache.mailet.base.GenericMailet;
  * within the mailet code.<br>
  * Note: This facility should be used with extreme care by expert users with a thorough knowledge of the relevant RFCs and
  * the ability to perform their own problem resolutions.</li>
+ * <li><b>maxIdleConnectionsPerHost</b> (optional) - an Integer for the number of connections kept open per destination server
+ * once a mail was delivered, so that following mails for the same server can reuse them after a <code>RSET</code> instead of
+ * opening a new connection. Default is 0, which means each mail is delivered over its own connection.</li>
+ * <li><b>connectionIdleTimeout</b> (optional) - an Integer for the time in milliseconds after which an idle connection is not reused
+ * anymore. Default is 30000</li>
+ * <li><b>maxConnectionsPerHost</b> (optional) - an Integer for the maximum number of concurrent deliveries to the same destination
+ * server. A delivery thread waits up to <code>connectionTimeout</code> for a free slot, then tries the next server. Default is 0,
+ * which means unlimited.</li>
+ * <li><b>asyncDelivery</b> (optional) - a Boolean (true/false) indicating whether mails are delivered with the asynchronous
+ * SMTP client instead of JavaMail. The delivery threads then only take mails from the queue, resolve the destination servers and
+ * hand the mails to the client, which handles all SMTP sessions with a few IO threads. Connection reuse is not supported in
+ * this mode and <code>mail.*</code> parameters are ignored. Gateway authentication requires the gateway to support
+ * <code>AUTH PLAIN</code>. Default is false.</li>
+ * <li><b>maxAsyncDeliveries</b> (optional) - an Integer for the maximum number of SMTP sessions in flight when
+ * <code>asyncDelivery</code> is enabled. Default is 100.</li>
  * <li><b>debug</b> (optional) - a Boolean (true/false) indicating whether debugging is on. Default is false.</li>
  * </ul>
  */
@@ -159,7 +188,6 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
 
     private static final Pattern PATTERN = Patterns.compilePatternUncheckedException(PATTERN_STRING);
 
-    @Inject
     private DNSService dnsServer;
 
     /**
@@ -260,6 +288,32 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
 
     private boolean isSSLEnable = false;
 
+    /**
+     * Connections kept open between deliveries to the same server
+     */
+    private RemoteDeliveryConnectionPool connectionPool;
+
+    /**
+     * Client used instead of JavaMail when asyncDelivery is enabled
+     */
+    private SMTPClient smtpClient;
+
+    /**
+     * Limits the count of deliveries in flight when asyncDelivery is enabled
+     */
+    private Semaphore asyncDeliveries;
+
+    /**
+     * Handles the outcome of asynchronous deliveries, so that bouncing and
+     * re-queuing mails does not block the IO threads of the client
+     */
+    private ExecutorService asyncCompletionExecutor;
+
+    @Inject
+    public void setDNSService(DNSService dnsServer) {
+        this.dnsServer = dnsServer;
+    }
+
     @Inject
     public void setDomainList(DomainList domainList) {
         this.domainList = domainList;
@@ -438,11 +492,63 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             usePriority = Boolean.valueOf(prio);
         }
 
+        int maxIdleConnectionsPerHost = 0;
+        int maxConnectionsPerHost = 0;
+        long connectionIdleTimeout = 30000;
+        try {
+            if (getInitParameter("maxIdleConnectionsPerHost") != null) {
+                maxIdleConnectionsPerHost = Integer.parseInt(getInitParameter("maxIdleConnectionsPerHost"));
+            }
+            if (getInitParameter("maxConnectionsPerHost") != null) {
+                maxConnectionsPerHost = Integer.parseInt(getInitParameter("maxConnectionsPerHost"));
+            }
+            if (getInitParameter("connectionIdleTimeout") != null) {
+                connectionIdleTimeout = Long.parseLong(getInitParameter("connectionIdleTimeout"));
+            }
+        } catch (NumberFormatException e) {
+            log("Invalid connection pool setting: " + e.getMessage());
+        }
+        connectionPool = new RemoteDeliveryConnectionPool(maxIdleConnectionsPerHost, maxConnectionsPerHost, connectionIdleTimeout);
+
         // Start Workers Threads.
         workersThreadCount = Integer.parseInt(getInitParameter("deliveryThreads"));
+
+        if (Boolean.valueOf(getInitParameter("asyncDelivery"))) {
+            int maxAsyncDeliveries = 100;
+            try {
+                if (getInitParameter("maxAsyncDeliveries") != null) {
+                    maxAsyncDeliveries = Integer.parseInt(getInitParameter("maxAsyncDeliveries"));
+                }
+            } catch (NumberFormatException e) {
+                log("Invalid maxAsyncDeliveries setting: " + getInitParameter("maxAsyncDeliveries"));
+            }
+            initSMTPClient(bindAddress);
+            asyncDeliveries = new Semaphore(maxAsyncDeliveries);
+            asyncCompletionExecutor = Executors.newFixedThreadPool(workersThreadCount);
+        }
         initDeliveryThreads();
     }
 
+    private void initSMTPClient(String bindAddress) throws MessagingException {
+        smtpClient = new SMTPClient(getHeloName());
+        smtpClient.setConnectTimeout(connectionTimeout);
+        smtpClient.setTimeout(smtpTimeout);
+        smtpClient.setStartTLS(startTLS);
+        smtpClient.setSSLEnable(isSSLEnable);
+        smtpClient.setSendPartial(sendPartial);
+        if (authUser != null) {
+            smtpClient.setAuthentication(authUser, authPass);
+        }
+        try {
+            if (bindAddress != null) {
+                smtpClient.setLocalAddress(InetAddress.getByName(bindAddress));
+            }
+            smtpClient.start();
+        } catch (Exception e) {
+            throw new MessagingException("Unable to start the SMTP client", e);
+        }
+    }
+
     private void initDeliveryThreads() {
         for (int a = 0; a < workersThreadCount; a++) {
             String threadName = "Remote delivery thread (" + a + ")";
@@ -707,6 +813,14 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
             t.interrupt();
         }
         notifyAll();
+
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+        if (smtpClient != null) {
+            smtpClient.stop();
+            asyncCompletionExecutor.shutdown();
+        }
     }
 
     /**
@@ -715,6 +829,10 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
      */
     @Override
     public void run() {
+        if (smtpClient != null) {
+            runAsync();
+            return;
+        }
 
         // Checks the pool and delivers a mail message
         Properties props = new Properties();
@@ -785,45 +903,7 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                         }
 
                         // Deliver message
-                        if (deliver(mail, session)) {
-                            // Message was successfully delivered/fully
-                            // failed...
-                            // delete it
-                            LifecycleUtil.dispose(mail);
-                            // workRepository.remove(key);
-                        } else {
-                            // Something happened that will delay delivery.
-                            // Store it back in the retry repository.
-                            // workRepository.store(mail);
-                            int retries = 0;
-                            try {
-                                retries = Integer.parseInt(mail.getErrorMessage());
-                            } catch (NumberFormatException e) {
-                                // Something strange was happen with the
-                                // errorMessage..
-                            }
-
-                            long delay = getNextDelay(retries);
-
-                            if (usePriority) {
-                                // Use lowest priority for retries. See JAMES-1311
-                                mail.setAttribute(MailPrioritySupport.MAIL_PRIORITY, MailPrioritySupport.LOW_PRIORITY);
-                            }
-                            queue.enQueue(mail, delay, TimeUnit.MILLISECONDS);
-                            LifecycleUtil.dispose(mail);
-
-                            // This is an update, so we have to unlock and
-                            // notify or this mail is kept locked by this
-                            // thread.
-                            // workRepository.unlock(key);
-
-                            // Note: We do not notify because we updated an
-                            // already existing mail and we are now free to
-                            // handle
-                            // more mails.
-                            // Furthermore this mail should not be processed now
-                            // because we have a retry time scheduling.
-                        }
+                        completeDelivery(mail, deliver(mail, session));
 
                         // Clear the object handle to make sure it recycles
                         // this object.
@@ -856,6 +936,324 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
         }
     }
 
+    /**
+     * Takes mails from the outgoing spool and hands them to the
+     * {@link SMTPClient}, as long as less than <code>maxAsyncDeliveries</code>
+     * are in flight
+     */
+    private void runAsync() {
+        try {
+            while (!Thread.interrupted() && !destroyed) {
+                try {
+                    asyncDeliveries.acquire();
+                    MailQueueItem queueItem;
+                    boolean dequeued = false;
+                    try {
+                        queueItem = queue.deQueue();
+                        dequeued = true;
+                    } finally {
+                        if (!dequeued) {
+                            asyncDeliveries.release();
+                        }
+                    }
+                    new AsyncDelivery(queueItem).start();
+                } catch (Throwable e) {
+                    if (!destroyed) {
+                        log("Exception caught in RemoteDelivery.run()", e);
+                    }
+                }
+            }
+        } finally {
+            // Restore the thread state to non-interrupted.
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Delivery of one mail with the {@link SMTPClient}. The target servers are
+     * tried one after the other from the completion callbacks, following the
+     * same rules as {@link #deliver(Mail, Session)}.
+     */
+    private final class AsyncDelivery implements SMTPDeliveryListener, SMTPMessageContent {
+
+        private final MailQueueItem queueItem;
+        private final Mail mail;
+        private final List<String> recipients = new ArrayList<String>();
+        private final List<HostAddress> targetServers = new ArrayList<HostAddress>();
+        private int nextServer = 0;
+        private HostAddress currentServer;
+        private MessagingException lastError;
+
+        public AsyncDelivery(MailQueueItem queueItem) {
+            this.queueItem = queueItem;
+            this.mail = queueItem.getMail();
+        }
+
+        /**
+         * Resolve the target servers and start the delivery to the first one.
+         * Any failure is handled here, so this never throws.
+         */
+        public void start() {
+            try {
+                if (isDebug) {
+                    log(Thread.currentThread().getName() + " will process mail " + mail.getName());
+                }
+                for (MailAddress rcpt : mail.getRecipients()) {
+                    recipients.add(rcpt.toString());
+                }
+                if (recipients.isEmpty()) {
+                    log("No recipients specified... not sure how this could have happened.");
+                    complete(true);
+                    return;
+                }
+
+                Iterator<HostAddress> servers;
+                if (gatewayServer == null) {
+                    String host = mail.getRecipients().iterator().next().getDomain();
+                    try {
+                        servers = new MXHostAddressIterator(dnsServer.findMXRecords(host).iterator(), dnsServer, false, logAdapter);
+                    } catch (TemporaryResolutionException e) {
+                        log("Temporary problem looking up mail server for host: " + host);
+                        String exceptionBuffer = "Temporary problem looking up mail server for host: " + host + ".  I cannot determine where to send this message.";
+                        complete(failMessage(mail, new MessagingException(exceptionBuffer), false));
+                        return;
+                    }
+                    if (!servers.hasNext()) {
+                        complete(failNoMailServer(mail, host));
+                        return;
+                    }
+                } else {
+                    servers = getGatewaySMTPHostAddresses(gatewayServer);
+                }
+                // Resolve all of them now, the completion callbacks should not
+                // wait for DNS
+                while (servers.hasNext()) {
+                    targetServers.add(servers.next());
+                }
+                deliverToNextServer();
+            } catch (Exception e) {
+                log("Generic exception = permanent failure: " + e.getMessage(), e);
+                complete(failMessage(mail, e, true));
+            }
+        }
+
+        public void onComplete(final SMTPDeliveryResult result) {
+            try {
+                asyncCompletionExecutor.execute(new Runnable() {
+
+                    public void run() {
+                        handle(result);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rollback();
+            }
+        }
+
+        public long getSize() {
+            try {
+                return mail.getMessageSize();
+            } catch (MessagingException e) {
+                return -1;
+            }
+        }
+
+        public InputStream getInputStream(boolean eightBitMime) throws IOException {
+            try {
+                MimeMessage message = mail.getMessage();
+                if (!eightBitMime) {
+                    // The server doesn't support the 8bit extension, see
+                    // deliver(Mail, Session)
+                    convertTo7Bit(message);
+                }
+                return new MimeMessageInputStream(message);
+            } catch (MessagingException e) {
+                throw new IOException("Unable to read mail " + mail.getName(), e);
+            }
+        }
+
+        private void deliverToNextServer() {
+            if (destroyed) {
+                rollback();
+                return;
+            }
+            if (nextServer >= targetServers.size()) {
+                // Same outcome as when deliver(Mail, Session) exhausted the
+                // loop of servers
+                if (lastError instanceof SendFailedException) {
+                    complete(handleSendFailedException(mail, (SendFailedException) lastError));
+                } else if (lastError != null) {
+                    complete(failMessage(mail, lastError, ('5' == lastError.getMessage().charAt(0))));
+                } else {
+                    complete(failMessage(mail, new MessagingException("No mail server(s) available at this time."), false));
+                }
+                return;
+            }
+
+            currentServer = targetServers.get(nextServer++);
+            String sender = mail.getSender() == null ? "" : mail.getSender().toString();
+            log("Attempting delivery of " + mail.getName() + " to host " + currentServer.getHostName() + " at " + currentServer.getHost() + " from <" + sender + "> for addresses " + recipients);
+
+            int port = currentServer.getPort();
+            if (port < 0) {
+                port = isSSLEnable ? 465 : 25;
+            }
+            smtpClient.deliver(new InetSocketAddress(currentServer.getHost(), port), currentServer.getHostName(), sender, recipients, this, this);
+        }
+
+        private void handle(SMTPDeliveryResult result) {
+            try {
+                if (result.isDelivered()) {
+                    if (result.getTemporaryFailedRecipients().isEmpty() && result.getPermanentFailedRecipients().isEmpty()) {
+                        log("Mail (" + mail.getName() + ") sent successfully to " + currentServer.getHostName() + " at " + currentServer.getHost() + " for " + mail.getRecipients());
+                        complete(true);
+                    } else {
+                        // sendPartial: fail the remaining recipients only
+                        complete(handleSendFailedException(mail, toSendFailedException(result)));
+                    }
+                } else if (result.isConnectionFailure()) {
+                    // Specific to this server, try the next one
+                    if (result.getCause() != null) {
+                        String exceptionBuffer = "Exception delivering message (" + mail.getName() + ") - " + result.getCause().getMessage();
+                        log(exceptionBuffer);
+                        lastError = new MessagingException(exceptionBuffer, toException(result.getCause()));
+                    } else {
+                        log(currentServer.getHostName() + " refused the connection: " + result.getReply());
+                    }
+                    deliverToNextServer();
+                } else if (result.getReply() == null) {
+                    // Some recipients were rejected
+                    SendFailedException sfe = toSendFailedException(result);
+                    if (sfe.getValidUnsentAddresses().length > 0) {
+                        if (isDebug) {
+                            log("Send failed, " + sfe.getValidUnsentAddresses().length + " valid addresses remain, continuing with any other servers");
+                        }
+                        lastError = sfe;
+                        deliverToNextServer();
+                    } else {
+                        complete(handleSendFailedException(mail, sfe));
+                    }
+                } else {
+                    // A protocol level error we'd encounter with any server of
+                    // this MX set
+                    String exceptionBuffer = "Exception delivering message (" + mail.getName() + ") - " + result.getReply();
+                    log(exceptionBuffer);
+                    complete(failMessage(mail, new MessagingException(result.getReply().toString()), result.getReply().isPermanentFailure()));
+                }
+            } catch (Exception e) {
+                log("Generic exception = permanent failure: " + e.getMessage(), e);
+                complete(failMessage(mail, e, true));
+            }
+        }
+
+        private SendFailedException toSendFailedException(SMTPDeliveryResult result) throws AddressException {
+            List<String> validUnsent = new ArrayList<String>(result.getTemporaryFailedRecipients());
+            List<String> validSent = new ArrayList<String>();
+            if (result.isDelivered()) {
+                validSent.addAll(result.getAcceptedRecipients());
+            } else {
+                validUnsent.addAll(result.getAcceptedRecipients());
+            }
+            return new SendFailedException("Invalid Addresses", null, toAddresses(validSent), toAddresses(validUnsent), toAddresses(result.getPermanentFailedRecipients()));
+        }
+
+        private Address[] toAddresses(List<String> addresses) throws AddressException {
+            Address[] result = new Address[addresses.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new InternetAddress(addresses.get(i));
+            }
+            return result;
+        }
+
+        private Exception toException(Throwable cause) {
+            if (cause instanceof Exception) {
+                return (Exception) cause;
+            }
+            return new Exception(cause);
+        }
+
+        private void complete(boolean deleteMessage) {
+            try {
+                completeDelivery(mail, deleteMessage);
+                queueItem.done(true);
+            } catch (Exception e) {
+                log("Exception caught in RemoteDelivery.run()", e);
+                LifecycleUtil.dispose(mail);
+                try {
+                    queueItem.done(false);
+                } catch (MailQueueException mqe) {
+                    log("Unable to roll back mail " + mail.getName(), mqe);
+                }
+            } finally {
+                asyncDeliveries.release();
+            }
+        }
+
+        /**
+         * Keep the mail in the queue, it will be delivered once the mailet
+         * runs again
+         */
+        private void rollback() {
+            LifecycleUtil.dispose(mail);
+            try {
+                queueItem.done(false);
+            } catch (MailQueueException e) {
+                log("Unable to roll back mail " + mail.getName(), e);
+            } finally {
+                asyncDeliveries.release();
+            }
+        }
+    }
+
+    /**
+     * Dispose the mail once it was delivered or permanently failed, otherwise
+     * store it back in the outgoing queue for a later retry
+     *
+     * @param mail           the mail which delivery was attempted
+     * @param deleteMessage  the outcome of the delivery attempt
+     */
+    private void completeDelivery(Mail mail, boolean deleteMessage) throws MailQueueException {
+        if (deleteMessage) {
+            // Message was successfully delivered/fully
+            // failed...
+            // delete it
+            LifecycleUtil.dispose(mail);
+            // workRepository.remove(key);
+        } else {
+            // Something happened that will delay delivery.
+            // Store it back in the retry repository.
+            // workRepository.store(mail);
+            int retries = 0;
+            try {
+                retries = Integer.parseInt(mail.getErrorMessage());
+            } catch (NumberFormatException e) {
+                // Something strange was happen with the
+                // errorMessage..
+            }
+
+            long delay = getNextDelay(retries);
+
+            if (usePriority) {
+                // Use lowest priority for retries. See JAMES-1311
+                mail.setAttribute(MailPrioritySupport.MAIL_PRIORITY, MailPrioritySupport.LOW_PRIORITY);
+            }
+            queue.enQueue(mail, delay, TimeUnit.MILLISECONDS);
+            LifecycleUtil.dispose(mail);
+
+            // This is an update, so we have to unlock and
+            // notify or this mail is kept locked by this
+            // thread.
+            // workRepository.unlock(key);
+
+            // Note: We do not notify because we updated an
+            // already existing mail and we are now free to
+            // handle
+            // more mails.
+            // Furthermore this mail should not be processed now
+            // because we have a retry time scheduling.
+        }
+    }
+
     /**
      * We can assume that the recipients of this message are all going to the
      * same mail server. We will now rely on the DNS server to do DNS MX record
@@ -906,22 +1304,7 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                     return failMessage(mail, new MessagingException(exceptionBuffer), false);
                 }
                 if (!targetServers.hasNext()) {
-                    log("No mail server found for: " + host);
-                    String exceptionBuffer = "There are no DNS entries for the hostname " + host + ".  I cannot determine where to send this message.";
-
-                    int retry = 0;
-                    try {
-                        retry = Integer.parseInt(mail.getErrorMessage());
-                    } catch (NumberFormatException e) {
-                        // Unable to parse retryCount
-                    }
-                    if (retry == 0 || retry > dnsProblemRetry) {
-                        // The domain has no dns entry.. Return a permanent
-                        // error
-                        return failMessage(mail, new MessagingException(exceptionBuffer), true);
-                    } else {
-                        return failMessage(mail, new MessagingException(exceptionBuffer), false);
-                    }
+                    return failNoMailServer(mail, host);
                 }
             } else {
                 targetServers = getGatewaySMTPHostAddresses(gatewayServer);
@@ -954,32 +1337,51 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                     // "mail.smtp.dsn.notify" //default to nothing...appended as
                     // NOTIFY= after RCPT TO line.
 
+                    String destination = outgoingMailServer.toString();
+                    try {
+                        if (!connectionPool.acquirePermit(destination, connectionTimeout)) {
+                            log("Too many concurrent deliveries to " + outgoingMailServer.getHostName() + " at " + outgoingMailServer.getHost());
+                            continue;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new MessagingException("Interrupted while waiting to deliver to " + outgoingMailServer.getHostName());
+                    }
+
                     SMTPTransport transport = null;
+                    boolean delivered = false;
                     try {
-                        transport =  (SMTPTransport) session.getTransport(outgoingMailServer);
-                        transport.setLocalHost( props.getProperty("mail.smtp.localhost", heloName) );
-                        try {
-                            if (authUser != null) {
-                                transport.connect(outgoingMailServer.getHostName(), authUser, authPass);
-                            } else {
-                                transport.connect();
-                            }
-                        } catch (MessagingException me) {
-                            // Any error on connect should cause the mailet to
-                            // attempt
-                            // to connect to the next SMTP server associated
-                            // with this
-                            // MX record. Just log the exception. We'll worry
-                            // about
-                            // failing the message at the end of the loop.
-
-                            // Also include the stacktrace if debug is enabled. See JAMES-1257
+                        transport = connectionPool.borrow(destination, session);
+                        if (transport != null) {
                             if (isDebug) {
-                                log(me.getMessage(), me.getCause());
-                            } else {
-                                log(me.getMessage());
+                                log("Reusing connection to " + outgoingMailServer.getHostName() + " at " + outgoingMailServer.getHost());
+                            }
+                        } else {
+                            transport =  (SMTPTransport) session.getTransport(outgoingMailServer);
+                            transport.setLocalHost( props.getProperty("mail.smtp.localhost", heloName) );
+                            try {
+                                if (authUser != null) {
+                                    transport.connect(outgoingMailServer.getHostName(), authUser, authPass);
+                                } else {
+                                    transport.connect();
+                                }
+                            } catch (MessagingException me) {
+                                // Any error on connect should cause the mailet to
+                                // attempt
+                                // to connect to the next SMTP server associated
+                                // with this
+                                // MX record. Just log the exception. We'll worry
+                                // about
+                                // failing the message at the end of the loop.
+
+                                // Also include the stacktrace if debug is enabled. See JAMES-1257
+                                if (isDebug) {
+                                    log(me.getMessage(), me.getCause());
+                                } else {
+                                    log(me.getMessage());
+                                }
+                                continue;
                             }
-                            continue;
                         }
                         // if the transport is a SMTPTransport (from sun) some
                         // performance enhancement can be done.
@@ -1029,7 +1431,13 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                             }
                         }
                         transport.sendMessage(message, addr);
+                        delivered = true;
                     } finally {
+                        if (delivered && connectionPool.release(destination, session, transport)) {
+                            // Kept open for the next mail to this server
+                            transport = null;
+                        }
+                        connectionPool.releasePermit(destination);
                         if (transport != null) {
                             try {
                                 // James-899: transport.close() sends QUIT to
@@ -1120,119 +1528,7 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
                 throw lastError;
             }
         } catch (SendFailedException sfe) {
-            logSendFailedException(sfe);
-
-            // Copy the recipients as direct modification may not be possible
-            Collection<MailAddress> recipients = new ArrayList<MailAddress>(mail.getRecipients());
-
-            boolean deleteMessage = false;
-
-            /*
-             * If you send a message that has multiple invalid addresses, you'll
-             * get a top-level SendFailedException that that has the valid,
-             * valid-unsent, and invalid address lists, with all of the server
-             * response messages will be contained within the nested exceptions.
-             * [Note: the content of the nested exceptions is implementation
-             * dependent.]
-             * 
-             * sfe.getInvalidAddresses() should be considered permanent.
-             * sfe.getValidUnsentAddresses() should be considered temporary.
-             * 
-             * JavaMail v1.3 properly populates those collections based upon the
-             * 4xx and 5xx response codes to RCPT TO. Some servers, such as
-             * Yahoo! don't respond to the RCPT TO, and provide a 5xx reply
-             * after DATA. In that case, we will pick up the failure from
-             * SMTPSendFailedException.
-             */
-
-            /*
-             * SMTPSendFailedException introduced in JavaMail 1.3.2, and
-             * provides detailed protocol reply code for the operation
-             */
-            try {
-                if (sfe.getClass().getName().endsWith(".SMTPSendFailedException")) {
-                    int returnCode = (Integer) invokeGetter(sfe, "getReturnCode");
-                    // If we got an SMTPSendFailedException, use its RetCode to
-                    // determine default permanent/temporary failure
-                    deleteMessage = (returnCode >= 500 && returnCode <= 599);
-                } else {
-                    // Sometimes we'll get a normal SendFailedException with
-                    // nested SMTPAddressFailedException, so use the latter
-                    // RetCode
-                    MessagingException me = sfe;
-                    Exception ne;
-                    while ((ne = me.getNextException()) != null && ne instanceof MessagingException) {
-                        me = (MessagingException) ne;
-                        if (me.getClass().getName().endsWith(".SMTPAddressFailedException")) {
-                            int returnCode = (Integer) invokeGetter(me, "getReturnCode");
-                            deleteMessage = (returnCode >= 500 && returnCode <= 599);
-                        }
-                    }
-                }
-            } catch (IllegalStateException ise) {
-                // unexpected exception (not a compatible javamail
-                // implementation)
-            } catch (ClassCastException cce) {
-                // unexpected exception (not a compatible javamail
-                // implementation)
-            }
-
-            // log the original set of intended recipients
-            if (isDebug)
-                log("Recipients: " + recipients);
-
-            if (sfe.getInvalidAddresses() != null) {
-                Address[] address = sfe.getInvalidAddresses();
-                if (address.length > 0) {
-                    recipients.clear();
-                    for (Address addres : address) {
-                        try {
-                            recipients.add(new MailAddress(addres.toString()));
-                        } catch (ParseException pe) {
-                            // this should never happen ... we should have
-                            // caught malformed addresses long before we
-                            // got to this code.
-                            log("Can't parse invalid address: " + pe.getMessage());
-                        }
-                    }
-                    // Set the recipients for the mail
-                    mail.setRecipients(recipients);
-
-                    if (isDebug)
-                        log("Invalid recipients: " + recipients);
-                    deleteMessage = failMessage(mail, sfe, true);
-                }
-            }
-
-            if (sfe.getValidUnsentAddresses() != null) {
-                Address[] address = sfe.getValidUnsentAddresses();
-                if (address.length > 0) {
-                    recipients.clear();
-                    for (Address addres : address) {
-                        try {
-                            recipients.add(new MailAddress(addres.toString()));
-                        } catch (ParseException pe) {
-                            // this should never happen ... we should have
-                            // caught malformed addresses long before we
-                            // got to this code.
-                            log("Can't parse unsent address: " + pe.getMessage());
-                        }
-                    }
-                    // Set the recipients for the mail
-                    mail.setRecipients(recipients);
-                    if (isDebug)
-                        log("Unsent recipients: " + recipients);
-                    if (sfe.getClass().getName().endsWith(".SMTPSendFailedException")) {
-                        int returnCode = (Integer) invokeGetter(sfe, "getReturnCode");
-                        deleteMessage = failMessage(mail, sfe, returnCode >= 500 && returnCode <= 599);
-                    } else {
-                        deleteMessage = failMessage(mail, sfe, false);
-                    }
-                }
-            }
-
-
-            return deleteMessage;
+            return handleSendFailedException(mail, sfe);
         } catch (MessagingException ex) {
             // We should do a better job checking this... if the failure is a
             // general
@@ -1264,6 +1560,152 @@ public class RemoteDelivery extends GenericMailet implements Runnable {
         return failMessage(mail, new MessagingException("No mail server(s) available at this time."), false);
     }
 
+    /**
+     * Fail the mail because no mail server could be found for the given host.
+     * This is a permanent failure unless <code>maxDnsProblemRetries</code>
+     * allows to retry.
+     */
+    private boolean failNoMailServer(Mail mail, String host) {
+        log("No mail server found for: " + host);
+        String exceptionBuffer = "There are no DNS entries for the hostname " + host + ".  I cannot determine where to send this message.";
+
+        int retry = 0;
+        try {
+            retry = Integer.parseInt(mail.getErrorMessage());
+        } catch (NumberFormatException e) {
+            // Unable to parse retryCount
+        }
+        if (retry == 0 || retry > dnsProblemRetry) {
+            // The domain has no dns entry.. Return a permanent
+            // error
+            return failMessage(mail, new MessagingException(exceptionBuffer), true);
+        } else {
+            return failMessage(mail, new MessagingException(exceptionBuffer), false);
+        }
+    }
+
+    /**
+     * Fail the recipients reported by the given {@link SendFailedException}:
+     * invalid addresses permanently, valid but unsent addresses temporarily
+     *
+     * @return boolean Whether the message can be deleted
+     */
+    private boolean handleSendFailedException(Mail mail, SendFailedException sfe) {
+        logSendFailedException(sfe);
+
+        // Copy the recipients as direct modification may not be possible
+        Collection<MailAddress> recipients = new ArrayList<MailAddress>(mail.getRecipients());
+
+        boolean deleteMessage = false;
+
+        /*
+         * If you send a message that has multiple invalid addresses, you'll
+         * get a top-level SendFailedException that that has the valid,
+         * valid-unsent, and invalid address lists, with all of the server
+         * response messages will be contained within the nested exceptions.
+         * [Note: the content of the nested exceptions is implementation
+         * dependent.]
+         * 
+         * sfe.getInvalidAddresses() should be considered permanent.
+         * sfe.getValidUnsentAddresses() should be considered temporary.
+         * 
+         * JavaMail v1.3 properly populates those collections based upon the
+         * 4xx and 5xx response codes to RCPT TO. Some servers, such as
+         * Yahoo! don't respond to the RCPT TO, and provide a 5xx reply
+         * after DATA. In that case, we will pick up the failure from
+         * SMTPSendFailedException.
+         */
+
+        /*
+         * SMTPSendFailedException introduced in JavaMail 1.3.2, and
+         * provides detailed protocol reply code for the operation
+         */
+        try {
+            if (sfe.getClass().getName().endsWith(".SMTPSendFailedException")) {
+                int returnCode = (Integer) invokeGetter(sfe, "getReturnCode");
+                // If we got an SMTPSendFailedException, use its RetCode to
+                // determine default permanent/temporary failure
+                deleteMessage = (returnCode >= 500 && returnCode <= 599);
+            } else {
+                // Sometimes we'll get a normal SendFailedException with
+                // nested SMTPAddressFailedException, so use the latter
+                // RetCode
+                MessagingException me = sfe;
+                Exception ne;
+                while ((ne = me.getNextException()) != null && ne instanceof MessagingException) {
+                    me = (MessagingException) ne;
+                    if (me.getClass().getName().endsWith(".SMTPAddressFailedException")) {
+                        int returnCode = (Integer) invokeGetter(me, "getReturnCode");
+                        deleteMessage = (returnCode >= 500 && returnCode <= 599);
+                    }
+                }
+            }
+        } catch (IllegalStateException ise) {
+            // unexpected exception (not a compatible javamail
+            // implementation)
+        } catch (ClassCastException cce) {
+            // unexpected exception (not a compatible javamail
+            // implementation)
+        }
+
+        // log the original set of intended recipients
+        if (isDebug)
+            log("Recipients: " + recipients);
+
+        if (sfe.getInvalidAddresses() != null) {
+            Address[] address = sfe.getInvalidAddresses();
+            if (address.length > 0) {
+                recipients.clear();
+                for (Address addres : address) {
+                    try {
+                        recipients.add(new MailAddress(addres.toString()));
+                    } catch (ParseException pe) {
+                        // this should never happen ... we should have
+                        // caught malformed addresses long before we
+                        // got to this code.
+                        log("Can't parse invalid address: " + pe.getMessage());
+                    }
+                }
+                // Set the recipients for the mail
+                mail.setRecipients(recipients);
+
+                if (isDebug)
+                    log("Invalid recipients: " + recipients);
+                deleteMessage = failMessage(mail, sfe, true);
+            }
+        }
+
+        if (sfe.getValidUnsentAddresses() != null) {
+            Address[] address = sfe.getValidUnsentAddresses();
+            if (address.length > 0) {
+                recipients.clear();
+                for (Address addres : address) {
+                    try {
+                        recipients.add(new MailAddress(addres.toString()));
+                    } catch (ParseException pe) {
+                        // this should never happen ... we should have
+                        // caught malformed addresses long before we
+                        // got to this code.
+                        log("Can't parse unsent address: " + pe.getMessage());
+                    }
+                }
+                // Set the recipients for the mail
+                mail.setRecipients(recipients);
+                if (isDebug)
+                    log("Unsent recipients: " + recipients);
+                if (sfe.getClass().getName().endsWith(".SMTPSendFailedException")) {
+                    int returnCode = (Integer) invokeGetter(sfe, "getReturnCode");
+                    deleteMessage = failMessage(mail, sfe, returnCode >= 500 && returnCode <= 599);
+                } else {
+                    deleteMessage = failMessage(mail, sfe, false);
+                }
+            }
+        }
+
+
+        return deleteMessage;
+    }
+
     /**
      * Try to return a usefull logString created of the Exception which was
      * given. Return null if nothing usefull could be done
@@ -0,0 +1,290 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * <p>
+ * Keeps connected {@link SMTPTransport} instances per destination server so
+ * that {@link RemoteDelivery} can send several mails over the same SMTP
+ * session instead of paying the TCP / TLS / EHLO / AUTH handshake for each of
+ * them. Before an idle connection is handed out again a <code>RSET</code> is
+ * issued; connections which fail it or which stayed idle for too long are
+ * closed.
+ * </p>
+ * <p>
+ * A transport is only handed out again for the {@link Session} it was created
+ * with, as JavaMail reads the envelope sender from the properties of that
+ * session and each delivery thread uses its own one.
+ * </p>
+ * <p>
+ * It also limits the count of deliveries which may run concurrently against
+ * the same destination server, so that a few large providers do not get
+ * flooded with connections by all the delivery threads at once.
+ * </p>
+ * <p>
+ * With both limits set to 0 the pool is a no-op: every delivery opens and
+ * closes its own connection, which was the behaviour before this class
+ * existed.
+ * </p>
+ */
+public class RemoteDeliveryConnectionPool {
+
+    private final int maxIdlePerHost;
+    private final int maxActivePerHost;
+    private final long idleTimeout;
+
+    private final ConcurrentMap<String, Deque<IdleTransport>> idleTransports = new ConcurrentHashMap<String, Deque<IdleTransport>>();
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+    private volatile long lastEviction = System.currentTimeMillis();
+    private volatile boolean closed = false;
+
+    /**
+     * @param maxIdlePerHost
+     *            maximum count of idle connections kept open per destination.
+     *            0 disables connection reuse
+     * @param maxActivePerHost
+     *            maximum count of concurrent deliveries per destination. 0
+     *            means unlimited
+     * @param idleTimeout
+     *            time in milliseconds after which an idle connection is not
+     *            reused anymore
+     */
+    public RemoteDeliveryConnectionPool(int maxIdlePerHost, int maxActivePerHost, long idleTimeout) {
+        if (maxIdlePerHost < 0 || maxActivePerHost < 0) {
+            throw new IllegalArgumentException("Connection limits must not be negative");
+        }
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.maxActivePerHost = maxActivePerHost;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Wait for the permission to deliver to the given destination.
+     * {@link #releasePermit(String)} must be called once done if this method
+     * returned <code>true</code>.
+     *
+     * @return <code>false</code> if no delivery slot became available within
+     *         the given timeout
+     */
+    public boolean acquirePermit(String destination, long timeout) throws InterruptedException {
+        if (maxActivePerHost == 0) {
+            return true;
+        }
+        return getPermits(destination).tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Give back the delivery slot obtained by
+     * {@link #acquirePermit(String, long)}
+     */
+    public void releasePermit(String destination) {
+        if (maxActivePerHost == 0) {
+            return;
+        }
+        getPermits(destination).release();
+    }
+
+    /**
+     * Return an already connected and reset {@link SMTPTransport} to the
+     * given destination created with the given {@link Session}, or
+     * <code>null</code> if none is available and a new connection needs to
+     * be opened.
+     */
+    public SMTPTransport borrow(String destination, Session session) {
+        if (maxIdlePerHost == 0) {
+            return null;
+        }
+        Deque<IdleTransport> idle = idleTransports.get(destination);
+        if (idle == null) {
+            return null;
+        }
+        while (true) {
+            IdleTransport candidate;
+            synchronized (idle) {
+                candidate = pollMostRecent(idle, session);
+            }
+            if (candidate == null) {
+                return null;
+            }
+            if (candidate.isExpired(System.currentTimeMillis())) {
+                closeQuietly(candidate.transport);
+                continue;
+            }
+            try {
+                candidate.transport.issueCommand("RSET", 250);
+                return candidate.transport;
+            } catch (MessagingException e) {
+                // The server closed the connection or is in a weird state
+                closeQuietly(candidate.transport);
+            }
+        }
+    }
+
+    /**
+     * Offer a connected {@link SMTPTransport} back to the pool after a
+     * successful delivery.
+     *
+     * @return <code>true</code> if the pool kept the transport,
+     *         <code>false</code> if the caller is responsible for closing it
+     */
+    public boolean release(String destination, Session session, SMTPTransport transport) {
+        if (maxIdlePerHost == 0 || closed) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+
+        Deque<IdleTransport> idle = getIdleTransports(destination);
+        synchronized (idle) {
+            if (idle.size() >= maxIdlePerHost) {
+                return false;
+            }
+            idle.addLast(new IdleTransport(transport, session, now));
+        }
+        return true;
+    }
+
+    /**
+     * Close all idle connections. Connections released afterwards are not
+     * pooled anymore.
+     */
+    public void close() {
+        closed = true;
+        for (Deque<IdleTransport> idle : idleTransports.values()) {
+            synchronized (idle) {
+                for (IdleTransport transport : idle) {
+                    closeQuietly(transport.transport);
+                }
+                idle.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the count of idle connections kept for the given destination
+     */
+    public int getIdleCount(String destination) {
+        Deque<IdleTransport> idle = idleTransports.get(destination);
+        if (idle == null) {
+            return 0;
+        }
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Most recently used first, those are the least likely to have been
+     * dropped by the remote server
+     */
+    private IdleTransport pollMostRecent(Deque<IdleTransport> idle, Session session) {
+        Iterator<IdleTransport> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            IdleTransport transport = it.next();
+            if (transport.session == session) {
+                it.remove();
+                return transport;
+            }
+        }
+        return null;
+    }
+
+    private void evictExpired(long now) {
+        if (now - lastEviction < idleTimeout) {
+            return;
+        }
+        lastEviction = now;
+        for (Map.Entry<String, Deque<IdleTransport>> entry : idleTransports.entrySet()) {
+            Deque<IdleTransport> idle = entry.getValue();
+            synchronized (idle) {
+                Iterator<IdleTransport> it = idle.iterator();
+                while (it.hasNext()) {
+                    IdleTransport transport = it.next();
+                    if (transport.isExpired(now)) {
+                        it.remove();
+                        closeQuietly(transport.transport);
+                    }
+                }
+            }
+        }
+    }
+
+    private Deque<IdleTransport> getIdleTransports(String destination) {
+        Deque<IdleTransport> idle = idleTransports.get(destination);
+        if (idle == null) {
+            idle = new ArrayDeque<IdleTransport>();
+            Deque<IdleTransport> existing = idleTransports.putIfAbsent(destination, idle);
+            if (existing != null) {
+                idle = existing;
+            }
+        }
+        return idle;
+    }
+
+    private Semaphore getPermits(String destination) {
+        Semaphore semaphore = permits.get(destination);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxActivePerHost, true);
+            Semaphore existing = permits.putIfAbsent(destination, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+
+    private static void closeQuietly(SMTPTransport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            // Nothing we can do, the connection is discarded anyway
+        }
+    }
+
+    private final class IdleTransport {
+        private final SMTPTransport transport;
+        private final Session session;
+        private final long since;
+
+        public IdleTransport(SMTPTransport transport, Session session, long since) {
+            this.transport = transport;
+            this.session = session;
+            this.since = since;
+        }
+
+        public boolean isExpired(long now) {
+            return now - since > idleTimeout;
+        }
+    }
+}
@@ -18,7 +18,14 @@
  ****************************************************************/
 package org.apache.james.transport.mailets;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
@@ -29,6 +36,8 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.transport.util.MailetContextLog;
@@ -41,14 +50,28 @@ import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
 import org.apache.mailet.MailetConfig;
 
+import com.google.common.base.Charsets;
+
 /**
  * Contains resource bindings.
+ * 
+ * Mails with several recipients are parsed and stored only once: the sieve
+ * scripts of all recipients are evaluated first, then the message is appended
+ * to every selected mailbox through a single
+ * {@link MailboxManager#appendMessage(java.io.InputStream, Date, List)} call.
+ * The delivery header of each recipient is then prepended to its own copy
+ * only.
  */
 public class SieveMailet extends SieveMailboxMailet implements Poster {
+
+    private static final String DELIVERY_HEADER_PARAMETER = "addDeliveryHeader";
+
     private final UsersRepository usersRepos;
     private final MailboxManager mailboxManager;
     private final String folder;
     private final ResourceLocator resourceLocator;
+    private final ThreadLocal<BatchedDelivery> batchedDelivery = new ThreadLocal<BatchedDelivery>();
+    private String deliveryHeader;
 
     public SieveMailet(UsersRepository usersRepos, MailboxManager mailboxManager, ResourceLocator resourceLocator, String folder) {
         this.usersRepos = usersRepos;
@@ -62,6 +85,46 @@ public class SieveMailet extends SieveMailboxMailet implements Poster {
         setLocator(resourceLocator);
         setPoster(this);
         super.init(config);
+        deliveryHeader = getInitParameter(DELIVERY_HEADER_PARAMETER);
+    }
+
+    @Override
+    public void service(Mail mail) throws MessagingException {
+        if (mail.getRecipients().size() <= 1) {
+            super.service(mail);
+            return;
+        }
+
+        MimeMessage message = mail.getMessage();
+        String[] originalDeliveryHeaders = null;
+        if (deliveryHeader != null) {
+            originalDeliveryHeaders = message.getHeader(deliveryHeader);
+        }
+
+        BatchedDelivery delivery = new BatchedDelivery();
+        batchedDelivery.set(delivery);
+        try {
+            super.service(mail);
+        } finally {
+            batchedDelivery.remove();
+        }
+
+        if (deliveryHeader != null) {
+            // The delivery header of the last recipient is left in place, get
+            // back to the original headers as each recipient gets its own one
+            // prepended when stored
+            message.removeHeader(deliveryHeader);
+            if (originalDeliveryHeaders != null) {
+                for (String value : originalDeliveryHeaders) {
+                    message.addHeader(deliveryHeader, value);
+                }
+            }
+        }
+
+        Collection<MailAddress> failedRecipients = delivery.flush(mail);
+        if (!failedRecipients.isEmpty()) {
+            getMailetContext().sendMail(mail.getSender(), failedRecipients, message, Mail.ERROR);
+        }
     }
 
     /**
@@ -95,7 +158,20 @@ public class SieveMailet extends SieveMailboxMailet implements Poster {
      */
     @Override
     public void storeMail(MailAddress sender, MailAddress recipient, Mail mail) throws MessagingException {
+        BatchedDelivery delivery = batchedDelivery.get();
+        if (delivery != null) {
+            // Mailboxes are only recorded by post(), the message is stored
+            // once all recipients were processed
+            delivery.setCurrentRecipient(recipient);
+            super.storeMail(sender, recipient, mail);
+            delivery.recipientProcessed(recipient);
+            return;
+        }
         super.storeMail(sender, recipient, mail);
+        logDelivery(mail, sender, recipient);
+    }
+
+    private void logDelivery(Mail mail, MailAddress sender, MailAddress recipient) {
         String s;
         if (sender != null) {
             s = sender.toString();
@@ -156,68 +232,196 @@ public class SieveMailet extends SieveMailboxMailet implements Poster {
                         throw new MessagingException("Unable to accessUsersRepository", e);
                     }
 
-                    MailboxSession session;
-                    try {
-                        session = mailboxManager.createSystemSession(user, new MailetContextLog(getMailetContext()));
-                    } catch (BadCredentialsException e) {
-                        throw new MessagingException("Unable to authenticate to mailbox", e);
-                    } catch (MailboxException e) {
-                        throw new MessagingException("Can not access mailbox", e);
+                    BatchedDelivery delivery = batchedDelivery.get();
+                    if (delivery != null) {
+                        delivery.add(user, urlPath);
+                    } else {
+                        deliver(user, urlPath, mail);
                     }
+                }
 
-                    // Start processing request
-                    mailboxManager.startProcessingRequest(session);
+            }
 
-                    // This allows Sieve scripts to use a standard delimiter
-                    // regardless of mailbox implementation
-                    String destination = urlPath.replace('/', session.getPathDelimiter());
+            else {
+                // TODO: add support for more protocols
+                // TODO: - for example mailto: for forwarding over SMTP
+                // TODO: - for example xmpp: for forwarding over Jabber
+                throw new MessagingException("Unsupported protocol");
+            }
+        }
+    }
 
-                    if (destination == null || "".equals(destination)) {
-                        destination = this.folder;
-                    }
-                    if (destination.startsWith(session.getPathDelimiter() + ""))
-                        destination = destination.substring(1);
+    private void deliver(String user, String urlPath, MimeMessage mail) throws MessagingException {
+        MailboxSession session = createSession(user);
+        try {
+            final MailboxPath path = getMailboxPath(user, urlPath, session);
+            final MessageManager mailbox = mailboxManager.getMailbox(path, session);
+            if (mailbox == null) {
+                final String error = "Mailbox for user " + user + " was not found on this server.";
+                throw new MessagingException(error);
+            }
 
-                    // Use the MailboxSession to construct the MailboxPath - See
-                    // JAMES-1326
-                    final MailboxPath path = new MailboxPath(MailboxConstants.USER_NAMESPACE, user, destination);
-                    try {
-                        if (this.folder.equalsIgnoreCase(destination) && !(mailboxManager.mailboxExists(path, session))) {
-                            mailboxManager.createMailbox(path, session);
-                        }
-                        final MessageManager mailbox = mailboxManager.getMailbox(path, session);
-                        if (mailbox == null) {
-                            final String error = "Mailbox for user " + user + " was not found on this server.";
-                            throw new MessagingException(error);
-                        }
+            mailbox.appendMessage(new MimeMessageInputStream(mail), new Date(), session, true, null);
 
-                        mailbox.appendMessage(new MimeMessageInputStream(mail), new Date(), session, true, null);
+        } catch (MailboxException e) {
+            throw new MessagingException("Unable to access mailbox.", e);
+        } finally {
+            closeSession(session);
+        }
+    }
 
-                    } catch (MailboxException e) {
-                        throw new MessagingException("Unable to access mailbox.", e);
-                    } finally {
-                        session.close();
-                        try {
-                            mailboxManager.logout(session, true);
-                        } catch (MailboxException e) {
-                            throw new MessagingException("Can logout from mailbox", e);
-                        }
+    private MailboxSession createSession(String user) throws MessagingException {
+        MailboxSession session;
+        try {
+            session = mailboxManager.createSystemSession(user, new MailetContextLog(getMailetContext()));
+        } catch (BadCredentialsException e) {
+            throw new MessagingException("Unable to authenticate to mailbox", e);
+        } catch (MailboxException e) {
+            throw new MessagingException("Can not access mailbox", e);
+        }
 
-                        // Stop processing request
-                        mailboxManager.endProcessingRequest(session);
+        // Start processing request
+        mailboxManager.startProcessingRequest(session);
+        return session;
+    }
+
+    private void closeSession(MailboxSession session) throws MessagingException {
+        session.close();
+        try {
+            mailboxManager.logout(session, true);
+        } catch (MailboxException e) {
+            throw new MessagingException("Can logout from mailbox", e);
+        } finally {
+            // Stop processing request
+            mailboxManager.endProcessingRequest(session);
+        }
+    }
+
+    /**
+     * Return the {@link MailboxPath} for the given url path, creating the
+     * default folder if it does not exist yet
+     */
+    private MailboxPath getMailboxPath(String user, String urlPath, MailboxSession session) throws MailboxException {
+        // This allows Sieve scripts to use a standard delimiter
+        // regardless of mailbox implementation
+        String destination = urlPath.replace('/', session.getPathDelimiter());
+
+        if (destination == null || "".equals(destination)) {
+            destination = this.folder;
+        }
+        if (destination.startsWith(session.getPathDelimiter() + ""))
+            destination = destination.substring(1);
+
+        // Use the MailboxSession to construct the MailboxPath - See
+        // JAMES-1326
+        final MailboxPath path = new MailboxPath(MailboxConstants.USER_NAMESPACE, user, destination);
+        if (this.folder.equalsIgnoreCase(destination) && !(mailboxManager.mailboxExists(path, session))) {
+            mailboxManager.createMailbox(path, session);
+        }
+        return path;
+    }
+
+    private byte[] getDeliveryHeaderLine(MailAddress recipient) {
+        if (deliveryHeader == null) {
+            return null;
+        }
+        return (deliveryHeader + ": " + recipient.toString() + "\r\n").getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Mailboxes selected by the sieve scripts of the recipients of a mail,
+     * stored once all the recipients were processed
+     */
+    private class BatchedDelivery {
+
+        private final List<MailAddress> recipients = new ArrayList<MailAddress>();
+        private final List<PendingAppend> pendingAppends = new ArrayList<PendingAppend>();
+        private MailAddress currentRecipient;
+
+        public void setCurrentRecipient(MailAddress recipient) {
+            currentRecipient = recipient;
+        }
+
+        public void recipientProcessed(MailAddress recipient) {
+            recipients.add(recipient);
+        }
+
+        public void add(String user, String urlPath) {
+            pendingAppends.add(new PendingAppend(currentRecipient, user, urlPath));
+        }
 
+        /**
+         * Store the mail in all the recorded mailboxes
+         * 
+         * @return the recipients the mail could not be stored for
+         */
+        public Collection<MailAddress> flush(Mail mail) throws MessagingException {
+            Set<MailAddress> failedRecipients = new LinkedHashSet<MailAddress>();
+            Map<String, MailboxSession> sessions = new HashMap<String, MailboxSession>();
+            List<AppendTarget> targets = new ArrayList<AppendTarget>();
+            List<MailAddress> targetRecipients = new ArrayList<MailAddress>();
+            try {
+                for (PendingAppend pendingAppend : pendingAppends) {
+                    try {
+                        MailboxSession session = sessions.get(pendingAppend.user);
+                        if (session == null) {
+                            session = createSession(pendingAppend.user);
+                            sessions.put(pendingAppend.user, session);
+                        }
+                        MailboxPath path = getMailboxPath(pendingAppend.user, pendingAppend.urlPath, session);
+                        targets.add(new AppendTarget(session, path, true, null, getDeliveryHeaderLine(pendingAppend.recipient)));
+                        targetRecipients.add(pendingAppend.recipient);
+                    } catch (MessagingException e) {
+                        log("Error while storing mail.", e);
+                        failedRecipients.add(pendingAppend.recipient);
+                    } catch (MailboxException e) {
+                        log("Error while storing mail.", e);
+                        failedRecipients.add(pendingAppend.recipient);
                     }
                 }
-
+                if (!targets.isEmpty()) {
+                    append(mail, targets, targetRecipients, failedRecipients);
+                }
+            } finally {
+                for (MailboxSession session : sessions.values()) {
+                    closeSession(session);
+                }
             }
+            for (MailAddress recipient : recipients) {
+                if (!failedRecipients.contains(recipient)) {
+                    logDelivery(mail, mail.getSender(), recipient);
+                }
+            }
+            return failedRecipients;
+        }
 
-            else {
-                // TODO: add support for more protocols
-                // TODO: - for example mailto: for forwarding over SMTP
-                // TODO: - for example xmpp: for forwarding over Jabber
-                throw new MessagingException("Unsupported protocol");
+        private void append(Mail mail, List<AppendTarget> targets, List<MailAddress> targetRecipients, Set<MailAddress> failedRecipients) throws MessagingException {
+            try {
+                List<AppendResult> results = mailboxManager.appendMessage(new MimeMessageInputStream(mail.getMessage()), new Date(), targets);
+                for (int i = 0; i < results.size(); i++) {
+                    AppendResult result = results.get(i);
+                    if (!result.isSuccess()) {
+                        log("Error while storing mail.", result.getCause());
+                        failedRecipients.add(targetRecipients.get(i));
+                    }
+                }
+            } catch (MailboxException e) {
+                log("Error while storing mail.", e);
+                failedRecipients.addAll(targetRecipients);
             }
         }
     }
 
+    private static class PendingAppend {
+        private final MailAddress recipient;
+        private final String user;
+        private final String urlPath;
+
+        public PendingAppend(MailAddress recipient, String user, String urlPath) {
+            this.recipient = recipient;
+            this.user = user;
+            this.urlPath = urlPath;
+        }
+    }
+
 }
@@ -0,0 +1,277 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.dnsservice.api.DNSService;
+import org.apache.james.protocols.netty.smtp.FakeSMTPServer;
+import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueFactory;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.apache.mailet.base.test.FakeMailetConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class RemoteDeliveryAsyncTest {
+
+    private static final String RCPT1 = "rcpt1@example.org";
+    private static final String RCPT2 = "rcpt2@example.org";
+
+    private FakeSMTPServer server;
+    private FakeMailQueue queue;
+    private RecordingMailContext mailetContext;
+    private RemoteDelivery remoteDelivery;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSMTPServer();
+        queue = new FakeMailQueue();
+        mailetContext = new RecordingMailContext();
+        remoteDelivery = new RemoteDelivery();
+
+        DNSService dnsService = mock(DNSService.class);
+        when(dnsService.getAllByName("127.0.0.1")).thenReturn(new InetAddress[] { InetAddress.getByName("127.0.0.1") });
+        remoteDelivery.setDNSService(dnsService);
+        remoteDelivery.setMailQueueFactory(new MailQueueFactory() {
+            public MailQueue getQueue(String name) {
+                return queue;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        remoteDelivery.destroy();
+        server.stop();
+    }
+
+    private void init(Properties properties) throws MessagingException {
+        FakeMailetConfig mailetConfig = new FakeMailetConfig("RemoteDelivery", mailetContext);
+        mailetConfig.setProperty("asyncDelivery", "true");
+        mailetConfig.setProperty("deliveryThreads", "1");
+        mailetConfig.setProperty("heloName", "james.org");
+        mailetConfig.setProperty("gateway", "127.0.0.1");
+        mailetConfig.setProperty("gatewayPort", String.valueOf(server.getAddress().getPort()));
+        mailetConfig.setProperty("delayTime", "1000");
+        mailetConfig.setProperty("maxRetries", "3");
+        mailetConfig.setProperty("bounceProcessor", "bounces");
+        for (String name : properties.stringPropertyNames()) {
+            mailetConfig.setProperty(name, properties.getProperty(name));
+        }
+        remoteDelivery.init(mailetConfig);
+    }
+
+    private Mail createMail(String... recipients) throws Exception {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+        message.setSubject("test");
+        message.setText("Hello");
+        message.saveChanges();
+        ImmutableList.Builder<MailAddress> addresses = ImmutableList.builder();
+        for (String recipient : recipients) {
+            addresses.add(new MailAddress(recipient));
+        }
+        return new MailImpl("mail", new MailAddress("sender@james.org"), addresses.build(), message);
+    }
+
+    @Test
+    public void deliveredMailShouldBeRemovedFromTheQueue() throws Exception {
+        server.start();
+        init(new Properties());
+
+        queue.add(createMail(RCPT1, RCPT2));
+
+        assertThat(queue.awaitDone()).isTrue();
+        assertThat(server.getMessages()).hasSize(1);
+        assertThat(queue.getRequeued()).isEmpty();
+        assertThat(mailetContext.getSendmails()).isEmpty();
+    }
+
+    @Test
+    public void temporaryFailureShouldRequeueTheMailWithADelay() throws Exception {
+        server.setMailReply(451);
+        server.start();
+        init(new Properties());
+
+        queue.add(createMail(RCPT1));
+
+        assertThat(queue.awaitDone()).isTrue();
+        Requeued requeued = queue.awaitRequeued();
+        assertThat(requeued.delay).isEqualTo(1000);
+        assertThat(requeued.state).isEqualTo(Mail.ERROR);
+        assertThat(requeued.errorMessage).isEqualTo("1");
+        assertThat(mailetContext.getSendmails()).isEmpty();
+    }
+
+    @Test
+    public void permanentFailureShouldBounceTheMail() throws Exception {
+        server.setMailReply(553);
+        server.start();
+        init(new Properties());
+
+        queue.add(createMail(RCPT1));
+
+        assertThat(queue.awaitDone()).isTrue();
+        assertThat(queue.getRequeued()).isEmpty();
+        assertThat(mailetContext.getSendmails()).hasSize(1);
+        assertThat(mailetContext.getSendmails().get(0).getMail().getState()).isEqualTo("bounces");
+    }
+
+    @Test
+    public void partialTemporaryFailureShouldOnlyRequeueTheFailedRecipients() throws Exception {
+        server.setRcptReply(RCPT2, 451);
+        server.start();
+        Properties properties = new Properties();
+        properties.setProperty("sendpartial", "true");
+        init(properties);
+
+        queue.add(createMail(RCPT1, RCPT2));
+
+        assertThat(queue.awaitDone()).isTrue();
+        assertThat(server.getMessages()).hasSize(1);
+        Requeued requeued = queue.awaitRequeued();
+        assertThat(requeued.recipients).containsOnly(new MailAddress(RCPT2));
+        assertThat(mailetContext.getSendmails()).isEmpty();
+    }
+
+    @Test
+    public void partialPermanentFailureShouldOnlyBounceTheFailedRecipients() throws Exception {
+        server.setRcptReply(RCPT2, 550);
+        server.start();
+        Properties properties = new Properties();
+        properties.setProperty("sendpartial", "true");
+        init(properties);
+
+        queue.add(createMail(RCPT1, RCPT2));
+
+        assertThat(queue.awaitDone()).isTrue();
+        assertThat(server.getMessages()).hasSize(1);
+        assertThat(queue.getRequeued()).isEmpty();
+        assertThat(mailetContext.getSendmails()).hasSize(1);
+        assertThat(mailetContext.getSendmails().get(0).getMail().getRecipients()).containsOnly(new MailAddress(RCPT2));
+    }
+
+    @Test
+    public void unreachableServerShouldRequeueTheMail() throws Exception {
+        // The server is not started, so the connection is refused
+        server.start();
+        server.stop();
+        init(new Properties());
+
+        queue.add(createMail(RCPT1));
+
+        assertThat(queue.awaitDone()).isTrue();
+        assertThat(queue.awaitRequeued().errorMessage).isEqualTo("1");
+        assertThat(mailetContext.getSendmails()).isEmpty();
+    }
+
+    private static final class Requeued {
+        private final Collection<MailAddress> recipients;
+        private final String state;
+        private final String errorMessage;
+        private final long delay;
+
+        private Requeued(Mail mail, long delay) {
+            this.recipients = ImmutableList.copyOf(mail.getRecipients());
+            this.state = mail.getState();
+            this.errorMessage = mail.getErrorMessage();
+            this.delay = delay;
+        }
+    }
+
+    /**
+     * Hands out the mails added by the test and records the outcome of their
+     * processing. Mails queued again by RemoteDelivery are only recorded, as
+     * they are disposed right after.
+     */
+    private static final class FakeMailQueue implements MailQueue {
+
+        private final BlockingQueue<Mail> mails = new LinkedBlockingQueue<Mail>();
+        private final BlockingQueue<Boolean> done = new LinkedBlockingQueue<Boolean>();
+        private final BlockingQueue<Requeued> requeued = new LinkedBlockingQueue<Requeued>();
+
+        public void add(Mail mail) {
+            mails.add(mail);
+        }
+
+        public boolean awaitDone() throws InterruptedException {
+            Boolean success = done.poll(20, TimeUnit.SECONDS);
+            assertThat(success).as("processing of the mail completed").isNotNull();
+            return success;
+        }
+
+        public Requeued awaitRequeued() throws InterruptedException {
+            Requeued mail = requeued.poll(20, TimeUnit.SECONDS);
+            assertThat(mail).as("mail queued again").isNotNull();
+            return mail;
+        }
+
+        public List<Requeued> getRequeued() {
+            return Arrays.asList(requeued.toArray(new Requeued[0]));
+        }
+
+        public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
+            requeued.add(new Requeued(mail, unit.toMillis(delay)));
+        }
+
+        public void enQueue(Mail mail) throws MailQueueException {
+            enQueue(mail, 0, TimeUnit.MILLISECONDS);
+        }
+
+        public MailQueueItem deQueue() throws MailQueueException {
+            final Mail mail;
+            try {
+                mail = mails.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailQueueException("Interrupted", e);
+            }
+            return new MailQueueItem() {
+
+                public Mail getMail() {
+                    return mail;
+                }
+
+                public void done(boolean success) throws MailQueueException {
+                    done.add(success);
+                }
+            };
+        }
+    }
+}
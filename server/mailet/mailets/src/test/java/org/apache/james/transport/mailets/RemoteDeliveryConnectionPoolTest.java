@@ -0,0 +1,143 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+public class RemoteDeliveryConnectionPoolTest {
+
+    private static final String DESTINATION = "smtp://10.0.0.1:25";
+    private static final String OTHER_DESTINATION = "smtp://10.0.0.2:25";
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+        session = Session.getInstance(new Properties());
+    }
+
+    @Test
+    public void disabledPoolShouldNotKeepTransports() {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(0, 0, 30000);
+        SMTPTransport transport = mock(SMTPTransport.class);
+
+        assertThat(pool.release(DESTINATION, session, transport)).isFalse();
+        assertThat(pool.borrow(DESTINATION, session)).isNull();
+    }
+
+    @Test
+    public void releasedTransportShouldBeResetAndReused() throws Exception {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(2, 0, 30000);
+        SMTPTransport transport = mock(SMTPTransport.class);
+
+        assertThat(pool.release(DESTINATION, session, transport)).isTrue();
+
+        assertThat(pool.borrow(DESTINATION, session)).isSameAs(transport);
+        verify(transport).issueCommand("RSET", 250);
+        assertThat(pool.getIdleCount(DESTINATION)).isEqualTo(0);
+    }
+
+    @Test
+    public void transportShouldOnlyBeReusedForItsDestination() {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(2, 0, 30000);
+        pool.release(DESTINATION, session, mock(SMTPTransport.class));
+
+        assertThat(pool.borrow(OTHER_DESTINATION, session)).isNull();
+    }
+
+    @Test
+    public void transportShouldOnlyBeReusedForItsSession() {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(2, 0, 30000);
+        pool.release(DESTINATION, session, mock(SMTPTransport.class));
+
+        assertThat(pool.borrow(DESTINATION, Session.getInstance(new Properties()))).isNull();
+        assertThat(pool.getIdleCount(DESTINATION)).isEqualTo(1);
+    }
+
+    @Test
+    public void transportFailingResetShouldBeClosed() throws Exception {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(2, 0, 30000);
+        SMTPTransport transport = mock(SMTPTransport.class);
+        doThrow(new MessagingException("421 closing")).when(transport).issueCommand("RSET", 250);
+        pool.release(DESTINATION, session, transport);
+
+        assertThat(pool.borrow(DESTINATION, session)).isNull();
+        verify(transport).close();
+    }
+
+    @Test
+    public void expiredTransportShouldBeClosedInsteadOfReused() throws Exception {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(2, 0, 1);
+        SMTPTransport transport = mock(SMTPTransport.class);
+        pool.release(DESTINATION, session, transport);
+
+        Thread.sleep(10);
+
+        assertThat(pool.borrow(DESTINATION, session)).isNull();
+        verify(transport, never()).issueCommand("RSET", 250);
+        verify(transport).close();
+    }
+
+    @Test
+    public void releaseShouldRefuseTransportsAboveIdleLimit() {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(1, 0, 30000);
+
+        assertThat(pool.release(DESTINATION, session, mock(SMTPTransport.class))).isTrue();
+        assertThat(pool.release(DESTINATION, session, mock(SMTPTransport.class))).isFalse();
+    }
+
+    @Test
+    public void closeShouldCloseIdleTransports() throws Exception {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(1, 0, 30000);
+        SMTPTransport transport = mock(SMTPTransport.class);
+        pool.release(DESTINATION, session, transport);
+
+        pool.close();
+
+        verify(transport).close();
+        assertThat(pool.release(DESTINATION, session, mock(SMTPTransport.class))).isFalse();
+    }
+
+    @Test
+    public void permitsShouldBeLimitedPerDestination() throws Exception {
+        RemoteDeliveryConnectionPool pool = new RemoteDeliveryConnectionPool(0, 1, 30000);
+
+        assertThat(pool.acquirePermit(DESTINATION, 0)).isTrue();
+        assertThat(pool.acquirePermit(DESTINATION, 0)).isFalse();
+        assertThat(pool.acquirePermit(OTHER_DESTINATION, 0)).isTrue();
+
+        pool.releasePermit(DESTINATION);
+
+        assertThat(pool.acquirePermit(DESTINATION, 0)).isTrue();
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.james.transport.mailets.delivery;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -34,6 +35,8 @@ import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.sieverepository.api.exception.ScriptNotFoundException;
 import org.apache.james.transport.mailets.SieveMailet;
@@ -49,6 +52,7 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
@@ -65,6 +69,7 @@ import javax.mail.util.ByteArrayDataSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 public class SieveMailetTest {
@@ -883,6 +888,59 @@ public class SieveMailetTest {
         assertThat(fakeMailContext.getSentMails()).containsExactly(new FakeMailContext.SentMail(new MailAddress("receiver@domain.com"), Lists.newArrayList(new MailAddress("sender@any.com")), null));
     }
 
+    @Test
+    public void mailWithSeveralRecipientsShouldBeStoredWithASingleAppend() throws Exception {
+        when(usersRepository.supportVirtualHosting()).thenReturn(false);
+        when(resourceLocator.get(any(String.class))).thenThrow(new ScriptNotFoundException());
+        prepareMessageManagerOn(INBOX);
+        when(mailboxManager.appendMessage(any(InputStream.class), any(Date.class), anyListOf(AppendTarget.class))).thenAnswer(appendResults(true, true));
+        FakeMail mail = createMail();
+        mail.setRecipients(Lists.newArrayList(new MailAddress("receiver@domain.com"), new MailAddress("receiver2@domain.com")));
+
+        sieveMailet.init(fakeMailetConfig);
+        sieveMailet.service(mail);
+
+        ArgumentCaptor<List> targets = ArgumentCaptor.forClass(List.class);
+        verify(mailboxManager).appendMessage(any(InputStream.class), any(Date.class), targets.capture());
+        assertThat(targets.getValue()).extracting("path")
+            .containsExactly(INBOX, new MailboxPath("#private", "receiver2", "INBOX"));
+        assertThat(fakeMailContext.getSentMails()).isEmpty();
+    }
+
+    @Test
+    public void mailWithSeveralRecipientsShouldBeSentToErrorForFailingRecipients() throws Exception {
+        when(usersRepository.supportVirtualHosting()).thenReturn(false);
+        when(resourceLocator.get(any(String.class))).thenThrow(new ScriptNotFoundException());
+        prepareMessageManagerOn(INBOX);
+        when(mailboxManager.appendMessage(any(InputStream.class), any(Date.class), anyListOf(AppendTarget.class))).thenAnswer(appendResults(true, false));
+        FakeMail mail = createMail();
+        mail.setRecipients(Lists.newArrayList(new MailAddress("receiver@domain.com"), new MailAddress("receiver2@domain.com")));
+
+        sieveMailet.init(fakeMailetConfig);
+        sieveMailet.service(mail);
+
+        assertThat(fakeMailContext.getSentMails()).hasSize(1);
+    }
+
+    private Answer<List<AppendResult>> appendResults(final boolean... successes) {
+        return new Answer<List<AppendResult>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<AppendResult> answer(InvocationOnMock invocation) throws Throwable {
+                List<AppendTarget> targets = (List<AppendTarget>) invocation.getArguments()[2];
+                List<AppendResult> results = Lists.newArrayList();
+                for (int i = 0; i < targets.size(); i++) {
+                    if (successes[i]) {
+                        results.add(AppendResult.success(targets.get(i), i + 1));
+                    } else {
+                        results.add(AppendResult.failure(targets.get(i), new MailboxException("failure")));
+                    }
+                }
+                return results;
+            }
+        };
+    }
+
     private void prepareTestUsingScript(final String script) throws Exception {
         prepareTestUsingScriptAndDates(script, DATE_DEFAULT, DATE_DEFAULT);
     }
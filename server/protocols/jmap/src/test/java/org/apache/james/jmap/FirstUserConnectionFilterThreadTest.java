@@ -18,6 +18,8 @@
  ****************************************************************/
 package org.apache.james.jmap;
 
+import java.io.InputStream;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
@@ -28,6 +30,8 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.AppendResult;
+import org.apache.james.mailbox.model.AppendTarget;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLCommand;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLEntryKey;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLRight;
@@ -152,6 +156,11 @@ public class FirstUserConnectionFilterThreadTest {
             return null;
         }
 
+        @Override
+        public List<AppendResult> appendMessage(InputStream msgIn, Date internalDate, List<AppendTarget> targets) throws MailboxException {
+            return null;
+        }
+
         @Override
         public List<MailboxMetaData> search(MailboxQuery expression, MailboxSession session) throws MailboxException {
             return null;
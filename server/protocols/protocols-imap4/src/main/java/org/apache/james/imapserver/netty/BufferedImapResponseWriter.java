@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.imap.encode.ImapResponseWriter;
+import org.apache.james.imap.message.response.Literal;
+
+/**
+ * {@link ImapResponseWriter} implementation which records the written
+ * responses so they can be replayed later on another {@link ImapResponseWriter}.
+ * 
+ * This is used to hold back the responses of pipelined commands until all the
+ * commands received before them were answered.
+ */
+public class BufferedImapResponseWriter implements ImapResponseWriter {
+
+    private final List<Object> parts = new ArrayList<Object>();
+
+    /**
+     * @see org.apache.james.imap.encode.ImapResponseWriter#write(byte[])
+     */
+    public void write(byte[] buffer) throws IOException {
+        // The composer may reuse its buffer so keep a copy
+        parts.add(buffer.clone());
+    }
+
+    /**
+     * @see org.apache.james.imap.encode.ImapResponseWriter#write(org.apache.james.imap.message.response.Literal)
+     */
+    public void write(Literal literal) throws IOException {
+        parts.add(literal);
+    }
+
+    /**
+     * Write all recorded responses, in the order they were recorded, to the given {@link ImapResponseWriter}
+     * 
+     * @param writer
+     * @throws IOException
+     */
+    public void replay(ImapResponseWriter writer) throws IOException {
+        for (Object part : parts) {
+            if (part instanceof Literal) {
+                writer.write((Literal) part);
+            } else {
+                writer.write((byte[]) part);
+            }
+        }
+        parts.clear();
+    }
+
+}
@@ -26,6 +26,7 @@ import java.nio.channels.FileChannel;
 
 import org.apache.james.imap.encode.ImapResponseWriter;
 import org.apache.james.imap.message.response.Literal;
+import org.apache.james.mailbox.model.ByteBufferBacked;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelPipeline;
@@ -80,8 +81,12 @@ public class ChannelImapResponseWriter implements ImapResponseWriter {
                 } else {
                     channel.write(new ChunkedNioFile(fc, 8192));
                 }
+            } else if (in instanceof ByteBufferBacked) {
+                // The content is already in memory, so wrap it instead of copying it chunk by chunk
+                channel.write(ChannelBuffers.wrappedBuffer(((ByteBufferBacked) in).asByteBuffer()));
+                in.close();
             } else {
-                channel.write(new ChunkedStream(literal.getInputStream()));
+                channel.write(new ChunkedStream(in));
             }
         }
     }
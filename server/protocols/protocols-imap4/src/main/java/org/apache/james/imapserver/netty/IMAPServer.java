@@ -20,6 +20,7 @@ package org.apache.james.imapserver.netty;
 
 import static org.jboss.netty.channel.Channels.pipeline;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -36,6 +37,7 @@ import org.apache.james.protocols.lib.netty.AbstractConfigurableAsyncServer;
 import org.apache.james.protocols.netty.ChannelGroupHandler;
 import org.apache.james.protocols.netty.ConnectionLimitUpstreamHandler;
 import org.apache.james.protocols.netty.ConnectionPerIpLimitUpstreamHandler;
+import org.apache.james.util.concurrent.JMXEnabledThreadPoolExecutor;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
@@ -66,11 +68,16 @@ public class IMAPServer extends AbstractConfigurableAsyncServer implements ImapC
     private boolean plainAuthDisallowed;
     private int timeout;
     private int literalSizeLimit;
+    private int maxConcurrentCommandsPerSession;
+    private int pipelineExecutorCount;
+    private ExecutorService pipelineExecutor;
 
     public final static int DEFAULT_MAX_LINE_LENGTH = 65536; // Use a big default
     public final static int DEFAULT_IN_MEMORY_SIZE_LIMIT = 10485760; // Use 10MB as default
     public final static int DEFAULT_TIMEOUT = 30 * 60; // default timeout is 30 seconds
     public final static int DEFAULT_LITERAL_SIZE_LIMIT = 0;
+    public final static int DEFAULT_MAX_CONCURRENT_COMMANDS_PER_SESSION = 1; // Process the commands one after the other by default
+    public final static int DEFAULT_PIPELINE_EXECUTOR_COUNT = 16;
 
     @Inject
     public void setImapProcessor(ImapProcessor processor) {
@@ -107,9 +114,36 @@ public class IMAPServer extends AbstractConfigurableAsyncServer implements ImapC
         if (timeout < 0) {
             timeout = 0;
         }
+
+        maxConcurrentCommandsPerSession = configuration.getInt("maxConcurrentCommandsPerSession", DEFAULT_MAX_CONCURRENT_COMMANDS_PER_SESSION);
+        if (maxConcurrentCommandsPerSession < 1) {
+            throw new ConfigurationException("maxConcurrentCommandsPerSession must be at least 1");
+        }
+        pipelineExecutorCount = configuration.getInt("pipelineExecutorCount", DEFAULT_PIPELINE_EXECUTOR_COUNT);
+        if (pipelineExecutorCount < 1) {
+            throw new ConfigurationException("pipelineExecutorCount must be at least 1");
+        }
         
     }
 
+    @Override
+    protected void preInit() throws Exception {
+        super.preInit();
+        if (maxConcurrentCommandsPerSession > 1) {
+            // Shared by all sessions so it also limits the count of pipelined commands executed server wide
+            pipelineExecutor = JMXEnabledThreadPoolExecutor.newFixedThreadPool(getThreadPoolJMXPath(), getDefaultJMXName() + "-pipeline", pipelineExecutorCount);
+        }
+    }
+
+    @Override
+    protected void postDestroy() {
+        super.postDestroy();
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdownNow();
+            pipelineExecutor = null;
+        }
+    }
+
     /**
      * @see AbstractConfigurableAsyncServer#getDefaultPort()
      */
@@ -186,9 +220,9 @@ public class IMAPServer extends AbstractConfigurableAsyncServer implements ImapC
         ImapChannelUpstreamHandler coreHandler;
         Encryption secure = getEncryption();
         if (secure!= null && secure.isStartTLS()) {
-           coreHandler = new ImapChannelUpstreamHandler(hello, processor, encoder, getLogger(), compress, plainAuthDisallowed, secure.getContext(), getEnabledCipherSuites());
+           coreHandler = new ImapChannelUpstreamHandler(hello, processor, encoder, getLogger(), compress, plainAuthDisallowed, secure.getContext(), getEnabledCipherSuites(), pipelineExecutor, maxConcurrentCommandsPerSession);
         } else {
-           coreHandler = new ImapChannelUpstreamHandler(hello, processor, encoder, getLogger(), compress, plainAuthDisallowed);
+           coreHandler = new ImapChannelUpstreamHandler(hello, processor, encoder, getLogger(), compress, plainAuthDisallowed, null, null, pipelineExecutor, maxConcurrentCommandsPerSession);
         }
         return coreHandler;
     }
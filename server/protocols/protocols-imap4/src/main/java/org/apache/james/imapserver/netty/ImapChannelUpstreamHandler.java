@@ -20,6 +20,7 @@ package org.apache.james.imapserver.netty;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.SSLContext;
 
@@ -39,6 +40,7 @@ import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -70,12 +72,29 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
     private final ImapHeartbeatHandler heartbeatHandler = new ImapHeartbeatHandler();
 
     private final boolean plainAuthDisallowed;
+
+    private final Executor pipelineExecutor;
+
+    private final int maxConcurrentCommandsPerSession;
+
+    private final ChannelLocal<ImapCommandPipeline> commandPipelines = new ChannelLocal<ImapCommandPipeline>();
     
     public ImapChannelUpstreamHandler(String hello, ImapProcessor processor, ImapEncoder encoder, Logger logger, boolean compress, boolean plainAuthDisallowed) {
         this(hello, processor, encoder, logger, compress, plainAuthDisallowed, null, null);
     }
 
     public ImapChannelUpstreamHandler(String hello, ImapProcessor processor, ImapEncoder encoder, Logger logger, boolean compress, boolean plainAuthDisallowed, SSLContext context, String[] enabledCipherSuites) {
+        this(hello, processor, encoder, logger, compress, plainAuthDisallowed, context, enabledCipherSuites, null, 1);
+    }
+
+    /**
+     * @param pipelineExecutor
+     *            {@link Executor} used to run the pipelined commands of all sessions, may be null
+     * @param maxConcurrentCommandsPerSession
+     *            maximum count of read-only commands of a session which may be executed
+     *            concurrently. Use 1 to process the commands one after the other
+     */
+    public ImapChannelUpstreamHandler(String hello, ImapProcessor processor, ImapEncoder encoder, Logger logger, boolean compress, boolean plainAuthDisallowed, SSLContext context, String[] enabledCipherSuites, Executor pipelineExecutor, int maxConcurrentCommandsPerSession) {
         this.logger = logger;
         this.hello = hello;
         this.processor = processor;
@@ -84,6 +103,8 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         this.enabledCipherSuites = enabledCipherSuites;
         this.compress = compress;
         this.plainAuthDisallowed = plainAuthDisallowed;
+        this.pipelineExecutor = pipelineExecutor;
+        this.maxConcurrentCommandsPerSession = maxConcurrentCommandsPerSession;
     }
 
     private Logger getLogger(Channel channel) {
@@ -108,6 +129,7 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         ImapSession imapSession = (ImapSession) attributes.remove(ctx.getChannel());
         if (imapSession != null)
             imapSession.logout();
+        commandPipelines.remove(ctx.getChannel());
 
         super.channelClosed(ctx, e);
     }
@@ -121,6 +143,10 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         ImapResponseComposer response = new ImapResponseComposerImpl(new ChannelImapResponseWriter(ctx.getChannel()));
         ctx.setAttachment(response);
 
+        if (pipelineExecutor != null && maxConcurrentCommandsPerSession > 1) {
+            commandPipelines.set(ctx.getChannel(), new ImapCommandPipeline(ctx.getChannel(), processor, encoder, pipelineExecutor, maxConcurrentCommandsPerSession));
+        }
+
         // write hello to client
         response.untagged().message("OK").message(hello).end();
         super.channelConnected(ctx, e);
@@ -176,6 +202,14 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         ImapResponseComposer response = (ImapResponseComposer) ctx.getAttachment();
         ImapMessage message = (ImapMessage) e.getMessage();
         ChannelPipeline cp = ctx.getPipeline();
+        ImapCommandPipeline commandPipeline = commandPipelines.get(ctx.getChannel());
+
+        if (commandPipeline != null && ImapCommandPipeline.isPipelineable(message)) {
+            // The responses will be written once the command completes, so continue with the next one
+            commandPipeline.submit(message, session);
+            super.messageReceived(ctx, e);
+            return;
+        }
 
         try {
             if (cp.get(NettyConstants.EXECUTION_HANDLER) != null) {
@@ -184,6 +218,10 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
                 cp.addBefore(NettyConstants.CORE_HANDLER, NettyConstants.HEARTBEAT_HANDLER, heartbeatHandler);
 
             }
+            if (commandPipeline != null) {
+                // Make sure no pipelined command is running while the session may get modified
+                commandPipeline.awaitCompletion();
+            }
             final ResponseEncoder responseEncoder = new ResponseEncoder(encoder, response, session);
             processor.process(message, responseEncoder, session);
 
@@ -0,0 +1,220 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.message.StatusDataItems;
+import org.apache.james.imap.api.process.ImapProcessor;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.encode.ImapEncoder;
+import org.apache.james.imap.encode.ImapResponseWriter;
+import org.apache.james.imap.encode.base.ImapResponseComposerImpl;
+import org.apache.james.imap.main.ResponseEncoder;
+import org.apache.james.imap.message.request.CapabilityRequest;
+import org.apache.james.imap.message.request.GetACLRequest;
+import org.apache.james.imap.message.request.GetQuotaRequest;
+import org.apache.james.imap.message.request.GetQuotaRootRequest;
+import org.apache.james.imap.message.request.ListRequest;
+import org.apache.james.imap.message.request.ListRightsRequest;
+import org.apache.james.imap.message.request.LsubRequest;
+import org.apache.james.imap.message.request.MyRightsRequest;
+import org.apache.james.imap.message.request.NamespaceRequest;
+import org.apache.james.imap.message.request.StatusRequest;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.slf4j.Logger;
+
+/**
+ * Executes the read-only commands of a session concurrently, as allowed by
+ * RFC 3501 section 5.5, while still sending the responses in the order the
+ * commands were received.
+ * 
+ * Only commands which neither modify the session state nor depend on the
+ * selected mailbox are pipelined. Every other command must call
+ * {@link #awaitCompletion()} before it gets processed, so it never overlaps with a
+ * pipelined one.
+ * 
+ * The responses of each pipelined command are buffered and written to the
+ * {@link Channel} as soon as all the commands received before it were answered.
+ */
+public class ImapCommandPipeline {
+
+    private final Channel channel;
+    private final ImapProcessor processor;
+    private final ImapEncoder encoder;
+    private final Executor executor;
+    private final int maxConcurrentCommands;
+    private final ImapResponseWriter channelWriter;
+
+    /**
+     * Commands in the order they were received which were not written to the channel yet
+     */
+    private final LinkedList<PipelinedCommand> pending = new LinkedList<PipelinedCommand>();
+
+    public ImapCommandPipeline(Channel channel, ImapProcessor processor, ImapEncoder encoder, Executor executor, int maxConcurrentCommands) {
+        this.channel = channel;
+        this.processor = processor;
+        this.encoder = encoder;
+        this.executor = executor;
+        this.maxConcurrentCommands = maxConcurrentCommands;
+        this.channelWriter = new ChannelImapResponseWriter(channel);
+    }
+
+    /**
+     * Return true if the given {@link ImapMessage} can be executed concurrently
+     * with other pipelined commands of the same session
+     * 
+     * @param message
+     * @return pipelineable
+     */
+    public static boolean isPipelineable(ImapMessage message) {
+        if (message instanceof StatusRequest) {
+            return !enablesCondstore(((StatusRequest) message).getStatusDataItems());
+        }
+        if (message instanceof ListRequest) {
+            return !enablesCondstore(((ListRequest) message).getStatusDataItems());
+        }
+        return message instanceof LsubRequest
+            || message instanceof CapabilityRequest
+            || message instanceof NamespaceRequest
+            || message instanceof GetQuotaRequest
+            || message instanceof GetQuotaRootRequest
+            || message instanceof GetACLRequest
+            || message instanceof MyRightsRequest
+            || message instanceof ListRightsRequest;
+    }
+
+    /**
+     * Requesting HIGHESTMODSEQ enables CONDSTORE, which modifies the session
+     */
+    private static boolean enablesCondstore(StatusDataItems statusDataItems) {
+        return statusDataItems != null && statusDataItems.isHighestModSeq();
+    }
+
+    /**
+     * Schedule the execution of the given {@link ImapMessage}. This blocks if the
+     * maximum count of pending commands for the session is reached.
+     * 
+     * @param message
+     * @param session
+     * @throws InterruptedException
+     */
+    public void submit(ImapMessage message, ImapSession session) throws InterruptedException {
+        PipelinedCommand command = new PipelinedCommand(message, session);
+        synchronized (pending) {
+            while (pending.size() >= maxConcurrentCommands) {
+                pending.wait();
+            }
+            pending.addLast(command);
+        }
+        try {
+            executor.execute(command);
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down, so just run the command in the current thread
+            command.run();
+        }
+    }
+
+    /**
+     * Wait until all pipelined commands were executed and their responses were
+     * written to the {@link Channel}
+     * 
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                pending.wait();
+            }
+        }
+    }
+
+    private void completed(PipelinedCommand command) {
+        synchronized (pending) {
+            command.done = true;
+
+            // Write out all the responses which are not waiting for a previous command anymore
+            while (!pending.isEmpty() && pending.getFirst().done) {
+                pending.removeFirst().flush();
+            }
+            pending.notifyAll();
+        }
+    }
+
+    private final class PipelinedCommand implements Runnable {
+
+        private final ImapMessage message;
+        private final ImapSession session;
+        private final BufferedImapResponseWriter buffer = new BufferedImapResponseWriter();
+        private Exception failure;
+        private boolean done;
+
+        public PipelinedCommand(ImapMessage message, ImapSession session) {
+            this.message = message;
+            this.session = session;
+        }
+
+        public void run() {
+            try {
+                ImapSession pipelinedSession = new PipelinedImapSession(session);
+                ResponseEncoder responseEncoder = new ResponseEncoder(encoder, new ImapResponseComposerImpl(buffer), pipelinedSession);
+                processor.process(message, responseEncoder, pipelinedSession);
+                failure = responseEncoder.getFailure();
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                completed(this);
+            }
+        }
+
+        /**
+         * Write the buffered responses to the {@link Channel}. Must only be called
+         * once all the previous commands were flushed.
+         */
+        private void flush() {
+            if (failure == null) {
+                try {
+                    buffer.replay(channelWriter);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                final Logger logger = session.getLog();
+                logger.info(failure.getMessage());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to write " + message, failure);
+                }
+
+                // logout on error and make sure we close the channel after all the buffers were flushed out
+                session.logout();
+                if (channel.isConnected()) {
+                    channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                }
+            }
+        }
+    }
+
+}
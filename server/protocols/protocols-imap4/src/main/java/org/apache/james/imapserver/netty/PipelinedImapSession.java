@@ -0,0 +1,121 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import org.apache.james.imap.api.ImapSessionState;
+import org.apache.james.imap.api.process.ImapLineHandler;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.slf4j.Logger;
+
+/**
+ * {@link ImapSession} view which is handed to pipelined commands.
+ * 
+ * The selected mailbox is hidden so concurrently running commands don't
+ * consume the pending unsolicited responses of the session. Those will be sent
+ * with the response of the next non pipelined command.
+ */
+public class PipelinedImapSession implements ImapSession {
+
+    private final ImapSession session;
+
+    public PipelinedImapSession(ImapSession session) {
+        this.session = session;
+    }
+
+    public Logger getLog() {
+        return session.getLog();
+    }
+
+    public void logout() {
+        session.logout();
+    }
+
+    public ImapSessionState getState() {
+        return session.getState();
+    }
+
+    public void authenticated() {
+        session.authenticated();
+    }
+
+    public void selected(SelectedMailbox mailbox) {
+        session.selected(mailbox);
+    }
+
+    public void deselect() {
+        session.deselect();
+    }
+
+    /**
+     * Return always null. See class javadoc
+     */
+    public SelectedMailbox getSelected() {
+        return null;
+    }
+
+    public Object getAttribute(String key) {
+        return session.getAttribute(key);
+    }
+
+    public void setAttribute(String key, Object value) {
+        session.setAttribute(key, value);
+    }
+
+    public boolean startTLS() {
+        return session.startTLS();
+    }
+
+    public boolean isTLSActive() {
+        return session.isTLSActive();
+    }
+
+    public boolean supportStartTLS() {
+        return session.supportStartTLS();
+    }
+
+    public boolean isCompressionActive() {
+        return session.isCompressionActive();
+    }
+
+    public boolean isCompressionSupported() {
+        return session.isCompressionSupported();
+    }
+
+    public boolean startCompression() {
+        return session.startCompression();
+    }
+
+    public void pushLineHandler(ImapLineHandler lineHandler) {
+        session.pushLineHandler(lineHandler);
+    }
+
+    public void popLineHandler() {
+        session.popLineHandler();
+    }
+
+    public boolean supportMultipleNamespaces() {
+        return session.supportMultipleNamespaces();
+    }
+
+    public boolean isPlainAuthDisallowed() {
+        return session.isPlainAuthDisallowed();
+    }
+
+}
@@ -0,0 +1,91 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import org.apache.james.imap.encode.ImapResponseWriter;
+import org.apache.james.imap.message.response.Literal;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class BufferedImapResponseWriterTest {
+
+    private BufferedImapResponseWriter testee;
+    private ImapResponseWriter writer;
+
+    @Before
+    public void setUp() {
+        testee = new BufferedImapResponseWriter();
+        writer = mock(ImapResponseWriter.class);
+    }
+
+    @Test
+    public void nothingShouldBeWrittenBeforeReplay() throws Exception {
+        testee.write(new byte[] {'a'});
+        testee.write(mock(Literal.class));
+
+        verifyZeroInteractions(writer);
+    }
+
+    @Test
+    public void replayShouldWriteThePartsInTheRecordedOrder() throws Exception {
+        Literal literal = mock(Literal.class);
+        testee.write(new byte[] {'a'});
+        testee.write(literal);
+        testee.write(new byte[] {'b'});
+
+        testee.replay(writer);
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).write(new byte[] {'a'});
+        inOrder.verify(writer).write(literal);
+        inOrder.verify(writer).write(new byte[] {'b'});
+        verifyNoMoreInteractions(writer);
+    }
+
+    @Test
+    public void writeShouldCopyTheBufferAsTheComposerMayReuseIt() throws Exception {
+        byte[] buffer = new byte[] {'a'};
+        testee.write(buffer);
+        buffer[0] = 'b';
+
+        testee.replay(writer);
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).write(new byte[] {'a'});
+        verifyNoMoreInteractions(writer);
+    }
+
+    @Test
+    public void replayShouldNotWriteThePartsTwice() throws Exception {
+        testee.write(new byte[] {'a'});
+        testee.replay(writer);
+
+        ImapResponseWriter secondWriter = mock(ImapResponseWriter.class);
+        testee.replay(secondWriter);
+
+        verifyZeroInteractions(secondWriter);
+    }
+
+}
@@ -0,0 +1,324 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.imapserver.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.james.imap.api.ImapCommand;
+import org.apache.james.imap.api.ImapMessage;
+import org.apache.james.imap.api.message.StatusDataItems;
+import org.apache.james.imap.api.message.response.ImapResponseMessage;
+import org.apache.james.imap.api.process.ImapProcessor;
+import org.apache.james.imap.api.process.ImapSession;
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.imap.encode.ImapEncoder;
+import org.apache.james.imap.encode.ImapResponseComposer;
+import org.apache.james.imap.message.request.AbstractImapRequest;
+import org.apache.james.imap.message.request.CapabilityRequest;
+import org.apache.james.imap.message.request.ListRequest;
+import org.apache.james.imap.message.request.NoopRequest;
+import org.apache.james.imap.message.request.SelectRequest;
+import org.apache.james.imap.message.request.StatusRequest;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.LoggerFactory;
+
+public class ImapCommandPipelineTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final ImapCommand COMMAND = ImapCommand.anyStateCommand("CAPABILITY");
+    private static final long TIMEOUT_IN_SECONDS = 10;
+
+    private ExecutorService executor;
+    private ExecutorService client;
+    private List<String> written;
+    private LatchedProcessor processor;
+    private ImapSession session;
+    private ImapCommandPipeline testee;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        client = Executors.newCachedThreadPool();
+        written = new ArrayList<String>();
+        processor = new LatchedProcessor();
+        session = mock(ImapSession.class);
+        when(session.getLog()).thenReturn(LoggerFactory.getLogger(ImapCommandPipelineTest.class));
+        testee = new ImapCommandPipeline(recordingChannel(), processor, new TagEncoder(), executor, 2);
+    }
+
+    @After
+    public void tearDown() {
+        processor.releaseAll();
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void responsesShouldBeWrittenInCommandOrderWhenALaterCommandFinishesFirst() throws Exception {
+        testee.submit(request("A1"), session);
+        testee.submit(request("A2"), session);
+
+        processor.release("A2");
+        processor.awaitProcessed("A2");
+        assertThat(written()).isEmpty();
+
+        processor.release("A1");
+        testee.awaitCompletion();
+
+        assertThat(written()).containsExactly("* A1\r\n", "* A2\r\n");
+    }
+
+    @Test
+    public void responsesShouldBeWrittenAsSoonAsThePreviousCommandsWereAnswered() throws Exception {
+        testee.submit(request("A1"), session);
+        testee.submit(request("A2"), session);
+
+        processor.release("A1");
+        processor.awaitProcessed("A1");
+
+        assertThat(written()).containsExactly("* A1\r\n");
+        processor.release("A2");
+    }
+
+    @Test
+    public void awaitCompletionShouldBlockUntilPipelinedCommandsWereWritten() throws Exception {
+        testee.submit(request("A1"), session);
+
+        Future<Void> nonPipelinedCommand = client.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                testee.awaitCompletion();
+                return null;
+            }
+        });
+
+        assertBlocked(nonPipelinedCommand);
+
+        processor.release("A1");
+        nonPipelinedCommand.get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        assertThat(written()).containsExactly("* A1\r\n");
+    }
+
+    @Test
+    public void awaitCompletionShouldNotBlockWhenNothingIsPending() throws Exception {
+        Future<Void> nonPipelinedCommand = client.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                testee.awaitCompletion();
+                return null;
+            }
+        });
+
+        nonPipelinedCommand.get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void submitShouldBlockWhenTheSessionLimitIsReached() throws Exception {
+        testee.submit(request("A1"), session);
+        testee.submit(request("A2"), session);
+
+        Future<Void> thirdCommand = client.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                testee.submit(request("A3"), session);
+                return null;
+            }
+        });
+
+        assertBlocked(thirdCommand);
+        assertThat(processor.started()).doesNotContain("A3");
+
+        processor.release("A1");
+        thirdCommand.get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        processor.release("A2");
+        processor.release("A3");
+        testee.awaitCompletion();
+        assertThat(written()).containsExactly("* A1\r\n", "* A2\r\n", "* A3\r\n");
+    }
+
+    @Test
+    public void submitShouldRunTheCommandInTheCallerThreadWhenTheExecutorIsShutDown() throws Exception {
+        executor.shutdown();
+        processor.release("A1");
+
+        testee.submit(request("A1"), session);
+
+        assertThat(written()).containsExactly("* A1\r\n");
+    }
+
+    @Test
+    public void pipelinedCommandsShouldNotSeeTheSelectedMailbox() throws Exception {
+        when(session.getSelected()).thenReturn(mock(SelectedMailbox.class));
+        processor.release("A1");
+
+        testee.submit(request("A1"), session);
+        testee.awaitCompletion();
+
+        assertThat(processor.sessions.get("A1").getSelected()).isNull();
+    }
+
+    @Test
+    public void isPipelineableShouldAcceptReadOnlyCommands() {
+        assertThat(ImapCommandPipeline.isPipelineable(request("A1"))).isTrue();
+        assertThat(ImapCommandPipeline.isPipelineable(new ListRequest(COMMAND, "", "*", "A1"))).isTrue();
+        assertThat(ImapCommandPipeline.isPipelineable(new StatusRequest(COMMAND, "INBOX", new StatusDataItems(), "A1"))).isTrue();
+    }
+
+    @Test
+    public void isPipelineableShouldRejectCommandsDependingOnTheSessionState() {
+        assertThat(ImapCommandPipeline.isPipelineable(new NoopRequest(COMMAND, "A1"))).isFalse();
+        assertThat(ImapCommandPipeline.isPipelineable(new SelectRequest(COMMAND, "INBOX", false, null, null, null, null, null, "A1"))).isFalse();
+    }
+
+    @Test
+    public void isPipelineableShouldRejectStatusEnablingCondstore() {
+        StatusDataItems statusDataItems = new StatusDataItems();
+        statusDataItems.setHighestModSeq(true);
+
+        assertThat(ImapCommandPipeline.isPipelineable(new StatusRequest(COMMAND, "INBOX", statusDataItems, "A1"))).isFalse();
+    }
+
+    @Test
+    public void isPipelineableShouldRejectListStatusEnablingCondstore() {
+        StatusDataItems statusDataItems = new StatusDataItems();
+        statusDataItems.setHighestModSeq(true);
+
+        assertThat(ImapCommandPipeline.isPipelineable(new ListRequest(COMMAND, "", "*", statusDataItems, "A1"))).isFalse();
+    }
+
+    private void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Expected the call to block");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    private CapabilityRequest request(String tag) {
+        return new CapabilityRequest(COMMAND, tag);
+    }
+
+    private List<String> written() {
+        synchronized (written) {
+            return new ArrayList<String>(written);
+        }
+    }
+
+    private Channel recordingChannel() {
+        Channel channel = mock(Channel.class);
+        when(channel.isConnected()).thenReturn(true);
+        final ChannelFuture future = mock(ChannelFuture.class);
+        when(channel.write(any())).thenAnswer(new Answer<ChannelFuture>() {
+            public ChannelFuture answer(InvocationOnMock invocation) throws Throwable {
+                ChannelBuffer buffer = (ChannelBuffer) invocation.getArguments()[0];
+                synchronized (written) {
+                    written.add(buffer.toString(US_ASCII));
+                }
+                return future;
+            }
+        });
+        return channel;
+    }
+
+    /**
+     * Response holding the tag of the command it answers
+     */
+    private static final class TagResponse implements ImapResponseMessage {
+        private final String tag;
+
+        public TagResponse(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final class TagEncoder implements ImapEncoder {
+        public void encode(ImapMessage message, ImapResponseComposer composer, ImapSession session) throws IOException {
+            composer.untaggedResponse(((TagResponse) message).tag);
+        }
+    }
+
+    /**
+     * {@link ImapProcessor} which only answers a command once it was released by the test
+     */
+    private static final class LatchedProcessor implements ImapProcessor {
+        private final ConcurrentHashMap<String, CountDownLatch> released = new ConcurrentHashMap<String, CountDownLatch>();
+        private final ConcurrentHashMap<String, CountDownLatch> processed = new ConcurrentHashMap<String, CountDownLatch>();
+        private final ConcurrentHashMap<String, ImapSession> sessions = new ConcurrentHashMap<String, ImapSession>();
+
+        public void process(ImapMessage message, Responder responder, ImapSession session) {
+            String tag = ((AbstractImapRequest) message).getTag();
+            sessions.put(tag, session);
+            try {
+                if (!latch(released, tag).await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException(tag + " was never released");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            responder.respond(new TagResponse(tag));
+            latch(processed, tag).countDown();
+        }
+
+        public void release(String tag) {
+            latch(released, tag).countDown();
+        }
+
+        public void releaseAll() {
+            for (CountDownLatch latch : released.values()) {
+                latch.countDown();
+            }
+        }
+
+        public void awaitProcessed(String tag) throws InterruptedException {
+            assertThat(latch(processed, tag).await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+        }
+
+        public List<String> started() {
+            return new ArrayList<String>(sessions.keySet());
+        }
+
+        private CountDownLatch latch(ConcurrentHashMap<String, CountDownLatch> latches, String tag) {
+            latches.putIfAbsent(tag, new CountDownLatch(1));
+            return latches.get(tag);
+        }
+    }
+
+}
@@ -23,13 +23,11 @@ import java.net.MalformedURLException;
 import java.util.List;
 import java.util.Map;
 
-import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
 import javax.jms.Queue;
 import javax.jms.Session;
@@ -141,7 +139,6 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
      * Produce the mail to the JMS Queue
      */
     protected void produceMail(Session session, Map<String, Object> props, int msgPrio, Mail mail) throws JMSException, MessagingException, IOException {
-        MessageProducer producer = null;
         BlobMessage blobMessage = null;
         boolean reuse = false;
 
@@ -190,11 +187,10 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
 
                 Queue queue = session.createQueue(queueName);
 
-                producer = session.createProducer(queue);
                 for (Map.Entry<String, Object> entry : props.entrySet()) {
                     blobMessage.setObjectProperty(entry.getKey(), entry.getValue());
                 }
-                producer.send(blobMessage, Message.DEFAULT_DELIVERY_MODE, msgPrio, Message.DEFAULT_TIME_TO_LIVE);
+                sessionPool.getProducer(session).send(queue, blobMessage, Message.DEFAULT_DELIVERY_MODE, msgPrio, Message.DEFAULT_TIME_TO_LIVE);
                     
               
 
@@ -206,14 +202,6 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
                 ((ActiveMQBlobMessage) blobMessage).deleteFile();
             }
             throw e;
-        } finally {
-
-            try {
-                if (producer != null)
-                    producer.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
         }
 
     }
@@ -239,9 +227,9 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
     }
 
     @Override
-    protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
+    protected MailQueueItem createMailQueueItem(Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
         Mail mail = createMail(message);
-        ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, connection, session, consumer, message, logger);
+        ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, sessionPool, session, consumer, message, logger);
         return mailQueueItemDecoratorFactory.decorate(activeMQMailQueueItem);
     }
 
@@ -287,30 +275,25 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
     @Override
     public long getSize() throws MailQueueException {
 
-        Connection connection = null;
         Session session = null;
         MessageConsumer consumer = null;
-        MessageProducer producer = null;
         TemporaryQueue replyTo = null;
+        boolean reusable = true;
         long size;
 
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session = sessionPool.borrow(false);
             replyTo = session.createTemporaryQueue();
             consumer = session.createConsumer(replyTo);
 
             Queue myQueue = session.createQueue(queueName);
-            producer = session.createProducer(null);
 
             String queueName = "ActiveMQ.Statistics.Destination." + myQueue.getQueueName();
             Queue query = session.createQueue(queueName);
 
             Message msg = session.createMessage();
             msg.setJMSReplyTo(replyTo);
-            producer.send(query, msg);
+            sessionPool.getProducer(session).send(query, msg);
             MapMessage reply = (MapMessage) consumer.receive(2000);
             if (reply != null && reply.itemExists("size")) {
                 try {
@@ -323,28 +306,12 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
             }
 
         } catch (Exception e) {
+            reusable = false;
             throw new MailQueueException("Unable to remove mails", e);
 
         } finally {
 
-            if (consumer != null) {
-
-                try {
-                    consumer.close();
-                } catch (JMSException e1) {
-                    e1.printStackTrace();
-                    // ignore on rollback
-                }
-            }
-
-            if (producer != null) {
-
-                try {
-                    producer.close();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
+            closeConsumer(consumer);
 
             if (replyTo != null) {
                 try {
@@ -357,18 +324,10 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
                 } catch (JMSException e) {
                 }
             }
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
+            if (reusable) {
+                sessionPool.release(session);
+            } else {
+                sessionPool.invalidate(session);
             }
         }
 
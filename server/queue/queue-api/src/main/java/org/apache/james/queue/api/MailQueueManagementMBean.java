@@ -25,7 +25,11 @@ import javax.management.openmbean.CompositeData;
 public interface MailQueueManagementMBean {
 
     /**
-     * Return the size of the queue or -1 if the size could not get calculated
+     * Return the size of the queue or -1 if the size could not get calculated.
+     * 
+     * The size may be an estimate: the JMS based queues only count the queue
+     * again once per size refresh interval (60 seconds by default), so changes
+     * made by other instances of the queue may take that long to show up.
      * 
      * @return size the size or -1 if it could not get calculated
      */
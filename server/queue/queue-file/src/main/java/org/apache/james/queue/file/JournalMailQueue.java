@@ -0,0 +1,838 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.mail.MessagingException;
+import javax.mail.util.SharedFileInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.james.core.MimeMessageCopyOnWriteProxy;
+import org.apache.james.core.MimeMessageSource;
+import org.apache.james.lifecycle.api.Disposable;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.queue.api.MailPrioritySupport;
+import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.mailet.Mail;
+import org.slf4j.Logger;
+
+/**
+ * {@link ManageableMailQueue} implementation which appends the queued {@link Mail}'s to a journal
+ * made of rolling segment files instead of writing two files per {@link Mail} like {@link FileMailQueue}.
+ * <p/>
+ * Concurrent {@link #enQueue(Mail)} calls share their <code>fsync</code>: the first thread to sync a segment
+ * flushes everything written so far, so the threads waiting behind it find their record already on disk
+ * and return without syncing again.
+ * <p/>
+ * Only a small index (segment, offsets, next delivery and priority) is kept in memory. It is rebuilt on
+ * startup by replaying the segments. A {@link Mail} which was successfully processed is marked by an
+ * acknowledge record, and segments are deleted once they and all older segments only hold acknowledged
+ * {@link Mail}'s. Acknowledge records are not synced, so a crash may lead to a {@link Mail} getting
+ * delivered twice but never to a {@link Mail} getting lost.
+ * <p/>
+ * A {@link Mail} given back via {@link MailQueueItem#done(boolean)} with <code>false</code> is retried after the
+ * configured retry delay, so a failing {@link Mail} does not keep the head of the queue busy.
+ * <p/>
+ * The queue holds a scheduler thread and the open segment files, so it should get disposed once not needed
+ * anymore.
+ */
+public class JournalMailQueue implements ManageableMailQueue, Disposable {
+
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_EXTENSION = ".journal";
+    private final static byte ENQUEUE = 1;
+    private final static byte ACKNOWLEDGE = 2;
+    private final static long UNKNOWN_LENGTH = -1;
+    // type + header length + message length
+    private final static int ENQUEUE_PREFIX_LENGTH = 1 + 4 + 8;
+    // type + id
+    private final static int ACKNOWLEDGE_LENGTH = 1 + 8;
+    private final static int CRC_LENGTH = 8;
+
+    private final ConcurrentHashMap<Long, IndexEntry> index = new ConcurrentHashMap<Long, IndexEntry>();
+    private final Set<Long> delayed = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final PriorityBlockingQueue<IndexEntry> inmemoryQueue = new PriorityBlockingQueue<IndexEntry>(11, new Comparator<IndexEntry>() {
+        @Override
+        public int compare(IndexEntry e1, IndexEntry e2) {
+            if (e1.priority != e2.priority) {
+                return e1.priority > e2.priority ? -1 : 1;
+            }
+            return e1.id < e2.id ? -1 : (e1.id == e2.id ? 0 : 1);
+        }
+    });
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong ids = new AtomicLong();
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final File queueDir;
+    private final Logger log;
+
+    private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
+    private final boolean sync;
+    private final long segmentSize;
+    private final long retryDelay;
+
+    // guarded by appendLock
+    private Segment current;
+
+    public JournalMailQueue(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, File parentDir, String queuename, boolean sync, long segmentSize, long retryDelay, Logger log) throws IOException {
+        this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
+        this.log = log;
+        this.sync = sync;
+        this.segmentSize = segmentSize;
+        this.retryDelay = retryDelay;
+        this.queueDir = new File(parentDir, queuename);
+        init();
+    }
+
+    private void init() throws IOException {
+        FileUtils.forceMkdir(queueDir);
+
+        String[] files = queueDir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXTENSION);
+            }
+        });
+        for (String name : files) {
+            long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length()));
+            segments.put(number, new Segment(number, new File(queueDir, name)));
+        }
+
+        long maxId = 0;
+        for (Segment segment : segments.values()) {
+            maxId = Math.max(maxId, replay(segment));
+        }
+        ids.set(maxId);
+
+        synchronized (appendLock) {
+            // Never append behind a possibly truncated record, so always start with a fresh segment
+            roll();
+            compact();
+        }
+
+        for (IndexEntry entry : index.values()) {
+            schedule(entry, entry.nextDelivery - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Read all records of the given {@link Segment} and apply them to the index. The replay stops at the first
+     * incomplete or corrupted record, which is the result of a crash while writing it.
+     *
+     * @return the highest id found
+     */
+    private long replay(Segment segment) throws IOException {
+        long maxId = 0;
+        long position = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == ACKNOWLEDGE) {
+                    long id = in.readLong();
+                    IndexEntry entry = index.remove(id);
+                    if (entry != null) {
+                        entry.segment.live.decrementAndGet();
+                    }
+                    position += ACKNOWLEDGE_LENGTH;
+                } else if (type == ENQUEUE) {
+                    int headerLength = in.readInt();
+                    long messageLength = in.readLong();
+                    if (messageLength == UNKNOWN_LENGTH) {
+                        log.warn("Found incomplete record in " + segment.file + " at position " + position);
+                        break;
+                    }
+                    CRC32 crc = new CRC32();
+                    byte[] header = new byte[headerLength];
+                    in.readFully(header);
+                    crc.update(header);
+                    byte[] buffer = new byte[8192];
+                    long remaining = messageLength;
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read == -1) {
+                            throw new EOFException();
+                        }
+                        crc.update(buffer, 0, read);
+                        remaining -= read;
+                    }
+                    if (in.readLong() != crc.getValue()) {
+                        log.warn("Found corrupted record in " + segment.file + " at position " + position);
+                        break;
+                    }
+
+                    IndexEntry entry = readHeader(segment, position, header, messageLength);
+                    index.put(entry.id, entry);
+                    segment.live.incrementAndGet();
+                    maxId = Math.max(maxId, entry.id);
+                    position += ENQUEUE_PREFIX_LENGTH + headerLength + messageLength + CRC_LENGTH;
+                } else {
+                    log.warn("Found unknown record type " + type + " in " + segment.file + " at position " + position);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // end of the segment reached, the last record may have been truncated
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        segment.size = position;
+        segment.syncedSize = position;
+        return maxId;
+    }
+
+    private IndexEntry readHeader(Segment segment, long recordStart, byte[] header, long messageLength) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        long id = in.readLong();
+        long nextDelivery = in.readLong();
+        int priority = in.readInt();
+        String name = in.readUTF();
+        long headerOffset = recordStart + ENQUEUE_PREFIX_LENGTH;
+        return new IndexEntry(id, name, nextDelivery, priority, segment, headerOffset, header.length, messageLength);
+    }
+
+    @Override
+    public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
+        IndexEntry entry;
+        try {
+            long nextDelivery = 0;
+            if (delay > 0) {
+                nextDelivery = System.currentTimeMillis() + unit.toMillis(delay);
+            }
+            long id = ids.incrementAndGet();
+            int priority = getPriority(mail);
+            byte[] header = writeHeader(id, nextDelivery, priority, mail);
+
+            // a failed append leaves nothing behind in the segment
+            entry = append(id, nextDelivery, priority, header, mail);
+        } catch (IOException e) {
+            throw new MailQueueException("Unable to enqueue mail", e);
+        } catch (MessagingException e) {
+            throw new MailQueueException("Unable to enqueue mail", e);
+        }
+
+        index.put(entry.id, entry);
+        if (sync) {
+            try {
+                sync(entry.segment, entry.messageOffset() + entry.messageLength + CRC_LENGTH);
+            } catch (IOException e) {
+                // The caller is told that the mail was not queued, so make sure the record is not
+                // replayed in case it reached the disk anyway
+                try {
+                    acknowledge(entry);
+                } catch (MailQueueException ae) {
+                    log.warn("Unable to discard mail " + entry.name + " which failed to be synced", ae);
+                }
+                throw new MailQueueException("Unable to enqueue mail", e);
+            }
+        }
+        schedule(entry, unit.toMillis(delay));
+    }
+
+    @Override
+    public void enQueue(Mail mail) throws MailQueueException {
+        enQueue(mail, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private int getPriority(Mail mail) {
+        Object priority = mail.getAttribute(MailPrioritySupport.MAIL_PRIORITY);
+        if (priority instanceof Integer) {
+            return (Integer) priority;
+        }
+        return MailPrioritySupport.NORMAL_PRIORITY;
+    }
+
+    private byte[] writeHeader(long id, long nextDelivery, int priority, Mail mail) throws IOException {
+        ByteArrayOutputStream mailBytes = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(mailBytes);
+        oout.writeObject(mail);
+        oout.close();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(mailBytes.size() + 64);
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeLong(id);
+        out.writeLong(nextDelivery);
+        out.writeInt(priority);
+        out.writeUTF(mail.getName());
+        mailBytes.writeTo(out);
+        out.flush();
+        return header.toByteArray();
+    }
+
+    /**
+     * Append an enqueue record to the current {@link Segment}. The message length is only known once the
+     * message was written, so it is patched into the record last. A record with an unknown length is
+     * ignored on replay.
+     */
+    private IndexEntry append(long id, long nextDelivery, int priority, byte[] header, Mail mail) throws IOException, MessagingException {
+        synchronized (appendLock) {
+            if (current.size >= segmentSize) {
+                roll();
+            }
+            Segment segment = current;
+            long recordStart = segment.size;
+            try {
+                CRC32 crc = new CRC32();
+                CountingOutputStream counting = new CountingOutputStream(new CrcOutputStream(new BufferedOutputStream(Channels.newOutputStream(segment.channel)), crc));
+                DataOutputStream out = new DataOutputStream(counting);
+                out.writeByte(ENQUEUE);
+                out.writeInt(header.length);
+                out.writeLong(UNKNOWN_LENGTH);
+                out.write(header);
+                long messageStart = counting.getByteCount();
+                // only the header and the message are part of the checksum
+                crc.reset();
+                crc.update(header);
+                mail.getMessage().writeTo(out);
+                long messageLength = counting.getByteCount() - messageStart;
+                long checksum = crc.getValue();
+                out.writeLong(checksum);
+                out.flush();
+
+                ByteBuffer length = ByteBuffer.allocate(8);
+                length.putLong(0, messageLength);
+                segment.channel.write(length, recordStart + 1 + 4);
+
+                segment.size = recordStart + counting.getByteCount();
+                segment.live.incrementAndGet();
+                return new IndexEntry(id, mail.getName(), nextDelivery, priority, segment, recordStart + ENQUEUE_PREFIX_LENGTH, header.length, messageLength);
+            } catch (IOException e) {
+                // don't leave a partial record in the middle of the segment
+                segment.channel.truncate(recordStart);
+                segment.channel.position(recordStart);
+                throw e;
+            } catch (MessagingException e) {
+                segment.channel.truncate(recordStart);
+                segment.channel.position(recordStart);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Make sure the given {@link Segment} is synced at least up to the given position. Whoever gets the lock
+     * first syncs all records written so far, so the threads waiting for it usually have nothing left to do.
+     */
+    private void sync(Segment segment, long position) throws IOException {
+        synchronized (syncLock) {
+            if (segment.syncedSize >= position) {
+                return;
+            }
+            long size = segment.size;
+            segment.channel.force(false);
+            segment.syncedSize = size;
+        }
+    }
+
+    // guarded by appendLock
+    private void roll() throws IOException {
+        long number = 1;
+        if (current != null) {
+            synchronized (syncLock) {
+                current.channel.force(false);
+                current.syncedSize = current.size;
+            }
+        }
+        if (!segments.isEmpty()) {
+            number = segments.lastKey() + 1;
+        }
+        Segment segment = new Segment(number, new File(queueDir, SEGMENT_PREFIX + number + SEGMENT_EXTENSION));
+        segments.put(number, segment);
+        current = segment;
+    }
+
+    /**
+     * Delete the oldest segments as long as they only hold acknowledged {@link Mail}'s. Younger segments are
+     * kept even if they are empty as their acknowledge records may still be needed to replay older segments.
+     */
+    // guarded by appendLock
+    private void compact() {
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == current || segment.live.get() > 0) {
+                return;
+            }
+            it.remove();
+            segment.close();
+            if (!segment.file.delete()) {
+                log.debug("Unable to delete segment " + segment.file + ", will retry on next startup");
+            }
+        }
+    }
+
+    private boolean acknowledge(IndexEntry entry) throws MailQueueException {
+        if (!index.remove(entry.id, entry)) {
+            // already acknowledged or removed
+            return false;
+        }
+        delayed.remove(entry.id);
+        synchronized (appendLock) {
+            try {
+                ByteBuffer record = ByteBuffer.allocate(ACKNOWLEDGE_LENGTH);
+                record.put(ACKNOWLEDGE);
+                record.putLong(entry.id);
+                record.flip();
+                while (record.hasRemaining()) {
+                    current.channel.write(record);
+                }
+                current.size += ACKNOWLEDGE_LENGTH;
+            } catch (IOException e) {
+                throw new MailQueueException("Unable to acknowledge mail", e);
+            }
+            if (entry.segment.live.decrementAndGet() == 0) {
+                compact();
+            }
+        }
+        return true;
+    }
+
+    private void schedule(final IndexEntry entry, long delay) {
+        if (delay > 0) {
+            delayed.add(entry.id);
+            // Schedule a task which will put the mail in the queue
+            // for processing after a given delay
+            try {
+                scheduler.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (delayed.remove(entry.id)) {
+                            inmemoryQueue.put(entry);
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the queue was disposed, the mail is picked up again from the journal on next startup
+                delayed.remove(entry.id);
+            }
+        } else {
+            inmemoryQueue.put(entry);
+        }
+    }
+
+    /**
+     * Give a {@link Mail} which failed to be processed back to the queue. It only becomes available again
+     * after the retry delay, as putting it back right away would hand it out again at once.
+     */
+    private void retry(IndexEntry entry) {
+        if (index.get(entry.id) != entry) {
+            // removed while being processed
+            return;
+        }
+        entry.nextDelivery = System.currentTimeMillis() + retryDelay;
+        schedule(entry, retryDelay);
+    }
+
+    @Override
+    public MailQueueItem deQueue() throws MailQueueException {
+        try {
+            IndexEntry item = null;
+            while (item == null) {
+                item = inmemoryQueue.take();
+                if (index.get(item.id) != item) {
+                    // removed while waiting in the queue
+                    item = null;
+                }
+            }
+            return createMailQueueItem(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailQueueException("Unable to dequeue", e);
+        }
+    }
+
+    private MailQueueItem createMailQueueItem(final IndexEntry entry) throws MailQueueException {
+        final Mail mail;
+        try {
+            mail = readMail(entry);
+            mail.setMessage(new MimeMessageCopyOnWriteProxy(new JournalMimeMessageSource(entry)));
+        } catch (IOException e) {
+            retry(entry);
+            throw new MailQueueException("Unable to dequeue " + entry.name, e);
+        } catch (ClassNotFoundException e) {
+            retry(entry);
+            throw new MailQueueException("Unable to dequeue " + entry.name, e);
+        } catch (MessagingException e) {
+            retry(entry);
+            throw new MailQueueException("Unable to dequeue " + entry.name, e);
+        }
+
+        MailQueueItem journalMailQueueItem = new MailQueueItem() {
+
+            @Override
+            public Mail getMail() {
+                return mail;
+            }
+
+            @Override
+            public void done(boolean success) throws MailQueueException {
+                try {
+                    if (!success) {
+                        retry(entry);
+                    } else {
+                        acknowledge(entry);
+                    }
+                } finally {
+                    LifecycleUtil.dispose(mail);
+                }
+            }
+        };
+        return mailQueueItemDecoratorFactory.decorate(journalMailQueueItem);
+    }
+
+    private Mail readMail(IndexEntry entry) throws IOException, ClassNotFoundException {
+        ByteBuffer header = ByteBuffer.allocate(entry.headerLength);
+        while (header.hasRemaining()) {
+            if (entry.segment.channel.read(header, entry.headerOffset + header.position()) == -1) {
+                throw new EOFException("Unexpected end of segment " + entry.segment.file);
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+        // skip id, next delivery and priority
+        in.skipBytes(8 + 8 + 4);
+        in.readUTF();
+        ObjectInputStream oin = new ObjectInputStream(in);
+        try {
+            return (Mail) oin.readObject();
+        } finally {
+            IOUtils.closeQuietly(oin);
+        }
+    }
+
+    private final class JournalMimeMessageSource extends MimeMessageSource implements Disposable {
+
+        private final IndexEntry entry;
+        private final SharedFileInputStream in;
+
+        public JournalMimeMessageSource(IndexEntry entry) throws IOException {
+            this.entry = entry;
+            this.in = new SharedFileInputStream(entry.segment.file);
+        }
+
+        @Override
+        public String getSourceId() {
+            return entry.segment.file.getAbsolutePath() + "#" + entry.id;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            long start = entry.messageOffset();
+            return in.newStream(start, start + entry.messageLength);
+        }
+
+        @Override
+        public long getMessageSize() throws IOException {
+            return entry.messageLength;
+        }
+
+        @Override
+        public void dispose() {
+            IOUtils.closeQuietly(in);
+        }
+
+    }
+
+    /**
+     * A segment of the journal. Records are only appended to the current segment, older ones are only read
+     * until all their {@link Mail}'s were acknowledged.
+     */
+    private final class Segment {
+        private final long number;
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final AtomicInteger live = new AtomicInteger();
+        // guarded by appendLock
+        private volatile long size;
+        // guarded by syncLock
+        private volatile long syncedSize;
+
+        public Segment(long number, File file) throws IOException {
+            this.number = number;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.channel.position(raf.length());
+        }
+
+        public void close() {
+            IOUtils.closeQuietly(raf);
+        }
+
+        @Override
+        public String toString() {
+            return "Segment " + number;
+        }
+    }
+
+    /**
+     * Location and meta-data of a queued {@link Mail} which are kept in memory
+     */
+    private static final class IndexEntry {
+        private final long id;
+        private final String name;
+        private final int priority;
+        private final Segment segment;
+        private final long headerOffset;
+        private final int headerLength;
+        private final long messageLength;
+        // only changed in memory when a mail is retried
+        private volatile long nextDelivery;
+
+        public IndexEntry(long id, String name, long nextDelivery, int priority, Segment segment, long headerOffset, int headerLength, long messageLength) {
+            this.id = id;
+            this.name = name;
+            this.nextDelivery = nextDelivery;
+            this.priority = priority;
+            this.segment = segment;
+            this.headerOffset = headerOffset;
+            this.headerLength = headerLength;
+            this.messageLength = messageLength;
+        }
+
+        public long messageOffset() {
+            return headerOffset + headerLength;
+        }
+    }
+
+    /**
+     * {@link OutputStream} which updates a {@link CRC32} with all written bytes
+     */
+    private static final class CrcOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final CRC32 crc;
+
+        public CrcOutputStream(OutputStream out, CRC32 crc) {
+            this.out = out;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    @Override
+    public long getSize() throws MailQueueException {
+        return index.size();
+    }
+
+    @Override
+    public long flush() throws MailQueueException {
+        long i = 0;
+        for (IndexEntry entry : index.values()) {
+            if (delayed.remove(entry.id)) {
+                inmemoryQueue.put(entry);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public long clear() throws MailQueueException {
+        long count = 0;
+        for (IndexEntry entry : index.values()) {
+            if (acknowledge(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Names are kept in memory, sender and recipients have to be read from the journal.
+     *
+     * @see ManageableMailQueue#remove(org.apache.james.queue.api.ManageableMailQueue.Type, String)
+     */
+    @Override
+    public long remove(Type type, String value) throws MailQueueException {
+        long count = 0;
+        for (IndexEntry entry : index.values()) {
+            if (matches(entry, type, value) && acknowledge(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean matches(IndexEntry entry, Type type, String value) throws MailQueueException {
+        if (type == Type.Name) {
+            return entry.name.equals(value);
+        }
+        Mail mail;
+        try {
+            mail = readMail(entry);
+        } catch (IOException e) {
+            throw new MailQueueException("Unable to load mail " + entry.name, e);
+        } catch (ClassNotFoundException e) {
+            throw new MailQueueException("Unable to load mail " + entry.name, e);
+        }
+        switch (type) {
+            case Sender:
+                return mail.getSender() != null && value.equals(mail.getSender().toString());
+            case Recipient:
+                if (mail.getRecipients() != null) {
+                    for (Object recipient : mail.getRecipients()) {
+                        if (value.equals(recipient.toString())) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            default:
+                throw new MailQueueException("Unknown type " + type);
+        }
+    }
+
+    @Override
+    public MailQueueIterator browse() throws MailQueueException {
+        final Iterator<IndexEntry> items = index.values().iterator();
+        return new MailQueueIterator() {
+            private MailQueueItemView item = null;
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Read-only");
+            }
+
+            @Override
+            public MailQueueItemView next() {
+                if (hasNext()) {
+                    MailQueueItemView vitem = item;
+                    item = null;
+                    return vitem;
+                } else {
+
+                    throw new NoSuchElementException();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (item == null) {
+                    while (items.hasNext()) {
+                        final IndexEntry entry = items.next();
+                        try {
+                            final Mail mail = readMail(entry);
+                            item = new MailQueueItemView() {
+
+                                @Override
+                                public long getNextDelivery() {
+                                    return entry.nextDelivery;
+                                }
+
+                                @Override
+                                public Mail getMail() {
+                                    return mail;
+                                }
+                            };
+                            return true;
+                        } catch (IOException e) {
+                            log.info("Unable to load mail", e);
+                        } catch (ClassNotFoundException e) {
+                            log.info("Unable to load mail", e);
+                        }
+                    }
+                    return false;
+                } else {
+                    return true;
+                }
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+        };
+    }
+
+    /**
+     * Stop the scheduler and close the segment files. Delayed {@link Mail}'s stay in the journal and are
+     * scheduled again on next startup.
+     */
+    @Override
+    public void dispose() {
+        scheduler.shutdownNow();
+        synchronized (appendLock) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+}
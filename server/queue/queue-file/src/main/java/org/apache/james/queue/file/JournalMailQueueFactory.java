@@ -0,0 +1,125 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.lifecycle.api.LogEnabled;
+import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueFactory;
+import org.slf4j.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link MailQueueFactory} implementation which returns {@link JournalMailQueue} instances
+ */
+public class JournalMailQueueFactory implements MailQueueFactory, LogEnabled {
+
+    public final static long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public final static long DEFAULT_RETRY_DELAY = 5000;
+
+    private final Map<String, MailQueue> queues = new HashMap<String, MailQueue>();
+    private MailQueueItemDecoratorFactory mailQueueActionItemDecoratorFactory;
+    private FileSystem fs;
+    private Logger log;
+    private boolean sync = true;
+    private long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    @Inject
+    public JournalMailQueueFactory(FileSystem fs, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
+        this.fs = fs;
+        this.mailQueueActionItemDecoratorFactory = mailQueueItemDecoratorFactory;
+    }
+
+    /**
+     * If <code>true</code> the later created {@link JournalMailQueue} will make sure the message is synced to disk
+     * before {@link JournalMailQueue#enQueue(org.apache.mailet.Mail)} returns. Concurrent enqueues share the
+     * <code>fsync</code> calls, so the penalty is much lower than with {@link FileMailQueueFactory}.
+     * <p/>
+     * The default is <code>true</code>
+     *
+     * @param sync
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Set the size in bytes after which the journal of a queue rolls to a new segment file. Segments can only be
+     * deleted once all their messages were processed, so smaller segments free disk space earlier at the price
+     * of more files.
+     * <p/>
+     * The default is {@link #DEFAULT_SEGMENT_SIZE}
+     *
+     * @param segmentSize
+     */
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Set the delay in milliseconds after which a mail which failed to be processed is handed out again.
+     * <p/>
+     * The default is {@link #DEFAULT_RETRY_DELAY}
+     *
+     * @param retryDelay
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Creating a {@link JournalMailQueue} opens its segment files, so it must only happen once per name
+     */
+    @Override
+    public synchronized MailQueue getQueue(String name) {
+        MailQueue queue = queues.get(name);
+        if (queue == null) {
+            try {
+                queue = new JournalMailQueue(mailQueueActionItemDecoratorFactory, fs.getFile("file://var/store/journal-queue"), name, sync, segmentSize, retryDelay, log);
+                queues.put(name, queue);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to access queue " + name, e);
+            }
+        }
+        return queue;
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        for (MailQueue queue : queues.values()) {
+            LifecycleUtil.dispose(queue);
+        }
+        queues.clear();
+    }
+
+    @Override
+    public void setLog(Logger log) {
+        this.log = log;
+    }
+
+}
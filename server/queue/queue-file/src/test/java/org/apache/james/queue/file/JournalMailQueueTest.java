@@ -0,0 +1,297 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+public class JournalMailQueueTest {
+
+    private final static String QUEUE_NAME = "test";
+    private final static long SEGMENT_SIZE = 1024 * 1024;
+    private final static long RETRY_DELAY = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File queueDir;
+    private JournalMailQueue queue;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        queueDir = folder.newFolder();
+        queue = createQueue();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        queue.dispose();
+    }
+
+    private JournalMailQueue createQueue() throws IOException {
+        return new JournalMailQueue(MailQueueItemDecoratorFactory.RAW_FACTORY, queueDir, QUEUE_NAME, true, SEGMENT_SIZE, RETRY_DELAY,
+            LoggerFactory.getLogger(JournalMailQueueTest.class));
+    }
+
+    private Mail createMail(String name, String sender, String... recipients) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()));
+        message.setSubject(name);
+        message.setText("Content of " + name);
+        message.saveChanges();
+        MailAddress[] recipientAddresses = new MailAddress[recipients.length];
+        for (int i = 0; i < recipients.length; i++) {
+            recipientAddresses[i] = new MailAddress(recipients[i]);
+        }
+        return new MailImpl(name, new MailAddress(sender), Arrays.asList(recipientAddresses), message);
+    }
+
+    private Mail createMail(String name) throws MessagingException {
+        return createMail(name, "sender@domain.tld", "rcpt@domain.tld");
+    }
+
+    private String content(Mail mail) throws IOException, MessagingException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mail.getMessage().writeTo(out);
+        return out.toString();
+    }
+
+    /**
+     * Dequeue with a timeout, so a broken queue fails the test instead of blocking it
+     */
+    private MailQueueItem deQueue(long timeout) throws Exception {
+        Future<MailQueueItem> item = executor.submit(new Callable<MailQueueItem>() {
+            @Override
+            public MailQueueItem call() throws Exception {
+                return queue.deQueue();
+            }
+        });
+        try {
+            return item.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            item.cancel(true);
+            return null;
+        }
+    }
+
+    private MailQueueItem deQueue() throws Exception {
+        return deQueue(5000);
+    }
+
+    @Test
+    public void deQueueShouldReturnEnqueuedMail() throws Exception {
+        Mail mail = createMail("mail1");
+        queue.enQueue(mail);
+
+        MailQueueItem item = deQueue();
+
+        assertEquals("mail1", item.getMail().getName());
+        assertEquals(mail.getSender(), item.getMail().getSender());
+        assertEquals(mail.getRecipients(), item.getMail().getRecipients());
+        assertEquals(content(mail), content(item.getMail()));
+        item.done(true);
+    }
+
+    @Test
+    public void deQueueShouldFollowEnqueueOrder() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        queue.enQueue(createMail("mail2"));
+
+        MailQueueItem item1 = deQueue();
+        item1.done(true);
+        MailQueueItem item2 = deQueue();
+        item2.done(true);
+
+        assertEquals("mail1", item1.getMail().getName());
+        assertEquals("mail2", item2.getMail().getName());
+    }
+
+    @Test
+    public void doneWithSuccessShouldRemoveTheMail() throws Exception {
+        queue.enQueue(createMail("mail1"));
+
+        deQueue().done(true);
+
+        assertEquals(0, queue.getSize());
+        assertNull(deQueue(RETRY_DELAY * 2));
+    }
+
+    @Test
+    public void doneWithFailureShouldRetryTheMailAfterTheRetryDelay() throws Exception {
+        queue.enQueue(createMail("mail1"));
+
+        long failure = System.currentTimeMillis();
+        deQueue().done(false);
+        MailQueueItem retried = deQueue();
+
+        assertEquals("mail1", retried.getMail().getName());
+        assertTrue(System.currentTimeMillis() - failure >= RETRY_DELAY);
+        assertEquals(1, queue.getSize());
+        retried.done(true);
+    }
+
+    @Test
+    public void doneWithFailureShouldNotDelayOtherMails() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        queue.enQueue(createMail("mail2"));
+
+        deQueue().done(false);
+        MailQueueItem item = deQueue(RETRY_DELAY / 2);
+
+        assertEquals("mail2", item.getMail().getName());
+        item.done(true);
+    }
+
+    @Test
+    public void delayedMailShouldNotBeDequeuedBeforeItsDelay() throws Exception {
+        queue.enQueue(createMail("mail1"), 1, TimeUnit.SECONDS);
+
+        assertNull(deQueue(200));
+        MailQueueItem item = deQueue();
+
+        assertEquals("mail1", item.getMail().getName());
+        item.done(true);
+    }
+
+    @Test
+    public void removeShouldRemoveMailsByName() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        queue.enQueue(createMail("mail2"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Name, "mail1"));
+
+        assertEquals(1, queue.getSize());
+        assertEquals("mail2", deQueue().getMail().getName());
+    }
+
+    @Test
+    public void removeShouldRemoveMailsBySender() throws Exception {
+        queue.enQueue(createMail("mail1", "bob@domain.tld", "rcpt@domain.tld"));
+        queue.enQueue(createMail("mail2", "alice@domain.tld", "rcpt@domain.tld"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Sender, "bob@domain.tld"));
+
+        assertEquals(1, queue.getSize());
+        assertEquals("mail2", deQueue().getMail().getName());
+    }
+
+    @Test
+    public void removeShouldRemoveMailsByRecipient() throws Exception {
+        queue.enQueue(createMail("mail1", "sender@domain.tld", "bob@domain.tld", "alice@domain.tld"));
+        queue.enQueue(createMail("mail2", "sender@domain.tld", "carol@domain.tld"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Recipient, "alice@domain.tld"));
+
+        assertEquals(1, queue.getSize());
+        assertEquals("mail2", deQueue().getMail().getName());
+    }
+
+    @Test
+    public void mailRemovedWhileBeingProcessedShouldNotBeRetried() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        MailQueueItem item = deQueue();
+
+        queue.remove(ManageableMailQueue.Type.Name, "mail1");
+        item.done(false);
+
+        assertNull(deQueue(RETRY_DELAY * 2));
+    }
+
+    @Test
+    public void clearShouldRemoveAllMails() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        queue.enQueue(createMail("mail2"), 1, TimeUnit.HOURS);
+
+        assertEquals(2, queue.clear());
+
+        assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void queueShouldRecoverMailsFromTheJournalAfterARestart() throws Exception {
+        Mail mail2 = createMail("mail2");
+        queue.enQueue(createMail("mail1"));
+        queue.enQueue(mail2);
+        deQueue().done(true);
+
+        queue.dispose();
+        queue = createQueue();
+
+        assertEquals(1, queue.getSize());
+        MailQueueItem item = deQueue();
+        assertEquals("mail2", item.getMail().getName());
+        assertEquals(content(mail2), content(item.getMail()));
+        item.done(true);
+    }
+
+    @Test
+    public void queueShouldRecoverDelayedMailsAfterARestart() throws Exception {
+        queue.enQueue(createMail("mail1"), 1, TimeUnit.HOURS);
+
+        queue.dispose();
+        queue = createQueue();
+
+        assertEquals(1, queue.getSize());
+        assertEquals(1, queue.flush());
+        assertEquals("mail1", deQueue().getMail().getName());
+    }
+
+    @Test
+    public void processedMailsShouldNotBeRecoveredAfterARestart() throws Exception {
+        queue.enQueue(createMail("mail1"));
+        deQueue().done(true);
+
+        queue.dispose();
+        queue = createQueue();
+
+        assertEquals(0, queue.getSize());
+    }
+}
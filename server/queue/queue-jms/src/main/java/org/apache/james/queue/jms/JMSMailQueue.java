@@ -31,9 +31,9 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.BytesMessage;
-import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -49,6 +49,7 @@ import javax.mail.internet.MimeMessage;
 
 import org.apache.james.core.MailImpl;
 import org.apache.james.core.MimeMessageCopyOnWriteProxy;
+import org.apache.james.lifecycle.api.Disposable;
 import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
@@ -67,20 +68,31 @@ import org.slf4j.Logger;
  * It use {@link ObjectMessage} with a byte array as payload to store the
  * {@link Mail} objects.
  * </p>
+ * <p>
+ * The connection to the broker is kept open and the sessions are pooled by a
+ * {@link JMSSessionPool}, so it should get disposed once not needed anymore.
+ * </p>
  */
-public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPrioritySupport {
+public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPrioritySupport, Disposable {
 
     protected final String queueName;
     protected final ConnectionFactory connectionFactory;
     protected final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
     protected final Logger logger;
+    protected final JMSSessionPool sessionPool;
     public final static String FORCE_DELIVERY = "FORCE_DELIVERY";
+    public final static long DEFAULT_SIZE_REFRESH_INTERVAL = 60000;
+
+    private final AtomicLong size = new AtomicLong();
+    private volatile long sizeRefreshed = 0;
+    private volatile long sizeRefreshInterval = DEFAULT_SIZE_REFRESH_INTERVAL;
 
     public JMSMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName, Logger logger) {
         this.connectionFactory = connectionFactory;
         this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
         this.queueName = queueName;
         this.logger = logger;
+        this.sessionPool = new JMSSessionPool(connectionFactory, JMSSessionPool.DEFAULT_MAX_IDLE_SESSIONS, logger);
     }
 
     /**
@@ -97,48 +109,25 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
      */
     @Override
     public MailQueueItem deQueue() throws MailQueueException {
-        Connection connection = null;
         Session session = null;
         Message message;
         MessageConsumer consumer = null;
 
         while (true) {
             try {
-                connection = connectionFactory.createConnection();
-                connection.start();
-
-                session = connection.createSession(true, Session.SESSION_TRANSACTED);
+                session = sessionPool.borrow(true);
                 Queue queue = session.createQueue(queueName);
+                // The selector depends on the current time, so the consumer can't be kept
                 consumer = session.createConsumer(queue, getMessageSelector());
 
                 message = consumer.receive(10000);
 
                 if (message != null) {
-                    return createMailQueueItem(connection, session, consumer, message);
+                    return new SizeTrackingMailQueueItem(createMailQueueItem(session, consumer, message));
                 } else {
                     session.commit();
-
-                    if (consumer != null) {
-
-                        try {
-                            consumer.close();
-                        } catch (JMSException e1) {
-                            // ignore on rollback
-                        }
-                    }
-                    try {
-                        if (session != null)
-                            session.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
-
-                    try {
-                        if (connection != null)
-                            connection.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
+                    closeConsumer(consumer);
+                    sessionPool.release(session);
                 }
 
             } catch (Exception e) {
@@ -149,28 +138,8 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                         // ignore on rollback
                     }
                 }
-
-                if (consumer != null) {
-
-                    try {
-                        consumer.close();
-                    } catch (JMSException e1) {
-                        // ignore on rollback
-                    }
-                }
-                try {
-                    if (session != null)
-                        session.close();
-                } catch (JMSException e1) {
-                    // ignore here
-                }
-
-                try {
-                    if (connection != null)
-                        connection.close();
-                } catch (JMSException e1) {
-                    // ignore here
-                }
+                closeConsumer(consumer);
+                sessionPool.invalidate(session);
                 throw new MailQueueException("Unable to dequeue next message", e);
             }
         }
@@ -179,7 +148,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
     @Override
     public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
-        Connection connection = null;
         Session session = null;
 
         long mydelay = 0;
@@ -189,10 +157,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         }
 
         try {
-
-            connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session = sessionPool.borrow(false);
 
             int msgPrio = NORMAL_PRIORITY;
             Object prio = mail.getAttribute(MAIL_PRIORITY);
@@ -203,31 +168,12 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             Map<String, Object> props = getJMSProperties(mail, mydelay);
 
             produceMail(session, props, msgPrio, mail);
+            size.incrementAndGet();
 
+            sessionPool.release(session);
         } catch (Exception e) {
-            if (session != null) {
-                try {
-                    session.rollback();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
+            sessionPool.invalidate(session);
             throw new MailQueueException("Unable to enqueue mail " + mail, e);
-
-        } finally {
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
         }
     }
 
@@ -240,44 +186,28 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
      * Produce the mail to the JMS Queue
      */
     protected void produceMail(Session session, Map<String, Object> props, int msgPrio, Mail mail) throws JMSException, MessagingException, IOException {
-        MessageProducer producer = null;
+        Queue queue = session.createQueue(queueName);
+        ObjectMessage message = session.createObjectMessage();
 
-        try {
-            Queue queue = session.createQueue(queueName);
-
-            producer = session.createProducer(queue);
-            ObjectMessage message = session.createObjectMessage();
-
-            for (Map.Entry<String, Object> entry : props.entrySet()) {
-                message.setObjectProperty(entry.getKey(), entry.getValue());
-            }
-
-            long size = mail.getMessageSize();
-            ByteArrayOutputStream out;
-            if (size > -1) {
-                out = new ByteArrayOutputStream((int) size);
-            } else {
-                out = new ByteArrayOutputStream();
-            }
-            mail.getMessage().writeTo(out);
-
-            // store the byte array in a ObjectMessage so we can use a
-            // SharedByteArrayInputStream later
-            // without the need of copy the day
-            message.setObject(out.toByteArray());
-
-            producer.send(message, Message.DEFAULT_DELIVERY_MODE, msgPrio, Message.DEFAULT_TIME_TO_LIVE);
-
-        } finally {
+        for (Map.Entry<String, Object> entry : props.entrySet()) {
+            message.setObjectProperty(entry.getKey(), entry.getValue());
+        }
 
-            try {
-                if (producer != null)
-                    producer.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
+        long size = mail.getMessageSize();
+        ByteArrayOutputStream out;
+        if (size > -1) {
+            out = new ByteArrayOutputStream((int) size);
+        } else {
+            out = new ByteArrayOutputStream();
         }
+        mail.getMessage().writeTo(out);
+
+        // store the byte array in a ObjectMessage so we can use a
+        // SharedByteArrayInputStream later
+        // without the need of copy the day
+        message.setObject(out.toByteArray());
 
+        sessionPool.getProducer(session).send(queue, message, Message.DEFAULT_DELIVERY_MODE, msgPrio, Message.DEFAULT_TIME_TO_LIVE);
     }
 
     /**
@@ -466,17 +396,18 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
     /**
      * Create a {@link org.apache.james.queue.api.MailQueue.MailQueueItem} for the given parameters
      *
-     * @param connection
      * @param session
+     *            the transacted session which was borrowed from the
+     *            {@link #sessionPool}
      * @param consumer
      * @param message
      * @return item
      * @throws JMSException
      * @throws MessagingException
      */
-    protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
+    protected MailQueueItem createMailQueueItem(Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
         final Mail mail = createMail(message);
-        JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, connection, session, consumer);
+        JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, sessionPool, session, consumer);
         return mailQueueItemDecoratorFactory.decorate(jmsMailQueueItem);
     }
 
@@ -484,17 +415,44 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         return JAMES_NEXT_DELIVERY + " <= " + System.currentTimeMillis() + " OR " + FORCE_DELIVERY + " = true";
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Return the size of the queue. The size is counted by browsing the queue
+     * only once per size refresh interval, in between the count is maintained
+     * by the enqueue and dequeue operations of this instance.
+     *
+     * @see #setSizeRefreshInterval(long)
+     */
     @Override
     public long getSize() throws MailQueueException {
-        Connection connection = null;
+        long now = System.currentTimeMillis();
+        if (sizeRefreshed == 0 || now - sizeRefreshed >= sizeRefreshInterval) {
+            size.set(browseSize());
+            sizeRefreshed = now;
+        }
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * Set the interval in milliseconds after which {@link #getSize()} counts
+     * the messages of the queue again. This is needed if other instances
+     * write to or read from the same queue. Use 0 to always count them.
+     * <p>
+     * The default is {@link #DEFAULT_SIZE_REFRESH_INTERVAL}
+     * </p>
+     *
+     * @param sizeRefreshInterval
+     */
+    public void setSizeRefreshInterval(long sizeRefreshInterval) {
+        this.sizeRefreshInterval = sizeRefreshInterval;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long browseSize() throws MailQueueException {
         Session session = null;
         QueueBrowser browser = null;
         int size = 0;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session = sessionPool.borrow(false);
             Queue queue = session.createQueue(queueName);
 
             browser = session.createBrowser(queue);
@@ -505,51 +463,29 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 messages.nextElement();
                 size++;
             }
+            browser.close();
+            sessionPool.release(session);
             return size;
         } catch (Exception e) {
+            closeBrowser(browser);
+            sessionPool.invalidate(session);
             logger.error("Unable to get size of queue " + queueName, e);
             throw new MailQueueException("Unable to get size of queue " + queueName, e);
-        } finally {
-            try {
-                if (browser != null)
-                    browser.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
-
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
     @Override
     public long flush() throws MailQueueException {
-        Connection connection = null;
         Session session = null;
         Message message = null;
         MessageConsumer consumer = null;
-        MessageProducer producer = null;
         boolean first = true;
         long count = 0;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-
-            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            session = sessionPool.borrow(true);
             Queue queue = session.createQueue(queueName);
             consumer = session.createConsumer(queue);
-            producer = session.createProducer(queue);
+            MessageProducer producer = sessionPool.getProducer(session);
 
             while (first || message != null) {
                 if (first) {
@@ -563,11 +499,13 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 if (message != null) {
                     Message m = copy(session, message);
                     m.setBooleanProperty(FORCE_DELIVERY, true);
-                    producer.send(m, message.getJMSDeliveryMode(), message.getJMSPriority(), message.getJMSExpiration());
+                    producer.send(queue, m, message.getJMSDeliveryMode(), message.getJMSPriority(), message.getJMSExpiration());
                     count++;
                 }
             }
             session.commit();
+            closeConsumer(consumer);
+            sessionPool.release(session);
             return count;
         } catch (Exception e) {
             logger.error("Unable to flush mail", e);
@@ -576,38 +514,9 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore on rollback
             }
+            closeConsumer(consumer);
+            sessionPool.invalidate(session);
             throw new MailQueueException("Unable to get size of queue " + queueName, e);
-        } finally {
-            if (consumer != null) {
-
-                try {
-                    consumer.close();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
-            if (producer != null) {
-
-                try {
-                    producer.close();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
-
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
@@ -631,7 +540,6 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
      * @return messages
      */
     public List<Message> removeWithSelector(String selector) throws MailQueueException {
-        Connection connection = null;
         Session session = null;
         Message message = null;
         MessageConsumer consumer = null;
@@ -639,10 +547,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         List<Message> messages = new ArrayList<Message>();
 
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-
-            session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            session = sessionPool.borrow(true);
             Queue queue = session.createQueue(queueName);
             consumer = session.createConsumer(queue, selector);
             while (first || message != null) {
@@ -658,6 +563,9 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 }
             }
             session.commit();
+            size.addAndGet(-messages.size());
+            closeConsumer(consumer);
+            sessionPool.release(session);
             return messages;
         } catch (Exception e) {
             try {
@@ -665,31 +573,9 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             } catch (JMSException e1) {
                 // ignore on rollback
             }
+            closeConsumer(consumer);
+            sessionPool.invalidate(session);
             throw new MailQueueException("Unable to remove mails", e);
-
-        } finally {
-            if (consumer != null) {
-
-                try {
-                    consumer.close();
-                } catch (JMSException e1) {
-                    // ignore on rollback
-                }
-            }
-
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
-            }
         }
     }
 
@@ -734,20 +620,16 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
     @Override
     @SuppressWarnings("unchecked")
     public MailQueueIterator browse() throws MailQueueException {
-        Connection connection = null;
         Session session = null;
         QueueBrowser browser = null;
         try {
-            connection = connectionFactory.createConnection();
-            connection.start();
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session = sessionPool.borrow(false);
             Queue queue = session.createQueue(queueName);
 
             browser = session.createBrowser(queue);
 
             final Enumeration<Message> messages = browser.getEnumeration();
 
-            final Connection myConnection = connection;
             final Session mySession = session;
             final QueueBrowser myBrowser = browser;
 
@@ -794,54 +676,72 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
                 @Override
                 public void close() {
-
-                    try {
-                        if (myBrowser != null)
-                            myBrowser.close();
-                    } catch (JMSException e1) {
-                        // ignore here
-                    }
-
                     try {
-                        if (mySession != null)
-                            mySession.close();
+                        myBrowser.close();
+                        sessionPool.release(mySession);
                     } catch (JMSException e1) {
-                        // ignore here
-                    }
-
-                    try {
-                        if (myConnection != null)
-                            myConnection.close();
-                    } catch (JMSException e1) {
-                        // ignore here
+                        sessionPool.invalidate(mySession);
                     }
                 }
             };
 
         } catch (Exception e) {
+            closeBrowser(browser);
+            sessionPool.invalidate(session);
+            logger.error("Unable to browse queue " + queueName, e);
+            throw new MailQueueException("Unable to browse queue " + queueName, e);
+        }
+    }
 
+    /**
+     * Close the {@link JMSSessionPool} and with it the connection to the broker
+     */
+    @Override
+    public void dispose() {
+        sessionPool.close();
+    }
+
+    protected void closeConsumer(MessageConsumer consumer) {
+        if (consumer != null) {
             try {
-                if (browser != null)
-                    browser.close();
-            } catch (JMSException e1) {
+                consumer.close();
+            } catch (JMSException e) {
                 // ignore here
             }
+        }
+    }
 
+    private void closeBrowser(QueueBrowser browser) {
+        if (browser != null) {
             try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e1) {
+                browser.close();
+            } catch (JMSException e) {
                 // ignore here
             }
+        }
+    }
 
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e1) {
-                // ignore here
+    /**
+     * Keeps the maintained size in sync with the committed dequeue operations
+     */
+    private final class SizeTrackingMailQueueItem implements MailQueueItem {
+        private final MailQueueItem item;
+
+        public SizeTrackingMailQueueItem(MailQueueItem item) {
+            this.item = item;
+        }
+
+        @Override
+        public Mail getMail() {
+            return item.getMail();
+        }
+
+        @Override
+        public void done(boolean success) throws MailQueueException {
+            item.done(success);
+            if (success) {
+                size.decrementAndGet();
             }
-            logger.error("Unable to browse queue " + queueName, e);
-            throw new MailQueueException("Unable to browse queue " + queueName, e);
         }
     }
 
@@ -19,7 +19,6 @@
 
 package org.apache.james.queue.jms;
 
-import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.MessageConsumer;
 import javax.jms.Session;
@@ -29,24 +28,26 @@ import org.apache.james.queue.api.MailQueue.MailQueueItem;
 import org.apache.mailet.Mail;
 
 /**
- * JMS {@link MailQueueItem} implementation
+ * JMS {@link MailQueueItem} implementation. The {@link Session} is given back
+ * to the {@link JMSSessionPool} once the item is done.
  */
 public class JMSMailQueueItem implements MailQueueItem {
 
     protected final Mail mail;
-    protected final Connection connection;
+    protected final JMSSessionPool sessionPool;
     protected final Session session;
     protected final MessageConsumer consumer;
 
-    public JMSMailQueueItem(Mail mail, Connection connection, Session session, MessageConsumer consumer) {
+    public JMSMailQueueItem(Mail mail, JMSSessionPool sessionPool, Session session, MessageConsumer consumer) {
         this.mail = mail;
-        this.connection = connection;
+        this.sessionPool = sessionPool;
         this.session = session;
         this.consumer = consumer;
     }
 
     @Override
     public void done(boolean success) throws MailQueueException {
+        boolean reusable = true;
         try {
             if (success) {
                 session.commit();
@@ -55,9 +56,11 @@ public class JMSMailQueueItem implements MailQueueItem {
                     session.rollback();
                 } catch (JMSException e1) {
                     // ignore on rollback
+                    reusable = false;
                 }
             }
         } catch (JMSException ex) {
+            reusable = false;
             throw new MailQueueException("Unable to commit dequeue operation for mail " + mail.getName(), ex);
         } finally {
             if (consumer != null) {
@@ -68,18 +71,10 @@ public class JMSMailQueueItem implements MailQueueItem {
                     // ignore on rollback
                 }
             }
-            try {
-                if (session != null)
-                    session.close();
-            } catch (JMSException e) {
-                // ignore here
-            }
-
-            try {
-                if (connection != null)
-                    connection.close();
-            } catch (JMSException e) {
-                // ignore here
+            if (reusable) {
+                sessionPool.release(session);
+            } else {
+                sessionPool.invalidate(session);
             }
         }
     }
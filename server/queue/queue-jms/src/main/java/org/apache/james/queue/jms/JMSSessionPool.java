@@ -0,0 +1,233 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+
+/**
+ * Keeps one {@link Connection} open and pools the {@link Session}'s created
+ * from it, together with an unidentified {@link MessageProducer} per
+ * {@link Session}. This saves the connection and session setup for every
+ * single queue operation.
+ * <p>
+ * A {@link Session} which was involved in an error should get passed to
+ * {@link #invalidate(Session)} instead of {@link #release(Session)}. If the
+ * {@link Connection} itself reports an error all idle {@link Session}'s are
+ * dropped and a new {@link Connection} is created on the next borrow. The
+ * {@link Session}'s which were borrowed from the failed {@link Connection}
+ * are closed once released.
+ * </p>
+ */
+public class JMSSessionPool {
+
+    public final static int DEFAULT_MAX_IDLE_SESSIONS = 10;
+
+    private final ConnectionFactory connectionFactory;
+    private final Logger logger;
+    private final BlockingQueue<Session> idleSessions;
+    private final BlockingQueue<Session> idleTransactedSessions;
+    private final Map<Session, MessageProducer> producers = Collections.synchronizedMap(new IdentityHashMap<Session, MessageProducer>());
+    /**
+     * The generation of the {@link Connection} each {@link Session} was created from
+     */
+    private final Map<Session, Long> generations = Collections.synchronizedMap(new IdentityHashMap<Session, Long>());
+    private final Object connectionLock = new Object();
+    private Connection connection;
+    // guarded by connectionLock, incremented each time the connection is dropped
+    private long generation = 0;
+    private volatile boolean closed = false;
+
+    public JMSSessionPool(ConnectionFactory connectionFactory, int maxIdleSessions, Logger logger) {
+        this.connectionFactory = connectionFactory;
+        this.logger = logger;
+        this.idleSessions = new LinkedBlockingQueue<Session>(maxIdleSessions);
+        this.idleTransactedSessions = new LinkedBlockingQueue<Session>(maxIdleSessions);
+    }
+
+    /**
+     * Return an idle {@link Session} or create a new one if none is left
+     *
+     * @param transacted
+     *            if <code>true</code> a {@link Session#SESSION_TRANSACTED}
+     *            session is returned, otherwise a
+     *            {@link Session#AUTO_ACKNOWLEDGE} one
+     */
+    public Session borrow(boolean transacted) throws JMSException {
+        Session session = idle(transacted).poll();
+        if (session != null) {
+            return session;
+        }
+        Connection currentConnection;
+        long currentGeneration;
+        synchronized (connectionLock) {
+            currentConnection = getConnection();
+            currentGeneration = generation;
+        }
+        session = currentConnection.createSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+        generations.put(session, currentGeneration);
+        return session;
+    }
+
+    /**
+     * Give back a {@link Session} which was returned by
+     * {@link #borrow(boolean)}. A transacted {@link Session} must be
+     * committed or rolled back before.
+     */
+    public void release(Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            synchronized (connectionLock) {
+                // sessions of a dropped connection must not get back to the pool
+                if (!closed && isCurrentGeneration(session) && idle(session.getTransacted()).offer(session)) {
+                    return;
+                }
+            }
+        } catch (JMSException e) {
+            // the session is broken, so just close it
+        }
+        invalidate(session);
+    }
+
+    /**
+     * Close the given {@link Session} instead of giving it back to the pool
+     */
+    public void invalidate(Session session) {
+        if (session == null) {
+            return;
+        }
+        generations.remove(session);
+        MessageProducer producer = producers.remove(session);
+        try {
+            if (producer != null) {
+                producer.close();
+            }
+        } catch (JMSException e) {
+            // ignore here
+        }
+        try {
+            session.close();
+        } catch (JMSException e) {
+            // ignore here
+        }
+    }
+
+    /**
+     * Return the unidentified {@link MessageProducer} of the given pooled
+     * {@link Session}. The destination needs to get passed on each send.
+     * The {@link MessageProducer} must not be closed by the caller.
+     */
+    public MessageProducer getProducer(Session session) throws JMSException {
+        MessageProducer producer = producers.get(session);
+        if (producer == null) {
+            producer = session.createProducer(null);
+            producers.put(session, producer);
+        }
+        return producer;
+    }
+
+    /**
+     * Close all idle {@link Session}'s and the {@link Connection}. Borrowed
+     * {@link Session}'s get closed when they are released.
+     */
+    public void close() {
+        synchronized (connectionLock) {
+            closed = true;
+            reset();
+        }
+    }
+
+    // guarded by connectionLock
+    private boolean isCurrentGeneration(Session session) {
+        Long sessionGeneration = generations.get(session);
+        return sessionGeneration != null && sessionGeneration == generation;
+    }
+
+    private BlockingQueue<Session> idle(boolean transacted) {
+        if (transacted) {
+            return idleTransactedSessions;
+        }
+        return idleSessions;
+    }
+
+    private Connection getConnection() throws JMSException {
+        synchronized (connectionLock) {
+            if (closed) {
+                throw new JMSException("Session pool already closed");
+            }
+            if (connection == null) {
+                final Connection newConnection = connectionFactory.createConnection();
+                try {
+                    newConnection.setExceptionListener(new ExceptionListener() {
+
+                        @Override
+                        public void onException(JMSException e) {
+                            logger.warn("JMS connection failed, it will get reopened on next use", e);
+                            synchronized (connectionLock) {
+                                if (connection == newConnection) {
+                                    reset();
+                                }
+                            }
+                        }
+                    });
+                } catch (JMSException e) {
+                    // some pooling connection factories don't allow to set the listener
+                    logger.debug("Unable to register exception listener on JMS connection", e);
+                }
+                newConnection.start();
+                connection = newConnection;
+            }
+            return connection;
+        }
+    }
+
+    // guarded by connectionLock
+    private void reset() {
+        generation++;
+        Session session;
+        while ((session = idleSessions.poll()) != null) {
+            invalidate(session);
+        }
+        while ((session = idleTransactedSessions.poll()) != null) {
+            invalidate(session);
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                // ignore here
+            }
+            connection = null;
+        }
+    }
+}
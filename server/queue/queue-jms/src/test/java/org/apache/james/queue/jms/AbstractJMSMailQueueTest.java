@@ -18,6 +18,8 @@
  ****************************************************************/
 package org.apache.james.queue.jms;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -30,6 +32,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import javax.jms.ConnectionFactory;
@@ -46,6 +49,7 @@ import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.james.queue.api.ManageableMailQueue.MailQueueIterator;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -78,6 +82,11 @@ public abstract class AbstractJMSMailQueueTest {
         setQueue(createQueue(connectionFactory, MailQueueItemDecoratorFactory.RAW_FACTORY, QUEUE_NAME));
     }
 
+    @After
+    public void tearDown() throws Exception {
+        getQueue().dispose();
+    }
+
     @Test
     public void testFIFO() throws MessagingException, InterruptedException, IOException, MailAddressException {
         final JMSMailQueue queue = getQueue();
@@ -281,6 +290,36 @@ public abstract class AbstractJMSMailQueueTest {
 
     }
 
+    @Test
+    public void testSizeOfMailsEnqueuedByAnotherInstance() throws MessagingException, InterruptedException, IOException, MailAddressException {
+        final JMSMailQueue queue = getQueue();
+        queue.setSizeRefreshInterval(0);
+        assertEquals(0, queue.getSize());
+
+        JMSMailQueue otherQueue = createQueue(createConnectionFactory(), MailQueueItemDecoratorFactory.RAW_FACTORY, QUEUE_NAME);
+        try {
+            Mail mail = createMail();
+            otherQueue.enQueue(mail);
+
+            await().atMost(5, TimeUnit.SECONDS).until(sizeOf(queue), equalTo(1L));
+            MailQueueItem item = queue.deQueue();
+            checkMail(mail, item.getMail());
+            item.done(true);
+
+            await().atMost(5, TimeUnit.SECONDS).until(sizeOf(queue), equalTo(0L));
+        } finally {
+            otherQueue.dispose();
+        }
+    }
+
+    private Callable<Long> sizeOf(final JMSMailQueue queue) {
+        return new Callable<Long>() {
+            public Long call() throws Exception {
+                return queue.getSize();
+            }
+        };
+    }
+
     protected MailImpl createMail() throws MessagingException {
         MailImpl mail = new MailImpl();
         mail.setName("" + System.currentTimeMillis());
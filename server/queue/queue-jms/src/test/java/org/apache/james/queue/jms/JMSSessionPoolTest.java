@@ -0,0 +1,138 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.LoggerFactory;
+
+public class JMSSessionPoolTest {
+
+    private ConnectionFactory connectionFactory;
+    private Connection connection;
+    private JMSSessionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        connectionFactory = mock(ConnectionFactory.class);
+        connection = mockConnection();
+        when(connectionFactory.createConnection()).thenReturn(connection, mockConnection());
+        pool = new JMSSessionPool(connectionFactory, JMSSessionPool.DEFAULT_MAX_IDLE_SESSIONS, LoggerFactory.getLogger(JMSSessionPoolTest.class));
+    }
+
+    @Test
+    public void borrowShouldReuseReleasedSessions() throws Exception {
+        Session session = pool.borrow(false);
+        pool.release(session);
+
+        assertSame(session, pool.borrow(false));
+        verify(session, never()).close();
+    }
+
+    @Test
+    public void borrowShouldNotMixTransactedAndNonTransactedSessions() throws Exception {
+        Session session = pool.borrow(false);
+        pool.release(session);
+
+        assertNotSame(session, pool.borrow(true));
+    }
+
+    @Test
+    public void connectionFailureShouldCloseIdleSessions() throws Exception {
+        Session session = pool.borrow(false);
+        pool.release(session);
+
+        failConnection();
+
+        verify(session).close();
+        verify(connection).close();
+        assertNotSame(session, pool.borrow(false));
+    }
+
+    @Test
+    public void releaseShouldCloseSessionsBorrowedBeforeAConnectionFailure() throws Exception {
+        Session session = pool.borrow(false);
+
+        failConnection();
+        pool.release(session);
+
+        verify(session).close();
+        assertNotSame(session, pool.borrow(false));
+    }
+
+    @Test
+    public void sessionsOfTheNewConnectionShouldBePooled() throws Exception {
+        pool.borrow(false);
+        failConnection();
+
+        Session session = pool.borrow(false);
+        pool.release(session);
+
+        assertSame(session, pool.borrow(false));
+        verify(connectionFactory, times(2)).createConnection();
+    }
+
+    @Test
+    public void releaseShouldCloseSessionsOnceThePoolIsClosed() throws Exception {
+        Session session = pool.borrow(false);
+
+        pool.close();
+        pool.release(session);
+
+        verify(session).close();
+    }
+
+    private void failConnection() throws Exception {
+        ArgumentCaptor<ExceptionListener> listener = ArgumentCaptor.forClass(ExceptionListener.class);
+        verify(connection).setExceptionListener(listener.capture());
+        listener.getValue().onException(new JMSException("connection failed"));
+    }
+
+    private Connection mockConnection() throws JMSException {
+        Connection connection = mock(Connection.class);
+        when(connection.createSession(anyBoolean(), anyInt())).thenAnswer(new Answer<Session>() {
+            public Session answer(InvocationOnMock invocation) throws Throwable {
+                Session session = mock(Session.class);
+                when(session.getTransacted()).thenReturn((Boolean) invocation.getArguments()[0]);
+                return session;
+            }
+        });
+        return connection;
+    }
+
+}